@@ -2,8 +2,10 @@ package com.catkatpowered.katserver;
 
 import com.catkatpowered.katserver.config.KatConfigManager;
 import com.catkatpowered.katserver.database.KatDatabaseManager;
+import com.catkatpowered.katserver.database.async.AsyncDatabaseActions;
 import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.metrics.DatabaseMetrics;
 import com.catkatpowered.katserver.database.type.DatabaseType;
 import com.catkatpowered.katserver.event.Event;
 import com.catkatpowered.katserver.event.KatEventManager;
@@ -117,5 +119,15 @@ public class KatServer {
         public static DatabaseActions getActions(DatabaseType type) {
             return KatDatabaseManager.getActions(type);
         }
+
+        // 获取异步执行器 不阻塞调用者的线程
+        public static AsyncDatabaseActions getAsyncActions() {
+            return KatDatabaseManager.getAsyncActions();
+        }
+
+        // 获取按表和操作类型记录的耗时和行数
+        public static DatabaseMetrics getMetrics() {
+            return KatDatabaseManager.getMetrics();
+        }
     }
 }
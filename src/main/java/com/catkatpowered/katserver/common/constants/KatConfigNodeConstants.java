@@ -5,4 +5,92 @@ public class KatConfigNodeConstants {
     public static final String KAT_CONFIG_DATA_FOLDER_PATH = "data_folder_path";
 
     public static final String KAT_CONFIG_NETWORK_PORT = "network_port";
+
+    // 异步数据库执行器配置
+    public static final String KAT_CONFIG_DATABASE_ASYNC = "database_async";
+    public static final String KAT_CONFIG_DATABASE_ASYNC_THREADS = "threads";
+    public static final String KAT_CONFIG_DATABASE_ASYNC_QUEUE_SIZE = "queue_size";
+    public static final String KAT_CONFIG_DATABASE_ASYNC_TIMEOUT = "timeout";
+
+    // 数据库操作统计配置
+    public static final String KAT_CONFIG_DATABASE_METRICS = "database_metrics";
+    public static final String KAT_CONFIG_DATABASE_METRICS_SLOW_QUERY = "slow_query";
+    public static final String KAT_CONFIG_DATABASE_METRICS_MAX_TABLES = "max_tables";
+    public static final String KAT_CONFIG_DATABASE_METRICS_HTTP = "http";
+    public static final String KAT_CONFIG_DATABASE_METRICS_TOKEN = "token";
+
+    // 消息缓存配置
+    public static final String KAT_CONFIG_MESSAGE_CACHE = "message_cache";
+    public static final String KAT_CONFIG_MESSAGE_CACHE_CAPACITY = "capacity";
+    public static final String KAT_CONFIG_MESSAGE_CACHE_MAX_WEIGHT = "max_weight";
+
+    // 最近消息缓冲区配置
+    public static final String KAT_CONFIG_RECENT_MESSAGES = "recent_messages";
+    public static final String KAT_CONFIG_RECENT_MESSAGES_SIZE = "size";
+    public static final String KAT_CONFIG_RECENT_MESSAGES_MAX_WEIGHT = "max_weight";
+    public static final String KAT_CONFIG_MESSAGE_PARTITION = "message_partition";
+    public static final String KAT_CONFIG_MESSAGE_PARTITION_PERIOD = "period";
+    public static final String KAT_CONFIG_MESSAGE_PARTITION_RETENTION = "retention";
+
+    // 消息内容压缩配置
+    public static final String KAT_CONFIG_MESSAGE_COMPRESSION = "message_compression";
+    public static final String KAT_CONFIG_MESSAGE_COMPRESSION_ENABLED = "enabled";
+    public static final String KAT_CONFIG_MESSAGE_COMPRESSION_SAMPLES = "samples";
+    public static final String KAT_CONFIG_MESSAGE_COMPRESSION_DICTIONARY_SIZE = "dictionary_size";
+    public static final String KAT_CONFIG_MESSAGE_COMPRESSION_MIN_LENGTH = "min_length";
+    public static final String KAT_CONFIG_MESSAGE_COMPRESSION_LEVEL = "level";
+
+    // 消息编辑历史配置
+    public static final String KAT_CONFIG_MESSAGE_REVISIONS = "message_revisions";
+    public static final String KAT_CONFIG_MESSAGE_REVISIONS_ENABLED = "enabled";
+    public static final String KAT_CONFIG_MESSAGE_REVISIONS_SNAPSHOT_INTERVAL = "snapshot_interval";
+
+    // Sqlite 性能配置
+    public static final String KAT_CONFIG_SQLITE = "sqlite";
+    public static final String KAT_CONFIG_SQLITE_JOURNAL_MODE = "journal_mode";
+    public static final String KAT_CONFIG_SQLITE_SYNCHRONOUS = "synchronous";
+    public static final String KAT_CONFIG_SQLITE_MMAP_SIZE = "mmap_size";
+    public static final String KAT_CONFIG_SQLITE_CACHE_SIZE = "cache_size";
+    public static final String KAT_CONFIG_SQLITE_TEMP_STORE = "temp_store";
+    public static final String KAT_CONFIG_SQLITE_BUSY_TIMEOUT = "busy_timeout";
+    public static final String KAT_CONFIG_SQLITE_READERS = "readers";
+    public static final String KAT_CONFIG_SQLITE_SHARDS = "shards";
+
+    // Sqlite 在线快照配置
+    public static final String KAT_CONFIG_SQLITE_BACKUP = "sqlite_backup";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_ENABLED = "enabled";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_DIRECTORY = "directory";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_INTERVAL = "interval";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_FULL_EVERY = "full_every";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_KEEP = "keep";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_LATENCY_BUDGET = "latency_budget";
+    public static final String KAT_CONFIG_SQLITE_BACKUP_MAX_BUSY = "max_busy";
+
+    // MySQL 链接配置
+    public static final String KAT_CONFIG_MYSQL = "mysql";
+    public static final String KAT_CONFIG_MYSQL_CONNECTION_URL = "connection_url";
+    public static final String KAT_CONFIG_MYSQL_USERNAME = "username";
+    public static final String KAT_CONFIG_MYSQL_PASSWORD = "password";
+    public static final String KAT_CONFIG_MYSQL_POOL_SIZE = "pool_size";
+
+    // PostgreSQL 链接配置
+    public static final String KAT_CONFIG_POSTGRESQL = "postgresql";
+    public static final String KAT_CONFIG_POSTGRESQL_CONNECTION_URL = "connection_url";
+    public static final String KAT_CONFIG_POSTGRESQL_USERNAME = "username";
+    public static final String KAT_CONFIG_POSTGRESQL_PASSWORD = "password";
+    public static final String KAT_CONFIG_POSTGRESQL_POOL_SIZE = "pool_size";
+
+    // MongoDB 链接配置
+    public static final String KAT_CONFIG_MONGODB = "mongodb";
+    public static final String KAT_CONFIG_MONGODB_CONNECTION_URL = "connection_url";
+    public static final String KAT_CONFIG_MONGODB_USERNAME = "username";
+    public static final String KAT_CONFIG_MONGODB_PASSWORD = "password";
+    public static final String KAT_CONFIG_MONGODB_DATABASE = "database";
+    public static final String KAT_CONFIG_MONGODB_WRITE_CONCERN = "write_concern";
+
+    // SegmentLog 存储配置
+    public static final String KAT_CONFIG_SEGMENT_LOG = "segment_log";
+    public static final String KAT_CONFIG_SEGMENT_LOG_SEGMENT_SIZE = "segment_size";
+    public static final String KAT_CONFIG_SEGMENT_LOG_FLUSH_INTERVAL = "flush_interval";
+    public static final String KAT_CONFIG_SEGMENT_LOG_COMPACT_RATIO = "compact_ratio";
 }
@@ -43,5 +43,9 @@ public class KatMiscConstants {
 
     // SQLite 数据库存储路径
     public static final String KAT_DATABASE_PATH = KatWorkingDir.fixPath(KatConfig.getInstance().getKatDataFolderPath() + "/database.db");
+    // SQLite 快照存储目录
+    public static final String KAT_SQLITE_BACKUP_PATH = KatWorkingDir.fixPath(KatConfig.getInstance().getKatDataFolderPath() + "/backup");
+    // SegmentLog 段文件存储目录
+    public static final String KAT_SEGMENT_LOG_PATH = KatWorkingDir.fixPath(KatConfig.getInstance().getKatDataFolderPath() + "/segments");
 
 }
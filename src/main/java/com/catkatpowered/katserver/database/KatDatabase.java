@@ -1,15 +1,37 @@
 package com.catkatpowered.katserver.database;
 
 import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.async.AsyncDatabaseActions;
+import com.catkatpowered.katserver.database.async.DatabaseExecutor;
 import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.memory.MemoryActions;
+import com.catkatpowered.katserver.database.memory.MemoryConnector;
+import com.catkatpowered.katserver.database.metrics.DatabaseMetrics;
+import com.catkatpowered.katserver.database.metrics.InstrumentedDatabaseActions;
+import com.catkatpowered.katserver.database.mongodb.MongoDBActions;
+import com.catkatpowered.katserver.database.mongodb.MongoDBConnector;
+import com.catkatpowered.katserver.database.mysql.MySQLActions;
+import com.catkatpowered.katserver.database.mysql.MySQLConnector;
+import com.catkatpowered.katserver.database.postgresql.PostGreSQLActions;
+import com.catkatpowered.katserver.database.postgresql.PostGreSQLConnector;
+import com.catkatpowered.katserver.database.segmentlog.SegmentLogActions;
+import com.catkatpowered.katserver.database.segmentlog.SegmentLogConnector;
 import com.catkatpowered.katserver.database.type.DatabaseType;
 import com.catkatpowered.katserver.database.sqlite.SQLiteActions;
 import com.catkatpowered.katserver.database.sqlite.SQLiteConnector;
 import lombok.Getter;
 
+import java.util.Map;
+
 public class KatDatabase {
 
+    // 等待队列默认为每个线程 64 个操作
+    private static final int DEFAULT_QUEUE_PER_THREAD = 64;
+    // 异步操作默认超时 毫秒
+    private static final long DEFAULT_TIMEOUT = 10000;
+
     private static final KatDatabase Instance = new KatDatabase();
 
     // 这会还得 Controller 暂存连接器
@@ -17,8 +39,13 @@ public class KatDatabase {
     private final DatabaseConnector connector;
     @Getter
     private final DatabaseActions actions;
+    @Getter
+    private final AsyncDatabaseActions asyncActions;
+    @Getter
+    private final DatabaseMetrics metrics;
 
 
+    @SuppressWarnings("unchecked")
     private KatDatabase() {
 
         // 加载数据库
@@ -30,9 +57,17 @@ public class KatDatabase {
         String password = (String) KatServer.KatConfigAPI.getConfig("database_password");
 
         connector = pickConnector(type);
-        actions = pickActions(type);
+        // 全部操作经过计时包装
+        metrics = DatabaseMetrics.fromConfig((Map<String, Object>) KatServer.KatConfigAPI
+            .getConfig(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS));
+        actions = new InstrumentedDatabaseActions(pickActions(type), metrics);
 
         connector.loadDatabase(url, username, password);
+        // Sqlite 的定时快照按写入延迟调节复制速度
+        if (connector instanceof SQLiteConnector sqlite) {
+            sqlite.startBackup(metrics);
+        }
+        asyncActions = new AsyncDatabaseActions(actions, createExecutor());
     }
 
     public static KatDatabase getInstance() {
@@ -40,26 +75,81 @@ public class KatDatabase {
     }
 
     /**
-     * 根据数据库类型返回实例
+     * 根据数据库类型返回实例 返回的链接器还没有加载数据库
      */
-    DatabaseConnector pickConnector(DatabaseType type) {
+    public static DatabaseConnector pickConnector(DatabaseType type) {
         switch (type) {
-            case MySQL, PostGreSQL, MongoDB -> {
+            case MongoDB -> {
+                return new MongoDBConnector();
+            }
+            case MySQL -> {
+                return new MySQLConnector();
+            }
+            case PostGreSQL -> {
+                return new PostGreSQLConnector();
             }
             case SQLite -> {
                 return new SQLiteConnector();
             }
+            case SegmentLog -> {
+                return new SegmentLogConnector();
+            }
+            case Memory -> {
+                return new MemoryConnector();
+            }
         }
         return null;
     }
 
-    DatabaseActions pickActions(DatabaseType type) {
+    /**
+     * 按配置文件的 database_async 节点创建异步执行器 <br>
+     * 线程数默认与链接器的链接池大小相同
+     */
+    @SuppressWarnings("unchecked")
+    DatabaseExecutor createExecutor() {
+        Map<String, Object> config = (Map<String, Object>) KatServer.KatConfigAPI
+            .getConfig(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC);
+        int threads = connector.getPoolSize();
+        long timeout = DEFAULT_TIMEOUT;
+        int queueSize = -1;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC_THREADS) != null) {
+                threads = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC_THREADS).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC_QUEUE_SIZE) != null) {
+                queueSize = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC_QUEUE_SIZE).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC_TIMEOUT) != null) {
+                timeout = Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_ASYNC_TIMEOUT).toString());
+            }
+        }
+        threads = Math.max(1, threads);
+        return new DatabaseExecutor(threads, queueSize > 0 ? queueSize : threads * DEFAULT_QUEUE_PER_THREAD, timeout);
+    }
+
+    public static DatabaseActions pickActions(DatabaseType type) {
         switch (type) {
-            case MySQL, PostGreSQL, MongoDB -> {
+            case MongoDB -> {
+                return new MongoDBActions();
+            }
+            case MySQL -> {
+                return new MySQLActions();
+            }
+            case PostGreSQL -> {
+                return new PostGreSQLActions();
             }
             case SQLite -> {
                 return new SQLiteActions();
             }
+            case SegmentLog -> {
+                return new SegmentLogActions();
+            }
+            case Memory -> {
+                return new MemoryActions();
+            }
         }
         return null;
     }
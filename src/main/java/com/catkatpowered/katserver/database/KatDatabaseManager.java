@@ -1,7 +1,9 @@
 package com.catkatpowered.katserver.database;
 
+import com.catkatpowered.katserver.database.async.AsyncDatabaseActions;
 import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.metrics.DatabaseMetrics;
 import com.catkatpowered.katserver.database.type.DatabaseType;
 
 /**
@@ -23,7 +25,7 @@ public class KatDatabaseManager {
     }
 
     public static DatabaseConnector getConnector(DatabaseType type) {
-        return KatDatabase.getInstance().pickConnector(type);
+        return KatDatabase.pickConnector(type);
     }
 
     // 获取执行器
@@ -32,7 +34,17 @@ public class KatDatabaseManager {
     }
 
     public static DatabaseActions getActions(DatabaseType type) {
-        return KatDatabase.getInstance().pickActions(type);
+        return KatDatabase.pickActions(type);
+    }
+
+    // 获取异步执行器
+    public static AsyncDatabaseActions getAsyncActions() {
+        return KatDatabase.getInstance().getAsyncActions();
+    }
+
+    // 获取操作统计
+    public static DatabaseMetrics getMetrics() {
+        return KatDatabase.getInstance().getMetrics();
     }
 
 }
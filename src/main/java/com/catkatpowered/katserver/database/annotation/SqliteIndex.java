@@ -0,0 +1,25 @@
+package com.catkatpowered.katserver.database.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 在数据实体类上声明一个二级索引 可重复声明 <br>
+ * 索引会在建表时一并创建 已存在的索引不会重复创建 <br>
+ * 索引名在数据库中全局唯一 实际创建时会使用 表名_索引名 作为索引名
+ * <p>
+ * 注解参数
+ * name - 索引名 无默认值
+ * columns - 列名 按顺序组成复合索引 无默认值
+ * isUnique - 是否为唯一索引 默认为 false
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(SqliteIndexes.class)
+public @interface SqliteIndex {
+    String name();
+
+    String[] columns();
+
+    boolean isUnique() default false;
+}
@@ -0,0 +1,13 @@
+package com.catkatpowered.katserver.database.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * SqliteIndex 的容器注解 在类上重复声明 SqliteIndex 时由编译器生成
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SqliteIndexes {
+    SqliteIndex[] value();
+}
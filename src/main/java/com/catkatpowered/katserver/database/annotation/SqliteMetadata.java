@@ -1,5 +1,6 @@
 package com.catkatpowered.katserver.database.annotation;
 
+import com.catkatpowered.katserver.database.interfaces.DatabaseCodec;
 import com.catkatpowered.katserver.database.type.DataType;
 
 import java.lang.annotation.*;
@@ -15,6 +16,12 @@ import java.lang.annotation.*;
  * isPrimaryKey - 布尔 是否为主键 默认为 false
  * isUnique - 是否添加唯一约束 默认为 false
  * isAutoincrement - 是否为自增量 默认为 false
+ * isIndexed - 是否为该列创建二级索引 默认为 false 多列的复合索引使用 SqliteIndex 注解在类上声明
+ * isUpdatable - 是否允许更新 默认为 true 为 false 时只在插入时写入 update 和 upsert 都不会修改该列
+ * codec - 列的编解码器 写入 JDBC 数据库前编码为字节 读取后解码 默认为 DatabaseCodec 本身 表示不编码
+ *
+ * @see SqliteIndex
+ * @see DatabaseCodec
  */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
@@ -31,4 +38,11 @@ public @interface SqliteMetadata {
     boolean isUnique() default false;
 
     boolean isAutoincrement() default false;
+
+    boolean isIndexed() default false;
+
+    boolean isUpdatable() default true;
+
+    @SuppressWarnings("rawtypes")
+    Class<? extends DatabaseCodec> codec() default DatabaseCodec.class;
 }
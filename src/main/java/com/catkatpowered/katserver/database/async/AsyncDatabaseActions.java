@@ -0,0 +1,109 @@
+package com.catkatpowered.katserver.database.async;
+
+import com.catkatpowered.katserver.database.exception.DataProcessingException;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * DatabaseActions 的异步门面 <br>
+ * 每个操作都提交到 DatabaseExecutor 执行 立即返回 CompletableFuture <br>
+ * 不带 timeout 参数的方法使用执行器的默认超时 timeout 单位为毫秒 小于等于 0 时不限制 <br>
+ * 数据库饱和时返回的 CompletableFuture 以 RejectedExecutionException 失败 <br>
+ * 写入失败时返回的 CompletableFuture 以 DataProcessingException 失败 失败的原因记录在日志中 <br>
+ * 取消或超时只让 CompletableFuture 结束 不会撤销写入 已经开始执行的写入仍然可能完成并提交 <br>
+ * 流式查询的游标需要在同一条链接上逐批消费 不提供异步版本
+ *
+ * @author hanbings
+ */
+public class AsyncDatabaseActions {
+    @Getter
+    private final DatabaseActions actions;
+    @Getter
+    private final DatabaseExecutor executor;
+
+    public AsyncDatabaseActions(DatabaseActions actions, DatabaseExecutor executor) {
+        this.actions = actions;
+        this.executor = executor;
+    }
+
+    public <T> CompletableFuture<Void> create(DatabaseConnection connection, String table, T data) {
+        return this.create(connection, table, data, executor.getTimeout());
+    }
+
+    public <T> CompletableFuture<Void> create(DatabaseConnection connection, String table, T data, long timeout) {
+        return this.write("create", table, () -> actions.create(connection, table, data), timeout);
+    }
+
+    public <T> CompletableFuture<Void> create(DatabaseConnection connection, String table, List<T> data) {
+        return this.create(connection, table, data, executor.getTimeout());
+    }
+
+    public <T> CompletableFuture<Void> create(DatabaseConnection connection, String table, List<T> data,
+                                              long timeout) {
+        return this.write("create", table, () -> actions.create(connection, table, data), timeout);
+    }
+
+    public CompletableFuture<Void> delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        return this.delete(connection, table, query, executor.getTimeout());
+    }
+
+    public CompletableFuture<Void> delete(DatabaseConnection connection, String table, DatabaseQuery query,
+                                          long timeout) {
+        return this.write("delete", table, () -> actions.delete(connection, table, query), timeout);
+    }
+
+    public <T> CompletableFuture<List<T>> read(DatabaseConnection connection, String table, Class<T> type,
+                                               DatabaseQuery query) {
+        return this.read(connection, table, type, query, executor.getTimeout());
+    }
+
+    public <T> CompletableFuture<List<T>> read(DatabaseConnection connection, String table, Class<T> type,
+                                               DatabaseQuery query, long timeout) {
+        return executor.submit(() -> actions.read(connection, table, type, query), timeout);
+    }
+
+    public <T> CompletableFuture<Void> update(DatabaseConnection connection, String table, T data,
+                                              DatabaseQuery query) {
+        return this.update(connection, table, data, query, executor.getTimeout());
+    }
+
+    public <T> CompletableFuture<Void> update(DatabaseConnection connection, String table, T data,
+                                              DatabaseQuery query, long timeout) {
+        return this.write("update", table, () -> actions.update(connection, table, data, query), timeout);
+    }
+
+    public <T> CompletableFuture<Void> upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, data, executor.getTimeout());
+    }
+
+    public <T> CompletableFuture<Void> upsert(DatabaseConnection connection, String table, T data, long timeout) {
+        return this.write("upsert", table, () -> actions.upsert(connection, table, data), timeout);
+    }
+
+    public <T> CompletableFuture<Void> upsert(DatabaseConnection connection, String table, List<T> data) {
+        return this.upsert(connection, table, data, executor.getTimeout());
+    }
+
+    public <T> CompletableFuture<Void> upsert(DatabaseConnection connection, String table, List<T> data,
+                                              long timeout) {
+        return this.write("upsert", table, () -> actions.upsert(connection, table, data), timeout);
+    }
+
+    /**
+     * 提交一个写入操作 执行器报告失败时以 DataProcessingException 失败
+     */
+    private CompletableFuture<Void> write(String operation, String table, BooleanSupplier write, long timeout) {
+        return executor.submit(() -> {
+            if (!write.getAsBoolean()) {
+                throw new DataProcessingException(operation + " on table " + table + " failed.");
+            }
+            return null;
+        }, timeout);
+    }
+}
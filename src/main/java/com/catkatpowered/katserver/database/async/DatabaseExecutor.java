@@ -0,0 +1,147 @@
+package com.catkatpowered.katserver.database.async;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据库执行器 异步数据库操作在这里执行 不占用调用者的线程 <br>
+ * 线程数与链接池大小相同 更多的线程只会在链接池上排队 <br>
+ * 等待队列有上限 数据库饱和时新的操作立即以 RejectedExecutionException 失败 而不是无限排队 <br>
+ * 超时或被取消的操作 还在排队时直接移出队列 已经在执行时中断执行线程
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class DatabaseExecutor {
+    private final ThreadPoolExecutor executor;
+    // 默认超时 毫秒 小于等于 0 时不限制
+    @Getter
+    private final long timeout;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param threads   执行线程数
+     * @param queueSize 等待队列的容量
+     * @param timeout   默认超时 毫秒 小于等于 0 时不限制
+     */
+    public DatabaseExecutor(int threads, int queueSize, long timeout) {
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(
+            threads, threads,
+            0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+            new DatabaseThreadFactory(),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * 使用默认超时提交一个操作
+     */
+    public <R> CompletableFuture<R> submit(Callable<R> task) {
+        return this.submit(task, timeout);
+    }
+
+    /**
+     * 提交一个操作 <br>
+     * 返回的 CompletableFuture 超时后以 TimeoutException 失败 调用 cancel 可以取消操作 <br>
+     * 只有还在排队的操作一定不会执行 已经开始的操作被中断时可能已经写入 取消不会回滚
+     *
+     * @param task    数据库操作
+     * @param timeout 超时 毫秒 小于等于 0 时不限制
+     * @return 操作的结果
+     */
+    public <R> CompletableFuture<R> submit(Callable<R> task, long timeout) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                // 排队期间已经超时或被取消的操作不再执行
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            rejected.increment();
+            future.completeExceptionally(
+                new RejectedExecutionException("database executor is saturated.", exception));
+            return future;
+        }
+        future.whenComplete((result, failure) -> {
+            if ((failure instanceof CancellationException || failure instanceof TimeoutException)
+                && running.cancel(true)) {
+                executor.remove((Runnable) running);
+            }
+        });
+        if (timeout > 0) {
+            future.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    // 正在执行的操作数
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    // 正在排队的操作数
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    // 因饱和被拒绝的操作数
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * 停止接收新的操作 等待已提交的操作执行完
+     *
+     * @param wait 最多等待的毫秒数
+     */
+    public void close(long wait) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(wait, TimeUnit.MILLISECONDS)) {
+                log.warn("database executor did not finish in {} ms, {} operations dropped.",
+                    wait, executor.shutdownNow().size());
+            }
+        } catch (InterruptedException exception) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class DatabaseThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "kat-database-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
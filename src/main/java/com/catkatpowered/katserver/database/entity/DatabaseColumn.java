@@ -0,0 +1,122 @@
+package com.catkatpowered.katserver.database.entity;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCodec;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+/**
+ * 数据实体中的一个变量对应的列 <br>
+ * 有注解则从注解中读取列名 没有注解则由变量名推导
+ *
+ * @author hanbings
+ */
+@Slf4j
+@Getter
+public class DatabaseColumn {
+    private final Field field;
+    private final String name;
+    // 注解 没有注解时为 null
+    private final SqliteMetadata metadata;
+    // 编解码器 没有声明时为 null
+    private final DatabaseCodec<Object> codec;
+
+    DatabaseColumn(Field field) {
+        this.field = field;
+        this.field.setAccessible(true);
+        this.metadata = field.getAnnotation(SqliteMetadata.class);
+        this.name = metadata != null ? metadata.name() : DatabaseEntity.getColumnName(field.getName());
+        this.codec = metadata != null && metadata.codec() != DatabaseCodec.class
+                ? newCodec(metadata.codec(), field)
+                : null;
+    }
+
+    // 编解码器只接收声明它的变量的值 因此可以按 Object 使用
+    @SuppressWarnings("unchecked")
+    private static DatabaseCodec<Object> newCodec(Class<?> type, Field field) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return (DatabaseCodec<Object>) constructor.newInstance();
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalArgumentException(
+                    "codec " + type.getName() + " of " + field.getName() + " needs a no-arg constructor", exception);
+        }
+    }
+
+    public boolean isPrimaryKey() {
+        return metadata != null && metadata.isPrimaryKey();
+    }
+
+    public boolean isUpdatable() {
+        return metadata == null || metadata.isUpdatable();
+    }
+
+    public Object get(Object data) {
+        try {
+            return field.get(data);
+        } catch (IllegalAccessException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return null;
+    }
+
+    /**
+     * 写入数据库的值 有编解码器时为编码后的字节
+     */
+    public Object getStored(Object data) {
+        Object value = this.get(data);
+        return codec != null && value != null ? codec.encode(value) : value;
+    }
+
+    /**
+     * 把从数据库读出的值写回变量 有编解码器时先解码 <br>
+     * 解码失败 (如编码前写入的旧数据) 时变量为 null
+     */
+    public void setStored(Object data, Object value) {
+        if (codec != null && value instanceof byte[] bytes) {
+            try {
+                value = codec.decode(bytes);
+            } catch (RuntimeException exception) {
+                log.error(String.valueOf(exception));
+                value = null;
+            }
+        }
+        this.set(data, value);
+    }
+
+    public void set(Object data, Object value) {
+        try {
+            field.set(data, value instanceof Number number ? this.coerce(number) : value);
+        } catch (IllegalAccessException | IllegalArgumentException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    /**
+     * 数据库按值的大小返回不同的数字类型 (如 Sqlite 的 INTEGER 可能是 Integer 或 Long) <br>
+     * 转换为变量声明的数字类型
+     */
+    private Object coerce(Number number) {
+        Class<?> type = field.getType();
+        if (type == Long.class || type == long.class) {
+            return number.longValue();
+        }
+        if (type == Integer.class || type == int.class) {
+            return number.intValue();
+        }
+        if (type == Double.class || type == double.class) {
+            return number.doubleValue();
+        }
+        if (type == Float.class || type == float.class) {
+            return number.floatValue();
+        }
+        if (type == Short.class || type == short.class) {
+            return number.shortValue();
+        }
+        return number;
+    }
+}
@@ -0,0 +1,177 @@
+package com.catkatpowered.katserver.database.entity;
+
+import com.catkatpowered.katserver.database.annotation.SqliteIndex;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据实体的反射元数据 每个类只解析一次 <br>
+ * 1. 按声明顺序扫描变量 跳过 static 和 transient 变量 <br>
+ * 2. 有注解的变量使用注解中的列名 无注解的变量使用变量名推导的列名 <br>
+ * 3. 被注解标记为主键的变量为主键 没有任何变量被标记时 第一个变量为主键 <br>
+ * 4. 收集变量上标记的单列索引和类上声明的复合索引 <br>
+ * 5. 更新时只写入允许更新的列
+ *
+ * @author hanbings
+ */
+@Slf4j
+@Getter
+public class DatabaseEntity<T> {
+    private static final Map<Class<?>, DatabaseEntity<?>> entities = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    private final List<DatabaseColumn> columns;
+    private final List<String> columnNames;
+    private final List<DatabaseColumn> updatableColumns;
+    private final List<String> updatableColumnNames;
+    private final DatabaseColumn primaryKey;
+    private final List<DatabaseIndex> indexes;
+
+    private DatabaseEntity(Class<T> type) {
+        this.type = type;
+        List<DatabaseColumn> columns = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())
+                    || Modifier.isTransient(field.getModifiers())
+                    || field.isSynthetic()) {
+                continue;
+            }
+            columns.add(new DatabaseColumn(field));
+        }
+        this.columns = Collections.unmodifiableList(columns);
+        this.columnNames = columns.stream().map(DatabaseColumn::getName).toList();
+        this.updatableColumns = columns.stream().filter(DatabaseColumn::isUpdatable).toList();
+        this.updatableColumnNames = updatableColumns.stream().map(DatabaseColumn::getName).toList();
+        this.primaryKey = columns.stream()
+                .filter(DatabaseColumn::isPrimaryKey)
+                .findFirst()
+                .orElse(columns.isEmpty() ? null : columns.get(0));
+        // 单列索引
+        List<DatabaseIndex> indexes = new ArrayList<>();
+        for (DatabaseColumn column : columns) {
+            if (column.getMetadata() != null && column.getMetadata().isIndexed()) {
+                indexes.add(new DatabaseIndex(column.getName(), List.of(column.getName()), false));
+            }
+        }
+        // 复合索引
+        for (SqliteIndex index : type.getAnnotationsByType(SqliteIndex.class)) {
+            for (String column : index.columns()) {
+                if (!columnNames.contains(column)) {
+                    throw new IllegalArgumentException(
+                            "index " + index.name() + " of " + type.getName() + " uses unknown column " + column);
+                }
+            }
+            indexes.add(new DatabaseIndex(index.name(), List.of(index.columns()), index.isUnique()));
+        }
+        this.indexes = Collections.unmodifiableList(indexes);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> DatabaseEntity<T> of(Class<T> type) {
+        return (DatabaseEntity<T>) entities.computeIfAbsent(type, DatabaseEntity::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> DatabaseEntity<T> of(T data) {
+        return of((Class<T>) data.getClass());
+    }
+
+    /**
+     * 是否有任意变量被注解标记为主键
+     */
+    public boolean isPrimaryKeyDeclared() {
+        return columns.stream().anyMatch(DatabaseColumn::isPrimaryKey);
+    }
+
+    /**
+     * 按列顺序取出数据实体的全部值 有编解码器的列为编码后的字节
+     */
+    public List<Object> getValues(T data) {
+        List<Object> values = new ArrayList<>(columns.size());
+        for (DatabaseColumn column : columns) {
+            values.add(column.getStored(data));
+        }
+        return values;
+    }
+
+    /**
+     * 按列顺序取出数据实体中允许更新的值 与 getUpdatableColumnNames 对应 有编解码器的列为编码后的字节
+     */
+    public List<Object> getUpdatableValues(T data) {
+        List<Object> values = new ArrayList<>(updatableColumns.size());
+        for (DatabaseColumn column : updatableColumns) {
+            values.add(column.getStored(data));
+        }
+        return values;
+    }
+
+    /**
+     * 第一个不为 null 的列 不存在则返回 null
+     */
+    public DatabaseColumn getFirstNonNull(T data) {
+        for (DatabaseColumn column : columns) {
+            if (column.get(data) != null) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按例查询的条件 使用第一个不为 null 的列 全部为 null 时返回 null
+     */
+    public DatabaseQuery getExampleQuery(T data) {
+        DatabaseColumn column = this.getFirstNonNull(data);
+        return column == null ? null : new DatabaseQuery().equal(column.getName(), column.get(data));
+    }
+
+    /**
+     * 以主键为条件的查询
+     */
+    public DatabaseQuery getPrimaryKeyQuery(T data) {
+        return new DatabaseQuery().equal(primaryKey.getName(), primaryKey.get(data));
+    }
+
+    /**
+     * 使用无参构造器创建一个新的数据实体 用于承载一行数据
+     */
+    public T newInstance() {
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return null;
+    }
+
+    /**
+     * 字符串全小写 遇到大写字母在大写字母前添加下划线并将该字母小写
+     *
+     * @param strings 字符串
+     * @return 全小写字符串
+     */
+    public static String getColumnName(String strings) {
+        char[] chars = strings.toCharArray();
+        StringBuilder builder = new StringBuilder();
+        for (char c : chars) {
+            if (Character.isUpperCase(c)) {
+                builder.append("_");
+            }
+            builder.append(c);
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,26 @@
+package com.catkatpowered.katserver.database.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 数据实体声明的一个二级索引
+ *
+ * @author hanbings
+ */
+@Getter
+@AllArgsConstructor
+public class DatabaseIndex {
+    String name;
+    List<String> columns;
+    boolean unique;
+
+    /**
+     * 索引名在数据库中全局唯一 因此需要带上表名
+     */
+    public String getName(String table) {
+        return table + "_" + name;
+    }
+}
@@ -1,19 +1,94 @@
 package com.catkatpowered.katserver.database.interfaces;
 
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+
 import java.util.List;
 
 /**
- * DatabaseActions 接口和接口实现类是解析注解对象
+ * DatabaseActions 接口和接口实现类是解析注解对象 <br>
+ * 条件操作使用 DatabaseQuery 描述 实现按查询形状渲染 sql 并缓存预编译语句 <br>
+ * 以数据实体作为条件的操作 (按例查询) 使用实体中第一个不为 null 的变量作为条件 <br>
+ * 以数据实体更新时 使用实体的主键作为条件 <br>
+ * 更新和 upsert 只写入允许更新的列 见 SqliteMetadata.isUpdatable <br>
+ * 写入操作返回是否成功 失败时实现已经记录了原因 调用者据此决定是否继续 (例如是否写入缓存)
  *
  * @author hanbings
  */
 public interface DatabaseActions {
+    // 流式查询默认每批读取的行数
+    int DEFAULT_FETCH_SIZE = 256;
+
     // 增加一行数据
-    <T> void create(DatabaseConnection connection, String table, T data);
+    <T> boolean create(DatabaseConnection connection, String table, T data);
+    // 按条件删除数据
+    boolean delete(DatabaseConnection connection, String table, DatabaseQuery query);
+    // 按条件查询一组数据
+    <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query);
+    // 按条件流式查询一组数据 每批读取 fetchSize 行 游标必须关闭
+    <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                 DatabaseQuery query, int fetchSize);
+    // 按条件更新数据 将数据实体的全部列写入满足条件的行
+    <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query);
+    // 增加一行数据 主键已存在时在同一条语句中覆盖已存在的行
+    <T> boolean upsert(DatabaseConnection connection, String table, T data);
+    // 删除整张表和它的索引 不逐行删除 表不存在时什么也不做
+    void drop(DatabaseConnection connection, String table);
+    // 数据库中全部的表
+    List<String> tables(DatabaseConnection connection);
+
+    // 批量增加数据 实现应当合并为尽量少的语句和事务 默认逐行增加 遇到失败时停止
+    default <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        for (T row : data) {
+            if (!create(connection, table, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 批量增加或覆盖数据 实现应当合并为尽量少的语句和事务 默认逐行执行 遇到失败时停止
+    default <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        for (T row : data) {
+            if (!upsert(connection, table, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // 删除一行数据
-    <T> void delete(DatabaseConnection connection, String table, T data);
+    default <T> boolean delete(DatabaseConnection connection, String table, T data) {
+        DatabaseQuery query = DatabaseEntity.of(data).getExampleQuery(data);
+        return query == null || delete(connection, table, query);
+    }
+
     // 查询一组数据
-    <T> List<T> read(DatabaseConnection connection, String table, T data);
+    default <T> List<T> read(DatabaseConnection connection, String table, T data) {
+        DatabaseQuery query = DatabaseEntity.of(data).getExampleQuery(data);
+        return query == null ? List.of() : read(connection, table, DatabaseEntity.of(data).getType(), query);
+    }
+
+    // 流式查询一组数据 每批读取 fetchSize 行 游标必须关闭
+    default <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, T data, int fetchSize) {
+        DatabaseQuery query = DatabaseEntity.of(data).getExampleQuery(data);
+        return query == null
+                ? DatabaseCursor.empty()
+                : cursor(connection, table, DatabaseEntity.of(data).getType(), query, fetchSize);
+    }
+
+    // 使用默认批量大小流式查询一组数据
+    default <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, T data) {
+        return cursor(connection, table, data, DEFAULT_FETCH_SIZE);
+    }
+
+    // 检查已存在的表是否缺少数据实体声明的索引 返回创建缺少索引的语句 Sqlite 同时补齐旧的表缺少的列
+    default <T> List<String> validateIndexes(DatabaseConnection connection, Class<T> type) {
+        return List.of();
+    }
+
     // 更新一行数据
-    <T> void update(DatabaseConnection connection, String table, T data);
+    default <T> boolean update(DatabaseConnection connection, String table, T data) {
+        return update(connection, table, data, DatabaseEntity.of(data).getPrimaryKeyQuery(data));
+    }
 }
@@ -0,0 +1,14 @@
+package com.catkatpowered.katserver.database.interfaces;
+
+/**
+ * DatabaseCodec 接口和实现负责一列的值与数据库中存储的字节之间的转换 <br>
+ * 在 SqliteMetadata 的 codec 中声明 用于数据库没有对应类型的变量 (如嵌套的列表) <br>
+ * 实现必须有无参构造器 并且线程安全 每个列只创建一个实例
+ *
+ * @author hanbings
+ */
+public interface DatabaseCodec<T> {
+    byte[] encode(T value);
+
+    T decode(byte[] bytes);
+}
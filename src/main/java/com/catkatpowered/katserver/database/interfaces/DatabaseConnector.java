@@ -15,4 +15,9 @@ public interface DatabaseConnector {
 
   // 断开链接
   void exit();
+
+  // 可以同时执行的数据库操作数 异步执行器按它确定线程数
+  default int getPoolSize() {
+    return Runtime.getRuntime().availableProcessors();
+  }
 }
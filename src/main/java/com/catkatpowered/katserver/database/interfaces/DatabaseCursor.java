@@ -0,0 +1,72 @@
+package com.catkatpowered.katserver.database.interfaces;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * DatabaseCursor 接口和实现负责流式读取查询结果 <br>
+ * 结果不会一次性载入内存 而是按 fetchSize 分批从数据库中取出 <br>
+ * 游标只在被消费期间持有底层链接和结果集 读取完毕或关闭后立即释放 <br>
+ * 支持服务端游标的数据库 (PostgreSQL / MySQL) 可以在实现中独占一条链接开启真正的服务端游标 <br>
+ * 使用完毕必须关闭 推荐使用 try-with-resources
+ *
+ * @author hanbings
+ */
+public interface DatabaseCursor<T> extends Iterator<T>, AutoCloseable {
+
+    // 释放结果集和链接 重复调用不会产生副作用
+    @Override
+    void close();
+
+    // 转换为流 关闭流时同时关闭游标
+    default Stream<T> stream() {
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+                        false)
+                .onClose(this::close);
+    }
+
+    // 遍历已经在内存中的结果 供不能分批读取的存储使用
+    static <T> DatabaseCursor<T> of(List<T> rows) {
+        Iterator<T> iterator = rows.iterator();
+        return new DatabaseCursor<>() {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+        };
+    }
+
+    // 没有任何结果的游标
+    static <T> DatabaseCursor<T> empty() {
+        return new DatabaseCursor<>() {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public T next() {
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package com.catkatpowered.katserver.database.jdbc;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * JDBC 游标 独占一个预编译语句和结果集 以及所在的链接 <br>
+ * 每次只回写当前行到新的数据实体 读取完毕后自动关闭并归还链接 <br>
+ * 各个 JDBC 数据库的执行器共用
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class JdbcCursor<T> implements DatabaseCursor<T> {
+
+    private final PreparedStatement statement;
+    private final ResultSet set;
+    // 将结果集当前行转换为数据实体
+    private final Function<ResultSet, T> mapper;
+    // 关闭时归还链接
+    private final Runnable release;
+    // 预读标记 null 表示尚未预读
+    private Boolean ready;
+    private boolean closed = false;
+
+    public JdbcCursor(PreparedStatement statement, ResultSet set, Function<ResultSet, T> mapper,
+                      Runnable release) {
+        this.statement = statement;
+        this.set = set;
+        this.mapper = mapper;
+        this.release = release;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (ready == null) {
+            try {
+                ready = set.next();
+            } catch (SQLException exception) {
+                log.error(String.valueOf(exception));
+                ready = false;
+            }
+            // 读取完毕 立即释放
+            if (!ready) {
+                close();
+            }
+        }
+        return ready;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = null;
+        return mapper.apply(set);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            set.close();
+            statement.close();
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        } finally {
+            release.run();
+        }
+    }
+}
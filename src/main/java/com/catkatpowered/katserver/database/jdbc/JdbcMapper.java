@@ -0,0 +1,48 @@
+package com.catkatpowered.katserver.database.jdbc;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 数据实体与 JDBC 之间的转换 各个 JDBC 数据库的执行器共用
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class JdbcMapper {
+
+    /**
+     * 按顺序注入变量到预编译语句
+     *
+     * @param statement 预编译语句
+     * @param values    需要注入的值
+     * @param offset    第一个值的下标 statement 的索引从 1 开始
+     */
+    public static void inject(PreparedStatement statement, List<Object> values, int offset) throws SQLException {
+        for (int count = 0; count < values.size(); count++) {
+            statement.setObject(offset + count, values.get(count));
+        }
+    }
+
+    /**
+     * 回写结果集当前行到新的数据实体
+     */
+    public static <T> T toEntity(ResultSet set, DatabaseEntity<T> entity) {
+        T data = entity.newInstance();
+        try {
+            for (DatabaseColumn column : entity.getColumns()) {
+                // 从结果集中获取数据
+                column.setStored(data, set.getObject(column.getName()));
+            }
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,186 @@
+package com.catkatpowered.katserver.database.jdbc;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.pool.DatabaseConnectionPool;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JDBC 链接池 MySQL 和 PostgreSQL 共用 <br>
+ * 每个操作从池中借出一条 JDBC 链接 执行完毕后归还 <br>
+ * 链接被服务器断开 (如超过 wait_timeout) 时 这次操作失败 并在归还前重新打开链接 <br>
+ * 同时记录数据库中已存在的表 写入前判断表是否存在不需要查询数据库
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class JdbcPooledConnection implements DatabaseConnection {
+    private final DatabaseConnectionPool<Slot> pool;
+    private final Opener opener;
+    private final Set<String> tables = ConcurrentHashMap.newKeySet();
+
+    public JdbcPooledConnection(List<Connection> connections, Opener opener) {
+        this.pool = new DatabaseConnectionPool<>(connections.stream().map(Slot::new).toList());
+        this.opener = opener;
+    }
+
+    /**
+     * 补上链接地址中没有指定的参数 已指定的参数保持原样
+     *
+     * @param url        链接地址
+     * @param parameters 形如 key=value 的参数
+     * @return 补全参数后的链接地址
+     */
+    public static String withParameters(String url, String... parameters) {
+        StringBuilder builder = new StringBuilder(url);
+        boolean first = !url.contains("?");
+        for (String parameter : parameters) {
+            String key = parameter.substring(0, parameter.indexOf('=') + 1);
+            if (url.contains("?" + key) || url.contains("&" + key)) {
+                continue;
+            }
+            builder.append(first ? "?" : "&").append(parameter);
+            first = false;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 链接池中没有固定的 JDBC 链接 使用 execute 借出链接
+     */
+    @Override
+    public Connection getJdbcConnection() {
+        throw new UnsupportedOperationException("connections are pooled, use execute instead.");
+    }
+
+    /**
+     * 借出一条链接执行操作
+     *
+     * @param task 操作
+     * @return 操作的返回值
+     */
+    public <R> R execute(JdbcTask<R> task) throws SQLException {
+        Slot slot = pool.borrow();
+        try {
+            return task.execute(slot.jdbc);
+        } catch (SQLException exception) {
+            // SQLState 08 开头为链接异常
+            if (exception.getSQLState() != null && exception.getSQLState().startsWith("08")) {
+                slot.reopen();
+            }
+            throw exception;
+        } finally {
+            pool.giveBack(slot);
+        }
+    }
+
+    /**
+     * 借出一条链接 由调用者独占 必须使用 giveBack 归还 <br>
+     * 用于游标等需要跨越多次调用持有链接的场景
+     */
+    public Connection borrow() {
+        return pool.borrow().jdbc;
+    }
+
+    public void giveBack(Connection jdbc) {
+        for (Slot slot : pool.getConnections()) {
+            if (slot.jdbc == jdbc) {
+                pool.giveBack(slot);
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    /**
+     * 从数据库中载入全部的表
+     *
+     * @param sql 列出全部表名的语句 第一列为表名
+     */
+    public void loadTables(String sql) throws SQLException {
+        this.execute(jdbc -> {
+            try (PreparedStatement statement = jdbc.prepareStatement(sql);
+                 ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    tables.add(set.getString(1));
+                }
+            }
+            return tables.size();
+        });
+    }
+
+    public boolean containsTable(String table) {
+        return tables.contains(table);
+    }
+
+    // 表创建后登记
+    public void registerTable(String table) {
+        tables.add(table);
+    }
+
+    // 表删除后注销
+    public void unregisterTable(String table) {
+        tables.remove(table);
+    }
+
+    // 已登记的全部表
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables);
+    }
+
+    public void close() {
+        for (Slot slot : pool.getConnections()) {
+            try {
+                slot.jdbc.close();
+            } catch (SQLException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }
+    }
+
+    /**
+     * 打开一条新的 JDBC 链接
+     */
+    @FunctionalInterface
+    public interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * 池中的一个位置 链接断开后在原位置替换为新的链接
+     */
+    private class Slot {
+        volatile Connection jdbc;
+
+        Slot(Connection jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        void reopen() {
+            try {
+                if (jdbc.isValid(1)) {
+                    return;
+                }
+                jdbc.close();
+            } catch (SQLException ignored) {
+                // 链接已经不可用
+            }
+            try {
+                jdbc = opener.open();
+            } catch (SQLException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.catkatpowered.katserver.database.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 在从链接池借出的一条 JDBC 链接上执行的操作
+ *
+ * @author hanbings
+ */
+@FunctionalInterface
+public interface JdbcTask<R> {
+    R execute(Connection connection) throws SQLException;
+}
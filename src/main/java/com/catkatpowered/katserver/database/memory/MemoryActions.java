@@ -0,0 +1,134 @@
+package com.catkatpowered.katserver.database.memory;
+
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 内存数据库执行器 <br>
+ * 每张表是按主键保存的一组数据实体 见 MemoryTable <br>
+ * 查询在内存中按 QueryMatcher 执行 语义与 Sqlite 相同 <br>
+ * 游标在开始时取得满足条件的行的快照 遍历时逐行复制 不受遍历期间的写入影响 <br>
+ * 没有二级索引 validateIndexes 总是返回空列表
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class MemoryActions implements DatabaseActions {
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        return this.create(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        try {
+            this.table(connection, table, true).create(DatabaseEntity.of(data.get(0)), data);
+        } catch (RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        try {
+            this.table(connection, table, true).upsert(DatabaseEntity.of(data.get(0)), data);
+        } catch (RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void drop(DatabaseConnection connection, String table) {
+        ((MemoryConnection) connection).drop(table);
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        return ((MemoryConnection) connection).getTables();
+    }
+
+    /**
+     * 删除不需要数据实体类 按表中保存的数据实体类匹配条件
+     */
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        try {
+            MemoryTable rows = this.table(connection, table, false);
+            if (rows != null) {
+                rows.delete(query);
+            }
+        } catch (RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        try {
+            MemoryTable rows = this.table(connection, table, false);
+            if (rows != null) {
+                return rows.read(DatabaseEntity.of(type), query);
+            }
+        } catch (RuntimeException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        try {
+            MemoryTable rows = this.table(connection, table, false);
+            if (rows != null) {
+                return rows.cursor(DatabaseEntity.of(type), query);
+            }
+        } catch (RuntimeException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return DatabaseCursor.empty();
+    }
+
+    @Override
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        try {
+            MemoryTable rows = this.table(connection, table, false);
+            if (rows != null) {
+                rows.update(DatabaseEntity.of(data), data, query);
+            }
+        } catch (RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    private MemoryTable table(DatabaseConnection connection, String table, boolean create) {
+        return ((MemoryConnection) connection).table(table, create);
+    }
+}
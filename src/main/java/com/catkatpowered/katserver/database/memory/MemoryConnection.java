@@ -0,0 +1,61 @@
+package com.catkatpowered.katserver.database.memory;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存数据库链接 <br>
+ * 保存全部的表 表在第一次写入时创建 不同的表之间的操作互不阻塞
+ *
+ * @author hanbings
+ */
+public class MemoryConnection implements DatabaseConnection {
+    private final Map<String, MemoryTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * 内存数据库没有 JDBC 链接
+     */
+    @Override
+    public Connection getJdbcConnection() {
+        throw new UnsupportedOperationException("memory database has no jdbc connection.");
+    }
+
+    /**
+     * 取出一张表
+     *
+     * @param create 表不存在时是否创建
+     * @return 表 不存在且不创建时为 null
+     */
+    MemoryTable table(String name, boolean create) {
+        return create ? tables.computeIfAbsent(name, MemoryTable::new) : tables.get(name);
+    }
+
+    void drop(String name) {
+        MemoryTable table = tables.remove(name);
+        if (table != null) {
+            table.drop();
+        }
+    }
+
+    /**
+     * 全部的表 按表名排序 每次运行的顺序相同
+     */
+    public List<String> getTables() {
+        List<String> names = new ArrayList<>(tables.keySet());
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * 丢弃全部的表
+     */
+    public void close() {
+        tables.values().forEach(MemoryTable::drop);
+        tables.clear();
+    }
+}
@@ -0,0 +1,31 @@
+package com.catkatpowered.katserver.database.memory;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+
+/**
+ * 内存数据库连接器 <br>
+ * 全部数据只保存在内存中 退出后丢失 用于测试和基准测试 <br>
+ * 不需要链接地址 用户名和密码
+ *
+ * @author hanbings
+ */
+public class MemoryConnector implements DatabaseConnector {
+
+    MemoryConnection connection;
+
+    @Override
+    public void loadDatabase(String url, String username, String password) {
+        connection = new MemoryConnection();
+    }
+
+    @Override
+    public DatabaseConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void exit() {
+        connection.close();
+    }
+}
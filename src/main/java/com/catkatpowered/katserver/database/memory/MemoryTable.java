@@ -0,0 +1,346 @@
+package com.catkatpowered.katserver.database.memory;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseCondition;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryMatcher;
+import com.catkatpowered.katserver.database.type.ConditionType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存中的一张表 <br>
+ * 行按主键保存在 LinkedHashMap 中 没有排序的查询按写入顺序返回 与 Sqlite 的 rowid 顺序相同 <br>
+ * 保存的行是写入时复制的数据实体 之后不再修改 更新时替换为新的实例 <br>
+ * 读取在读锁中取出满足条件的行的引用 释放锁后再逐行复制给调用者 <br>
+ * 因此查询和游标看到的是同一时刻的快照 遍历期间的写入不会出现在结果中 <br>
+ * 写入持有写锁 数据实体的复制在锁外完成
+ *
+ * @author hanbings
+ */
+class MemoryTable {
+    final String name;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 主键 -> 行
+    private final Map<String, Object> rows = new LinkedHashMap<>();
+    // 第一次写入的数据实体 全部的行都保存为这个类 其他类写入时按列名转换
+    private volatile DatabaseEntity<Object> entity;
+    private boolean dropped;
+
+    MemoryTable(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 增加一组数据 任一主键已存在时整组不写入
+     */
+    <T> void create(DatabaseEntity<T> entity, List<T> data) {
+        DatabaseEntity<Object> bound = this.bind(entity);
+        List<Object> copies = new ArrayList<>(data.size());
+        for (T row : data) {
+            copies.add(copy(entity, row, bound));
+        }
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            Set<String> batch = new HashSet<>();
+            for (Object row : copies) {
+                String key = this.key(row);
+                if (rows.containsKey(key) || !batch.add(key)) {
+                    throw new IllegalArgumentException("duplicate primary key " + key + " in table " + name);
+                }
+            }
+            for (Object row : copies) {
+                rows.put(this.key(row), row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 增加或覆盖一组数据 主键已存在时只覆盖允许更新的列
+     */
+    <T> void upsert(DatabaseEntity<T> entity, List<T> data) {
+        DatabaseEntity<Object> bound = this.bind(entity);
+        List<Object> copies = new ArrayList<>(data.size());
+        for (T row : data) {
+            copies.add(copy(entity, row, bound));
+        }
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            for (Object row : copies) {
+                // 覆盖已存在的主键不改变它在 LinkedHashMap 中的顺序
+                rows.merge(this.key(row), row, (before, after) -> this.merge(before, after));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把数据实体允许更新的列写入满足条件的行 主键改变时删除原来的行 <br>
+     * 先检查全部的行 主键冲突时不更新任何一行
+     *
+     * @return 更新的行数
+     */
+    <T> int update(DatabaseEntity<T> entity, T data, DatabaseQuery query) {
+        DatabaseEntity<Object> bound = this.bind(entity);
+        Object copy = copy(entity, data, bound);
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            List<Object> matched = this.scan(query);
+            List<String> before = new ArrayList<>(matched.size());
+            List<Object> merged = new ArrayList<>(matched.size());
+            for (Object row : matched) {
+                before.add(this.key(row));
+                merged.add(this.merge(row, copy));
+            }
+            Set<String> removed = new HashSet<>(before);
+            Set<String> after = new HashSet<>();
+            for (Object row : merged) {
+                String key = this.key(row);
+                if (!after.add(key) || (rows.containsKey(key) && !removed.contains(key))) {
+                    throw new IllegalArgumentException("duplicate primary key " + key + " in table " + name);
+                }
+            }
+            for (int index = 0; index < merged.size(); index++) {
+                String key = this.key(merged.get(index));
+                if (!key.equals(before.get(index))) {
+                    rows.remove(before.get(index));
+                }
+            }
+            for (Object row : merged) {
+                rows.put(this.key(row), row);
+            }
+            return merged.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除满足条件的行
+     *
+     * @return 删除的行数
+     */
+    int delete(DatabaseQuery query) {
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            List<Object> matched = this.scan(query);
+            for (Object row : matched) {
+                rows.remove(this.key(row));
+            }
+            return matched.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按条件查询 语义与 Sqlite 相同 返回的数据实体是复制的 修改它们不影响表
+     */
+    <T> List<T> read(DatabaseEntity<T> entity, DatabaseQuery query) {
+        List<Object> matched = this.snapshot(query);
+        List<T> result = new ArrayList<>(matched.size());
+        for (Object row : matched) {
+            result.add(copy(this.entity, row, entity));
+        }
+        return result;
+    }
+
+    /**
+     * 按条件遍历 在开始时取得快照 遍历时逐行复制
+     */
+    <T> DatabaseCursor<T> cursor(DatabaseEntity<T> entity, DatabaseQuery query) {
+        Iterator<Object> iterator = this.snapshot(query).iterator();
+        // 表中有行时数据实体已经绑定 之后不再改变
+        DatabaseEntity<Object> bound = this.entity;
+        return new DatabaseCursor<>() {
+            private Iterator<Object> rows = iterator;
+
+            @Override
+            public void close() {
+                // 释放快照
+                rows = null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return rows != null && rows.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (rows == null) {
+                    throw new IllegalStateException("cursor is closed");
+                }
+                return copy(bound, rows.next(), entity);
+            }
+        };
+    }
+
+    /**
+     * 删除或关闭表 之后的操作抛出 IllegalStateException
+     */
+    void drop() {
+        lock.writeLock().lock();
+        try {
+            dropped = true;
+            rows.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Object> snapshot(DatabaseQuery query) {
+        lock.readLock().lock();
+        try {
+            this.checkOpen();
+            return this.scan(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 调用者持有读锁或写锁
+    private List<Object> scan(DatabaseQuery query) {
+        DatabaseEntity<Object> bound = this.entity;
+        Integer limit = query.getLimit();
+        if (bound == null || (limit != null && limit <= 0)) {
+            return new ArrayList<>();
+        }
+        QueryMatcher<Object> matcher = QueryMatcher.of(bound);
+        Comparator<Object> order = matcher.comparator(query);
+        // 主键等值查询直接使用主键表
+        Object primaryKey = this.primaryKeyValue(bound, query);
+        if (primaryKey != null) {
+            Object row = rows.get(String.valueOf(primaryKey));
+            return row != null && matcher.matches(row, query) ? new ArrayList<>(List.of(row)) : new ArrayList<>();
+        }
+        // 有排序和数量限制时只保留前 limit 行 堆顶是当前第 limit 行
+        if (order != null && limit != null) {
+            PriorityQueue<Object> heap = new PriorityQueue<>(Math.min(limit, rows.size()) + 1, order.reversed());
+            for (Object row : rows.values()) {
+                if (!matcher.matches(row, query)) {
+                    continue;
+                }
+                if (heap.size() < limit) {
+                    heap.add(row);
+                } else if (order.compare(row, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+            }
+            List<Object> result = new ArrayList<>(heap);
+            result.sort(order);
+            return result;
+        }
+        List<Object> result = new ArrayList<>();
+        for (Object row : rows.values()) {
+            if (matcher.matches(row, query)) {
+                result.add(row);
+                // 没有排序时按写入顺序返回 找到足够的行即可停止
+                if (order == null && limit != null && result.size() >= limit) {
+                    return result;
+                }
+            }
+        }
+        if (order != null) {
+            result.sort(order);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private DatabaseEntity<Object> bind(DatabaseEntity<?> entity) {
+        DatabaseEntity<Object> bound = this.entity;
+        if (bound != null) {
+            return bound;
+        }
+        lock.writeLock().lock();
+        try {
+            if (this.entity == null) {
+                this.entity = (DatabaseEntity<Object>) entity;
+            }
+            return this.entity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 未改变的列取自 row 允许更新的列取自 data
+    private Object merge(Object row, Object data) {
+        DatabaseEntity<Object> bound = this.entity;
+        Object merged = bound.newInstance();
+        for (DatabaseColumn column : bound.getColumns()) {
+            column.set(merged, column.get(column.isUpdatable() ? data : row));
+        }
+        return merged;
+    }
+
+    private String key(Object row) {
+        return String.valueOf(this.entity.getPrimaryKey().get(row));
+    }
+
+    private Object primaryKeyValue(DatabaseEntity<Object> entity, DatabaseQuery query) {
+        String primaryKey = entity.getPrimaryKey().getName();
+        for (DatabaseCondition condition : query.getConditions()) {
+            if (!condition.isRow() && condition.getType() == ConditionType.EQUAL
+                    && condition.getColumn().equals(primaryKey) && condition.getValues().get(0) != null) {
+                return condition.getValues().get(0);
+            }
+        }
+        return null;
+    }
+
+    private void checkOpen() {
+        if (dropped) {
+            throw new IllegalStateException("table " + name + " is dropped or closed");
+        }
+    }
+
+    /**
+     * 把一行复制为 to 的新实例 按列名对应 to 中没有对应列的变量为 null <br>
+     * 字节数组同时复制 调用者修改数据实体不会改变表中的行
+     */
+    private static <S, T> T copy(DatabaseEntity<S> from, Object row, DatabaseEntity<T> to) {
+        T copy = to.newInstance();
+        if (from == to) {
+            for (DatabaseColumn column : to.getColumns()) {
+                column.set(copy, duplicate(column.get(row)));
+            }
+            return copy;
+        }
+        Map<String, DatabaseColumn> columns = new HashMap<>();
+        for (DatabaseColumn column : from.getColumns()) {
+            columns.put(column.getName(), column);
+        }
+        for (DatabaseColumn column : to.getColumns()) {
+            DatabaseColumn source = columns.get(column.getName());
+            if (source != null) {
+                column.set(copy, duplicate(source.get(row)));
+            }
+        }
+        return copy;
+    }
+
+    private static Object duplicate(Object value) {
+        return value instanceof byte[] bytes ? bytes.clone() : value;
+    }
+}
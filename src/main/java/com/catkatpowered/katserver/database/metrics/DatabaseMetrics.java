@@ -0,0 +1,113 @@
+package com.catkatpowered.katserver.database.metrics;
+
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.type.ActionsType;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据库操作统计 按表和操作类型分别记录 <br>
+ * 每个消息组都是一张表 记录的表超过 maxTables 张后 新的表合并记录到 OTHER_TABLES 中 防止统计无限增长
+ *
+ * @author hanbings
+ */
+public class DatabaseMetrics {
+    // 超出上限的表合并记录的名字
+    public static final String OTHER_TABLES = "*";
+    // 默认最多分别记录的表数
+    public static final int DEFAULT_MAX_TABLES = 1000;
+    // 默认慢操作阈值 毫秒
+    public static final long DEFAULT_SLOW_QUERY = 200;
+
+    private final Map<String, Map<ActionsType, OperationMetrics>> tables = new ConcurrentHashMap<>();
+    @Getter
+    private final int maxTables;
+    // 慢操作阈值 毫秒 小于等于 0 时不记录慢操作
+    @Getter
+    private final long slowQuery;
+
+    public DatabaseMetrics(int maxTables, long slowQuery) {
+        this.maxTables = maxTables;
+        this.slowQuery = slowQuery;
+    }
+
+    /**
+     * 从配置文件的 database_metrics 节点读取 缺省的项使用默认值
+     *
+     * @param config database_metrics 节点 可以为 null
+     */
+    public static DatabaseMetrics fromConfig(Map<String, Object> config) {
+        int maxTables = DEFAULT_MAX_TABLES;
+        long slowQuery = DEFAULT_SLOW_QUERY;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS_MAX_TABLES) != null) {
+                maxTables = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS_MAX_TABLES).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS_SLOW_QUERY) != null) {
+                slowQuery = Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS_SLOW_QUERY).toString());
+            }
+        }
+        return new DatabaseMetrics(maxTables, slowQuery);
+    }
+
+    /**
+     * 取得一张表上一种操作的统计 不存在时创建
+     */
+    public OperationMetrics get(String table, ActionsType operation) {
+        Map<ActionsType, OperationMetrics> operations = tables.get(table);
+        if (operations == null) {
+            if (tables.size() >= maxTables) {
+                table = OTHER_TABLES;
+            }
+            operations = tables.computeIfAbsent(table, key -> new ConcurrentHashMap<>());
+        }
+        String name = table;
+        return operations.computeIfAbsent(operation, key -> new OperationMetrics(name, key));
+    }
+
+    public boolean isSlow(long nanos) {
+        return slowQuery > 0 && nanos >= slowQuery * 1_000_000;
+    }
+
+    /**
+     * 全部统计的快照 按表名和操作类型排序
+     */
+    public List<OperationSnapshot> snapshot() {
+        List<OperationSnapshot> snapshots = new ArrayList<>();
+        for (Map<ActionsType, OperationMetrics> operations : tables.values()) {
+            for (OperationMetrics metrics : operations.values()) {
+                snapshots.add(metrics.snapshot());
+            }
+        }
+        snapshots.sort(Comparator.comparing(OperationSnapshot::getTable)
+            .thenComparing(OperationSnapshot::getOperation));
+        return snapshots;
+    }
+
+    /**
+     * 一张表的统计快照
+     */
+    public List<OperationSnapshot> snapshot(String table) {
+        Map<ActionsType, OperationMetrics> operations = tables.get(table);
+        if (operations == null) {
+            return List.of();
+        }
+        List<OperationSnapshot> snapshots = new ArrayList<>();
+        for (OperationMetrics metrics : operations.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        snapshots.sort(Comparator.comparing(OperationSnapshot::getOperation));
+        return snapshots;
+    }
+
+    public void reset() {
+        tables.clear();
+    }
+}
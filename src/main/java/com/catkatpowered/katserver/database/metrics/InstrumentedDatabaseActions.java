@@ -0,0 +1,247 @@
+package com.catkatpowered.katserver.database.metrics;
+
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryRenderer;
+import com.catkatpowered.katserver.database.type.ActionsType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 为 DatabaseActions 的每个操作计时的包装 <br>
+ * 按表和操作类型记录耗时直方图 读取和写入的行数 <br>
+ * 超过慢操作阈值的操作以 warn 级别记录 只包含 sql 的形状 值全部以 ? 代替 <br>
+ * MongoDB 等非 sql 数据库记录的是等价的 sql 形状 <br>
+ * 按条件更新和删除无法得知影响的行数 只记录操作次数 <br>
+ * 写入是否失败以被包装的执行器返回的结果为准
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class InstrumentedDatabaseActions implements DatabaseActions {
+    // 只用于慢操作日志 不用于执行
+    private static final QueryRenderer renderer = new QueryRenderer("\"");
+
+    @Getter
+    private final DatabaseActions actions;
+    @Getter
+    private final DatabaseMetrics metrics;
+
+    public InstrumentedDatabaseActions(DatabaseActions actions, DatabaseMetrics metrics) {
+        this.actions = actions;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            failed = !actions.create(connection, table, data);
+            return !failed;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.CREATE, start, failed);
+            operation.addRowsWritten(1);
+            this.slow(operation, start, () -> insertShape(table, data, 1));
+        }
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            failed = !actions.create(connection, table, data);
+            return !failed;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.CREATE, start, failed);
+            operation.addRowsWritten(data.size());
+            this.slow(operation, start,
+                () -> data.isEmpty() ? "INSERT" : insertShape(table, data.get(0), data.size()));
+        }
+    }
+
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            failed = !actions.delete(connection, table, query);
+            return !failed;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.DELETE, start, failed);
+            this.slow(operation, start, () -> renderer.delete(table, query));
+        }
+    }
+
+    @Override
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        long start = System.nanoTime();
+        List<T> result = null;
+        try {
+            result = actions.read(connection, table, type, query);
+            return result;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.READ, start, result == null);
+            int rows = result == null ? 0 : result.size();
+            operation.addRowsRead(rows);
+            this.slow(operation, start, () -> renderer.select(table, query) + " -- " + rows + " rows");
+        }
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        long start = System.nanoTime();
+        DatabaseCursor<T> cursor = null;
+        try {
+            cursor = actions.cursor(connection, table, type, query, fetchSize);
+            return new CountingCursor<>(cursor, metrics.get(table, ActionsType.CURSOR));
+        } finally {
+            // 游标只记录打开的耗时 读取的行数在消费时记录
+            OperationMetrics operation = this.record(table, ActionsType.CURSOR, start, cursor == null);
+            this.slow(operation, start, () -> renderer.select(table, query));
+        }
+    }
+
+    @Override
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            failed = !actions.update(connection, table, data, query);
+            return !failed;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.UPDATE, start, failed);
+            this.slow(operation, start,
+                () -> renderer.update(table, DatabaseEntity.of(data).getUpdatableColumnNames(), query));
+        }
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            failed = !actions.upsert(connection, table, data);
+            return !failed;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.UPSERT, start, failed);
+            operation.addRowsWritten(1);
+            this.slow(operation, start, () -> upsertShape(table, data, 1));
+        }
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            failed = !actions.upsert(connection, table, data);
+            return !failed;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.UPSERT, start, failed);
+            operation.addRowsWritten(data.size());
+            this.slow(operation, start,
+                () -> data.isEmpty() ? "UPSERT" : upsertShape(table, data.get(0), data.size()));
+        }
+    }
+
+    @Override
+    public void drop(DatabaseConnection connection, String table) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            actions.drop(connection, table);
+            failed = false;
+        } finally {
+            OperationMetrics operation = this.record(table, ActionsType.DROP, start, failed);
+            this.slow(operation, start, () -> "DROP TABLE " + renderer.quote(table));
+        }
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        return actions.tables(connection);
+    }
+
+    @Override
+    public <T> List<String> validateIndexes(DatabaseConnection connection, Class<T> type) {
+        return actions.validateIndexes(connection, type);
+    }
+
+    private OperationMetrics record(String table, ActionsType type, long start, boolean failed) {
+        OperationMetrics operation = metrics.get(table, type);
+        operation.record(System.nanoTime() - start, failed);
+        return operation;
+    }
+
+    // 超过阈值时记录 sql 形状 只在慢操作时渲染
+    private void slow(OperationMetrics operation, long start, Shape shape) {
+        long nanos = System.nanoTime() - start;
+        if (metrics.isSlow(nanos)) {
+            String sql;
+            try {
+                sql = shape.render();
+            } catch (RuntimeException exception) {
+                sql = operation.getOperation().name();
+            }
+            log.warn("slow database operation {} on {} took {} ms: {}",
+                operation.getOperation(), operation.getTable(), nanos / 1_000_000, sql);
+        }
+    }
+
+    private static <T> String insertShape(String table, T data, int rows) {
+        String sql = renderer.insert(table, DatabaseEntity.of(data).getColumnNames());
+        return rows > 1 ? sql + " -- " + rows + " rows" : sql;
+    }
+
+    private static <T> String upsertShape(String table, T data, int rows) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        String sql = renderer.upsert(table, entity.getColumnNames(), entity.getUpdatableColumnNames(),
+            entity.getPrimaryKey().getName());
+        return rows > 1 ? sql + " -- " + rows + " rows" : sql;
+    }
+
+    private interface Shape {
+        String render();
+    }
+
+    /**
+     * 消费时记录读取行数的游标
+     */
+    private static class CountingCursor<T> implements DatabaseCursor<T> {
+        private final DatabaseCursor<T> cursor;
+        private final OperationMetrics metrics;
+        private long rows;
+
+        CountingCursor(DatabaseCursor<T> cursor, OperationMetrics metrics) {
+            this.cursor = cursor;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public T next() {
+            T next = cursor.next();
+            rows++;
+            return next;
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+            metrics.addRowsRead(rows);
+            rows = 0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.catkatpowered.katserver.database.metrics;
+
+import com.catkatpowered.katserver.database.type.ActionsType;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一张表上一种操作的统计 <br>
+ * 耗时直方图按微秒以 2 的幂分桶 第 i 个桶记录 [2^i, 2^(i+1)) 微秒的操作 <br>
+ * 百分位数取所在桶的上界 误差不超过一倍 记录只需要一次原子加法
+ *
+ * @author hanbings
+ */
+public class OperationMetrics {
+    // 最后一个桶约为 2^31 微秒 即 36 分钟以上
+    static final int BUCKETS = 32;
+
+    @Getter
+    private final String table;
+    @Getter
+    private final ActionsType operation;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public OperationMetrics(String table, ActionsType operation) {
+        this.table = table;
+        this.operation = operation;
+    }
+
+    /**
+     * 记录一次操作
+     *
+     * @param nanos   耗时 纳秒
+     * @param failed  操作是否失败
+     */
+    public void record(long nanos, boolean failed) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucket(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public void addRowsRead(long rows) {
+        rowsRead.add(rows);
+    }
+
+    public void addRowsWritten(long rows) {
+        rowsWritten.add(rows);
+    }
+
+    public OperationSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            counts[index] = buckets.get(index);
+            total += counts[index];
+        }
+        OperationSnapshot snapshot = new OperationSnapshot();
+        snapshot.setTable(table);
+        snapshot.setOperation(operation.name());
+        snapshot.setCount(count.sum());
+        snapshot.setErrors(errors.sum());
+        snapshot.setRowsRead(rowsRead.sum());
+        snapshot.setRowsWritten(rowsWritten.sum());
+        snapshot.setMeanMillis(total == 0 ? 0 : totalMicros.sum() / 1000.0 / total);
+        // 桶的上界可能超过实际的最大值
+        double max = maxMicros.get() / 1000.0;
+        snapshot.setP50Millis(Math.min(max, percentile(counts, total, 0.50)));
+        snapshot.setP95Millis(Math.min(max, percentile(counts, total, 0.95)));
+        snapshot.setP99Millis(Math.min(max, percentile(counts, total, 0.99)));
+        snapshot.setMaxMillis(max);
+        snapshot.setHistogram(counts);
+        return snapshot;
+    }
+
+    static int bucket(long micros) {
+        return micros == 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    // 百分位数所在桶的上界 毫秒
+    private static double percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return (1L << (index + 1)) / 1000.0;
+            }
+        }
+        return (1L << BUCKETS) / 1000.0;
+    }
+}
@@ -0,0 +1,38 @@
+package com.catkatpowered.katserver.database.metrics;
+
+import com.google.gson.annotations.SerializedName;
+import lombok.Data;
+
+/**
+ * 某一时刻一张表上一种操作的统计 耗时单位为毫秒
+ *
+ * @author hanbings
+ */
+@Data
+public class OperationSnapshot {
+    @SerializedName("table")
+    private String table;
+    @SerializedName("operation")
+    private String operation;
+    @SerializedName("count")
+    private long count;
+    @SerializedName("errors")
+    private long errors;
+    @SerializedName("rows_read")
+    private long rowsRead;
+    @SerializedName("rows_written")
+    private long rowsWritten;
+    @SerializedName("mean_ms")
+    private double meanMillis;
+    @SerializedName("p50_ms")
+    private double p50Millis;
+    @SerializedName("p95_ms")
+    private double p95Millis;
+    @SerializedName("p99_ms")
+    private double p99Millis;
+    @SerializedName("max_ms")
+    private double maxMillis;
+    // 第 i 个元素为耗时在 [2^i, 2^(i+1)) 微秒之间的操作数
+    @SerializedName("histogram_us_log2")
+    private long[] histogram;
+}
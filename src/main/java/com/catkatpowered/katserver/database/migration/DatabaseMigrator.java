@@ -0,0 +1,310 @@
+package com.catkatpowered.katserver.database.migration;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 在两个数据库之间流式迁移全部的表 <br>
+ * 1. 每张表一个任务 threads 张表同时复制 <br>
+ * 2. 按主键顺序用游标读取 每 batchSize 行用一次批量 upsert 写入 读取下一批时上一批在写线程中写入 <br>
+ * 3. 每批写入后前进检查点 中断后重新运行从检查点继续 <br>
+ * 4. 全部复制后重新读取目标数据库的每张表 比较行数和校验和 不一致的表在检查点中重置并清空目标表 重新运行时从头复制 <br>
+ * 同时在内存中的最多为每张表两批行 与表的大小无关 <br>
+ * 例外: SegmentLog 的游标另外持有整张表的主键列表 主键不是字符串的表一次读出全部行 见 SegmentLogTable.cursor <br>
+ * 源数据库在迁移期间不能写入 否则校验不一致 <br>
+ * 表中的行没有类型信息 由 types 按表名给出数据实体 返回 null 的表跳过
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class DatabaseMigrator {
+    // 默认每批写入的行数
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    // 两次保存检查点之间的最短毫秒数
+    private static final long SAVE_INTERVAL = 1000;
+
+    private final DatabaseActions sourceActions;
+    private final DatabaseConnection source;
+    private final DatabaseActions targetActions;
+    private final DatabaseConnection target;
+    private final Function<String, Class<?>> types;
+    private final int threads;
+    private final int batchSize;
+    // 为 null 时不保存检查点
+    private final Path path;
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong copied = new AtomicLong();
+
+    public DatabaseMigrator(DatabaseActions sourceActions, DatabaseConnection source,
+                            DatabaseActions targetActions, DatabaseConnection target,
+                            Function<String, Class<?>> types, int threads, int batchSize, Path path) {
+        this.sourceActions = sourceActions;
+        this.source = source;
+        this.targetActions = targetActions;
+        this.target = target;
+        this.types = types;
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+        this.path = path;
+    }
+
+    /**
+     * 复制全部的表并校验
+     *
+     * @return 每张表的结果 包括之前的运行中已经校验过的表
+     */
+    public List<MigrationResult> migrate() throws IOException {
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(path);
+        List<String> tables = new ArrayList<>();
+        for (String table : sourceActions.tables(source)) {
+            if (types.apply(table) == null) {
+                log.warn("table {} has no known entity and is not migrated.", table);
+                continue;
+            }
+            tables.add(table);
+        }
+        ExecutorService copiers = Executors.newFixedThreadPool(threads, threads("kat-migration-copy"));
+        ExecutorService writers = Executors.newFixedThreadPool(threads, threads("kat-migration-write"));
+        long started = System.currentTimeMillis();
+        List<MigrationResult> results = new ArrayList<>();
+        try {
+            List<Future<MigrationResult>> copies = new ArrayList<>();
+            for (String table : tables) {
+                copies.add(copiers.submit(() -> this.copy(table, checkpoint, writers)));
+            }
+            List<MigrationResult> copiedResults = this.await(copies);
+            checkpoint.save(path);
+            long elapsed = Math.max(1, System.currentTimeMillis() - started);
+            log.info("copied {} rows of {} tables in {} ms ({} rows/s), verifying.", copied.get(), tables.size(),
+                    elapsed, copied.get() * 1000 / elapsed);
+            List<Future<MigrationResult>> verifies = new ArrayList<>();
+            for (MigrationResult result : copiedResults) {
+                verifies.add(copiers.submit(() -> this.verify(result, checkpoint)));
+            }
+            results.addAll(this.await(verifies));
+        } finally {
+            copiers.shutdownNow();
+            writers.shutdownNow();
+            checkpoint.save(path);
+        }
+        long mismatched = results.stream().filter(result -> !result.isMatched()).count();
+        if (mismatched > 0) {
+            log.warn("{} tables do not match and will be copied again on the next run.", mismatched);
+        } else {
+            log.info("all {} tables match.", results.size());
+        }
+        return results;
+    }
+
+    /**
+     * 从检查点继续复制一张表
+     */
+    private <T> MigrationResult copy(String table, MigrationCheckpoint checkpoint, ExecutorService writers)
+            throws IOException, InterruptedException, ExecutionException {
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) types.apply(table);
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        DatabaseColumn key = entity.getPrimaryKey();
+        MigrationResult result = new MigrationResult();
+        result.setTable(table);
+        long started = System.currentTimeMillis();
+        MigrationCheckpoint.Table state = checkpoint.table(table);
+        long before = state.getRows();
+        if (!state.isCopied()) {
+            Object last = state.getLastKey() == null ? null : parseKey(key, state.getLastKey());
+            if (state.getLastKey() != null && last == null) {
+                // 主键不是字符串或整数 无法从中间继续
+                this.restart(table, checkpoint);
+                before = 0;
+            }
+            DatabaseQuery query = new DatabaseQuery();
+            if (last != null) {
+                query.greater(key.getName(), last);
+            }
+            query.orderBy(key.getName(), true);
+            try (DatabaseCursor<T> cursor = sourceActions.cursor(source, table, type, query, batchSize)) {
+                Future<Boolean> pending = null;
+                Runnable advance = null;
+                while (cursor.hasNext()) {
+                    List<T> batch = new ArrayList<>(batchSize);
+                    long checksum = 0;
+                    while (batch.size() < batchSize && cursor.hasNext()) {
+                        T row = cursor.next();
+                        batch.add(row);
+                        checksum += checksum(entity, row);
+                    }
+                    // 上一批写入完成后才前进检查点
+                    if (pending != null) {
+                        this.awaitWrite(table, pending);
+                        advance.run();
+                    }
+                    String lastKey = String.valueOf(key.get(batch.get(batch.size() - 1)));
+                    long sum = checksum;
+                    pending = writers.submit(() -> targetActions.upsert(target, table, batch));
+                    advance = () -> this.advance(checkpoint, table, lastKey, batch.size(), sum);
+                }
+                if (pending != null) {
+                    this.awaitWrite(table, pending);
+                    advance.run();
+                }
+            }
+            checkpoint.table(table).setCopied(true);
+            checkpoint.save(path);
+        }
+        state = checkpoint.table(table);
+        result.setRows(state.getRows());
+        result.setChecksum(state.getChecksum());
+        result.setCopiedRows(state.getRows() - before);
+        result.setCopyMillis(System.currentTimeMillis() - started);
+        log.info("copied table {} ({} rows) in {} ms.", table, state.getRows(), result.getCopyMillis());
+        return result;
+    }
+
+    private void advance(MigrationCheckpoint checkpoint, String table, String lastKey, int rows, long checksum) {
+        checkpoint.advance(table, lastKey, rows, checksum);
+        copied.addAndGet(rows);
+        long now = System.currentTimeMillis();
+        long last = saved.get();
+        if (now - last >= SAVE_INTERVAL && saved.compareAndSet(last, now)) {
+            try {
+                checkpoint.save(path);
+            } catch (IOException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }
+    }
+
+    /**
+     * 重新读取目标数据库中的表 与复制时累计的行数和校验和比较
+     */
+    private <T> MigrationResult verify(MigrationResult result, MigrationCheckpoint checkpoint) {
+        MigrationCheckpoint.Table state = checkpoint.table(result.getTable());
+        long started = System.currentTimeMillis();
+        if (state.isVerified()) {
+            result.setTargetRows(result.getRows());
+            result.setTargetChecksum(result.getChecksum());
+            return result;
+        }
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) types.apply(result.getTable());
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        long rows = 0;
+        long checksum = 0;
+        try (DatabaseCursor<T> cursor = targetActions.cursor(target, result.getTable(), type, new DatabaseQuery(),
+                batchSize)) {
+            while (cursor.hasNext()) {
+                checksum += checksum(entity, cursor.next());
+                rows++;
+            }
+        }
+        result.setTargetRows(rows);
+        result.setTargetChecksum(checksum);
+        result.setVerifyMillis(System.currentTimeMillis() - started);
+        if (result.isMatched()) {
+            state.setVerified(true);
+        } else {
+            log.warn("table {} does not match: {} rows in source, {} rows in target.", result.getTable(),
+                    result.getRows(), rows);
+            this.restart(result.getTable(), checkpoint);
+        }
+        return result;
+    }
+
+    /**
+     * 从头复制一张表 清空目标表 否则只存在于目标表中的行在重新复制后仍然存在 校验永远不一致
+     */
+    private void restart(String table, MigrationCheckpoint checkpoint) {
+        checkpoint.reset(table);
+        targetActions.drop(target, table);
+    }
+
+    // 等待一批写入 写入失败时不前进检查点
+    private void awaitWrite(String table, Future<Boolean> pending)
+            throws IOException, InterruptedException, ExecutionException {
+        if (!pending.get()) {
+            throw new IOException("write to table " + table + " failed.");
+        }
+    }
+
+    private List<MigrationResult> await(List<Future<MigrationResult>> futures) throws IOException {
+        List<MigrationResult> results = new ArrayList<>();
+        for (Future<MigrationResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IOException("migration interrupted.", exception);
+            } catch (ExecutionException exception) {
+                throw new IOException("migration failed.", exception.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 一行的校验值 对按列顺序存储的值求哈希 表的校验和为全部行的校验值之和 与读取顺序无关
+     */
+    static <T> long checksum(DatabaseEntity<T> entity, T row) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Object value : entity.getValues(row)) {
+            if (value == null) {
+                hasher.putByte((byte) 0);
+            } else if (value instanceof byte[] bytes) {
+                hasher.putByte((byte) 1).putInt(bytes.length).putBytes(bytes);
+            } else if (value instanceof Number number && !(value instanceof Double || value instanceof Float)) {
+                hasher.putByte((byte) 2).putLong(number.longValue());
+            } else if (value instanceof Number number) {
+                hasher.putByte((byte) 3).putDouble(number.doubleValue());
+            } else {
+                String text = String.valueOf(value);
+                hasher.putByte((byte) 4).putInt(text.length()).putString(text, StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    // 检查点中的主键转回主键的类型 不支持的类型返回 null
+    private static Object parseKey(DatabaseColumn key, String value) {
+        Class<?> type = key.getField().getType();
+        if (type == String.class) {
+            return value;
+        }
+        if (type == Long.class || type == long.class) {
+            return Long.parseLong(value);
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer.parseInt(value);
+        }
+        return null;
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
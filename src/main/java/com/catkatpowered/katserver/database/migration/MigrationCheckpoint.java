@@ -0,0 +1,94 @@
+package com.catkatpowered.katserver.database.migration;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 迁移的检查点 记录每张表已经写入目标数据库的进度 <br>
+ * 表按主键顺序复制 lastKey 之前 (含) 的行都已经写入 重新运行时从 lastKey 之后继续 <br>
+ * 检查点只在一批写入完成后前进 中断时最后一批可能已经部分写入 重新运行时用 upsert 覆盖 不会产生重复的行 <br>
+ * 保存为 JSON 先写入临时文件再替换 中断不会留下损坏的检查点
+ *
+ * @author hanbings
+ */
+@Data
+public class MigrationCheckpoint {
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    // 表名 -> 进度
+    @SerializedName("tables")
+    private Map<String, Table> tables = new TreeMap<>();
+
+    @Data
+    public static class Table {
+        // 最后写入的一行的主键 转为字符串保存
+        @SerializedName("last_key")
+        private String lastKey;
+        @SerializedName("rows")
+        private long rows;
+        // 已写入的行的校验和 与行的顺序无关
+        @SerializedName("checksum")
+        private long checksum;
+        @SerializedName("copied")
+        private boolean copied;
+        @SerializedName("verified")
+        private boolean verified;
+    }
+
+    /**
+     * 读取检查点 文件不存在时返回空的检查点
+     */
+    public static MigrationCheckpoint load(Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return new MigrationCheckpoint();
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            MigrationCheckpoint checkpoint = gson.fromJson(reader, MigrationCheckpoint.class);
+            return checkpoint == null ? new MigrationCheckpoint() : checkpoint;
+        }
+    }
+
+    public synchronized void save(Path path) throws IOException {
+        if (path == null) {
+            return;
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public synchronized Table table(String name) {
+        return tables.computeIfAbsent(name, key -> new Table());
+    }
+
+    /**
+     * 一批行写入完成后前进
+     */
+    public synchronized void advance(String name, String lastKey, long rows, long checksum) {
+        Table table = this.table(name);
+        table.setLastKey(lastKey);
+        table.setRows(table.getRows() + rows);
+        table.setChecksum(table.getChecksum() + checksum);
+    }
+
+    /**
+     * 从头复制一张表
+     */
+    public synchronized void reset(String name) {
+        tables.put(name, new Table());
+    }
+}
@@ -0,0 +1,35 @@
+package com.catkatpowered.katserver.database.migration;
+
+import com.google.gson.annotations.SerializedName;
+import lombok.Data;
+
+/**
+ * 一张表的迁移结果 <br>
+ * 源数据库的行数和校验和在复制时累计 目标数据库的在复制完成后重新读取整张表计算
+ *
+ * @author hanbings
+ */
+@Data
+public class MigrationResult {
+    @SerializedName("table")
+    private String table;
+    @SerializedName("rows")
+    private long rows;
+    @SerializedName("checksum")
+    private long checksum;
+    @SerializedName("target_rows")
+    private long targetRows;
+    @SerializedName("target_checksum")
+    private long targetChecksum;
+    // 本次运行复制的行数 从检查点继续时少于 rows
+    @SerializedName("copied_rows")
+    private long copiedRows;
+    @SerializedName("copy_ms")
+    private long copyMillis;
+    @SerializedName("verify_ms")
+    private long verifyMillis;
+
+    public boolean isMatched() {
+        return rows == targetRows && checksum == targetChecksum;
+    }
+}
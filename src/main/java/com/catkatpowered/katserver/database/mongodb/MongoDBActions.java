@@ -0,0 +1,253 @@
+package com.catkatpowered.katserver.database.mongodb;
+
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.entity.DatabaseIndex;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.mongodb.MongoException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MongoDB 执行器 <br>
+ * 每个表对应一个集合 数据实体按 MongoDBMapper 转换为文档 <br>
+ * <br>
+ * <p>
+ * 批量插入使用无序的 bulkWrite 服务端可以并行写入 一个文档失败 (如 _id 重复) 不影响其余文档 <br>
+ * upsert 使用按主键匹配的 updateOne(upsert) 同样以无序的 bulkWrite 批量执行 <br>
+ * 写关注在 MongoDBConnector 中按配置设置 <br>
+ * 集合第一次写入时创建主键的唯一索引和数据实体声明的索引 已存在的集合在启动时由 validateIndexes 补齐索引
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+@Slf4j
+public class MongoDBActions implements DatabaseActions {
+
+    MongoDBQueryRenderer renderer = new MongoDBQueryRenderer();
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        try {
+            this.collection(connection, table, entity).insertOne(MongoDBMapper.toDocument(data));
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        List<WriteModel<Document>> models = new ArrayList<>(data.size());
+        for (T row : data) {
+            models.add(new InsertOneModel<>(MongoDBMapper.toDocument(row)));
+        }
+        try {
+            this.collection(connection, table, entity).bulkWrite(models, new BulkWriteOptions().ordered(false));
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, List.of(data));
+    }
+
+    /**
+     * 使用无序的 bulkWrite 按主键 upsert <br>
+     * 允许更新的字段使用 $set 其余字段使用 $setOnInsert 只在插入时写入
+     */
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        String primaryKey = entity.getPrimaryKey().getName();
+        List<WriteModel<Document>> models = new ArrayList<>(data.size());
+        for (T row : data) {
+            Document document = MongoDBMapper.toDocument(row);
+            Document insert = new Document();
+            for (String column : entity.getColumnNames()) {
+                if (!entity.getUpdatableColumnNames().contains(column)) {
+                    insert.put(column, document.remove(column));
+                }
+            }
+            Document update = new Document("$set", document);
+            if (!insert.isEmpty()) {
+                update.put("$setOnInsert", insert);
+            }
+            models.add(new UpdateOneModel<>(Filters.eq(primaryKey, document.get(primaryKey)), update,
+                new UpdateOptions().upsert(true)));
+        }
+        try {
+            this.collection(connection, table, entity).bulkWrite(models, new BulkWriteOptions().ordered(false));
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void drop(DatabaseConnection connection, String table) {
+        try {
+            this.database(connection).getCollection(table).drop();
+            ((MongoDBConnection) connection).unregisterCollection(table);
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        return new ArrayList<>(((MongoDBConnection) connection).getCollections());
+    }
+
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        try {
+            this.database(connection).getCollection(table).deleteMany(renderer.filter(query));
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        List<T> result = new ArrayList<>();
+        try {
+            for (Document document : this.find(connection, table, query)) {
+                result.add(MongoDBMapper.toEntity(entity, document));
+            }
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return result;
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        try {
+            return new MongoDBCursor<>(this.find(connection, table, query).batchSize(fetchSize).iterator(),
+                document -> MongoDBMapper.toEntity(entity, document));
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return DatabaseCursor.empty();
+    }
+
+    @Override
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        Document document = MongoDBMapper.toDocument(data);
+        // 只写入允许更新的字段
+        document.keySet().retainAll(entity.getUpdatableColumnNames());
+        // _id 不可修改
+        document.remove(MongoDBMapper.ID);
+        try {
+            this.database(connection).getCollection(table)
+                .updateMany(renderer.filter(query), new Document("$set", document));
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 为数据库中已存在的集合创建数据实体声明的索引 <br>
+     * MongoDB 创建已存在的索引不做任何事 因此直接创建 而不是返回缺少的索引
+     */
+    @Override
+    public <T> List<String> validateIndexes(DatabaseConnection connection, Class<T> type) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        try {
+            for (String collection : this.database(connection).listCollectionNames()) {
+                if (!collection.startsWith("system.")) {
+                    this.createIndexes(this.database(connection).getCollection(collection), entity);
+                }
+            }
+        } catch (MongoException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return new ArrayList<>();
+    }
+
+    private FindIterable<Document> find(DatabaseConnection connection, String table, DatabaseQuery query) {
+        FindIterable<Document> find = this.database(connection).getCollection(table)
+            .find(renderer.filter(query));
+        Bson sort = renderer.sort(query);
+        if (sort != null) {
+            find.sort(sort);
+        }
+        if (query.getLimit() != null) {
+            find.limit(query.getLimit());
+        }
+        return find;
+    }
+
+    /**
+     * 取得写入的集合 第一次写入时创建声明的索引
+     */
+    private MongoCollection<Document> collection(DatabaseConnection connection, String table,
+                                                 DatabaseEntity<?> entity) {
+        MongoDBConnection mongo = (MongoDBConnection) connection;
+        MongoCollection<Document> collection = mongo.getDatabase().getCollection(table);
+        if (!mongo.containsCollection(table)) {
+            this.createIndexes(collection, entity);
+            mongo.registerCollection(table);
+        }
+        return collection;
+    }
+
+    /**
+     * 创建主键的唯一索引和声明的二级索引 已存在的索引不做任何事
+     */
+    private void createIndexes(MongoCollection<Document> collection, DatabaseEntity<?> entity) {
+        List<IndexModel> indexes = new ArrayList<>();
+        String primaryKey = entity.getPrimaryKey().getName();
+        indexes.add(new IndexModel(Indexes.ascending(primaryKey), new IndexOptions().name(primaryKey).unique(true)));
+        for (DatabaseIndex index : entity.getIndexes()) {
+            indexes.add(new IndexModel(Indexes.ascending(index.getColumns()),
+                new IndexOptions().name(index.getName()).unique(index.isUnique())));
+        }
+        collection.createIndexes(indexes);
+    }
+
+    private MongoDatabase database(DatabaseConnection connection) {
+        return ((MongoDBConnection) connection).getDatabase();
+    }
+}
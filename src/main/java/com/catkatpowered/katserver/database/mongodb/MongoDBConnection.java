@@ -0,0 +1,67 @@
+package com.catkatpowered.katserver.database.mongodb;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import lombok.Getter;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MongoDB 链接 <br>
+ * MongoClient 自身维护链接池并且线程安全 所有线程共用一个 <br>
+ * 同时记录已经创建过索引的集合 写入前判断是否需要创建索引不需要查询数据库
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+public class MongoDBConnection implements DatabaseConnection {
+    @Getter
+    private final MongoClient client;
+    // 已应用写关注的数据库
+    @Getter
+    private final MongoDatabase database;
+    private final Set<String> collections = ConcurrentHashMap.newKeySet();
+
+    public MongoDBConnection(MongoClient client, MongoDatabase database) {
+        this.client = client;
+        this.database = database;
+        for (String collection : database.listCollectionNames()) {
+            collections.add(collection);
+        }
+    }
+
+    /**
+     * MongoDB 没有 JDBC 链接 使用 getDatabase
+     */
+    @Override
+    public Connection getJdbcConnection() {
+        throw new UnsupportedOperationException("mongodb has no jdbc connection, use getDatabase instead.");
+    }
+
+    public boolean containsCollection(String collection) {
+        return collections.contains(collection);
+    }
+
+    // 集合创建后登记
+    public void registerCollection(String collection) {
+        collections.add(collection);
+    }
+
+    // 集合删除后注销
+    public void unregisterCollection(String collection) {
+        collections.remove(collection);
+    }
+
+    // 已登记的全部集合
+    public Set<String> getCollections() {
+        return Collections.unmodifiableSet(collections);
+    }
+
+    public void close() {
+        client.close();
+    }
+}
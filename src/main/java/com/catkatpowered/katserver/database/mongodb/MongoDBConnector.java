@@ -1,10 +1,127 @@
 package com.catkatpowered.katserver.database.mongodb;
 
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
 import com.mongodb.*;
 import com.mongodb.client.MongoDatabase;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * MongoDB 连接器 <br>
+ * 链接地址为 mongodb:// 开头的连接字符串 没有配置全局链接地址时使用配置文件的 mongodb 节点 <br>
+ * 写关注 (write_concern) 决定写入在返回前需要得到多少确认 用持久性换取吞吐量 <br>
+ * UNACKNOWLEDGED 不等待确认 / ACKNOWLEDGED (默认) 主节点确认 / JOURNALED 主节点写入日志后确认 <br>
+ * W2 / W3 指定数量的节点确认 / MAJORITY 多数节点确认
+ *
+ * @author hanbings
+ */
 @SuppressWarnings("SpellCheckingInspection")
-public class MongoDBConnector {
+@Slf4j
+public class MongoDBConnector implements DatabaseConnector {
+    // 连接字符串和配置中都没有指定数据库时使用的数据库
+    private static final String DEFAULT_DATABASE = "kat";
+
+    MongoDBConnection connection;
+    // 写关注 为 null 时在加载数据库时从配置文件读取
+    WriteConcern writeConcern;
+
+    public MongoDBConnector() {
+    }
+
+    public MongoDBConnector(WriteConcern writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void loadDatabase(String url, String username, String password) {
+        Map<String, Object> config = (Map<String, Object>) KatServer.KatConfigAPI
+            .getConfig(KatConfigNodeConstants.KAT_CONFIG_MONGODB);
+        if ((url == null || url.isEmpty()) && config != null) {
+            url = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_CONNECTION_URL);
+            username = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_USERNAME);
+            password = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_PASSWORD);
+        }
+        String database = config != null && config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_DATABASE) != null
+            ? config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_DATABASE).toString()
+            : null;
+        if (writeConcern == null) {
+            writeConcern = config != null && config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_WRITE_CONCERN) != null
+                ? getWriteConcern(config.get(KatConfigNodeConstants.KAT_CONFIG_MONGODB_WRITE_CONCERN).toString())
+                : WriteConcern.ACKNOWLEDGED;
+        }
+        this.loadDatabase(url, username, password, database);
+    }
+
+    /**
+     * 按连接字符串打开 MongoClient <br>
+     * 连接字符串中没有认证信息时使用 username 和 password 认证
+     *
+     * @param url      连接字符串
+     * @param username 数据库用户名 可以为 null
+     * @param password 数据库密码 可以为 null
+     * @param database 数据库名字 为 null 时使用连接字符串中的数据库
+     */
+    public void loadDatabase(String url, String username, String password, String database) {
+        if (writeConcern == null) {
+            writeConcern = WriteConcern.ACKNOWLEDGED;
+        }
+        try {
+            MongoClientURI uri = new MongoClientURI(url,
+                MongoClientOptions.builder(this.getMongoClientOptions()).writeConcern(writeConcern));
+            if (database == null) {
+                database = uri.getDatabase() != null ? uri.getDatabase() : DEFAULT_DATABASE;
+            }
+            MongoClient client;
+            if (uri.getCredentials() == null && username != null && !username.isEmpty()) {
+                client = new MongoClient(
+                    uri.getHosts().stream().map(ServerAddress::new).toList(),
+                    MongoCredential.createCredential(username, database,
+                        password == null ? new char[0] : password.toCharArray()),
+                    uri.getOptions());
+            } else {
+                client = new MongoClient(uri);
+            }
+            connection = new MongoDBConnection(client, client.getDatabase(database).withWriteConcern(writeConcern));
+        } catch (MongoException | IllegalArgumentException exception) {
+            log.error("load mongodb database error.", exception);
+        }
+    }
+
+    @Override
+    public DatabaseConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void exit() {
+        connection.close();
+    }
+
+    // MongoClient 链接池中每台主机的链接数
+    @Override
+    public int getPoolSize() {
+        return connection.getClient().getMongoClientOptions().getConnectionsPerHost();
+    }
+
+    /**
+     * 按名字获取写关注 名字不合法时使用 ACKNOWLEDGED
+     *
+     * @param name 写关注的名字 如 MAJORITY
+     * @return 写关注
+     */
+    public static WriteConcern getWriteConcern(String name) {
+        WriteConcern concern = WriteConcern.valueOf(name.toUpperCase(Locale.ROOT));
+        if (concern == null) {
+            log.warn("unknown mongodb write concern {}, use ACKNOWLEDGED.", name);
+            return WriteConcern.ACKNOWLEDGED;
+        }
+        return concern;
+    }
 
     /**
      * 获取数据库对象
@@ -0,0 +1,39 @@
+package com.catkatpowered.katserver.database.mongodb;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+
+import java.util.function.Function;
+
+/**
+ * MongoDB 游标 按 batchSize 分批从服务端读取文档 <br>
+ * 读取完毕后服务端的游标自动关闭 提前结束时必须关闭
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+public class MongoDBCursor<T> implements DatabaseCursor<T> {
+    private final MongoCursor<Document> cursor;
+    private final Function<Document, T> mapper;
+
+    public MongoDBCursor(MongoCursor<Document> cursor, Function<Document, T> mapper) {
+        this.cursor = cursor;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor.hasNext();
+    }
+
+    @Override
+    public T next() {
+        return mapper.apply(cursor.next());
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
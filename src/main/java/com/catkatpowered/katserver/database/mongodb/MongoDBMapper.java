@@ -0,0 +1,56 @@
+package com.catkatpowered.katserver.database.mongodb;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.google.gson.FieldNamingStrategy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * 数据实体与 MongoDB 文档之间的转换 <br>
+ * 使用 Gson 序列化 嵌套的对象和列表 (如 KatUniMessage.messageList) 保存为原生的子文档和数组 <br>
+ * 字段名与 Sql 数据库的列名一致 因此 DatabaseQuery 中的列名可以直接作为字段名 <br>
+ * _id 由 MongoDB 生成 不映射到数据实体 主键列由唯一索引约束
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+public class MongoDBMapper {
+    public static final String ID = "_id";
+
+    // 没有 SerializedName 注解的变量使用与列名相同的字段名
+    private static final FieldNamingStrategy COLUMN_NAMING = field ->
+        DatabaseEntity.of(field.getDeclaringClass()).getColumns().stream()
+            .filter(column -> column.getField().equals(field))
+            .findFirst()
+            .map(DatabaseColumn::getName)
+            .orElse(DatabaseEntity.getColumnName(field.getName()));
+    // 写入 null 更新时才能清空字段
+    private static final Gson gson = new GsonBuilder()
+        .setFieldNamingStrategy(COLUMN_NAMING)
+        .serializeNulls()
+        .create();
+    // 整数按原样输出 而不是 {"$numberLong": "..."}
+    private static final JsonWriterSettings RELAXED = JsonWriterSettings.builder()
+        .outputMode(JsonMode.RELAXED)
+        .build();
+
+    /**
+     * 数据实体转换为文档
+     */
+    public static <T> Document toDocument(T data) {
+        return Document.parse(gson.toJson(data));
+    }
+
+    /**
+     * 文档转换为数据实体
+     */
+    public static <T> T toEntity(DatabaseEntity<T> entity, Document document) {
+        Document copy = new Document(document);
+        copy.remove(ID);
+        return gson.fromJson(copy.toJson(RELAXED), entity.getType());
+    }
+}
@@ -0,0 +1,90 @@
+package com.catkatpowered.katserver.database.mongodb;
+
+import com.catkatpowered.katserver.database.query.DatabaseCondition;
+import com.catkatpowered.katserver.database.query.DatabaseOrder;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.type.ConditionType;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将 DatabaseQuery 渲染为 MongoDB 的过滤条件和排序 <br>
+ * 文档的字段名与列名相同 见 MongoDBMapper <br>
+ * 行值比较展开为字典序 (a, b) < (x, y) 即 a < x 或 (a = x 且 b < y)
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+public class MongoDBQueryRenderer {
+
+    public Bson filter(DatabaseQuery query) {
+        if (query.getConditions().isEmpty()) {
+            return new Document();
+        }
+        List<Bson> filters = new ArrayList<>();
+        for (DatabaseCondition condition : query.getConditions()) {
+            filters.add(condition.isRow() ? row(condition) : single(condition));
+        }
+        return filters.size() == 1 ? filters.get(0) : Filters.and(filters);
+    }
+
+    /**
+     * 排序 没有排序时返回 null
+     */
+    public Bson sort(DatabaseQuery query) {
+        if (query.getOrders().isEmpty()) {
+            return null;
+        }
+        List<Bson> sorts = new ArrayList<>();
+        for (DatabaseOrder order : query.getOrders()) {
+            String field = order.getColumn();
+            sorts.add(order.isAscending() ? Sorts.ascending(field) : Sorts.descending(field));
+        }
+        return Sorts.orderBy(sorts);
+    }
+
+    private Bson single(DatabaseCondition condition) {
+        String field = condition.getColumn();
+        List<Object> values = condition.getValues();
+        return switch (condition.getType()) {
+            case EQUAL -> Filters.eq(field, values.get(0));
+            case NOT_EQUAL -> Filters.ne(field, values.get(0));
+            case GREATER -> Filters.gt(field, values.get(0));
+            case GREATER_EQUAL -> Filters.gte(field, values.get(0));
+            case LESS -> Filters.lt(field, values.get(0));
+            case LESS_EQUAL -> Filters.lte(field, values.get(0));
+            case IN -> Filters.in(field, values);
+            case BETWEEN -> Filters.and(Filters.gte(field, values.get(0)), Filters.lte(field, values.get(1)));
+        };
+    }
+
+    private Bson row(DatabaseCondition condition) {
+        List<Bson> branches = new ArrayList<>();
+        for (int count = 0; count < condition.getColumns().size(); count++) {
+            List<Bson> branch = new ArrayList<>();
+            // 前面的列相等
+            for (int index = 0; index < count; index++) {
+                branch.add(Filters.eq(condition.getColumns().get(index), condition.getValues().get(index)));
+            }
+            // 当前列按比较方式比较 最后一列包含等于
+            String field = condition.getColumns().get(count);
+            Object value = condition.getValues().get(count);
+            boolean last = count == condition.getColumns().size() - 1;
+            branch.add(switch (condition.getType()) {
+                case GREATER -> Filters.gt(field, value);
+                case GREATER_EQUAL -> last ? Filters.gte(field, value) : Filters.gt(field, value);
+                case LESS -> Filters.lt(field, value);
+                case LESS_EQUAL -> last ? Filters.lte(field, value) : Filters.lt(field, value);
+                default -> throw new IllegalArgumentException(
+                    "row comparison does not support " + condition.getType());
+            });
+            branches.add(branch.size() == 1 ? branch.get(0) : Filters.and(branch));
+        }
+        return Filters.or(branches);
+    }
+}
@@ -0,0 +1,313 @@
+package com.catkatpowered.katserver.database.mysql;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.entity.DatabaseIndex;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.jdbc.JdbcCursor;
+import com.catkatpowered.katserver.database.jdbc.JdbcMapper;
+import com.catkatpowered.katserver.database.jdbc.JdbcPooledConnection;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryRenderer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MySQL 执行器 <br>
+ * 预编译语句由驱动按 sql 缓存 (见 MySQLConnector 的链接参数) 因此每次执行都可以直接 prepareStatement <br>
+ * 查询形状相同的语句渲染出的 sql 完全相同 会命中驱动中的同一个服务端预编译语句 <br>
+ * <br>
+ * <p>
+ * 批量插入使用 addBatch / executeBatch 驱动将整批改写为一条多行 INSERT <br>
+ * upsert 使用 INSERT ... ON DUPLICATE KEY UPDATE 主键或唯一约束冲突时更新允许更新的列 <br>
+ * 表在第一次写入时创建 二级索引随建表语句一起创建
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class MySQLActions implements DatabaseActions {
+
+    // sql 渲染器 MySQL 使用反引号包裹标识符
+    QueryRenderer renderer = new QueryRenderer("`");
+    // 动态类型推导器
+    MySQLTypeTransfer transfer = new MySQLTypeTransfer();
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        return this.create(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        return this.batch(connection, table, entity, renderer.insert(table, entity.getColumnNames()), data);
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        return this.batch(connection, table, entity, upsert(table, entity), data);
+    }
+
+    @Override
+    public void drop(DatabaseConnection connection, String table) {
+        JdbcPooledConnection mysql = (JdbcPooledConnection) connection;
+        try {
+            mysql.execute(jdbc -> {
+                try (PreparedStatement statement = jdbc.prepareStatement(
+                        "DROP TABLE IF EXISTS " + renderer.quote(table))) {
+                    return statement.executeUpdate();
+                }
+            });
+            mysql.unregisterTable(table);
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        return new ArrayList<>(((JdbcPooledConnection) connection).getTables());
+    }
+
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        JdbcPooledConnection mysql = (JdbcPooledConnection) connection;
+        try {
+            mysql.execute(jdbc -> {
+                try (PreparedStatement statement = jdbc.prepareStatement(renderer.delete(table, query))) {
+                    JdbcMapper.inject(statement, query.getParameters(), 1);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        JdbcPooledConnection mysql = (JdbcPooledConnection) connection;
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        try {
+            return mysql.execute(jdbc -> {
+                List<T> result = new ArrayList<>();
+                try (PreparedStatement statement = jdbc.prepareStatement(renderer.select(table, query))) {
+                    JdbcMapper.inject(statement, query.getParameters(), 1);
+                    try (ResultSet set = statement.executeQuery()) {
+                        // 注入结果集到对象 每行一个新的数据实体
+                        while (set.next()) {
+                            result.add(JdbcMapper.toEntity(set, entity));
+                        }
+                    }
+                }
+                return result;
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        JdbcPooledConnection mysql = (JdbcPooledConnection) connection;
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        // 游标在消费期间独占一条链接 关闭时归还
+        Connection jdbc = mysql.borrow();
+        try {
+            PreparedStatement statement = jdbc.prepareStatement(renderer.select(table, query));
+            statement.setFetchSize(fetchSize);
+            JdbcMapper.inject(statement, query.getParameters(), 1);
+            ResultSet set = statement.executeQuery();
+            return new JdbcCursor<>(statement, set, row -> JdbcMapper.toEntity(row, entity),
+                () -> mysql.giveBack(jdbc));
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+        mysql.giveBack(jdbc);
+        return DatabaseCursor.empty();
+    }
+
+    @Override
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        JdbcPooledConnection mysql = (JdbcPooledConnection) connection;
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        try {
+            mysql.execute(jdbc -> {
+                try (PreparedStatement statement = jdbc.prepareStatement(
+                        renderer.update(table, entity.getUpdatableColumnNames(), query))) {
+                    // 先注入 SET 的值 再注入 WHERE 的值
+                    List<Object> values = entity.getUpdatableValues(data);
+                    JdbcMapper.inject(statement, values, 1);
+                    JdbcMapper.inject(statement, query.getParameters(), values.size() + 1);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 在一个事务中批量执行插入类语句 <br>
+     * 只有一行时直接执行 多行时由驱动改写为多行 INSERT
+     */
+    private <T> boolean batch(DatabaseConnection connection, String table, DatabaseEntity<T> entity,
+                              String sql, List<T> data) {
+        JdbcPooledConnection mysql = (JdbcPooledConnection) connection;
+        try {
+            mysql.execute(jdbc -> {
+                this.ensureTable(mysql, jdbc, table, entity);
+                try (PreparedStatement statement = jdbc.prepareStatement(sql)) {
+                    if (data.size() == 1) {
+                        JdbcMapper.inject(statement, entity.getValues(data.get(0)), 1);
+                        return statement.executeUpdate();
+                    }
+                    jdbc.setAutoCommit(false);
+                    try {
+                        for (T row : data) {
+                            JdbcMapper.inject(statement, entity.getValues(row), 1);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                        jdbc.commit();
+                    } catch (SQLException exception) {
+                        jdbc.rollback();
+                        throw exception;
+                    } finally {
+                        jdbc.setAutoCommit(true);
+                    }
+                    return data.size();
+                }
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 表不存在时创建表 并登记到链接池的表记录中
+     */
+    private void ensureTable(JdbcPooledConnection mysql, Connection jdbc, String table, DatabaseEntity<?> entity)
+            throws SQLException {
+        if (mysql.containsTable(table)) {
+            return;
+        }
+        try (PreparedStatement statement = jdbc.prepareStatement(createTable(table, entity))) {
+            statement.execute();
+        }
+        mysql.registerTable(table);
+    }
+
+    /**
+     * 渲染 INSERT ... ON DUPLICATE KEY UPDATE 冲突时覆盖允许更新的列 <br>
+     * 使用 VALUES(col) 引用待插入的值 兼容 MariaDB 和 8.0.19 之前的 MySQL
+     */
+    private String upsert(String table, DatabaseEntity<?> entity) {
+        StringBuilder builder = new StringBuilder(renderer.insert(table, entity.getColumnNames()))
+                .append(" ON DUPLICATE KEY UPDATE ");
+        String primaryKey = renderer.quote(entity.getPrimaryKey().getName());
+        boolean first = true;
+        for (String name : entity.getUpdatableColumnNames()) {
+            String column = renderer.quote(name);
+            if (column.equals(primaryKey)) {
+                continue;
+            }
+            builder.append(first ? "" : ", ").append(column).append(" = VALUES(").append(column).append(")");
+            first = false;
+        }
+        // 没有需要更新的列时 冲突的行保持不变
+        if (first) {
+            builder.append(primaryKey).append(" = ").append(primaryKey);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 创建一个表 二级索引在建表语句中一起声明
+     *
+     * @param table  表名
+     * @param entity 元数据
+     */
+    private String createTable(String table, DatabaseEntity<?> entity) {
+        StringBuilder builder = new StringBuilder();
+        DatabaseColumn primaryKey = entity.getPrimaryKey();
+        builder.append("CREATE TABLE IF NOT EXISTS ").append(renderer.quote(table)).append(" (");
+
+        List<DatabaseColumn> columns = entity.getColumns();
+        for (int count = 0; count < columns.size(); count++) {
+            DatabaseColumn column = columns.get(count);
+            if (count != 0) {
+                builder.append(", ");
+            }
+            // 作为主键 唯一约束或索引的列需要可索引的类型
+            boolean keyed = column == primaryKey || this.isIndexed(entity, column.getName());
+            builder.append(renderer.quote(column.getName())).append(" ");
+            if (column.getMetadata() != null) {
+                SqliteMetadata metadata = column.getMetadata();
+                keyed = keyed || metadata.isUnique();
+                builder.append(transfer.fromSqlite(metadata.type(), keyed));
+                if (metadata.isNotNull()) {
+                    builder.append(" NOT NULL");
+                }
+                if (metadata.isUnique()) {
+                    builder.append(" UNIQUE");
+                }
+                if (metadata.isAutoincrement()) {
+                    builder.append(" AUTO_INCREMENT");
+                }
+            } else {
+                builder.append(transfer.getDataType(column.getField(), keyed));
+            }
+        }
+        // 没有注解标记主键时 第一个变量为主键
+        if (primaryKey != null) {
+            builder.append(", PRIMARY KEY (").append(renderer.quote(primaryKey.getName())).append(")");
+        }
+        for (DatabaseIndex index : entity.getIndexes()) {
+            builder.append(index.isUnique() ? ", UNIQUE INDEX " : ", INDEX ")
+                    .append(renderer.quote(index.getName()))
+                    .append(" (");
+            for (int count = 0; count < index.getColumns().size(); count++) {
+                if (count != 0) {
+                    builder.append(", ");
+                }
+                builder.append(renderer.quote(index.getColumns().get(count)));
+            }
+            builder.append(")");
+        }
+        return builder.append(") ENGINE = InnoDB DEFAULT CHARSET = utf8mb4").toString();
+    }
+
+    private boolean isIndexed(DatabaseEntity<?> entity, String column) {
+        return entity.getIndexes().stream().anyMatch(index -> index.getColumns().contains(column));
+    }
+}
@@ -1,21 +1,56 @@
 package com.catkatpowered.katserver.database.mysql;
 
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.jdbc.JdbcPooledConnection;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * 谁在乎 JDBC 版本啊 <br> 一个 try catch 抹平 JDBC 对应 Mysql 版本问题
+ * 谁在乎 JDBC 版本啊 <br> 一个 try catch 抹平 JDBC 对应 Mysql 版本问题 <br>
+ * 打开固定数量的链接组成链接池 <br>
+ * 链接地址中没有指定的性能参数会被补上 <br>
+ * useServerPrepStmts / cachePrepStmts 预编译语句在服务端编译 并在驱动中按 sql 缓存 <br>
+ * rewriteBatchedStatements 批量插入被改写为一条多行 INSERT ... VALUES (...), (...) <br>
+ * useCursorFetch 设置 fetchSize 的查询按批从服务端读取 用于游标
  *
  * @author hanbings
  * @author suibing112233
  */
 @Slf4j
-public class MySQLConnector {
+public class MySQLConnector implements DatabaseConnector {
+    // 默认的链接池大小
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final String[] PARAMETERS = {
+        "useServerPrepStmts=true",
+        "cachePrepStmts=true",
+        "prepStmtCacheSize=512",
+        "prepStmtCacheSqlLimit=4096",
+        "rewriteBatchedStatements=true",
+        "useCursorFetch=true",
+        "characterEncoding=UTF-8"
+    };
 
-    Connection connection;
+    JdbcPooledConnection connection;
+    // 链接池大小 为 0 时在加载数据库时从配置文件读取
+    int poolSize;
 
+    public MySQLConnector() {
+    }
+
+    public MySQLConnector(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public void loadDatabase(String url, String username, String password) {
         // 先处理 8.x 版本的 Mysql JDBC
         try {
@@ -28,10 +63,48 @@ public class MySQLConnector {
                 log.error("load jdbc error.", exception);
             }
         }
+        // 没有配置全局链接地址时使用 mysql 节点
+        Map<String, Object> config = null;
+        if (url == null || url.isEmpty() || poolSize <= 0) {
+            config = (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_MYSQL);
+        }
+        if ((url == null || url.isEmpty()) && config != null) {
+            url = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_MYSQL_CONNECTION_URL);
+            username = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_MYSQL_USERNAME);
+            password = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_MYSQL_PASSWORD);
+        }
+        if (poolSize <= 0) {
+            poolSize = config != null && config.get(KatConfigNodeConstants.KAT_CONFIG_MYSQL_POOL_SIZE) != null
+                ? Integer.parseInt(config.get(KatConfigNodeConstants.KAT_CONFIG_MYSQL_POOL_SIZE).toString())
+                : DEFAULT_POOL_SIZE;
+        }
+        String jdbcUrl = JdbcPooledConnection.withParameters(url, PARAMETERS);
+        String user = username;
+        String pass = password;
         try {
-            connection = DriverManager.getConnection(url, username, password);
+            List<Connection> connections = new ArrayList<>();
+            for (int count = 0; count < poolSize; count++) {
+                connections.add(DriverManager.getConnection(jdbcUrl, user, pass));
+            }
+            connection = new JdbcPooledConnection(connections, () -> DriverManager.getConnection(jdbcUrl, user, pass));
+            connection.loadTables("SHOW TABLES");
         } catch (SQLException exception) {
             log.error("load mysql database error.", exception);
         }
     }
+
+    @Override
+    public DatabaseConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void exit() {
+        connection.close();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return connection.size();
+    }
 }
@@ -0,0 +1,58 @@
+package com.catkatpowered.katserver.database.mysql;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseTypeTransfer;
+import com.catkatpowered.katserver.database.type.DataType;
+
+import java.lang.reflect.Field;
+
+/**
+ * 用于将 Java 类型数据推导至 MySQL 类型 <br>
+ * 数据实体的注解使用 Sqlite 类型声明 也在这里转换为 MySQL 类型
+ *
+ * @author hanbings
+ */
+public class MySQLTypeTransfer implements DatabaseTypeTransfer {
+    @Override
+    public String getDataType(Object data) {
+        return this.getDataType(data, false);
+    }
+
+    /**
+     * 推导数据类型 传入变量时按变量声明的类型推导
+     *
+     * @param data  变量或数据
+     * @param keyed 是否作为键使用
+     * @return MySQL 类型
+     */
+    public String getDataType(Object data, boolean keyed) {
+        if (data == null) {
+            return DataType.MySQL.LONGBLOB;
+        }
+        Class<?> type = data instanceof Field field ? field.getType() : data.getClass();
+        return switch (type.getSimpleName()) {
+            case "String" -> keyed ? DataType.MySQL.VARCHAR : DataType.MySQL.LONGTEXT;
+            case "Integer", "int", "Long", "long" -> DataType.MySQL.BIGINT;
+            case "Double", "double", "Float", "float" -> DataType.MySQL.DOUBLE;
+            case "Boolean", "boolean" -> DataType.MySQL.BOOLEAN;
+            default -> DataType.MySQL.LONGBLOB;
+        };
+    }
+
+    /**
+     * 将注解中的 Sqlite 类型转换为 MySQL 类型 <br>
+     * MySQL 不能直接为 TEXT 列建立索引 作为主键 唯一约束或索引的文本列使用 VARCHAR
+     *
+     * @param type  Sqlite 类型
+     * @param keyed 是否作为键使用
+     * @return MySQL 类型
+     */
+    public String fromSqlite(String type, boolean keyed) {
+        return switch (type) {
+            case DataType.Sqlite.TEXT -> keyed ? DataType.MySQL.VARCHAR : DataType.MySQL.LONGTEXT;
+            case DataType.Sqlite.INTEGER -> DataType.MySQL.BIGINT;
+            case DataType.Sqlite.REAL -> DataType.MySQL.DOUBLE;
+            // 其余类型 (包括 BLOB) 无法推导
+            default -> keyed ? DataType.MySQL.VARCHAR : DataType.MySQL.LONGBLOB;
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.catkatpowered.katserver.database.pool;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 固定大小的链接池 <br>
+ * 链接在创建池时全部打开 借出时如果没有空闲链接则等待其他线程归还 <br>
+ * 借出的链接必须归还 推荐在 finally 中归还
+ *
+ * @author hanbings
+ */
+public class DatabaseConnectionPool<C> {
+    private final BlockingQueue<C> idle;
+    private final List<C> connections;
+
+    public DatabaseConnectionPool(List<C> connections) {
+        this.connections = Collections.unmodifiableList(connections);
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, connections.size()));
+        this.idle.addAll(connections);
+    }
+
+    /**
+     * 借出一条链接 没有空闲链接时阻塞
+     */
+    public C borrow() {
+        try {
+            return idle.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a database connection.", exception);
+        }
+    }
+
+    /**
+     * 归还一条链接
+     */
+    public void giveBack(C connection) {
+        idle.offer(connection);
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public boolean isEmpty() {
+        return connections.isEmpty();
+    }
+
+    // 池中的全部链接 用于关闭
+    public List<C> getConnections() {
+        return connections;
+    }
+}
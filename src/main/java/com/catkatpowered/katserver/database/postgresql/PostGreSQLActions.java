@@ -0,0 +1,408 @@
+package com.catkatpowered.katserver.database.postgresql;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.entity.DatabaseIndex;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.jdbc.JdbcCursor;
+import com.catkatpowered.katserver.database.jdbc.JdbcMapper;
+import com.catkatpowered.katserver.database.jdbc.JdbcPooledConnection;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryRenderer;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PostgreSQL 执行器 <br>
+ * 预编译语句由驱动按 sql 缓存 (见 PostGreSQLConnector 的链接参数) 因此每次执行都可以直接 prepareStatement <br>
+ * <br>
+ * <p>
+ * 批量插入使用 COPY ... FROM STDIN (csv) 数据以文本流写入 不经过逐行的解析和计划 <br>
+ * COPY 是一个整体 任意一行冲突时整批失败 需要覆盖已存在的行时使用 upsert <br>
+ * 含有无法以文本表示的值 (字符串 数字 布尔 字节数组以外) 时退回批量 INSERT <br>
+ * upsert 使用 INSERT ... ON CONFLICT (主键) DO UPDATE 冲突时更新允许更新的列 <br>
+ * 游标需要在事务中才会按 fetchSize 分批读取 因此游标独占的链接会关闭自动提交
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+@Slf4j
+public class PostGreSQLActions implements DatabaseActions {
+    // COPY 每次写入流的字节数
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    // sql 渲染器 PostgreSQL 使用双引号包裹标识符
+    QueryRenderer renderer = new QueryRenderer("\"");
+    // 动态类型推导器
+    PostGreSQLTypeTransfer transfer = new PostGreSQLTypeTransfer();
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        return this.batch(connection, table, entity, renderer.insert(table, entity.getColumnNames()), List.of(data));
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        if (data.size() == 1 || !this.isCopyable(entity, data)) {
+            return this.batch(connection, table, entity, renderer.insert(table, entity.getColumnNames()), data);
+        }
+        JdbcPooledConnection postgresql = (JdbcPooledConnection) connection;
+        try {
+            postgresql.execute(jdbc -> {
+                this.ensureTable(postgresql, jdbc, table, entity);
+                return this.copy(jdbc, table, entity, data);
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        return this.batch(connection, table, entity, renderer.upsert(table, entity.getColumnNames(),
+                entity.getUpdatableColumnNames(), entity.getPrimaryKey().getName()), data);
+    }
+
+    @Override
+    public void drop(DatabaseConnection connection, String table) {
+        JdbcPooledConnection postgresql = (JdbcPooledConnection) connection;
+        try {
+            postgresql.execute(jdbc -> {
+                try (PreparedStatement statement = jdbc.prepareStatement(
+                        "DROP TABLE IF EXISTS " + renderer.quote(table))) {
+                    return statement.executeUpdate();
+                }
+            });
+            postgresql.unregisterTable(table);
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        return new ArrayList<>(((JdbcPooledConnection) connection).getTables());
+    }
+
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        try {
+            ((JdbcPooledConnection) connection).execute(jdbc -> {
+                try (PreparedStatement statement = jdbc.prepareStatement(renderer.delete(table, query))) {
+                    JdbcMapper.inject(statement, query.getParameters(), 1);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        try {
+            return ((JdbcPooledConnection) connection).execute(jdbc -> {
+                List<T> result = new ArrayList<>();
+                try (PreparedStatement statement = jdbc.prepareStatement(renderer.select(table, query))) {
+                    JdbcMapper.inject(statement, query.getParameters(), 1);
+                    try (ResultSet set = statement.executeQuery()) {
+                        // 注入结果集到对象 每行一个新的数据实体
+                        while (set.next()) {
+                            result.add(JdbcMapper.toEntity(set, entity));
+                        }
+                    }
+                }
+                return result;
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        JdbcPooledConnection postgresql = (JdbcPooledConnection) connection;
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        // 游标在消费期间独占一条链接 关闭时结束事务并归还
+        Connection jdbc = postgresql.borrow();
+        Runnable release = () -> {
+            try {
+                jdbc.commit();
+                jdbc.setAutoCommit(true);
+            } catch (SQLException exception) {
+                log.error(String.valueOf(exception));
+            }
+            postgresql.giveBack(jdbc);
+        };
+        try {
+            jdbc.setAutoCommit(false);
+            PreparedStatement statement = jdbc.prepareStatement(renderer.select(table, query));
+            statement.setFetchSize(fetchSize);
+            JdbcMapper.inject(statement, query.getParameters(), 1);
+            ResultSet set = statement.executeQuery();
+            return new JdbcCursor<>(statement, set, row -> JdbcMapper.toEntity(row, entity), release);
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+        release.run();
+        return DatabaseCursor.empty();
+    }
+
+    @Override
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        try {
+            ((JdbcPooledConnection) connection).execute(jdbc -> {
+                try (PreparedStatement statement = jdbc.prepareStatement(
+                        renderer.update(table, entity.getUpdatableColumnNames(), query))) {
+                    // 先注入 SET 的值 再注入 WHERE 的值
+                    List<Object> values = entity.getUpdatableValues(data);
+                    JdbcMapper.inject(statement, values, 1);
+                    JdbcMapper.inject(statement, query.getParameters(), values.size() + 1);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 使用 COPY 写入一批数据 每行编码为一行 csv
+     */
+    private <T> int copy(Connection jdbc, String table, DatabaseEntity<T> entity, List<T> data)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("COPY ").append(renderer.quote(table)).append(" (");
+        for (int count = 0; count < entity.getColumnNames().size(); count++) {
+            if (count != 0) {
+                sql.append(", ");
+            }
+            sql.append(renderer.quote(entity.getColumnNames().get(count)));
+        }
+        sql.append(") FROM STDIN WITH (FORMAT csv)");
+
+        CopyIn copy = jdbc.unwrap(PGConnection.class).getCopyAPI().copyIn(sql.toString());
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER);
+            for (T row : data) {
+                List<Object> values = entity.getValues(row);
+                for (int count = 0; count < values.size(); count++) {
+                    if (count != 0) {
+                        buffer.append(',');
+                    }
+                    this.writeCsv(buffer, values.get(count));
+                }
+                buffer.append('\n');
+                if (buffer.length() >= COPY_BUFFER) {
+                    byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                    copy.writeToCopy(bytes, 0, bytes.length);
+                    buffer.setLength(0);
+                }
+            }
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            return (int) copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * 编码一个 csv 字段 <br>
+     * null 为不加引号的空字段 字符串总是加引号 因此空字符串与 null 可以区分 <br>
+     * 字节数组使用 bytea 的十六进制格式
+     */
+    private void writeCsv(StringBuilder buffer, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof byte[] bytes) {
+            buffer.append("\\x");
+            for (byte b : bytes) {
+                buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return;
+        }
+        if (value instanceof String string) {
+            buffer.append('"').append(string.replace("\"", "\"\"")).append('"');
+            return;
+        }
+        buffer.append(value);
+    }
+
+    /**
+     * 一批数据是否全部可以用 COPY 的文本格式写入
+     */
+    private <T> boolean isCopyable(DatabaseEntity<T> entity, List<T> data) {
+        for (T row : data) {
+            for (Object value : entity.getValues(row)) {
+                if (value != null && !(value instanceof String || value instanceof Number
+                        || value instanceof Boolean || value instanceof byte[])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在一个事务中批量执行插入类语句 <br>
+     * 只有一行时直接执行 多行时由驱动改写为多行 INSERT
+     */
+    private <T> boolean batch(DatabaseConnection connection, String table, DatabaseEntity<T> entity,
+                              String sql, List<T> data) {
+        JdbcPooledConnection postgresql = (JdbcPooledConnection) connection;
+        try {
+            postgresql.execute(jdbc -> {
+                this.ensureTable(postgresql, jdbc, table, entity);
+                try (PreparedStatement statement = jdbc.prepareStatement(sql)) {
+                    if (data.size() == 1) {
+                        JdbcMapper.inject(statement, entity.getValues(data.get(0)), 1);
+                        return statement.executeUpdate();
+                    }
+                    jdbc.setAutoCommit(false);
+                    try {
+                        for (T row : data) {
+                            JdbcMapper.inject(statement, entity.getValues(row), 1);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                        jdbc.commit();
+                    } catch (SQLException exception) {
+                        jdbc.rollback();
+                        throw exception;
+                    } finally {
+                        jdbc.setAutoCommit(true);
+                    }
+                    return data.size();
+                }
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 表不存在时创建表和声明的二级索引 并登记到链接池的表记录中
+     */
+    private void ensureTable(JdbcPooledConnection postgresql, Connection jdbc, String table,
+                             DatabaseEntity<?> entity) throws SQLException {
+        if (postgresql.containsTable(table)) {
+            return;
+        }
+        try (PreparedStatement statement = jdbc.prepareStatement(createTable(table, entity))) {
+            statement.execute();
+        }
+        for (DatabaseIndex index : entity.getIndexes()) {
+            try (PreparedStatement statement = jdbc.prepareStatement(createIndex(table, index))) {
+                statement.execute();
+            }
+        }
+        postgresql.registerTable(table);
+    }
+
+    /**
+     * 创建一个二级索引 索引已存在时不做任何事
+     *
+     * @param table 表名
+     * @param index 索引声明
+     */
+    private String createIndex(String table, DatabaseIndex index) {
+        StringBuilder builder = new StringBuilder("CREATE ");
+        if (index.isUnique()) {
+            builder.append("UNIQUE ");
+        }
+        builder.append("INDEX IF NOT EXISTS ")
+                .append(renderer.quote(index.getName(table)))
+                .append(" ON ")
+                .append(renderer.quote(table))
+                .append(" (");
+        for (int count = 0; count < index.getColumns().size(); count++) {
+            if (count != 0) {
+                builder.append(", ");
+            }
+            builder.append(renderer.quote(index.getColumns().get(count)));
+        }
+        return builder.append(")").toString();
+    }
+
+    /**
+     * 创建一个表
+     *
+     * @param table  表名
+     * @param entity 元数据
+     */
+    private String createTable(String table, DatabaseEntity<?> entity) {
+        StringBuilder builder = new StringBuilder();
+        DatabaseColumn primaryKey = entity.getPrimaryKey();
+        builder.append("CREATE TABLE IF NOT EXISTS ").append(renderer.quote(table)).append(" (");
+
+        List<DatabaseColumn> columns = entity.getColumns();
+        for (int count = 0; count < columns.size(); count++) {
+            DatabaseColumn column = columns.get(count);
+            if (count != 0) {
+                builder.append(", ");
+            }
+            builder.append(renderer.quote(column.getName())).append(" ");
+            if (column.getMetadata() != null) {
+                SqliteMetadata metadata = column.getMetadata();
+                builder.append(transfer.fromSqlite(metadata.type()));
+                if (metadata.isAutoincrement()) {
+                    builder.append(" GENERATED BY DEFAULT AS IDENTITY");
+                }
+                if (metadata.isNotNull()) {
+                    builder.append(" NOT NULL");
+                }
+                if (metadata.isUnique()) {
+                    builder.append(" UNIQUE");
+                }
+            } else {
+                builder.append(transfer.getDataType(column.getField()));
+            }
+            // 没有注解标记主键时 第一个变量为主键
+            if (column == primaryKey) {
+                builder.append(" PRIMARY KEY");
+            }
+        }
+        return builder.append(")").toString();
+    }
+}
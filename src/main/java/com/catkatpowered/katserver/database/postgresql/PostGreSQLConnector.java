@@ -1,32 +1,100 @@
 package com.catkatpowered.katserver.database.postgresql;
 
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.jdbc.JdbcPooledConnection;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * PostgreSQL 连接器 打开固定数量的链接组成链接池 <br>
+ * 链接地址中没有指定的性能参数会被补上 <br>
+ * prepareThreshold=1 同一条 sql 第一次执行后就使用服务端预编译语句 <br>
+ * preparedStatementCacheQueries 驱动按 sql 缓存每条链接上的预编译语句 <br>
+ * reWriteBatchedInserts 批量插入被改写为多行 INSERT
+ *
+ * @author hanbings
+ */
 @SuppressWarnings("SpellCheckingInspection")
 @Slf4j
-public class PostGreSQLConnector {
+public class PostGreSQLConnector implements DatabaseConnector {
+    // 默认的链接池大小
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final String[] PARAMETERS = {
+        "prepareThreshold=1",
+        "preparedStatementCacheQueries=512",
+        "reWriteBatchedInserts=true"
+    };
 
-    Connection connection;
+    JdbcPooledConnection connection;
+    // 链接池大小 为 0 时在加载数据库时从配置文件读取
+    int poolSize;
 
+    public PostGreSQLConnector() {
+    }
+
+    public PostGreSQLConnector(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public void loadDatabase(String url, String username, String password) {
-        // 先处理 8.x 版本的 Mysql JDBC
         try {
             Class.forName("org.postgresql.Driver");
-        } catch (ClassNotFoundException found) {
-            // 版本不对 处理版本
-            try {
-                Class.forName("com.mysql.jdbc.Driver");
-            } catch (ClassNotFoundException exception) {
-                log.error("load jdbc error.", exception);
-            }
+        } catch (ClassNotFoundException exception) {
+            log.error("load jdbc error.", exception);
+        }
+        // 没有配置全局链接地址时使用 postgresql 节点
+        Map<String, Object> config = null;
+        if (url == null || url.isEmpty() || poolSize <= 0) {
+            config = (Map<String, Object>) KatServer.KatConfigAPI
+                .getConfig(KatConfigNodeConstants.KAT_CONFIG_POSTGRESQL);
+        }
+        if ((url == null || url.isEmpty()) && config != null) {
+            url = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_POSTGRESQL_CONNECTION_URL);
+            username = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_POSTGRESQL_USERNAME);
+            password = (String) config.get(KatConfigNodeConstants.KAT_CONFIG_POSTGRESQL_PASSWORD);
+        }
+        if (poolSize <= 0) {
+            poolSize = config != null && config.get(KatConfigNodeConstants.KAT_CONFIG_POSTGRESQL_POOL_SIZE) != null
+                ? Integer.parseInt(config.get(KatConfigNodeConstants.KAT_CONFIG_POSTGRESQL_POOL_SIZE).toString())
+                : DEFAULT_POOL_SIZE;
         }
+        String jdbcUrl = JdbcPooledConnection.withParameters(url, PARAMETERS);
+        String user = username;
+        String pass = password;
         try {
-            connection = DriverManager.getConnection(url, username, password);
+            List<Connection> connections = new ArrayList<>();
+            for (int count = 0; count < poolSize; count++) {
+                connections.add(DriverManager.getConnection(jdbcUrl, user, pass));
+            }
+            connection = new JdbcPooledConnection(connections, () -> DriverManager.getConnection(jdbcUrl, user, pass));
+            connection.loadTables("SELECT tablename FROM pg_tables WHERE schemaname = current_schema()");
         } catch (SQLException exception) {
-            log.error("load mysql database error.", exception);
+            log.error("load postgresql database error.", exception);
         }
     }
+
+    @Override
+    public DatabaseConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void exit() {
+        connection.close();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return connection.size();
+    }
 }
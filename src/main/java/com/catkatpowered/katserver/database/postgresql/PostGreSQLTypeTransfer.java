@@ -0,0 +1,45 @@
+package com.catkatpowered.katserver.database.postgresql;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseTypeTransfer;
+import com.catkatpowered.katserver.database.type.DataType;
+
+import java.lang.reflect.Field;
+
+/**
+ * 用于将 Java 类型数据推导至 PostgreSQL 类型 <br>
+ * 数据实体的注解使用 Sqlite 类型声明 也在这里转换为 PostgreSQL 类型
+ *
+ * @author hanbings
+ */
+@SuppressWarnings("SpellCheckingInspection")
+public class PostGreSQLTypeTransfer implements DatabaseTypeTransfer {
+    /**
+     * 推导数据类型 传入变量时按变量声明的类型推导
+     */
+    @Override
+    public String getDataType(Object data) {
+        if (data == null) {
+            return DataType.PostgreSQL.BYTEA;
+        }
+        Class<?> type = data instanceof Field field ? field.getType() : data.getClass();
+        return switch (type.getSimpleName()) {
+            case "String" -> DataType.PostgreSQL.TEXT;
+            case "Integer", "int", "Long", "long" -> DataType.PostgreSQL.BIGINT;
+            case "Double", "double", "Float", "float" -> DataType.PostgreSQL.DOUBLE;
+            case "Boolean", "boolean" -> DataType.PostgreSQL.BOOLEAN;
+            default -> DataType.PostgreSQL.BYTEA;
+        };
+    }
+
+    /**
+     * 将注解中的 Sqlite 类型转换为 PostgreSQL 类型
+     */
+    public String fromSqlite(String type) {
+        return switch (type) {
+            case DataType.Sqlite.TEXT -> DataType.PostgreSQL.TEXT;
+            case DataType.Sqlite.INTEGER -> DataType.PostgreSQL.BIGINT;
+            case DataType.Sqlite.REAL -> DataType.PostgreSQL.DOUBLE;
+            default -> DataType.PostgreSQL.BYTEA;
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.catkatpowered.katserver.database.query;
+
+import com.catkatpowered.katserver.database.type.ConditionType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 一个查询条件 列名 比较方式 以及需要绑定的值 <br>
+ * 多于一列时为行值比较 如 (created_at, message_id) < (?, ?) 用于键集分页
+ *
+ * @author hanbings
+ */
+@Getter
+@AllArgsConstructor
+public class DatabaseCondition {
+    List<String> columns;
+    ConditionType type;
+    List<Object> values;
+
+    // 单列条件的列名 行值比较时为第一列
+    public String getColumn() {
+        return columns.get(0);
+    }
+
+    public boolean isRow() {
+        return columns.size() > 1;
+    }
+}
@@ -0,0 +1,16 @@
+package com.catkatpowered.katserver.database.query;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 一个排序条件
+ *
+ * @author hanbings
+ */
+@Getter
+@AllArgsConstructor
+public class DatabaseOrder {
+    String column;
+    boolean ascending;
+}
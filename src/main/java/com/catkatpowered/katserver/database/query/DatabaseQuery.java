@@ -0,0 +1,155 @@
+package com.catkatpowered.katserver.database.query;
+
+import com.catkatpowered.katserver.database.type.ConditionType;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 类型化的查询条件 <br>
+ * 条件之间使用 AND 连接 列名会被直接拼接到 sql 中 因此只接受合法的标识符 <br>
+ * 值永远以参数的形式绑定 <br>
+ * <br>
+ * 查询的形状 (shape) 只由列名 比较方式 IN 的参数个数 排序以及是否限制行数决定 不包含任何值 <br>
+ * 形状相同的查询渲染出的 sql 相同 可以复用同一个预编译语句 <br>
+ * <br>
+ * 例: <br>
+ * new DatabaseQuery().equal("message_group", group).orderBy("message_id", false).limit(50) <br>
+ * <br>
+ * 键集分页使用行值比较 从上一页最后一行继续 而不是 OFFSET 跳过前面的行 <br>
+ * new DatabaseQuery().less(List.of("created_at", "message_id"), List.of(lastCreatedAt, lastId))
+ *     .orderBy("created_at", false).orderBy("message_id", false).limit(50)
+ *
+ * @author hanbings
+ */
+@Getter
+public class DatabaseQuery {
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final List<DatabaseCondition> conditions = new ArrayList<>();
+    private final List<DatabaseOrder> orders = new ArrayList<>();
+    private Integer limit;
+
+    public DatabaseQuery equal(String column, Object value) {
+        return this.condition(column, ConditionType.EQUAL, value);
+    }
+
+    public DatabaseQuery notEqual(String column, Object value) {
+        return this.condition(column, ConditionType.NOT_EQUAL, value);
+    }
+
+    public DatabaseQuery greater(String column, Object value) {
+        return this.condition(column, ConditionType.GREATER, value);
+    }
+
+    public DatabaseQuery greaterEqual(String column, Object value) {
+        return this.condition(column, ConditionType.GREATER_EQUAL, value);
+    }
+
+    public DatabaseQuery less(String column, Object value) {
+        return this.condition(column, ConditionType.LESS, value);
+    }
+
+    public DatabaseQuery lessEqual(String column, Object value) {
+        return this.condition(column, ConditionType.LESS_EQUAL, value);
+    }
+
+    // 行值比较 (a, b) > (?, ?)
+    public DatabaseQuery greater(List<String> columns, List<?> values) {
+        return this.row(columns, ConditionType.GREATER, values);
+    }
+
+    // 行值比较 (a, b) < (?, ?)
+    public DatabaseQuery less(List<String> columns, List<?> values) {
+        return this.row(columns, ConditionType.LESS, values);
+    }
+
+    public DatabaseQuery between(String column, Object from, Object to) {
+        return this.condition(column, ConditionType.BETWEEN, from, to);
+    }
+
+    public DatabaseQuery in(String column, Object... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("IN condition requires at least one value.");
+        }
+        return this.condition(column, ConditionType.IN, values);
+    }
+
+    public DatabaseQuery in(String column, List<?> values) {
+        return this.in(column, values.toArray());
+    }
+
+    public DatabaseQuery orderBy(String column, boolean ascending) {
+        orders.add(new DatabaseOrder(validateIdentifier(column), ascending));
+        return this;
+    }
+
+    public DatabaseQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * 按顺序返回需要绑定的参数 最后一个为 limit (如果存在)
+     */
+    public List<Object> getParameters() {
+        List<Object> parameters = new ArrayList<>();
+        for (DatabaseCondition condition : conditions) {
+            parameters.addAll(condition.getValues());
+        }
+        if (limit != null) {
+            parameters.add(limit);
+        }
+        return parameters;
+    }
+
+    /**
+     * 查询的形状 不包含任何值 作为预编译缓存的 key
+     */
+    public String getShape() {
+        StringBuilder builder = new StringBuilder();
+        for (DatabaseCondition condition : conditions) {
+            builder.append(String.join(",", condition.getColumns())).append(' ').append(condition.getType());
+            if (condition.getType() == ConditionType.IN) {
+                builder.append(' ').append(condition.getValues().size());
+            }
+            builder.append(';');
+        }
+        for (DatabaseOrder order : orders) {
+            builder.append("ORDER ").append(order.getColumn()).append(order.isAscending() ? " ASC;" : " DESC;");
+        }
+        if (limit != null) {
+            builder.append("LIMIT;");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.getShape();
+    }
+
+    private DatabaseQuery condition(String column, ConditionType type, Object... values) {
+        conditions.add(new DatabaseCondition(List.of(validateIdentifier(column)), type, Arrays.asList(values)));
+        return this;
+    }
+
+    private DatabaseQuery row(List<String> columns, ConditionType type, List<?> values) {
+        if (columns.isEmpty() || columns.size() != values.size()) {
+            throw new IllegalArgumentException("row comparison requires one value for each column.");
+        }
+        columns.forEach(DatabaseQuery::validateIdentifier);
+        conditions.add(new DatabaseCondition(List.copyOf(columns), type, new ArrayList<>(values)));
+        return this;
+    }
+
+    private static String validateIdentifier(String column) {
+        if (column == null || !IDENTIFIER.matcher(column).matches()) {
+            throw new IllegalArgumentException("illegal column name: " + column);
+        }
+        return column;
+    }
+}
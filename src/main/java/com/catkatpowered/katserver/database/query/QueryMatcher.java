@@ -0,0 +1,138 @@
+package com.catkatpowered.katserver.database.query;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.type.ConditionType;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在内存中执行 DatabaseQuery 供不经过 sql 的存储过滤和排序数据实体 <br>
+ * 语义与 Sqlite 一致 与 null 比较的条件不成立 排序时 null 最小 <br>
+ * 数字按数值比较 不区分 Integer 和 Long <br>
+ * 查询中不存在的列名与 sql 一样是错误 抛出 IllegalArgumentException
+ *
+ * @author hanbings
+ */
+public class QueryMatcher<T> {
+    private static final Map<Class<?>, QueryMatcher<?>> matchers = new ConcurrentHashMap<>();
+
+    private final Map<String, DatabaseColumn> columns = new HashMap<>();
+
+    public QueryMatcher(DatabaseEntity<T> entity) {
+        for (DatabaseColumn column : entity.getColumns()) {
+            columns.put(column.getName(), column);
+        }
+    }
+
+    /**
+     * 每个数据实体共用一个
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> QueryMatcher<T> of(DatabaseEntity<T> entity) {
+        return (QueryMatcher<T>) matchers.computeIfAbsent(entity.getType(), type -> new QueryMatcher<>(entity));
+    }
+
+    /**
+     * 取出数据实体中一列的值
+     */
+    public Object value(T data, String column) {
+        return this.column(column).get(data);
+    }
+
+    /**
+     * 数据实体是否满足查询的全部条件
+     */
+    public boolean matches(T data, DatabaseQuery query) {
+        for (DatabaseCondition condition : query.getConditions()) {
+            if (!this.matches(data, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查询的排序 没有排序时返回 null
+     */
+    public Comparator<T> comparator(DatabaseQuery query) {
+        Comparator<T> comparator = null;
+        for (DatabaseOrder order : query.getOrders()) {
+            DatabaseColumn column = this.column(order.getColumn());
+            Comparator<T> next = (left, right) -> compare(column.get(left), column.get(right));
+            if (!order.isAscending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    private boolean matches(T data, DatabaseCondition condition) {
+        List<Object> values = condition.getValues();
+        if (condition.isRow()) {
+            int result = 0;
+            for (int index = 0; index < condition.getColumns().size() && result == 0; index++) {
+                Object value = this.value(data, condition.getColumns().get(index));
+                if (value == null || values.get(index) == null) {
+                    return false;
+                }
+                result = compare(value, values.get(index));
+            }
+            return condition.getType() == ConditionType.LESS ? result < 0 : result > 0;
+        }
+        Object value = this.value(data, condition.getColumn());
+        if (value == null) {
+            return false;
+        }
+        return switch (condition.getType()) {
+            case EQUAL -> values.get(0) != null && compare(value, values.get(0)) == 0;
+            case NOT_EQUAL -> values.get(0) != null && compare(value, values.get(0)) != 0;
+            case GREATER -> values.get(0) != null && compare(value, values.get(0)) > 0;
+            case GREATER_EQUAL -> values.get(0) != null && compare(value, values.get(0)) >= 0;
+            case LESS -> values.get(0) != null && compare(value, values.get(0)) < 0;
+            case LESS_EQUAL -> values.get(0) != null && compare(value, values.get(0)) <= 0;
+            case IN -> values.stream().anyMatch(candidate -> candidate != null && compare(value, candidate) == 0);
+            case BETWEEN -> values.get(0) != null && values.get(1) != null
+                    && compare(value, values.get(0)) >= 0 && compare(value, values.get(1)) <= 0;
+        };
+    }
+
+    private DatabaseColumn column(String name) {
+        DatabaseColumn column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("no such column: " + name);
+        }
+        return column;
+    }
+
+    /**
+     * 比较两个值 null 最小 数字按数值比较 其余类型可比较时使用自身的顺序 否则按字符串比较
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compare(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        if (left instanceof Number a && right instanceof Number b) {
+            if (isIntegral(a) && isIntegral(b)) {
+                return Long.compare(a.longValue(), b.longValue());
+            }
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        }
+        if (left instanceof Comparable comparable && left.getClass() == right.getClass()) {
+            return comparable.compareTo(right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte;
+    }
+}
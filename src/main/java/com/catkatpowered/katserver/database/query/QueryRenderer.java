@@ -0,0 +1,146 @@
+package com.catkatpowered.katserver.database.query;
+
+import java.util.List;
+
+/**
+ * 将 DatabaseQuery 渲染为 sql <br>
+ * 不同数据库之间只有标识符的引号不同 Sqlite / PostgreSQL 使用双引号 MySQL 使用反引号 <br>
+ * 渲染结果只依赖查询的形状 相同形状渲染出的 sql 完全相同
+ *
+ * @author hanbings
+ */
+public class QueryRenderer {
+    private final String quote;
+
+    public QueryRenderer(String quote) {
+        this.quote = quote;
+    }
+
+    /**
+     * 为标识符加上引号 标识符中的引号会被转义 因此表名可以是任意字符串
+     */
+    public String quote(String identifier) {
+        return quote + identifier.replace(quote, quote + quote) + quote;
+    }
+
+    public String insert(String table, List<String> columns) {
+        StringBuilder builder = new StringBuilder("INSERT INTO ").append(quote(table)).append(" (");
+        StringBuilder values = new StringBuilder();
+        for (int count = 0; count < columns.size(); count++) {
+            if (count != 0) {
+                builder.append(", ");
+                values.append(", ");
+            }
+            builder.append(quote(columns.get(count)));
+            values.append("?");
+        }
+        return builder.append(") VALUES (").append(values).append(")").toString();
+    }
+
+    /**
+     * INSERT ... ON CONFLICT (主键) DO UPDATE 使用 excluded 引用待插入的值 <br>
+     * Sqlite 3.24 起和 PostgreSQL 9.5 起支持 <br>
+     * 没有需要更新的列时冲突的行保持不变
+     *
+     * @param table      表名
+     * @param columns    插入的全部列
+     * @param updatable  冲突时覆盖的列
+     * @param primaryKey 主键列
+     */
+    public String upsert(String table, List<String> columns, List<String> updatable, String primaryKey) {
+        StringBuilder builder = new StringBuilder(insert(table, columns))
+                .append(" ON CONFLICT (").append(quote(primaryKey)).append(")");
+        boolean first = true;
+        for (String name : updatable) {
+            if (name.equals(primaryKey)) {
+                continue;
+            }
+            String column = quote(name);
+            builder.append(first ? " DO UPDATE SET " : ", ").append(column).append(" = excluded.").append(column);
+            first = false;
+        }
+        return first ? builder.append(" DO NOTHING").toString() : builder.toString();
+    }
+
+    public String select(String table, DatabaseQuery query) {
+        StringBuilder builder = new StringBuilder("SELECT * FROM ").append(quote(table));
+        builder.append(where(query));
+        for (int count = 0; count < query.getOrders().size(); count++) {
+            DatabaseOrder order = query.getOrders().get(count);
+            builder.append(count == 0 ? " ORDER BY " : ", ")
+                    .append(quote(order.getColumn()))
+                    .append(order.isAscending() ? " ASC" : " DESC");
+        }
+        if (query.getLimit() != null) {
+            builder.append(" LIMIT ?");
+        }
+        return builder.toString();
+    }
+
+    public String delete(String table, DatabaseQuery query) {
+        validateNoOrderAndLimit(query);
+        return "DELETE FROM " + quote(table) + where(query);
+    }
+
+    public String update(String table, List<String> columns, DatabaseQuery query) {
+        validateNoOrderAndLimit(query);
+        StringBuilder builder = new StringBuilder("UPDATE ").append(quote(table)).append(" SET ");
+        for (int count = 0; count < columns.size(); count++) {
+            if (count != 0) {
+                builder.append(", ");
+            }
+            builder.append(quote(columns.get(count))).append(" = ?");
+        }
+        return builder.append(where(query)).toString();
+    }
+
+    /**
+     * 渲染 WHERE 子句 没有条件时返回空字符串
+     */
+    public String where(DatabaseQuery query) {
+        StringBuilder builder = new StringBuilder();
+        for (int count = 0; count < query.getConditions().size(); count++) {
+            DatabaseCondition condition = query.getConditions().get(count);
+            builder.append(count == 0 ? " WHERE " : " AND ");
+            if (condition.isRow()) {
+                builder.append(row(condition)).append(" ").append(condition.getType().getOperator()).append(" (");
+                for (int index = 0; index < condition.getValues().size(); index++) {
+                    builder.append(index == 0 ? "?" : ", ?");
+                }
+                builder.append(")");
+                continue;
+            }
+            builder.append(quote(condition.getColumn()));
+            switch (condition.getType()) {
+                case IN -> {
+                    builder.append(" IN (");
+                    for (int index = 0; index < condition.getValues().size(); index++) {
+                        builder.append(index == 0 ? "?" : ", ?");
+                    }
+                    builder.append(")");
+                }
+                case BETWEEN -> builder.append(" BETWEEN ? AND ?");
+                default -> builder.append(" ").append(condition.getType().getOperator()).append(" ?");
+            }
+        }
+        return builder.toString();
+    }
+
+    // 行值比较的列 (a, b)
+    private String row(DatabaseCondition condition) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int count = 0; count < condition.getColumns().size(); count++) {
+            if (count != 0) {
+                builder.append(", ");
+            }
+            builder.append(quote(condition.getColumns().get(count)));
+        }
+        return builder.append(")").toString();
+    }
+
+    private void validateNoOrderAndLimit(DatabaseQuery query) {
+        if (!query.getOrders().isEmpty() || query.getLimit() != null) {
+            throw new IllegalArgumentException("order and limit only support read.");
+        }
+    }
+}
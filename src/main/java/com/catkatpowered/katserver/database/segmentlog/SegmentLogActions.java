@@ -0,0 +1,162 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SegmentLog 执行器 <br>
+ * 每个表 (消息组) 是一组只追加的段文件 见 SegmentLogTable <br>
+ * 查询在内存中按 QueryMatcher 执行 语义与 Sqlite 相同 <br>
+ * 游标按主键顺序每次解码 fetchSize 行 其它排序和带 limit 的查询先读取全部结果再逐行返回 <br>
+ * 没有二级索引 查询依靠段和块的最大最小值跳过数据 validateIndexes 总是返回空列表
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SegmentLogActions implements DatabaseActions {
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        return this.create(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        try {
+            this.table(connection, table, true).create(DatabaseEntity.of(data.get(0)), data);
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
+        }
+        try {
+            this.table(connection, table, true).upsert(DatabaseEntity.of(data.get(0)), data);
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void drop(DatabaseConnection connection, String table) {
+        try {
+            ((SegmentLogConnection) connection).drop(table);
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        return ((SegmentLogConnection) connection).getTables();
+    }
+
+    /**
+     * 删除只需要主键 按查询读出满足条件的行时使用存储中的数据实体类
+     */
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
+        try {
+            SegmentLogTable segments = this.table(connection, table, false);
+            if (segments != null) {
+                segments.delete(segments.entity(), query);
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean delete(DatabaseConnection connection, String table, T data) {
+        DatabaseQuery query = DatabaseEntity.of(data).getExampleQuery(data);
+        if (query == null) {
+            return true;
+        }
+        try {
+            SegmentLogTable segments = this.table(connection, table, false);
+            if (segments != null) {
+                segments.delete(DatabaseEntity.of(data), query);
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        try {
+            SegmentLogTable segments = this.table(connection, table, false);
+            if (segments != null) {
+                return segments.read(DatabaseEntity.of(type), query);
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        try {
+            SegmentLogTable segments = this.table(connection, table, false);
+            if (segments != null) {
+                return segments.cursor(DatabaseEntity.of(type), query, fetchSize);
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return DatabaseCursor.empty();
+    }
+
+    @Override
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        try {
+            SegmentLogTable segments = this.table(connection, table, false);
+            if (segments != null) {
+                segments.update(DatabaseEntity.of(data), data, query);
+            }
+        } catch (IOException | RuntimeException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    private SegmentLogTable table(DatabaseConnection connection, String table, boolean create) throws IOException {
+        try {
+            return ((SegmentLogConnection) connection).table(table, create);
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.database.query.DatabaseCondition;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryMatcher;
+import com.catkatpowered.katserver.database.type.ConditionType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 段中连续的一组记录 是稀疏索引的一项 <br>
+ * 记录这组记录在段中的起止位置 以及每一列的最小值和最大值 (null 最小) <br>
+ * 查询时先用最小值和最大值判断整块是否可能有满足条件的行 不可能时整块跳过 不解码其中任何记录 <br>
+ * 封存的段另有一个合并了全部块的汇总块 可以一次跳过整个段 <br>
+ * 块只由持有写锁的线程修改 读取时持有读锁
+ *
+ * @author hanbings
+ */
+class SegmentLogBlock {
+    // 值不可比较 (如列表) 的列 不能用于跳过
+    static final Object UNKNOWN = new Object();
+
+    final int start;
+    int end;
+    // 块中的记录数 包括删除记录
+    int records;
+    // 块中的行数 不包括删除记录 为 0 时没有任何行可以满足查询
+    int rows;
+    final Object[] min;
+    final Object[] max;
+
+    SegmentLogBlock(int start, int columns) {
+        this.start = start;
+        this.end = start;
+        this.min = new Object[columns];
+        this.max = new Object[columns];
+    }
+
+    /**
+     * 块中加入一条记录
+     *
+     * @param values 按列顺序的值 删除记录为 null
+     */
+    void add(int offset, int length, List<Object> values) {
+        end = offset + length;
+        records++;
+        if (values == null) {
+            return;
+        }
+        for (int column = 0; column < min.length && column < values.size(); column++) {
+            Object value = values.get(column);
+            if (value != null && !(value instanceof Comparable)) {
+                value = UNKNOWN;
+            }
+            this.accept(column, value, value);
+        }
+        rows++;
+    }
+
+    /**
+     * 合并另一个块的最小值和最大值 用于段的汇总块
+     */
+    void merge(SegmentLogBlock block) {
+        if (block.rows == 0) {
+            return;
+        }
+        for (int column = 0; column < min.length; column++) {
+            // 知道数据实体类之前的块没有列的统计
+            if (column >= block.min.length) {
+                this.accept(column, UNKNOWN, UNKNOWN);
+            } else {
+                this.accept(column, block.min[column], block.max[column]);
+            }
+        }
+        rows += block.rows;
+        records += block.records;
+    }
+
+    private void accept(int column, Object low, Object high) {
+        if (rows == 0) {
+            min[column] = low;
+            max[column] = high;
+            return;
+        }
+        if (min[column] == UNKNOWN || low == UNKNOWN || high == UNKNOWN) {
+            min[column] = UNKNOWN;
+            max[column] = UNKNOWN;
+            return;
+        }
+        if (QueryMatcher.compare(low, min[column]) < 0) {
+            min[column] = low;
+        }
+        if (QueryMatcher.compare(high, max[column]) > 0) {
+            max[column] = high;
+        }
+    }
+
+    /**
+     * 块中是否可能有满足查询全部条件的行 不确定时返回 true
+     *
+     * @param columns 列名 -> 列的下标
+     */
+    boolean mayMatch(DatabaseQuery query, Map<String, Integer> columns) {
+        if (rows == 0) {
+            return false;
+        }
+        for (DatabaseCondition condition : query.getConditions()) {
+            Integer column = columns.get(condition.getColumn());
+            if (column == null || column >= min.length || min[column] == UNKNOWN) {
+                continue;
+            }
+            if (!this.mayMatch(condition, min[column], max[column])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 块中是否可能有排在 value 之前的行 <br>
+     * 取前 n 行时 已经找到 n 行后 排在第 n 行之后的块不需要读取
+     *
+     * @param column    第一个排序列的下标 不存在时为 null
+     * @param ascending 是否升序
+     * @param value     当前第 n 行在排序列上的值
+     */
+    boolean mayPrecede(Integer column, boolean ascending, Object value) {
+        if (rows == 0) {
+            return false;
+        }
+        if (column == null || column >= min.length || min[column] == UNKNOWN) {
+            return true;
+        }
+        return ascending
+                ? QueryMatcher.compare(min[column], value) <= 0
+                : QueryMatcher.compare(max[column], value) >= 0;
+    }
+
+    // 与 null 比较的条件不成立 因此全部为 null 的块 (最大值为 null) 不可能满足条件
+    private boolean mayMatch(DatabaseCondition condition, Object low, Object high) {
+        List<Object> values = condition.getValues();
+        if (high == null) {
+            return false;
+        }
+        // 行值比较只用第一列判断
+        if (condition.isRow()) {
+            Object value = values.get(0);
+            return value != null && (condition.getType() == ConditionType.LESS
+                    ? low == null || QueryMatcher.compare(low, value) <= 0
+                    : QueryMatcher.compare(high, value) >= 0);
+        }
+        Object value = values.get(0);
+        if (value == null && condition.getType() != ConditionType.IN) {
+            return false;
+        }
+        return switch (condition.getType()) {
+            case EQUAL -> overlaps(low, high, value, value);
+            case NOT_EQUAL -> low == null || QueryMatcher.compare(low, high) != 0
+                    || QueryMatcher.compare(low, value) != 0;
+            case GREATER -> QueryMatcher.compare(high, value) > 0;
+            case GREATER_EQUAL -> QueryMatcher.compare(high, value) >= 0;
+            case LESS -> low == null || QueryMatcher.compare(low, value) < 0;
+            case LESS_EQUAL -> low == null || QueryMatcher.compare(low, value) <= 0;
+            case IN -> values.stream().anyMatch(candidate -> candidate != null
+                    && overlaps(low, high, candidate, candidate));
+            case BETWEEN -> values.get(1) != null && overlaps(low, high, value, values.get(1));
+        };
+    }
+
+    // [low, high] 与 [from, to] 是否有交集 low 为 null 时下界未知
+    private static boolean overlaps(Object low, Object high, Object from, Object to) {
+        return QueryMatcher.compare(high, from) >= 0 && (low == null || QueryMatcher.compare(low, to) <= 0);
+    }
+}
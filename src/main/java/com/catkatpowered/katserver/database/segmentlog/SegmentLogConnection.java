@@ -0,0 +1,183 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * SegmentLog 链接 <br>
+ * 每张表是根目录下的一个子目录 表在第一次使用时打开 打开时重放它的段 <br>
+ * 后台线程每 flush_interval 毫秒把有写入的表写回磁盘 每分钟检查一次是否需要压缩
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SegmentLogConnection implements DatabaseConnection {
+    // 两次压缩检查之间的毫秒数
+    private static final long COMPACT_INTERVAL = 60 * 1000;
+
+    @Getter
+    private final Path root;
+    @Getter
+    private final SegmentLogProfile profile;
+    private final Map<String, SegmentLogTable> tables = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kat-segment-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SegmentLogConnection(Path root, SegmentLogProfile profile) throws IOException {
+        this.root = root;
+        this.profile = profile;
+        Files.createDirectories(root);
+        if (profile.getFlushInterval() > 0) {
+            scheduler.scheduleWithFixedDelay(this::flush, profile.getFlushInterval(), profile.getFlushInterval(),
+                    TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::compact, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * SegmentLog 没有 JDBC 链接
+     */
+    @Override
+    public Connection getJdbcConnection() {
+        throw new UnsupportedOperationException("segment log has no jdbc connection.");
+    }
+
+    /**
+     * 打开一张表
+     *
+     * @param create 表不存在时是否创建
+     * @return 表 不存在且不创建时为 null
+     */
+    SegmentLogTable table(String name, boolean create) {
+        SegmentLogTable table = tables.get(name);
+        if (table != null || (!create && !Files.isDirectory(this.directory(name)))) {
+            return table;
+        }
+        return tables.computeIfAbsent(name, key -> {
+            try {
+                return SegmentLogTable.open(this.directory(key), key, profile);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        });
+    }
+
+    /**
+     * 删除一张表的全部文件
+     */
+    void drop(String name) throws IOException {
+        SegmentLogTable table = this.table(name, false);
+        if (table != null) {
+            table.drop();
+            tables.remove(name, table);
+        }
+    }
+
+    /**
+     * 根目录下全部的表 包括还没有打开的
+     */
+    public List<String> getTables() {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> list = Files.list(root)) {
+            for (Path path : list.filter(Files::isDirectory).toList()) {
+                names.add(decode(path.getFileName().toString()));
+            }
+        } catch (IOException exception) {
+            log.error(String.valueOf(exception));
+        }
+        return names;
+    }
+
+    /**
+     * 把全部有写入的表写回磁盘
+     */
+    public void flush() {
+        for (SegmentLogTable table : tables.values()) {
+            try {
+                table.flush();
+            } catch (RuntimeException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }
+    }
+
+    /**
+     * 压缩无效记录超过比例的表
+     */
+    public void compact() {
+        for (SegmentLogTable table : tables.values()) {
+            try {
+                if (table.needsCompaction()) {
+                    table.compact();
+                }
+            } catch (IOException | RuntimeException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }
+    }
+
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        tables.values().forEach(SegmentLogTable::close);
+        tables.clear();
+    }
+
+    private Path directory(String name) {
+        return root.resolve(encode(name));
+    }
+
+    // 表名中不能作为文件名的字符写为 %XX
+    private static String encode(String name) {
+        StringBuilder builder = new StringBuilder();
+        for (byte value : name.getBytes(StandardCharsets.UTF_8)) {
+            char character = (char) (value & 0xFF);
+            if ((character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z')
+                    || (character >= '0' && character <= '9') || character == '_' || character == '-'
+                    || character == '@') {
+                builder.append(character);
+            } else {
+                builder.append(String.format("%%%02X", value & 0xFF));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String decode(String name) {
+        byte[] bytes = new byte[name.length()];
+        int length = 0;
+        for (int index = 0; index < name.length(); index++) {
+            char character = name.charAt(index);
+            if (character == '%' && index + 2 < name.length()) {
+                bytes[length++] = (byte) Integer.parseInt(name.substring(index + 1, index + 3), 16);
+                index += 2;
+            } else {
+                bytes[length++] = (byte) character;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,61 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.common.constants.KatMiscConstants;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * SegmentLog 连接器 <br>
+ * 链接地址为存放段文件的目录 没有配置链接地址时使用数据目录下的 segments 目录 <br>
+ * 不需要用户名和密码
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SegmentLogConnector implements DatabaseConnector {
+
+    SegmentLogConnection connection;
+    // 存储配置 为 null 时在加载数据库时从配置文件读取
+    SegmentLogProfile profile;
+
+    public SegmentLogConnector() {
+    }
+
+    public SegmentLogConnector(SegmentLogProfile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void loadDatabase(String url, String username, String password) {
+        if (url == null || url.isEmpty()) {
+            url = KatMiscConstants.KAT_SEGMENT_LOG_PATH;
+        }
+        if (profile == null) {
+            profile = SegmentLogProfile.fromConfig((Map<String, Object>) KatServer.KatConfigAPI
+                    .getConfig(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG));
+        }
+        try {
+            connection = new SegmentLogConnection(Path.of(url), profile);
+        } catch (IOException exception) {
+            log.error("load segment log database error.", exception);
+        }
+    }
+
+    @Override
+    public DatabaseConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void exit() {
+        connection.close();
+    }
+}
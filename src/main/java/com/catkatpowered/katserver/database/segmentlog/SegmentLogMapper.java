@@ -0,0 +1,36 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.google.gson.FieldNamingStrategy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 数据实体与段文件中记录内容之间的转换 <br>
+ * 使用 Gson 序列化为 UTF-8 的 json 字段名与 Sql 数据库的列名一致
+ *
+ * @author hanbings
+ */
+public class SegmentLogMapper {
+    // 没有 SerializedName 注解的变量使用与列名相同的字段名
+    private static final FieldNamingStrategy COLUMN_NAMING = field ->
+        DatabaseEntity.of(field.getDeclaringClass()).getColumns().stream()
+            .filter(column -> column.getField().equals(field))
+            .findFirst()
+            .map(DatabaseColumn::getName)
+            .orElse(DatabaseEntity.getColumnName(field.getName()));
+    private static final Gson gson = new GsonBuilder()
+        .setFieldNamingStrategy(COLUMN_NAMING)
+        .create();
+
+    public static <T> byte[] encode(T data) {
+        return gson.toJson(data).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static <T> T decode(DatabaseEntity<T> entity, byte[] payload) {
+        return gson.fromJson(new String(payload, StandardCharsets.UTF_8), entity.getType());
+    }
+}
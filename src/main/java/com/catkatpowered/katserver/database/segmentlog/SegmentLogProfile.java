@@ -0,0 +1,57 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import lombok.Builder;
+import lombok.Builder.Default;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * SegmentLog 存储配置 对应配置文件中的 segment_log 节点 <br>
+ * segment_size = 每个段文件的大小 默认 8 MiB 写满后封存并开始新的段 <br>
+ * flush_interval = 两次 fsync 之间的毫秒数 默认 1000 期间的写入合并为一次 fsync <br>
+ * 为 0 时每次写入在返回前 fsync 进程崩溃不丢数据 断电最多丢失最后 flush_interval 毫秒的写入 <br>
+ * compact_ratio = 消息组已封存的段中被覆盖或删除的字节超过这个比例时重写这些段 默认 0.5
+ *
+ * @author hanbings
+ */
+@Data
+@Builder
+public class SegmentLogProfile {
+    @Default
+    private int segmentSize = 8 * 1024 * 1024;
+    @Default
+    private long flushInterval = 1000;
+    @Default
+    private double compactRatio = 0.5;
+    // 每个块的记录数 块是稀疏索引的单位 查询时按块的最大最小值跳过整块
+    @Default
+    private int blockRecords = 64;
+
+    /**
+     * 从配置文件的 segment_log 节点读取 缺省的项使用默认值
+     *
+     * @param config segment_log 节点 可以为 null
+     * @return 存储配置
+     */
+    public static SegmentLogProfile fromConfig(Map<String, Object> config) {
+        SegmentLogProfile profile = SegmentLogProfile.builder().build();
+        if (config == null) {
+            return profile;
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG_SEGMENT_SIZE) != null) {
+            profile.setSegmentSize(Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG_SEGMENT_SIZE).toString()));
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG_FLUSH_INTERVAL) != null) {
+            profile.setFlushInterval(Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG_FLUSH_INTERVAL).toString()));
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG_COMPACT_RATIO) != null) {
+            profile.setCompactRatio(Double.parseDouble(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SEGMENT_LOG_COMPACT_RATIO).toString()));
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,240 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 一个段文件 记录只追加不修改 整个文件映射到内存 读取时不需要系统调用 <br>
+ * 文件名为 第一条记录的序号-代数.log 重放时按 (序号, 代数) 排序 压缩生成的段代数加一 排在被压缩的段之后 <br>
+ * <br>
+ * 记录格式 (大端) <br>
+ * int 记录长度 | int crc32c | byte 类型 | long 序号 | short 主键长度 | 主键 | 内容 | int 记录长度 <br>
+ * crc 覆盖类型到内容的全部字节 记录末尾重复记录长度 可以从后向前遍历 <br>
+ * 文件创建时即分配完整大小 未写入的部分全部为 0 长度为 0 的位置就是段的末尾
+ *
+ * @author hanbings
+ */
+@Slf4j
+class SegmentLogSegment {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    // 长度 crc 类型 序号 主键长度 以及末尾的长度
+    static final int OVERHEAD = 4 + 4 + 1 + 8 + 2 + 4;
+    private static final String SUFFIX = ".log";
+
+    final Path path;
+    final long base;
+    final int generation;
+    // 本次运行中的编号 与偏移量一起组成记录的位置
+    final int id;
+    final MappedByteBuffer buffer;
+    final int capacity;
+    // 已写入的字节数
+    int end;
+    // 最后一条记录的序号
+    long lastSequence;
+    boolean sealed;
+    // 已经写满的块 最后一个块在 open 中
+    final List<SegmentLogBlock> blocks = new ArrayList<>();
+    SegmentLogBlock open;
+    // 全部块的汇总 段封存后才有
+    SegmentLogBlock summary;
+
+    private SegmentLogSegment(Path path, long base, int generation, int id, MappedByteBuffer buffer) {
+        this.path = path;
+        this.base = base;
+        this.generation = generation;
+        this.id = id;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * 创建新的段文件并分配完整大小
+     */
+    static SegmentLogSegment create(Path directory, long base, int generation, int id, int capacity)
+            throws IOException {
+        Path path = directory.resolve(name(base, generation));
+        return new SegmentLogSegment(path, base, generation, id, map(path, capacity));
+    }
+
+    /**
+     * 打开已存在的段文件 需要调用 recover 找到末尾
+     */
+    static SegmentLogSegment open(Path path, int id) throws IOException {
+        String name = path.getFileName().toString();
+        int separator = name.indexOf('-');
+        long base = Long.parseLong(name.substring(0, separator));
+        int generation = Integer.parseInt(name.substring(separator + 1, name.length() - SUFFIX.length()));
+        return new SegmentLogSegment(path, base, generation, id, map(path, (int) Files.size(path)));
+    }
+
+    static boolean isSegment(Path path) {
+        return path.getFileName().toString().matches("[0-9]{20}-[0-9]+\\.log");
+    }
+
+    static String name(long base, int generation) {
+        return String.format("%020d-%d%s", base, generation, SUFFIX);
+    }
+
+    static long location(int id, int offset) {
+        return ((long) id << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    boolean fits(int length) {
+        return end + length <= capacity;
+    }
+
+    /**
+     * 在末尾追加一条记录 调用者保证空间足够
+     *
+     * @return 记录的偏移量
+     */
+    int append(byte type, long sequence, byte[] key, byte[] payload) {
+        int offset = end;
+        int length = OVERHEAD + key.length + payload.length;
+        CRC32C crc = new CRC32C();
+        byte[] header = new byte[1 + 8 + 2];
+        header[0] = type;
+        for (int shift = 0; shift < 8; shift++) {
+            header[1 + shift] = (byte) (sequence >>> (56 - shift * 8));
+        }
+        header[9] = (byte) (key.length >>> 8);
+        header[10] = (byte) key.length;
+        crc.update(header);
+        crc.update(key);
+        crc.update(payload);
+        buffer.putInt(offset, length);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + 8, header);
+        buffer.put(offset + 8 + header.length, key);
+        buffer.put(offset + 8 + header.length + key.length, payload);
+        buffer.putInt(offset + length - 4, length);
+        end = offset + length;
+        lastSequence = sequence;
+        return offset;
+    }
+
+    int length(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    byte type(int offset) {
+        return buffer.get(offset + 8);
+    }
+
+    long sequence(int offset) {
+        return buffer.getLong(offset + 9);
+    }
+
+    String key(int offset) {
+        byte[] key = new byte[buffer.getShort(offset + 17) & 0xFFFF];
+        buffer.get(offset + 19, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    byte[] payload(int offset) {
+        int keyLength = buffer.getShort(offset + 17) & 0xFFFF;
+        byte[] payload = new byte[this.length(offset) - OVERHEAD - keyLength];
+        buffer.get(offset + 19 + keyLength, payload);
+        return payload;
+    }
+
+    /**
+     * 从头校验记录 找到最后一条完整的记录 <br>
+     * 长度 crc 末尾长度任一不符 或序号没有递增时认为到达末尾 之后的字节全部清零 <br>
+     * 断电时映射的页可能不按顺序写回 损坏的记录之后仍可能有完整的旧记录 清零后不会被当作新记录读取
+     *
+     * @param visitor 按顺序收到每条完整的记录
+     */
+    void recover(RecordVisitor visitor) {
+        int offset = 0;
+        long previous = -1;
+        while (offset + OVERHEAD <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length < OVERHEAD || offset + length > capacity || buffer.getInt(offset + length - 4) != length) {
+                break;
+            }
+            long sequence = this.sequence(offset);
+            if (sequence <= previous || !this.verify(offset, length)) {
+                break;
+            }
+            previous = sequence;
+            visitor.visit(offset, length);
+            offset += length;
+        }
+        end = offset;
+        lastSequence = previous;
+        // 清除损坏的尾部
+        if (!this.isZero(offset)) {
+            log.warn("truncated torn records at {} of {}.", offset, path);
+            buffer.put(offset, new byte[capacity - offset]);
+        }
+    }
+
+    private boolean isZero(int from) {
+        int index = from;
+        for (; index + 8 <= capacity; index += 8) {
+            if (buffer.getLong(index) != 0) {
+                return false;
+            }
+        }
+        for (; index < capacity; index++) {
+            if (buffer.get(index) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean verify(int offset, int length) {
+        byte[] bytes = new byte[length - 12];
+        buffer.get(offset + 8, bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue() == buffer.getInt(offset + 4);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() < capacity) {
+                file.setLength(capacity);
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    interface RecordVisitor {
+        void visit(int offset, int length);
+    }
+}
@@ -0,0 +1,793 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseCondition;
+import com.catkatpowered.katserver.database.query.DatabaseOrder;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryMatcher;
+import com.catkatpowered.katserver.database.type.ConditionType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 一张表 (一个消息组) 的全部段 <br>
+ * 写入只追加到最新的段 内存中的主键表记录每个主键最新记录的位置 (Bitcask) <br>
+ * 记录的位置与主键表中的位置相同时记录有效 被覆盖或删除的记录在压缩时丢弃 <br>
+ * 启动时按 (序号, 代数) 顺序重放全部段 重建主键表和稀疏索引 <br>
+ * <br>
+ * 查询先用段的汇总块和每个块的最大最小值跳过不可能满足条件的记录 <br>
+ * 有排序和数量限制的查询 (如按时间倒序取最近的消息) 从最新的段向前读取 已经找到足够的行后 跳过排在它们之后的块 <br>
+ * <br>
+ * 读取持有读锁 写入持有写锁 序列化在锁外完成 <br>
+ * 压缩先在锁外复制有效记录到新的段 再在写锁中替换主键表中仍未改变的位置
+ *
+ * @author hanbings
+ */
+@Slf4j
+class SegmentLogTable {
+    // 记录写入这张表的数据实体类 启动时用于重建稀疏索引
+    private static final String ENTITY_FILE = "entity";
+
+    final String name;
+    private final Path directory;
+    private final SegmentLogProfile profile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 主键 -> 最新记录的位置 压缩时在锁外读取
+    private final Map<String, Long> keys = new ConcurrentHashMap<>();
+    // 按 (序号, 代数) 排序 最后一个是正在写入的段
+    private final List<SegmentLogSegment> segments = new ArrayList<>();
+    private final Map<Integer, SegmentLogSegment> ids = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private long nextSequence;
+    // 全部段已写入的字节 以及其中有效记录的字节
+    private long totalBytes;
+    private long liveBytes;
+    private volatile DatabaseEntity<?> entity;
+    private Map<String, Integer> columns = Map.of();
+    private volatile boolean dirty;
+    private boolean closed;
+
+    private SegmentLogTable(String name, Path directory, SegmentLogProfile profile) {
+        this.name = name;
+        this.directory = directory;
+        this.profile = profile;
+    }
+
+    /**
+     * 打开已存在的表 或创建新的表
+     */
+    static SegmentLogTable open(Path directory, String name, SegmentLogProfile profile) throws IOException {
+        SegmentLogTable table = new SegmentLogTable(name, directory, profile);
+        Files.createDirectories(directory);
+        table.recover();
+        return table;
+    }
+
+    private void recover() throws IOException {
+        Path entityFile = directory.resolve(ENTITY_FILE);
+        if (Files.exists(entityFile)) {
+            String type = Files.readString(entityFile, StandardCharsets.UTF_8).trim();
+            try {
+                this.bind(DatabaseEntity.of(Class.forName(type)), false);
+            } catch (ClassNotFoundException exception) {
+                log.warn("entity {} of table {} not found, queries will not skip blocks.", type, name);
+            }
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(SegmentLogSegment::isSegment).sorted().toList();
+        }
+        // 文件名的序号补齐为 20 位 按文件名排序后再按代数排序
+        List<SegmentLogSegment> opened = new ArrayList<>();
+        for (Path file : files) {
+            opened.add(SegmentLogSegment.open(file, nextId.getAndIncrement()));
+        }
+        opened.sort(Comparator.<SegmentLogSegment>comparingLong(segment -> segment.base)
+                .thenComparingInt(segment -> segment.generation));
+        for (SegmentLogSegment segment : opened) {
+            ids.put(segment.id, segment);
+            segment.recover((offset, length) -> this.replay(segment, offset, length));
+            nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+            totalBytes += segment.end;
+            segments.add(segment);
+        }
+        for (int index = 0; index < segments.size() - 1; index++) {
+            this.seal(segments.get(index));
+        }
+    }
+
+    private void replay(SegmentLogSegment segment, int offset, int length) {
+        long location = SegmentLogSegment.location(segment.id, offset);
+        String key = segment.key(offset);
+        Long previous;
+        if (segment.type(offset) == SegmentLogSegment.PUT) {
+            previous = keys.put(key, location);
+            liveBytes += length;
+            this.track(segment, offset, length, this.values(segment, offset));
+        } else {
+            previous = keys.remove(key);
+            this.track(segment, offset, length, null);
+        }
+        if (previous != null) {
+            liveBytes -= this.length(previous);
+        }
+    }
+
+    /**
+     * 写入这张表的数据实体类 还没有写入过时为 null
+     */
+    DatabaseEntity<?> entity() {
+        return entity;
+    }
+
+    // 第一次写入时记录数据实体类
+    private void bind(DatabaseEntity<?> entity, boolean persist) throws IOException {
+        if (this.entity == entity) {
+            return;
+        }
+        if (this.entity != null) {
+            throw new IllegalArgumentException("table " + name + " stores " + this.entity.getType().getName()
+                    + ", not " + entity.getType().getName());
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int index = 0; index < entity.getColumns().size(); index++) {
+            columns.put(entity.getColumns().get(index).getName(), index);
+        }
+        this.entity = entity;
+        this.columns = columns;
+        if (persist) {
+            Files.writeString(directory.resolve(ENTITY_FILE), entity.getType().getName(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // 不知道数据实体类时没有任何列的统计 块不能用于跳过
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object> values(SegmentLogSegment segment, int offset) {
+        if (entity == null) {
+            return List.of();
+        }
+        return ((DatabaseEntity) entity).getValues(SegmentLogMapper.decode(entity, segment.payload(offset)));
+    }
+
+    private int length(long location) {
+        return ids.get(SegmentLogSegment.segmentOf(location)).length(SegmentLogSegment.offsetOf(location));
+    }
+
+    // 记录加入段的最后一个块 块写满后关闭
+    private void track(SegmentLogSegment segment, int offset, int length, List<Object> values) {
+        if (segment.open == null) {
+            segment.open = new SegmentLogBlock(offset, columns.size());
+        }
+        // 删除记录也计入块 以便从块的起止位置连续遍历
+        segment.open.add(offset, length, values);
+        if (segment.open.records >= profile.getBlockRecords()) {
+            segment.blocks.add(segment.open);
+            segment.open = null;
+        }
+    }
+
+    // 封存写满的段 生成汇总块
+    private void seal(SegmentLogSegment segment) {
+        if (segment.open != null) {
+            segment.blocks.add(segment.open);
+            segment.open = null;
+        }
+        SegmentLogBlock summary = new SegmentLogBlock(0, columns.size());
+        for (SegmentLogBlock block : segment.blocks) {
+            summary.merge(block);
+        }
+        segment.summary = summary;
+        segment.sealed = true;
+        segment.force();
+    }
+
+    // 在最新的段末尾追加 放不下时封存它并开始新的段
+    private long append(byte type, byte[] key, byte[] payload, List<Object> values) throws IOException {
+        int length = SegmentLogSegment.OVERHEAD + key.length + payload.length;
+        SegmentLogSegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || !active.fits(length)) {
+            if (active != null) {
+                this.seal(active);
+            }
+            active = SegmentLogSegment.create(directory, nextSequence, 0, nextId.getAndIncrement(),
+                    Math.max(profile.getSegmentSize(), length));
+            segments.add(active);
+            ids.put(active.id, active);
+        }
+        int offset = active.append(type, nextSequence++, key, payload);
+        this.track(active, offset, length, values);
+        totalBytes += length;
+        dirty = true;
+        return SegmentLogSegment.location(active.id, offset);
+    }
+
+    private void put(String key, byte[] payload, List<Object> values) throws IOException {
+        byte[] bytes = this.keyBytes(key);
+        int length = SegmentLogSegment.OVERHEAD + bytes.length + payload.length;
+        Long previous = keys.put(key, this.append(SegmentLogSegment.PUT, bytes, payload, values));
+        liveBytes += length;
+        if (previous != null) {
+            liveBytes -= this.length(previous);
+        }
+    }
+
+    private void remove(String key) throws IOException {
+        Long previous = keys.remove(key);
+        if (previous != null) {
+            liveBytes -= this.length(previous);
+            this.append(SegmentLogSegment.DELETE, this.keyBytes(key), new byte[0], null);
+        }
+    }
+
+    private byte[] keyBytes(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("primary key longer than 65535 bytes");
+        }
+        return bytes;
+    }
+
+    private static String key(Object value) {
+        return String.valueOf(value);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("table " + name + " is dropped or closed");
+        }
+    }
+
+    // 每次写入后 fsync 时立即写回 否则等待后台线程
+    private void afterWrite() {
+        if (profile.getFlushInterval() <= 0) {
+            this.flush();
+        }
+    }
+
+    /**
+     * 增加一组数据 任一主键已存在时整组不写入
+     */
+    <T> void create(DatabaseEntity<T> entity, List<T> data) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(data.size());
+        for (T row : data) {
+            payloads.add(SegmentLogMapper.encode(row));
+        }
+        DatabaseColumn primaryKey = entity.getPrimaryKey();
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            Set<String> batch = new HashSet<>();
+            for (T row : data) {
+                String key = key(primaryKey.get(row));
+                if (keys.containsKey(key) || !batch.add(key)) {
+                    throw new IllegalArgumentException("duplicate primary key " + key + " in table " + name);
+                }
+            }
+            this.bind(entity, true);
+            for (int index = 0; index < data.size(); index++) {
+                T row = data.get(index);
+                this.put(key(primaryKey.get(row)), payloads.get(index), entity.getValues(row));
+            }
+            this.afterWrite();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 增加或覆盖一组数据 主键已存在时只覆盖允许更新的列
+     */
+    <T> void upsert(DatabaseEntity<T> entity, List<T> data) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(data.size());
+        for (T row : data) {
+            payloads.add(SegmentLogMapper.encode(row));
+        }
+        DatabaseColumn primaryKey = entity.getPrimaryKey();
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            this.bind(entity, true);
+            for (int index = 0; index < data.size(); index++) {
+                T row = data.get(index);
+                String key = key(primaryKey.get(row));
+                Long location = keys.get(key);
+                if (location == null) {
+                    this.put(key, payloads.get(index), entity.getValues(row));
+                    continue;
+                }
+                T merged = this.merge(entity, this.decode(entity, location), row);
+                this.put(key, SegmentLogMapper.encode(merged), entity.getValues(merged));
+            }
+            this.afterWrite();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把数据实体允许更新的列写入满足条件的行 主键改变时删除原来的行
+     *
+     * @return 更新的行数
+     */
+    <T> int update(DatabaseEntity<T> entity, T data, DatabaseQuery query) throws IOException {
+        DatabaseColumn primaryKey = entity.getPrimaryKey();
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            List<T> rows = this.scan(entity, query);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            this.bind(entity, true);
+            for (T row : rows) {
+                T merged = this.merge(entity, row, data);
+                String before = key(primaryKey.get(row));
+                String after = key(primaryKey.get(merged));
+                if (!before.equals(after)) {
+                    if (keys.containsKey(after)) {
+                        throw new IllegalArgumentException("duplicate primary key " + after + " in table " + name);
+                    }
+                    this.remove(before);
+                }
+                this.put(after, SegmentLogMapper.encode(merged), entity.getValues(merged));
+            }
+            this.afterWrite();
+            return rows.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除满足条件的行
+     *
+     * @return 删除的行数
+     */
+    <T> int delete(DatabaseEntity<T> entity, DatabaseQuery query) throws IOException {
+        if (entity == null) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            this.checkOpen();
+            List<T> rows = this.scan(entity, query);
+            for (T row : rows) {
+                this.remove(key(entity.getPrimaryKey().get(row)));
+            }
+            this.afterWrite();
+            return rows.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按条件查询 语义与 Sqlite 相同
+     */
+    <T> List<T> read(DatabaseEntity<T> entity, DatabaseQuery query) {
+        lock.readLock().lock();
+        try {
+            this.checkOpen();
+            return this.scan(entity, query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按主键顺序分批读取 每批最多解码 fetchSize 行 <br>
+     * 打开时只复制主键 每批在读锁中按主键取出最新的记录 遍历期间删除的行不再返回 更新的行返回新的内容 <br>
+     * 只有主键是字符串且只按主键排序 (或不排序) 时才能分批 其它查询和带 limit 的查询一次读出全部结果
+     */
+    <T> DatabaseCursor<T> cursor(DatabaseEntity<T> entity, DatabaseQuery query, int fetchSize) {
+        Boolean ascending = this.keyOrder(entity, query);
+        if (ascending == null) {
+            return DatabaseCursor.of(this.read(entity, query));
+        }
+        List<String> snapshot;
+        lock.readLock().lock();
+        try {
+            this.checkOpen();
+            snapshot = new ArrayList<>(keys.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        snapshot.sort(ascending ? Comparator.naturalOrder() : Comparator.reverseOrder());
+        QueryMatcher<T> matcher = QueryMatcher.of(entity);
+        int batch = Math.max(fetchSize, 1);
+        return new DatabaseCursor<>() {
+            private final ArrayDeque<T> buffer = new ArrayDeque<>();
+            private List<String> pending = snapshot;
+            private int position;
+
+            @Override
+            public void close() {
+                pending = List.of();
+                buffer.clear();
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (buffer.isEmpty() && position < pending.size()) {
+                    this.fill();
+                }
+                return !buffer.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return buffer.poll();
+            }
+
+            private void fill() {
+                int end = Math.min(pending.size(), position + batch);
+                lock.readLock().lock();
+                try {
+                    checkOpen();
+                    for (; position < end; position++) {
+                        Long location = keys.get(pending.get(position));
+                        if (location == null) {
+                            continue;
+                        }
+                        T row = decode(entity, location);
+                        if (matcher.matches(row, query)) {
+                            buffer.add(row);
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    // 可以按主键分批读取时返回主键的顺序 否则返回 null
+    private <T> Boolean keyOrder(DatabaseEntity<T> entity, DatabaseQuery query) {
+        DatabaseColumn primaryKey = entity.getPrimaryKey();
+        if (query.getLimit() != null || primaryKey.getField().getType() != String.class
+                || this.primaryKeyValue(entity, query) != null) {
+            return null;
+        }
+        List<DatabaseOrder> orders = query.getOrders();
+        if (orders.isEmpty()) {
+            return true;
+        }
+        if (orders.size() == 1 && orders.get(0).getColumn().equals(primaryKey.getName())) {
+            return orders.get(0).isAscending();
+        }
+        return null;
+    }
+
+    // 未改变的列取自 row 允许更新的列取自 data
+    private <T> T merge(DatabaseEntity<T> entity, T row, T data) {
+        T merged = entity.newInstance();
+        for (DatabaseColumn column : entity.getColumns()) {
+            column.set(merged, column.get(column.isUpdatable() ? data : row));
+        }
+        return merged;
+    }
+
+    private <T> T decode(DatabaseEntity<T> entity, long location) {
+        SegmentLogSegment segment = ids.get(SegmentLogSegment.segmentOf(location));
+        return SegmentLogMapper.decode(entity, segment.payload(SegmentLogSegment.offsetOf(location)));
+    }
+
+    // 调用者持有读锁或写锁
+    private <T> List<T> scan(DatabaseEntity<T> entity, DatabaseQuery query) {
+        QueryMatcher<T> matcher = QueryMatcher.of(entity);
+        Comparator<T> order = matcher.comparator(query);
+        Integer limit = query.getLimit();
+        if (limit != null && limit <= 0) {
+            return new ArrayList<>();
+        }
+        // 主键等值查询直接使用主键表
+        Object primaryKey = this.primaryKeyValue(entity, query);
+        if (primaryKey != null) {
+            Long location = keys.get(key(primaryKey));
+            if (location == null) {
+                return new ArrayList<>();
+            }
+            T row = this.decode(entity, location);
+            return matcher.matches(row, query) ? new ArrayList<>(List.of(row)) : new ArrayList<>();
+        }
+        // 表中的数据实体类与查询的不同时块的统计不可用
+        boolean prune = this.entity == entity;
+        if (order != null && limit != null) {
+            return this.top(entity, query, matcher, order, limit, prune);
+        }
+        List<T> result = new ArrayList<>();
+        for (SegmentLogSegment segment : segments) {
+            if (prune && segment.summary != null && !segment.summary.mayMatch(query, columns)) {
+                continue;
+            }
+            for (SegmentLogBlock block : blocks(segment)) {
+                if (prune && !block.mayMatch(query, columns)) {
+                    continue;
+                }
+                this.visit(entity, segment, block, row -> {
+                    if (matcher.matches(row, query)) {
+                        result.add(row);
+                    }
+                });
+                // 没有排序时按写入顺序返回 找到足够的行即可停止
+                if (order == null && limit != null && result.size() >= limit) {
+                    return new ArrayList<>(result.subList(0, limit));
+                }
+            }
+        }
+        if (order != null) {
+            result.sort(order);
+        }
+        return limit != null && result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    // 取前 limit 行 从最新的段向前读取 堆顶是当前第 limit 行
+    private <T> List<T> top(DatabaseEntity<T> entity, DatabaseQuery query, QueryMatcher<T> matcher,
+                            Comparator<T> order, int limit, boolean prune) {
+        PriorityQueue<T> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        DatabaseOrder first = query.getOrders().get(0);
+        Integer column = prune ? columns.get(first.getColumn()) : null;
+        for (int index = segments.size() - 1; index >= 0; index--) {
+            SegmentLogSegment segment = segments.get(index);
+            if (prune && segment.summary != null && !this.worth(segment.summary, query, heap, limit, matcher,
+                    first, column)) {
+                continue;
+            }
+            List<SegmentLogBlock> blocks = blocks(segment);
+            for (int position = blocks.size() - 1; position >= 0; position--) {
+                SegmentLogBlock block = blocks.get(position);
+                if (prune && !this.worth(block, query, heap, limit, matcher, first, column)) {
+                    continue;
+                }
+                this.visit(entity, segment, block, row -> {
+                    if (!matcher.matches(row, query)) {
+                        return;
+                    }
+                    if (heap.size() < limit) {
+                        heap.add(row);
+                    } else if (order.compare(row, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(row);
+                    }
+                });
+            }
+        }
+        List<T> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result;
+    }
+
+    private <T> boolean worth(SegmentLogBlock block, DatabaseQuery query, PriorityQueue<T> heap, int limit,
+                              QueryMatcher<T> matcher, DatabaseOrder first, Integer column) {
+        if (!block.mayMatch(query, columns)) {
+            return false;
+        }
+        return heap.size() < limit
+                || block.mayPrecede(column, first.isAscending(), matcher.value(heap.peek(), first.getColumn()));
+    }
+
+    private static List<SegmentLogBlock> blocks(SegmentLogSegment segment) {
+        if (segment.open == null) {
+            return segment.blocks;
+        }
+        List<SegmentLogBlock> blocks = new ArrayList<>(segment.blocks.size() + 1);
+        blocks.addAll(segment.blocks);
+        blocks.add(segment.open);
+        return blocks;
+    }
+
+    // 解码块中仍然有效的行
+    private <T> void visit(DatabaseEntity<T> entity, SegmentLogSegment segment, SegmentLogBlock block,
+                           RowVisitor<T> visitor) {
+        int offset = block.start;
+        while (offset < block.end) {
+            int length = segment.length(offset);
+            if (segment.type(offset) == SegmentLogSegment.PUT) {
+                Long location = keys.get(segment.key(offset));
+                if (location != null && location == SegmentLogSegment.location(segment.id, offset)) {
+                    visitor.visit(SegmentLogMapper.decode(entity, segment.payload(offset)));
+                }
+            }
+            offset += length;
+        }
+    }
+
+    private <T> Object primaryKeyValue(DatabaseEntity<T> entity, DatabaseQuery query) {
+        String primaryKey = entity.getPrimaryKey().getName();
+        for (DatabaseCondition condition : query.getConditions()) {
+            if (!condition.isRow() && condition.getType() == ConditionType.EQUAL
+                    && condition.getColumn().equals(primaryKey) && condition.getValues().get(0) != null) {
+                return condition.getValues().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把正在写入的段写回磁盘
+     */
+    void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        SegmentLogSegment active;
+        lock.readLock().lock();
+        try {
+            if (closed || segments.isEmpty()) {
+                return;
+            }
+            active = segments.get(segments.size() - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+        active.force();
+    }
+
+    /**
+     * 已封存的段中无效的字节超过比例时需要压缩
+     */
+    boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            if (closed || segments.size() < 2 || totalBytes == 0) {
+                return false;
+            }
+            return (double) (totalBytes - liveBytes) / totalBytes > profile.getCompactRatio();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 重写全部已封存的段 只保留有效的记录 <br>
+     * 新的段代数加一 重放时排在被压缩的段之后 被压缩的段按顺序删除 中途崩溃不会让已删除的行重新出现
+     */
+    void compact() throws IOException {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<SegmentLogSegment> sealed;
+            lock.readLock().lock();
+            try {
+                if (closed || segments.size() < 2) {
+                    return;
+                }
+                sealed = new ArrayList<>(segments.subList(0, segments.size() - 1));
+            } finally {
+                lock.readLock().unlock();
+            }
+            int generation = sealed.stream().mapToInt(segment -> segment.generation).max().orElse(0) + 1;
+            // 锁外复制 已封存的段不再改变
+            List<SegmentLogSegment> outputs = new ArrayList<>();
+            List<long[]> moves = new ArrayList<>();
+            SegmentLogSegment output = null;
+            for (SegmentLogSegment segment : sealed) {
+                int offset = 0;
+                while (offset < segment.end) {
+                    int length = segment.length(offset);
+                    long location = SegmentLogSegment.location(segment.id, offset);
+                    String key = segment.key(offset);
+                    Long current = keys.get(key);
+                    if (segment.type(offset) == SegmentLogSegment.PUT && current != null && current == location) {
+                        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                        byte[] payload = segment.payload(offset);
+                        if (output == null || !output.fits(length)) {
+                            if (output != null) {
+                                this.seal(output);
+                            }
+                            output = SegmentLogSegment.create(directory, segment.sequence(offset), generation,
+                                    nextId.getAndIncrement(), Math.max(profile.getSegmentSize(), length));
+                            outputs.add(output);
+                        }
+                        int copied = output.append(SegmentLogSegment.PUT, segment.sequence(offset), keyBytes,
+                                payload);
+                        this.track(output, copied, length, this.values(output, copied));
+                        moves.add(new long[]{location, SegmentLogSegment.location(output.id, copied)});
+                    }
+                    offset += length;
+                }
+            }
+            if (output != null) {
+                this.seal(output);
+            }
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    outputs.forEach(SegmentLogSegment::delete);
+                    return;
+                }
+                for (SegmentLogSegment segment : outputs) {
+                    ids.put(segment.id, segment);
+                }
+                // 压缩期间被覆盖或删除的行 复制的记录直接无效
+                for (long[] move : moves) {
+                    SegmentLogSegment source = ids.get(SegmentLogSegment.segmentOf(move[0]));
+                    keys.replace(source.key(SegmentLogSegment.offsetOf(move[0])), move[0], move[1]);
+                }
+                for (SegmentLogSegment segment : sealed) {
+                    totalBytes -= segment.end;
+                    ids.remove(segment.id);
+                }
+                for (SegmentLogSegment segment : outputs) {
+                    totalBytes += segment.end;
+                }
+                segments.subList(0, sealed.size()).clear();
+                segments.addAll(0, outputs);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (SegmentLogSegment segment : sealed) {
+                segment.delete();
+            }
+            log.info("compacted {} segments of table {} into {}.", sealed.size(), name, outputs.size());
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * 删除表的全部文件
+     */
+    void drop() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            segments.forEach(SegmentLogSegment::delete);
+            segments.clear();
+            ids.clear();
+            keys.clear();
+            Files.deleteIfExists(directory.resolve(ENTITY_FILE));
+            try (Stream<Path> list = Files.list(directory)) {
+                for (Path file : list.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void close() {
+        lock.writeLock().lock();
+        try {
+            if (!closed && !segments.isEmpty()) {
+                segments.get(segments.size() - 1).force();
+            }
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    interface RowVisitor<T> {
+        void visit(T row);
+    }
+}
@@ -1,23 +1,33 @@
 package com.catkatpowered.katserver.database.sqlite;
 
 import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.entity.DatabaseColumn;
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.entity.DatabaseIndex;
 import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
 import com.catkatpowered.katserver.database.interfaces.DatabaseTypeTransfer;
+import com.catkatpowered.katserver.database.jdbc.JdbcCursor;
+import com.catkatpowered.katserver.database.jdbc.JdbcMapper;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.query.QueryRenderer;
 import com.catkatpowered.katserver.database.type.ActionsType;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.*;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * 解析 sql 并存储为安全的预编译语句 <br>
  * 执行一句语句流程 <br>
- * 1. 初始化预编译缓存 <br>
+ * 1. 按 (表名, 查询形状) 查找预编译缓存 <br>
  * 2. 解析实体类 注入参数 <br>
  * 3. 提交至数据库 <br>
  * <br>
@@ -27,302 +37,386 @@ import java.util.*;
  * 2. 解析数据实体将 Java 数据类型动态推导为 sql 类型 <br>
  * 数据注解 -> 无注解自然语序数据
  * 读取到的第一个变量为主键 <br>
- * 3. 拼接 sql 进行预编译 <br>
+ * 3. 按查询形状渲染 sql 进行预编译 <br>
  * <br>
  * <p>
- * 解析实体类 <br>
- * 1. 判断是否为主键类型的 CURD 仅有主键作为索引的实体类有预编译缓存 <br>
- * 2. 扫描注解 提取数据 <br>
- * 数据注解 -> 无注解自然语序数据
- * 读取到的第一个变量为主键 <br>
- * 3. 注入到预编译语句
+ * upsert 使用 INSERT ... ON CONFLICT (主键) DO UPDATE 一条语句完成 不需要先查询再决定插入或更新 <br>
+ * <br>
+ * <p>
+ * 查询形状只由列名 比较方式 排序和是否限制行数决定 <br>
+ * 形状相同的查询不论绑定什么值都会复用同一个预编译语句 <br>
+ * 预编译缓存跟随链接存放 见 SQLiteConnection <br>
+ * <br>
+ * <p>
+ * 分片时每个操作先按表名找到所在的分片 再在分片上按以上流程执行 见 SQLiteShards
  */
 @Slf4j
 public class SQLiteActions implements DatabaseActions {
 
-    // 预编译缓存 key 为表名
-    // value 为嵌套 Map
-    // - 嵌套 Map key 为 CURD 中的一个操作 value 为预编译的 statement
-    Map<String, Map<ActionsType, PreparedStatement>> mapping = new HashMap<>();
+    // sql 渲染器 Sqlite 使用双引号包裹标识符
+    QueryRenderer renderer = new QueryRenderer("\"");
     // 动态类型推导器
     DatabaseTypeTransfer transfer = new SQLiteTypeTransfer();
 
     @Override
-    public <T> void create(DatabaseConnection connection, String table, T data) {
-        Connection jdbc = connection.getJdbcConnection();
-        if (!validateTableExist(jdbc, table)) {
-            // 创建表
-            String sql = createTable(table, data);
-            try {
-                jdbc.prepareStatement(sql).execute();
-            } catch (SQLException exception) {
-                log.error(String.valueOf(exception));
-            }
+    public <T> boolean create(DatabaseConnection connection, String table, T data) {
+        return this.create(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean create(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
         }
-        // 判断是否在 mapping 中缓存
-        if (!mapping.containsKey(table)) {
-            mapping.put(table, new HashMap<>());
-        }
-        if (!mapping.get(table).containsKey(ActionsType.CREATE)) {
-            // 没有缓存 则创建预编译语句
-            // 注入变量到预编译语句
-            StringBuilder builder = new StringBuilder();
-            builder.append("INSERT INTO ").append(table).append("VALUES(");
-            for (int i = 0; i < data.getClass().getFields().length; i++) {
-                if (i != 0) {
-                    builder.append(", ");
-                }
-                builder.append("?");
-            }
-            builder.append(");");
-            try {
-                PreparedStatement statement = connection.getJdbcConnection()
-                        .prepareStatement(builder.toString());
-                mapping.get(table).put(ActionsType.CREATE, statement);
-            } catch (SQLException exception) {
-                log.error(String.valueOf(exception));
-            }
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        return this.batch(this.route(connection, table), table, entity, ActionsType.CREATE,
+                () -> renderer.insert(table, entity.getColumnNames()), data);
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, T data) {
+        return this.upsert(connection, table, List.of(data));
+    }
+
+    @Override
+    public <T> boolean upsert(DatabaseConnection connection, String table, List<T> data) {
+        if (data.isEmpty()) {
+            return true;
         }
-        // 命中缓存 注入变量到预编译语句
-        PreparedStatement statement = this.injectInsertDataToPreparedStatement(
-                mapping.get(table).get(ActionsType.CREATE), data);
+        DatabaseEntity<T> entity = DatabaseEntity.of(data.get(0));
+        return this.batch(this.route(connection, table), table, entity, ActionsType.UPSERT, () -> renderer.upsert(table,
+                entity.getColumnNames(), entity.getUpdatableColumnNames(), entity.getPrimaryKey().getName()), data);
+    }
+
+    @Override
+    public boolean delete(DatabaseConnection connection, String table, DatabaseQuery query) {
         try {
-            statement.executeQuery();
+            this.write(this.route(connection, table), sqlite -> {
+                PreparedStatement statement = this.prepare(sqlite, table, ActionsType.DELETE, query,
+                        () -> renderer.delete(table, query));
+                JdbcMapper.inject(statement, query.getParameters(), 1);
+                return statement.executeUpdate();
+            });
         } catch (SQLException exception) {
             log.error(String.valueOf(exception));
+            return false;
         }
+        return true;
     }
 
+    /**
+     * 删除整张表 Sqlite 只把表占用的页放回空闲列表 不逐行删除 也不维护索引
+     */
     @Override
-    public <T> void delete(DatabaseConnection connection, String table, T data) {
-        // 判断是否在 mapping 中缓存
-        if (!mapping.containsKey(table)) {
-            mapping.put(table, new HashMap<>());
-        }
-        if (!mapping.get(table).containsKey(ActionsType.DELETE)) {
-            // 没有缓存 则创建预编译语句
-            // 注入变量到预编译语句
-            String sql = "DELETE FROM " + table + " WHERE ? = ?";
-            try {
-                PreparedStatement statement = connection.getJdbcConnection().prepareStatement(sql);
-                mapping.get(table).put(ActionsType.DELETE, statement);
-            } catch (SQLException exception) {
-                log.error(String.valueOf(exception));
-            }
+    public void drop(DatabaseConnection connection, String table) {
+        DatabaseConnection shard = this.route(connection, table);
+        try {
+            this.write(shard, sqlite -> {
+                try (Statement statement = sqlite.getJdbcConnection().createStatement()) {
+                    statement.execute("DROP TABLE IF EXISTS " + renderer.quote(table));
+                }
+                sqlite.invalidateStatements(table);
+                if (shard instanceof SQLiteRouter router) {
+                    router.getSchema().unregister(table);
+                    // 删表被回滚时表仍然存在
+                    router.onRollback(() -> router.getSchema().register(table));
+                }
+                return null;
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
         }
-        Object[] values = this.validateFieldValueExist(data);
-        if (values == null) {
-            return;
+    }
+
+    @Override
+    public List<String> tables(DatabaseConnection connection) {
+        if (connection instanceof SQLiteShards shards) {
+            List<String> tables = new ArrayList<>();
+            shards.getShards().forEach(router -> tables.addAll(router.getSchema().getTables()));
+            return tables;
+        }
+        if (connection instanceof SQLiteRouter router) {
+            return new ArrayList<>(router.getSchema().getTables());
         }
-        // 命中缓存 注入变量到预编译语句
-        PreparedStatement statement = this.injectDeleteDataToPreparedStatement(
-                mapping.get(table).get(ActionsType.DELETE), values);
         try {
-            statement.executeQuery();
+            return this.read(connection, sqlite -> getTables(sqlite.getJdbcConnection()));
         } catch (SQLException exception) {
             log.error(String.valueOf(exception));
         }
+        return new ArrayList<>();
     }
 
     @Override
-    public <T> List<T> read(DatabaseConnection connection, String table, T data) {
-        // 判断是否在 mapping 中缓存
-        if (!mapping.containsKey(table)) {
-            mapping.put(table, new HashMap<>());
-        }
-        if (!mapping.get(table).containsKey(ActionsType.READ)) {
-            // 没有缓存 则创建预编译语句
-            // 注入变量到预编译语句
-            String sql = "SELECT * FROM " + table + " WHERE ? = ?";
-            try {
-                PreparedStatement statement = connection.getJdbcConnection().prepareStatement(sql);
-                mapping.get(table).put(ActionsType.READ, statement);
-            } catch (SQLException exception) {
-                log.error(String.valueOf(exception));
-            }
+    public <T> List<T> read(DatabaseConnection connection, String table, Class<T> type, DatabaseQuery query) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        try {
+            return this.read(this.route(connection, table), sqlite -> {
+                List<T> result = new ArrayList<>();
+                PreparedStatement statement = this.prepare(sqlite, table, ActionsType.READ, query,
+                        () -> renderer.select(table, query));
+                JdbcMapper.inject(statement, query.getParameters(), 1);
+                try (ResultSet set = statement.executeQuery()) {
+                    // 注入结果集到对象 每行一个新的数据实体
+                    while (set.next()) {
+                        result.add(JdbcMapper.toEntity(set, entity));
+                    }
+                }
+                return result;
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
         }
-        Object[] values = this.validateFieldValueExist(data);
-        if (values == null) {
-            return null;
+        return new ArrayList<>();
+    }
+
+    @Override
+    public <T> DatabaseCursor<T> cursor(DatabaseConnection connection, String table, Class<T> type,
+                                        DatabaseQuery query, int fetchSize) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        // 游标在消费期间独占一条只读链接 关闭时归还
+        DatabaseConnection shard = this.route(connection, table);
+        SQLiteRouter router = shard instanceof SQLiteRouter ? (SQLiteRouter) shard : null;
+        SQLiteConnection reader = router == null ? null : router.borrowReader();
+        if (router != null && reader == null) {
+            // 没有只读链接时 (如内存数据库) 写链接只能在写线程上使用 在写线程中一次读出全部结果
+            return DatabaseCursor.of(this.read(connection, table, type, query));
         }
-        // 命中缓存 注入变量到预编译语句
-        PreparedStatement statement = this.injectReadDataToPreparedStatement(mapping.get(table).get(ActionsType.READ),
-                values);
-        List<T> result = new ArrayList<>();
+        Runnable release = reader == null ? () -> {} : () -> router.giveBack(reader);
+        Connection jdbc = reader == null ? shard.getJdbcConnection() : reader.getJdbcConnection();
+        // 游标独占预编译语句 不放入缓存 关闭游标时一并关闭
         try {
+            PreparedStatement statement = jdbc.prepareStatement(renderer.select(table, query));
+            statement.setFetchSize(fetchSize);
+            JdbcMapper.inject(statement, query.getParameters(), 1);
             ResultSet set = statement.executeQuery();
-            // 注入结果集到对象
-            while (set.next()) {
-                result.add(injectResultSetToData(set, data));
-            }
+            return new JdbcCursor<>(statement, set, row -> JdbcMapper.toEntity(row, entity), release);
         } catch (SQLException exception) {
             log.error(String.valueOf(exception));
         }
-        return result;
+        release.run();
+        return DatabaseCursor.empty();
     }
 
     @Override
-    public <T> void update(DatabaseConnection connection, String table, T data) {
-        // 判断是否在 mapping 中缓存
-        if (!mapping.containsKey(table)) {
-            mapping.put(table, new HashMap<>());
-        }
-        if (!mapping.get(table).containsKey(ActionsType.UPDATE)) {
-            StringBuilder builder = new StringBuilder("UPDATE ").append(table).append(" SET ");
-            // 没有缓存 则创建预编译语句
-            Field[] fields = data.getClass().getDeclaredFields();
-            for (int count = 0; count < fields.length; count++) {
-                Field field = fields[count];
-                if (count != 0) {
-                    builder.append(", ");
-                }
-                if (field.isAnnotationPresent(SqliteMetadata.class)) {
-                    builder.append(field.getAnnotation(SqliteMetadata.class).name()).append(" = ?");
-                }
-            }
-            builder.append(" WHERE ? = ?");
-            try {
-                PreparedStatement statement = connection.getJdbcConnection()
-                        .prepareStatement(builder.toString());
-                mapping.get(table).put(ActionsType.UPDATE, statement);
-            } catch (SQLException exception) {
-                log.error(String.valueOf(exception));
-            }
+    public <T> boolean update(DatabaseConnection connection, String table, T data, DatabaseQuery query) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(data);
+        try {
+            this.write(this.route(connection, table), sqlite -> {
+                PreparedStatement statement = this.prepare(sqlite, table, ActionsType.UPDATE, query,
+                        () -> renderer.update(table, entity.getUpdatableColumnNames(), query));
+                // 先注入 SET 的值 再注入 WHERE 的值
+                List<Object> values = entity.getUpdatableValues(data);
+                JdbcMapper.inject(statement, values, 1);
+                JdbcMapper.inject(statement, query.getParameters(), values.size() + 1);
+                return statement.executeUpdate();
+            });
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public <T> List<String> validateIndexes(DatabaseConnection connection, Class<T> type) {
+        DatabaseEntity<T> entity = DatabaseEntity.of(type);
+        if (connection instanceof SQLiteShards shards) {
+            List<String> missing = new ArrayList<>();
+            shards.getShards().forEach(router -> missing.addAll(this.validateIndexes(router, type)));
+            return missing;
         }
-        // 命中缓存 注入变量到预编译语句
-        PreparedStatement statement = this.injectUpdateDataToPreparedStatement(
-                mapping.get(table).get(ActionsType.UPDATE)
-                , data);
         try {
-            statement.executeQuery();
+            // 缺少列的表无法写入 直接补齐 增加列只修改表结构 不改写已有的行
+            this.write(connection, sqlite -> this.addColumns(sqlite, entity));
+            if (entity.getIndexes().isEmpty()) {
+                return new ArrayList<>();
+            }
+            return this.read(connection, sqlite -> this.validateIndexes(sqlite.getJdbcConnection(), entity));
         } catch (SQLException exception) {
             log.error(String.valueOf(exception));
         }
+        return new ArrayList<>();
     }
 
     /**
-     * 创建一行数据时注入变量到预编译语句
+     * 旧版本的数据实体创建的表 (包含主键 其余的列都在数据实体中) 补齐之后增加的列
      *
-     * @param statement 预编译语句
-     * @param data      数据实体
-     * @return 注入完成的语句
+     * @return 增加的列数
      */
-    private PreparedStatement injectInsertDataToPreparedStatement(PreparedStatement statement,
-            Object data) {
-        Field[] fields = data.getClass().getDeclaredFields();
-        for (int count = 0; count < fields.length; count++) {
-            try {
-                // 备注下 statement 的索引从 1 开始
-                statement.setObject(count + 1, fields[count].get(data));
-            } catch (SQLException | IllegalAccessException exception) {
-                log.error(String.valueOf(exception));
+    private int addColumns(SQLiteConnection sqlite, DatabaseEntity<?> entity) throws SQLException {
+        Connection jdbc = sqlite.getJdbcConnection();
+        if (entity.getPrimaryKey() == null) {
+            return 0;
+        }
+        int added = 0;
+        for (String table : this.getTables(jdbc)) {
+            List<String> columns = this.getColumns(jdbc, table);
+            if (!columns.contains(entity.getPrimaryKey().getName()) || !entity.getColumnNames().containsAll(columns)) {
+                continue;
+            }
+            for (DatabaseColumn column : entity.getColumns()) {
+                if (columns.contains(column.getName())) {
+                    continue;
+                }
+                try (PreparedStatement statement = jdbc.prepareStatement("ALTER TABLE " + renderer.quote(table)
+                        + " ADD COLUMN " + renderer.quote(column.getName()) + " " + this.columnType(column))) {
+                    statement.execute();
+                }
+                log.info("added column {} to table {}.", column.getName(), table);
+                sqlite.invalidateStatements(table);
+                added++;
             }
         }
-        return statement;
+        return added;
+    }
+
+    private List<String> validateIndexes(Connection jdbc, DatabaseEntity<?> entity) throws SQLException {
+        List<String> missing = new ArrayList<>();
+        for (String table : this.getTables(jdbc)) {
+            // 只检查列与数据实体一致的表
+            if (!this.getColumns(jdbc, table).containsAll(entity.getColumnNames())) {
+                continue;
+            }
+            List<List<String>> existing = this.getIndexedColumns(jdbc, table);
+            for (DatabaseIndex index : entity.getIndexes()) {
+                // 已有索引的前缀列与声明一致即可满足查询
+                boolean covered = existing.stream().anyMatch(columns -> columns.size() >= index.getColumns().size()
+                    && columns.subList(0, index.getColumns().size()).equals(index.getColumns()));
+                if (!covered) {
+                    missing.add(createIndex(table, index));
+                }
+            }
+        }
+        return missing;
     }
 
     /**
-     * 删除某行数据时注入变量到预编译语句 只需要注入一个参数
-     *
-     * @param statement 预编译语句
-     * @param data      列名和数据内容
-     * @return 注入完成的语句
+     * 在写链接上批量执行插入类语句 <br>
+     * 只有一行时直接执行 多行时整批放在同一个保存点中 不在写线程的事务中时也只提交一次
      */
-    private PreparedStatement injectDeleteDataToPreparedStatement(PreparedStatement statement,
-            Object[] data) {
+    private <T> boolean batch(DatabaseConnection connection, String table, DatabaseEntity<T> entity,
+                              ActionsType type, Supplier<String> sql, List<T> data) {
         try {
-            // 备注下 statement 的索引从 1 开始
-            statement.setObject(1, data[0]);
-            statement.setObject(2, data[1]);
+            this.write(connection, sqlite -> {
+                this.ensureTable(connection, sqlite, table, entity);
+                PreparedStatement statement = this.prepare(sqlite, table, type, null, sql);
+                if (data.size() == 1) {
+                    JdbcMapper.inject(statement, entity.getValues(data.get(0)), 1);
+                    return statement.executeUpdate();
+                }
+                try (Statement savepoint = sqlite.getJdbcConnection().createStatement()) {
+                    savepoint.execute("SAVEPOINT kat_batch");
+                    try {
+                        for (T row : data) {
+                            JdbcMapper.inject(statement, entity.getValues(row), 1);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    } catch (SQLException exception) {
+                        statement.clearBatch();
+                        savepoint.execute("ROLLBACK TO kat_batch");
+                        savepoint.execute("RELEASE kat_batch");
+                        throw exception;
+                    }
+                    savepoint.execute("RELEASE kat_batch");
+                }
+                return data.size();
+            });
         } catch (SQLException exception) {
             log.error(String.valueOf(exception));
+            return false;
         }
-        return statement;
+        return true;
     }
 
     /**
-     * 读取某行数据时注入变量到预编译语句
+     * 分片时取得表所在分片的链接 未分片时原样返回
      */
-    private PreparedStatement injectReadDataToPreparedStatement(PreparedStatement statement, Object[] data) {
-        try {
-            // 备注下 statement 的索引从 1 开始
-            statement.setObject(1, data[0]);
-            statement.setObject(2, data[1]);
-        } catch (SQLException exception) {
-            log.error(String.valueOf(exception));
+    private DatabaseConnection route(DatabaseConnection connection, String table) {
+        return connection instanceof SQLiteShards shards ? shards.route(table) : connection;
+    }
+
+    /**
+     * 在写链接上执行 读写分离时进入写线程的队列
+     */
+    private <R> R write(DatabaseConnection connection, SQLiteTask<R> task) throws SQLException {
+        if (connection instanceof SQLiteRouter router) {
+            return router.write(task);
         }
-        return statement;
+        return task.execute((SQLiteConnection) connection);
     }
 
     /**
-     * 更新数据时注入变量到预编译语句
-     *
-     * @param statement 预编译语句
-     * @param data      数据实体
-     * @return 注入完成的语句
+     * 在只读链接上执行 读写分离时从只读链接池借出链接
      */
-    private PreparedStatement injectUpdateDataToPreparedStatement(PreparedStatement statement, Object data) {
-        Field[] fields = data.getClass().getDeclaredFields();
-        boolean havePrimaryKey = this.validatePrimaryKeyExist(fields);
-        for (int count = 0; count < fields.length; count++) {
-            Field field = fields[count];
-            try {
-                if (count == 0 && !havePrimaryKey) {
-                    // 查询注解 查看是否有列名
-                    if (field.isAnnotationPresent(SqliteMetadata.class)) {
-                        statement.setObject(count, field.getAnnotation(SqliteMetadata.class).name());
-                        statement.setObject(count + 1, field.get(data));
-                    } else {
-                        // 没有列名 则使用字段名
-                        statement.setObject(count, transfer.getDataType(field.getName()));
-                        statement.setObject(count + 1, field.get(data));
-                    }
-                }
-                if (havePrimaryKey) {
-                    SqliteMetadata metadata = field.getAnnotation(SqliteMetadata.class);
-                    statement.setObject(fields.length, metadata.name());
-                    statement.setObject(fields.length + 1, field.get(data));
-                }
-                // 备注下 statement 的索引从 1 开始
-                statement.setObject(count + 1, field.get(data));
-            } catch (SQLException | IllegalAccessException exception) {
-                log.error(String.valueOf(exception));
-            }
+    private <R> R read(DatabaseConnection connection, SQLiteTask<R> task) throws SQLException {
+        if (connection instanceof SQLiteRouter router) {
+            return router.read(task);
         }
-        return statement;
+        return task.execute((SQLiteConnection) connection);
     }
 
     /**
-     * 回写数据库返回的数据值到数据实体
+     * 取得 (表名, 形状) 对应的预编译语句 <br>
+     * 每条链接同一时间只被一个线程使用 因此取出的语句无需加锁
+     *
+     * @param connection 链接
+     * @param table      表名
+     * @param type       操作类型
+     * @param query      查询条件 插入时为 null
+     * @param sql        未命中缓存时才渲染 sql
+     * @return 预编译语句
      */
-    private <T> T injectResultSetToData(ResultSet set, T data) {
-        // 获取数据实体变量
-        Field[] fields = data.getClass().getDeclaredFields();
-        // 遍历变量
-        try {
-            for (Field field : fields) {
-                // 获取变量名对应的列名
-                String columnName = field.isAnnotationPresent(SqliteMetadata.class)
-                        ? field.getAnnotation(SqliteMetadata.class).name() : field.getName();
-                // 从结果集中获取数据
-                field.set(data, set.getObject(columnName));
+    private PreparedStatement prepare(SQLiteConnection connection, String table, ActionsType type,
+                                      DatabaseQuery query, Supplier<String> sql) throws SQLException {
+        String shape = query == null ? type.name() : type.name() + ":" + query.getShape();
+        return connection.prepareStatement(table, shape, sql);
+    }
+
+    /**
+     * 表不存在时创建表和声明的二级索引 并登记到表结构中 <br>
+     * 建表与写入在同一个事务中 写入失败回滚时建表也被撤销 因此同时登记回滚时的注销 <br>
+     * 只在写链接上调用
+     */
+    private void ensureTable(DatabaseConnection connection, SQLiteConnection sqlite, String table,
+                             DatabaseEntity<?> entity) throws SQLException {
+        Connection jdbc = sqlite.getJdbcConnection();
+        if (validateTableExist(connection, jdbc, table)) {
+            return;
+        }
+        // 创建表
+        try (PreparedStatement statement = jdbc.prepareStatement(createTable(table, entity))) {
+            statement.execute();
+        }
+        // 创建声明的二级索引
+        for (DatabaseIndex index : entity.getIndexes()) {
+            try (PreparedStatement statement = jdbc.prepareStatement(createIndex(table, index))) {
+                statement.execute();
             }
-        } catch (SQLException | IllegalAccessException e) {
-            log.error(String.valueOf(e));
         }
-        return data;
+        if (connection instanceof SQLiteRouter router) {
+            router.getSchema().register(table);
+            router.onRollback(() -> {
+                router.getSchema().unregister(table);
+                sqlite.invalidateStatements(table);
+            });
+        }
     }
 
     /**
-     * 判断表是否存在
+     * 判断表是否存在 <br>
+     * 读写分离时查询启动时载入的表结构登记 不产生任何数据库查询
      *
      * @param connection 链接
+     * @param jdbc       执行查询的 JDBC 链接
      * @param table      表明
      * @return 是否存在 Boolean 值
      */
-    private boolean validateTableExist(Connection connection, String table) {
-        try {
-            ResultSet result = connection.getMetaData().getTables(null, null, table, null);
+    private boolean validateTableExist(DatabaseConnection connection, Connection jdbc, String table) {
+        if (connection instanceof SQLiteRouter router) {
+            return router.getSchema().contains(table);
+        }
+        try (ResultSet result = jdbc.getMetaData().getTables(null, null, table, null)) {
             return result.next();
         } catch (SQLException exception) {
             log.error(String.valueOf(exception));
@@ -331,70 +425,111 @@ public class SQLiteActions implements DatabaseActions {
     }
 
     /**
-     * 反射访问数据实体的变量 是否存在不为 null 的变量 不存在则返回 null 存在则返回第一个不为 null 变量的变量名和值 返回的是一个
-     * Object 数组 下标 0 为列名 下标
-     * 1 为值
+     * 数据库中全部的表
      */
-    private Object[] validateFieldValueExist(Object data) {
-        Field[] fields = data.getClass().getDeclaredFields();
-        try {
-            for (Field field : fields) {
-                if (field.get(data) != null) {
-                    return new Object[]{getColumnName(field.getName()), field.get(data)};
+    private List<String> getTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'");
+             ResultSet set = statement.executeQuery()) {
+            while (set.next()) {
+                tables.add(set.getString(1));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 表中全部的列名
+     */
+    private List<String> getColumns(Connection connection, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "PRAGMA table_info(" + renderer.quote(table) + ")");
+             ResultSet set = statement.executeQuery()) {
+            while (set.next()) {
+                columns.add(set.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 表中每个索引 (包括主键和唯一约束生成的索引) 按顺序包含的列
+     */
+    private List<List<String>> getIndexedColumns(Connection connection, String table) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "PRAGMA index_list(" + renderer.quote(table) + ")");
+             ResultSet set = statement.executeQuery()) {
+            while (set.next()) {
+                indexes.add(set.getString("name"));
+            }
+        }
+        List<List<String>> result = new ArrayList<>();
+        for (String index : indexes) {
+            List<String> columns = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "PRAGMA index_info(" + renderer.quote(index) + ")");
+                 ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    columns.add(set.getString("name"));
                 }
             }
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+            result.add(columns);
         }
-        return null;
+        return result;
     }
 
     /**
-     * 判断数据存在的注解是否有被标记为主键
+     * 创建一个二级索引 索引已存在时不做任何事
      *
-     * @param fields 变量组
-     * @return 任意变量被标记主键则返回 true
+     * @param table 表名
+     * @param index 索引声明
      */
-    private boolean validatePrimaryKeyExist(Field[] fields) {
-        // 判断是否有任意变量被注解标记为主键
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(SqliteMetadata.class)) {
-                SqliteMetadata metadata = field.getAnnotation(SqliteMetadata.class);
-                if (metadata.isPrimaryKey()) {
-                    return true;
-                }
+    private String createIndex(String table, DatabaseIndex index) {
+        StringBuilder builder = new StringBuilder("CREATE ");
+        if (index.isUnique()) {
+            builder.append("UNIQUE ");
+        }
+        builder.append("INDEX IF NOT EXISTS ")
+                .append(renderer.quote(index.getName(table)))
+                .append(" ON ")
+                .append(renderer.quote(table))
+                .append(" (");
+        for (int count = 0; count < index.getColumns().size(); count++) {
+            if (count != 0) {
+                builder.append(", ");
             }
+            builder.append(renderer.quote(index.getColumns().get(count)));
         }
-        return false;
+        return builder.append(");").toString();
     }
 
     /**
      * 创建一个表
      *
-     * @param table 表名
-     * @param data  元数据
+     * @param table  表名
+     * @param entity 元数据
      */
-    private String createTable(String table, Object data) {
+    private String createTable(String table, DatabaseEntity<?> entity) {
         StringBuilder builder = new StringBuilder();
-        // 反射扫描变量
-        // 获取变量列表
-        Field[] fields = data.getClass().getDeclaredFields();
         // 判断是否存在主键
-        boolean havePrimaryKey = this.validatePrimaryKeyExist(fields);
-        builder.append("CREATE TABLE ").append(table).append(" (");
+        boolean havePrimaryKey = entity.isPrimaryKeyDeclared();
+        builder.append("CREATE TABLE IF NOT EXISTS ").append(renderer.quote(table)).append(" (");
 
         // 遍历添加到 sql 语句中
-        for (int count = 0; count < fields.length; count++) {
-            Field field = fields[count];
+        List<DatabaseColumn> columns = entity.getColumns();
+        for (int count = 0; count < columns.size(); count++) {
+            DatabaseColumn column = columns.get(count);
             // 添加分隔符号
             if (count != 0) {
                 builder.append(", ");
             }
-            // 获取注解 存在注解则从注解获取数据类型
-            if (field.isAnnotationPresent(SqliteMetadata.class)) {
-                // 存在注解 获取注解
-                SqliteMetadata metadata = field.getAnnotation(SqliteMetadata.class);
-                builder.append(metadata.name()).append(" ").append(metadata.type());
+            builder.append(renderer.quote(column.getName())).append(" ").append(this.columnType(column));
+            // 获取注解 存在注解则添加约束
+            if (column.getMetadata() != null) {
+                SqliteMetadata metadata = column.getMetadata();
                 // 添加约束
                 if (metadata.isNotNull()) {
                     builder.append(" NOT NULL");
@@ -406,16 +541,10 @@ public class SQLiteActions implements DatabaseActions {
                     builder.append(" UNIQUE");
                 }
                 if (metadata.isAutoincrement()) {
-                    builder.append(" AUTO_INCREMENT");
+                    builder.append(" AUTOINCREMENT");
                 }
-                // 特殊情况 任意变量中注解中没有标记主键
-            } else {
-                // 没有注解 推导类型 使用变量名全小写
-                builder.append(getColumnName(field.getName()))
-                        .append(" ")
-                        .append(transfer.getDataType(field));
-                // 没有注解 指定第一个变量为主键
             }
+            // 没有注解 指定第一个变量为主键
             if (count == 0 && !havePrimaryKey) {
                 builder.append(" PRIMARY KEY");
             }
@@ -424,22 +553,10 @@ public class SQLiteActions implements DatabaseActions {
         return builder.append(");").toString();
     }
 
-    /**
-     * 字符串全小写 遇到大写字母在大写字母前添加下划线并将该字母小写
-     *
-     * @param strings 字符串
-     * @return 全小写字符串
-     */
-    private String getColumnName(String strings) {
-        char[] chars = strings.toCharArray();
-        StringBuilder builder = new StringBuilder();
-        for (char c : chars) {
-            if (Character.isUpperCase(c)) {
-                builder.append("_");
-            }
-            builder.append(c);
-        }
-        return builder.toString().toLowerCase(Locale.ROOT);
+    // 存在注解则从注解获取数据类型 没有注解时推导类型
+    private String columnType(DatabaseColumn column) {
+        return column.getMetadata() != null
+                ? column.getMetadata().type()
+                : transfer.getDataType(column.getField());
     }
-
 }
@@ -0,0 +1,472 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.common.constants.KatMiscConstants;
+import com.catkatpowered.katserver.database.metrics.DatabaseMetrics;
+import com.catkatpowered.katserver.database.metrics.OperationSnapshot;
+import com.catkatpowered.katserver.database.type.ActionsType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.sqlite.ProgressHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Sqlite 在线快照 服务器运行时定时复制数据库文件 <br>
+ * 使用 VACUUM INTO 在一个读事务中复制 WAL 模式下读事务不阻塞写入 复制得到的是开始时刻的一致状态 <br>
+ * 这个版本的驱动不能按页分步调用备份接口 因此改用 Sqlite 的进度回调 每执行一段指令暂停一次 <br>
+ * 暂停的时长按最近一秒写操作的 p99 耗时调节 超过 latency_budget 时复制时间占比减半 否则逐步恢复到 max_busy <br>
+ * 复制期间检查点不能越过快照 WAL 文件会变大 复制结束后的检查点会把它写回 <br>
+ * 快照的存放方式见 SQLiteSnapshots <br>
+ * <br>
+ * 用法: <br>
+ * SQLiteBackup backup 链接地址 快照目录 [分片数] 立即生成一次快照 服务器可以在运行 <br>
+ * SQLiteBackup restore 快照目录 数据库名 数据库文件 [快照编号] 恢复 服务器必须停止 <br>
+ * SQLiteBackup list 快照目录
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SQLiteBackup {
+    // 默认两次快照之间的分钟数
+    public static final long DEFAULT_INTERVAL = 60;
+    // 默认两次全量快照之间的增量快照数
+    public static final int DEFAULT_FULL_EVERY = 24;
+    // 默认保留的全量快照数
+    public static final int DEFAULT_KEEP = 2;
+    // 默认写操作 p99 耗时上限 毫秒
+    public static final long DEFAULT_LATENCY_BUDGET = 50;
+    // 默认复制时间占比
+    public static final double DEFAULT_MAX_BUSY = 0.5;
+    // 写入延迟超出时复制时间占比的下限
+    private static final double MIN_BUSY = 0.05;
+    // 写入延迟没有超出时每秒恢复的复制时间占比
+    private static final double BUSY_STEP = 0.05;
+    // 每执行多少条虚拟机指令调用一次进度回调
+    private static final int PROGRESS_INSTRUCTIONS = 1000;
+    // 每复制多少纳秒暂停一次
+    private static final long STEP = 10_000_000;
+    // 检查写入延迟的间隔 纳秒
+    private static final long CHECK_INTERVAL = 1_000_000_000;
+    private static final Set<ActionsType> WRITES =
+            EnumSet.of(ActionsType.CREATE, ActionsType.UPDATE, ActionsType.UPSERT, ActionsType.DELETE);
+    private static final DateTimeFormatter ID =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    @Getter
+    private final boolean enabled;
+    @Getter
+    private final Path directory;
+    @Getter
+    private final long interval;
+    @Getter
+    private final int fullEvery;
+    @Getter
+    private final int keep;
+    @Getter
+    private final long latencyBudget;
+    @Getter
+    private final double maxBusy;
+
+    private final List<String> urls = new ArrayList<>();
+    private SQLiteProfile profile = SQLiteProfile.builder().build();
+    // 为 null 时不按写入延迟调节 只按 max_busy 暂停
+    private DatabaseMetrics metrics;
+    // 数据库名 -> 最近一次快照的进度
+    private final Map<String, SQLiteBackupProgress> progress = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    public SQLiteBackup(boolean enabled, Path directory, long interval, int fullEvery, int keep,
+                        long latencyBudget, double maxBusy) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.interval = interval;
+        this.fullEvery = fullEvery;
+        this.keep = keep;
+        this.latencyBudget = latencyBudget;
+        this.maxBusy = Math.max(MIN_BUSY, Math.min(1, maxBusy));
+    }
+
+    /**
+     * 从配置文件的 sqlite_backup 节点读取 缺省的项使用默认值
+     *
+     * @param config sqlite_backup 节点 可以为 null
+     */
+    public static SQLiteBackup fromConfig(Map<String, Object> config) {
+        boolean enabled = false;
+        String directory = null;
+        long interval = DEFAULT_INTERVAL;
+        int fullEvery = DEFAULT_FULL_EVERY;
+        int keep = DEFAULT_KEEP;
+        long latencyBudget = DEFAULT_LATENCY_BUDGET;
+        double maxBusy = DEFAULT_MAX_BUSY;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_ENABLED) != null) {
+                enabled = Boolean.parseBoolean(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_ENABLED).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_DIRECTORY) != null) {
+                directory = config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_DIRECTORY).toString();
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_INTERVAL) != null) {
+                interval = Long.parseLong(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_INTERVAL).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_FULL_EVERY) != null) {
+                fullEvery = Integer.parseInt(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_FULL_EVERY).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_KEEP) != null) {
+                keep = Integer.parseInt(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_KEEP).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_LATENCY_BUDGET) != null) {
+                latencyBudget = Long.parseLong(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_LATENCY_BUDGET).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_MAX_BUSY) != null) {
+                maxBusy = Double.parseDouble(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP_MAX_BUSY).toString());
+            }
+        }
+        return new SQLiteBackup(enabled, Path.of(directory == null || directory.isEmpty()
+                ? KatMiscConstants.KAT_SQLITE_BACKUP_PATH : directory),
+                interval, fullEvery, keep, latencyBudget, maxBusy);
+    }
+
+    /**
+     * 登记要复制的数据库 启用且 interval 大于 0 时启动定时快照 <br>
+     * 内存数据库没有文件 不复制
+     *
+     * @param urls    每个分片的链接地址
+     * @param profile 打开复制所用的链接时应用的性能配置
+     * @param metrics 写操作统计 可以为 null
+     */
+    public synchronized void start(List<String> urls, SQLiteProfile profile, DatabaseMetrics metrics) {
+        this.urls.clear();
+        for (String url : urls) {
+            if (url.contains(":memory:") || url.contains("mode=memory")) {
+                log.warn("{} is an in-memory database and will not be backed up.", url);
+                continue;
+            }
+            this.urls.add(url);
+        }
+        this.profile = profile;
+        this.metrics = metrics;
+        if (!enabled || interval <= 0 || scheduler != null || this.urls.isEmpty()) {
+            return;
+        }
+        // 其他日志模式下读事务会阻塞写入
+        if (!"WAL".equalsIgnoreCase(profile.getJournalMode())) {
+            log.warn("sqlite backup needs journal_mode WAL to run beside writes, scheduled snapshots are disabled.");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kat-sqlite-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.snapshot();
+            } catch (RuntimeException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 立即为每个数据库文件生成一次快照 一个失败时继续复制其余的
+     *
+     * @return 每个数据库文件的结果
+     */
+    public synchronized List<SQLiteBackupProgress> snapshot() {
+        List<SQLiteBackupProgress> results = new ArrayList<>();
+        for (String url : urls) {
+            if (closed) {
+                break;
+            }
+            try {
+                results.add(this.snapshot(url));
+            } catch (SQLException | IOException exception) {
+                log.error(String.valueOf(exception));
+                results.add(progress.get(name(url)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 复制一个数据库文件并存为快照
+     */
+    public SQLiteBackupProgress snapshot(String url) throws SQLException, IOException {
+        SQLiteSnapshots snapshots = new SQLiteSnapshots(directory.resolve(name(url)));
+        Files.createDirectories(snapshots.getDirectory());
+        long now = System.currentTimeMillis();
+        String id = ID.format(Instant.ofEpochMilli(now));
+        Path copy = snapshots.getDirectory().resolve(id + ".tmp");
+        Files.deleteIfExists(copy);
+        SQLiteBackupProgress current = new SQLiteBackupProgress();
+        current.setName(name(url));
+        current.setSnapshot(id);
+        current.setStartedAt(now);
+        progress.put(current.getName(), current);
+        try {
+            try (Connection connection = DriverManager.getConnection(url)) {
+                profile.apply(connection);
+                current.setTotalBytes(usedBytes(connection));
+                ProgressHandler.setHandler(connection, PROGRESS_INSTRUCTIONS, new Throttle(current, copy));
+                try (PreparedStatement statement = connection.prepareStatement("VACUUM INTO ?")) {
+                    statement.setString(1, copy.toString());
+                    statement.execute();
+                }
+            }
+            current.setBytesCopied(Files.size(copy));
+            snapshots.store(id, copy, fullEvery, current);
+            int removed = snapshots.retain(keep);
+            current.setFinishedAt(System.currentTimeMillis());
+            current.setState(SQLiteBackupProgress.DONE);
+            log.info("{} snapshot {} of {}: {} bytes copied, {} of {} pages stored ({} bytes), "
+                            + "{} ms throttled in {} ms, {} old snapshots removed.",
+                    current.isIncremental() ? "incremental" : "full", id, current.getName(),
+                    current.getBytesCopied(), current.getChangedPages(), current.getPages(),
+                    current.getBytesWritten(), current.getThrottledMillis(),
+                    current.getFinishedAt() - current.getStartedAt(), removed);
+            return current;
+        } catch (SQLException | IOException exception) {
+            current.setFinishedAt(System.currentTimeMillis());
+            current.setState(SQLiteBackupProgress.FAILED);
+            Files.deleteIfExists(copy);
+            throw exception;
+        }
+    }
+
+    /**
+     * 每个数据库文件最近一次快照的进度 复制进行中时也可以读取
+     */
+    public List<SQLiteBackupProgress> getProgress() {
+        return new ArrayList<>(progress.values());
+    }
+
+    /**
+     * 停止定时快照 进行中的复制会被中断 <br>
+     * 不持有锁 否则要等进行中的快照结束
+     */
+    public void close() {
+        closed = true;
+        ScheduledExecutorService running = scheduler;
+        if (running != null) {
+            running.shutdownNow();
+            try {
+                running.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 链接地址对应的数据库名 即去掉扩展名的文件名 如 jdbc:sqlite:data/database-1.db -> database-1
+     */
+    public static String name(String url) {
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        if (path.startsWith("file:")) {
+            path = path.substring("file:".length());
+        }
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String name = Path.of(path).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    // 源数据库中使用中的页的字节数
+    private static long usedBytes(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            return (pragma(statement, "page_count") - pragma(statement, "freelist_count"))
+                    * pragma(statement, "page_size");
+        }
+    }
+
+    private static long pragma(Statement statement, String name) throws SQLException {
+        try (ResultSet result = statement.executeQuery("PRAGMA " + name)) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * 复制期间的进度回调 在执行 VACUUM INTO 的线程上调用 <br>
+     * 每复制 STEP 纳秒暂停一次 暂停时长使复制时间占比为 busy
+     */
+    private class Throttle extends ProgressHandler {
+        private final SQLiteBackupProgress current;
+        private final Path copy;
+        private double busy = maxBusy;
+        private long started = System.nanoTime();
+        private long checked = started;
+        private long[] writes = writeHistogram();
+        // 上一次记录日志时的进度 每 10% 记录一次
+        private int logged;
+
+        Throttle(SQLiteBackupProgress current, Path copy) {
+            this.current = current;
+            this.copy = copy;
+        }
+
+        @Override
+        protected int progress() {
+            // 返回非 0 时中断复制
+            if (closed) {
+                return 1;
+            }
+            long now = System.nanoTime();
+            long work = now - started;
+            if (work < STEP) {
+                return 0;
+            }
+            if (now - checked >= CHECK_INTERVAL) {
+                this.adjust();
+                checked = now;
+            }
+            long pause = (long) (work * (1 - busy) / busy);
+            try {
+                TimeUnit.NANOSECONDS.sleep(pause);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+            current.setThrottledMillis(current.getThrottledMillis() + pause / 1_000_000);
+            try {
+                current.setBytesCopied(Files.size(copy));
+            } catch (IOException ignored) {
+                // 副本还没有创建
+            }
+            int tenth = (int) (current.getPercent() / 10);
+            if (tenth > logged) {
+                logged = tenth;
+                log.info("sqlite snapshot {} of {}: {}% ({} of {} bytes), copy busy {}%.", current.getSnapshot(),
+                        current.getName(), tenth * 10, current.getBytesCopied(), current.getTotalBytes(),
+                        Math.round(busy * 100));
+            }
+            started = System.nanoTime();
+            return 0;
+        }
+
+        // 最近一段时间写操作的 p99 超出预算时复制时间占比减半 否则逐步增加
+        private void adjust() {
+            if (metrics == null) {
+                return;
+            }
+            long[] latest = writeHistogram();
+            long[] window = new long[latest.length];
+            long total = 0;
+            for (int index = 0; index < latest.length; index++) {
+                window[index] = latest[index] - (index < writes.length ? writes[index] : 0);
+                total += window[index];
+            }
+            writes = latest;
+            if (total > 0 && percentile(window, total, 0.99) > latencyBudget * 1000) {
+                busy = Math.max(MIN_BUSY, busy / 2);
+            } else {
+                busy = Math.min(maxBusy, busy + BUSY_STEP);
+            }
+        }
+    }
+
+    // 全部表上写操作的耗时直方图之和
+    private long[] writeHistogram() {
+        long[] histogram = new long[0];
+        if (metrics == null) {
+            return histogram;
+        }
+        for (OperationSnapshot snapshot : metrics.snapshot()) {
+            if (!WRITES.contains(ActionsType.valueOf(snapshot.getOperation()))) {
+                continue;
+            }
+            long[] counts = snapshot.getHistogram();
+            if (histogram.length < counts.length) {
+                histogram = Arrays.copyOf(histogram, counts.length);
+            }
+            for (int index = 0; index < counts.length; index++) {
+                histogram[index] += counts[index];
+            }
+        }
+        return histogram;
+    }
+
+    // 百分位数所在桶的上界 微秒 与 OperationMetrics 相同 误差不超过一倍
+    private static long percentile(long[] counts, long total, double quantile) {
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return 1L << (index + 1);
+            }
+        }
+        return 1L << counts.length;
+    }
+
+    public static void main(String[] args) throws SQLException, IOException {
+        if (args.length >= 3 && args[0].equals("backup")) {
+            int shards = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+            List<String> urls = new ArrayList<>();
+            for (int index = 0; index < shards; index++) {
+                urls.add(SQLiteShards.url(args[1], index));
+            }
+            SQLiteBackup backup = new SQLiteBackup(true, Path.of(args[2]), 0, DEFAULT_FULL_EVERY, DEFAULT_KEEP,
+                    DEFAULT_LATENCY_BUDGET, DEFAULT_MAX_BUSY);
+            backup.start(urls, SQLiteProfile.builder().readers(1).build(), null);
+            for (String url : backup.urls) {
+                backup.snapshot(url);
+            }
+        } else if (args.length >= 4 && args[0].equals("restore")) {
+            Path target = Path.of(args[3]);
+            new SQLiteSnapshots(Path.of(args[1]).resolve(args[2])).restore(args.length > 4 ? args[4] : null, target);
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + target);
+                 Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("PRAGMA quick_check")) {
+                log.info("quick check of {}: {}", target, result.next() ? result.getString(1) : "no result");
+            }
+        } else if (args.length == 2 && args[0].equals("list")) {
+            try (Stream<Path> names = Files.list(Path.of(args[1]))) {
+                for (Path name : names.filter(Files::isDirectory).sorted().toList()) {
+                    System.out.println(name.getFileName());
+                    for (Path snapshot : new SQLiteSnapshots(name).list()) {
+                        System.out.printf("  %s %s %d%n", SQLiteSnapshots.id(snapshot),
+                                SQLiteSnapshots.isFull(snapshot) ? "full" : "incremental", Files.size(snapshot));
+                    }
+                }
+            }
+        } else {
+            System.out.println("usage: SQLiteBackup backup <url> <directory> [shards]");
+            System.out.println("       SQLiteBackup restore <directory> <name> <database file> [snapshot]");
+            System.out.println("       SQLiteBackup list <directory>");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.google.gson.annotations.SerializedName;
+import lombok.Data;
+
+/**
+ * 一个数据库文件的一次快照的进度 <br>
+ * 复制进行中 bytesCopied 为已经写入副本的字节数 totalBytes 为源数据库中使用中的页的字节数 只用于估计进度
+ *
+ * @author hanbings
+ */
+@Data
+public class SQLiteBackupProgress {
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    @SerializedName("name")
+    private String name;
+    @SerializedName("snapshot")
+    private String snapshot;
+    @SerializedName("state")
+    private String state = RUNNING;
+    @SerializedName("total_bytes")
+    private long totalBytes;
+    @SerializedName("bytes_copied")
+    private long bytesCopied;
+    // 复制期间暂停的毫秒数
+    @SerializedName("throttled_ms")
+    private long throttledMillis;
+    @SerializedName("incremental")
+    private boolean incremental;
+    @SerializedName("pages")
+    private long pages;
+    @SerializedName("changed_pages")
+    private long changedPages;
+    // 快照文件的大小
+    @SerializedName("bytes_written")
+    private long bytesWritten;
+    @SerializedName("started_at")
+    private long startedAt;
+    @SerializedName("finished_at")
+    private long finishedAt;
+
+    public double getPercent() {
+        return totalBytes == 0 ? 0 : Math.min(100, bytesCopied * 100.0 / totalBytes);
+    }
+}
@@ -1,20 +1,98 @@
 package com.catkatpowered.katserver.database.sqlite;
 
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import lombok.extern.slf4j.Slf4j;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
 
+/**
+ * Sqlite 链接 同时持有这条链接上的预编译缓存 <br>
+ * 预编译语句只能在创建它的链接上使用 因此缓存跟随链接而不是跟随执行器 <br>
+ * 每个消息组一张表时 (表名, 形状) 的组合会非常多 缓存按最近最少使用淘汰 被淘汰的语句会被关闭
+ */
+@Slf4j
 public class SQLiteConnection implements DatabaseConnection {
-  Connection jdbcConnection;
+    // 每条链接最多缓存的预编译语句数量
+    private static final int MAX_STATEMENTS = 512;
 
-  private SQLiteConnection() {}
+    Connection jdbcConnection;
+    // 预编译缓存 key 为 表名 + 查询形状 value 为预编译的 statement
+    Map<String, PreparedStatement> statements = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= MAX_STATEMENTS) {
+                return false;
+            }
+            closeStatement(eldest.getValue());
+            return true;
+        }
+    };
 
-  public SQLiteConnection(Connection connection) {
-    jdbcConnection = connection;
-  }
+    private SQLiteConnection() {}
 
-  @Override
-  public Connection getJdbcConnection() {
-    return jdbcConnection;
-  }
+    public SQLiteConnection(Connection connection) {
+        jdbcConnection = connection;
+    }
+
+    @Override
+    public Connection getJdbcConnection() {
+        return jdbcConnection;
+    }
+
+    /**
+     * 取得 (表名, 形状) 对应的预编译语句 未命中缓存时才会预编译 <br>
+     * 写链接只在写线程上使用 只读链接借出期间只属于一个线程 因此语句不会被并发使用
+     *
+     * @param table 表名
+     * @param shape 查询形状
+     * @param sql   渲染形状对应的 sql 命中缓存时不会调用
+     * @return 预编译语句
+     */
+    public synchronized PreparedStatement prepareStatement(String table, String shape, Supplier<String> sql)
+            throws SQLException {
+        String key = table + "#" + shape;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = jdbcConnection.prepareStatement(sql.get());
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * 表结构变化后 (如删除表) 丢弃该表的全部预编译语句
+     */
+    public synchronized void invalidateStatements(String table) {
+        String prefix = table + "#";
+        statements.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix)) {
+                return false;
+            }
+            closeStatement(entry.getValue());
+            return true;
+        });
+    }
+
+    public synchronized void close() {
+        statements.values().forEach(this::closeStatement);
+        statements.clear();
+        try {
+            jdbcConnection.close();
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
+
+    private void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+        }
+    }
 }
@@ -1,23 +1,50 @@
 package com.catkatpowered.katserver.database.sqlite;
 
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.common.constants.KatMiscConstants;
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
 import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.metrics.DatabaseMetrics;
+import com.catkatpowered.katserver.database.pool.DatabaseConnectionPool;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Sqlite 连接器 负责获取 JDBC 连接桥
+ * Sqlite 连接器 负责获取 JDBC 连接桥 <br>
+ * 每条链接打开后都会应用 SQLiteProfile 中的性能配置 <br>
+ * 打开一条写链接和若干条只读链接 由 SQLiteRouter 按操作类型分派 <br>
+ * 内存数据库的每条链接都是独立的数据库 因此不打开只读链接 <br>
+ * 配置了多个分片时每个分片各打开一组链接 由 SQLiteShards 按消息组分派 <br>
+ * 启用 sqlite_backup 时定时为每个分片生成快照 见 SQLiteBackup
  *
  * @author hanbings
  */
 @Slf4j
 public class SQLiteConnector implements DatabaseConnector {
 
-    Connection connection;
+    DatabaseConnection connection;
+    // 性能配置 为 null 时在加载数据库时从配置文件读取
+    SQLiteProfile profile;
+    // 加载的链接地址 分片前
+    String url;
+    // 在线快照 为 null 时在启动快照时从配置文件读取
+    SQLiteBackup backup;
+
+    public SQLiteConnector() {
+    }
+
+    public SQLiteConnector(SQLiteProfile profile) {
+        this.profile = profile;
+    }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void loadDatabase(String url, String username, String password) {
         // 加载驱动
         try {
@@ -25,9 +52,30 @@ public class SQLiteConnector implements DatabaseConnector {
         } catch (ClassNotFoundException exception) {
             log.error("load sqlite jdbc error.", exception);
         }
+        // 没有配置链接地址时使用数据目录下的数据库文件
+        if (url == null || url.isEmpty()) {
+            url = "jdbc:sqlite:" + KatMiscConstants.KAT_DATABASE_PATH;
+        }
+        this.url = url;
+        if (profile == null) {
+            profile = SQLiteProfile.fromConfig(
+                    (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_SQLITE));
+        }
         // 获取连接
         try {
-            connection = DriverManager.getConnection(url, username, password);
+            if (profile.getShards() <= 1) {
+                connection = this.openRouter(url, username, password, profile.getReaders(), "kat-sqlite-writer");
+                return;
+            }
+            // 只读链接平均分给每个分片
+            int readers = Math.max(1, (profile.getReaders() + profile.getShards() - 1) / profile.getShards());
+            List<SQLiteRouter> shards = new ArrayList<>();
+            for (int index = 0; index < profile.getShards(); index++) {
+                shards.add(this.openRouter(SQLiteShards.url(url, index), username, password, readers,
+                        "kat-sqlite-writer-" + index));
+            }
+            connection = new SQLiteShards(shards);
+            this.checkPlacement((SQLiteShards) connection);
         } catch (SQLException exception) {
             log.error("load database error.", exception);
         }
@@ -35,15 +83,103 @@ public class SQLiteConnector implements DatabaseConnector {
 
     @Override
     public DatabaseConnection getConnection() {
-        return new SQLiteConnection(connection);
+        return connection;
+    }
+
+    /**
+     * 按配置文件的 sqlite_backup 节点为每个分片启动定时快照
+     *
+     * @param metrics 写操作统计 复制速度按最近的写入延迟调节
+     */
+    @SuppressWarnings("unchecked")
+    public void startBackup(DatabaseMetrics metrics) {
+        if (url == null) {
+            return;
+        }
+        if (backup == null) {
+            backup = SQLiteBackup.fromConfig((Map<String, Object>) KatServer.KatConfigAPI
+                    .getConfig(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BACKUP));
+        }
+        List<String> urls = new ArrayList<>();
+        for (int index = 0; index < Math.max(1, profile.getShards()); index++) {
+            urls.add(SQLiteShards.url(url, index));
+        }
+        backup.start(urls, profile, metrics);
+    }
+
+    public SQLiteBackup getBackup() {
+        return backup;
     }
 
     @Override
     public void exit() {
-        try {
-            connection.close();
-        } catch (SQLException exception) {
-            log.error(String.valueOf(exception));
+        if (backup != null) {
+            backup.close();
         }
+        // 加载失败时没有链接
+        if (connection instanceof SQLiteShards shards) {
+            shards.close();
+        } else if (connection instanceof SQLiteRouter router) {
+            router.close();
+        }
+    }
+
+    // 只读链接和写线程可以同时工作
+    @Override
+    public int getPoolSize() {
+        if (connection instanceof SQLiteShards shards) {
+            return shards.getPoolSize();
+        }
+        if (connection instanceof SQLiteRouter router) {
+            return router.getPoolSize();
+        }
+        return 1;
+    }
+
+    /**
+     * 打开一个数据库文件的写链接和只读链接
+     *
+     * @param readers 只读链接数
+     * @param name    写线程的名字
+     */
+    SQLiteRouter openRouter(String url, String username, String password, int readers, String name)
+            throws SQLException {
+        SQLiteConnection writer = new SQLiteConnection(this.openConnection(url, username, password));
+        List<SQLiteConnection> pool = new ArrayList<>();
+        if (!url.contains(":memory:") && !url.contains("mode=memory")) {
+            for (int count = 0; count < readers; count++) {
+                Connection reader = DriverManager.getConnection(url, username, password);
+                profile.applyReadOnly(reader);
+                pool.add(new SQLiteConnection(reader));
+            }
+        }
+        return new SQLiteRouter(writer, new DatabaseConnectionPool<>(pool), name);
+    }
+
+    /**
+     * 分片数改变后 表不在应在的分片上时读取不到 启动时报告而不是自动迁移
+     */
+    private void checkPlacement(SQLiteShards shards) {
+        int misplaced = 0;
+        for (int index = 0; index < shards.size(); index++) {
+            for (String table : shards.getShards().get(index).getSchema().getTables()) {
+                if (SQLiteShards.index(table, shards.size()) != index) {
+                    misplaced++;
+                }
+            }
+        }
+        if (misplaced > 0) {
+            log.warn("{} sqlite tables are not in the shard they belong to, stop the server and run SQLiteRebalancer.",
+                    misplaced);
+        }
+    }
+
+    /**
+     * 打开一条新的写链接并应用性能配置
+     */
+    private Connection openConnection(String url, String username, String password) throws SQLException {
+        Connection jdbc = DriverManager.getConnection(url, username, password);
+        profile.apply(jdbc);
+        return jdbc;
     }
 }
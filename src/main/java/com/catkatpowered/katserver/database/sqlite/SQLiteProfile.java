@@ -0,0 +1,136 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import lombok.Builder;
+import lombok.Builder.Default;
+import lombok.Data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sqlite 性能配置 对应配置文件中的 sqlite 节点 <br>
+ * 每条链接打开后都会执行一次 PRAGMA 其中 journal_mode 会持久化到数据库文件 其余只对当前链接生效 <br>
+ * <br>
+ * 默认值面向生产环境 <br>
+ * journal_mode = WAL 读写互不阻塞 <br>
+ * synchronous = NORMAL WAL 模式下只在检查点时 fsync 断电最多丢失最后几个事务 但不会损坏数据库 <br>
+ * mmap_size = 256 MiB 读取时直接映射文件 减少一次拷贝 <br>
+ * cache_size = -65536 负数单位为 KiB 即每条链接 64 MiB 页缓存 <br>
+ * temp_store = MEMORY 临时表和排序使用内存 <br>
+ * busy_timeout = 5000 ms 数据库被锁定时等待而不是立即失败 <br>
+ * readers = 只读链接的数量 默认与处理器数量相同 最多 8 条 <br>
+ * shards = 数据库文件的数量 默认 1 即不分片 分片时只读链接平均分给每个分片 每个分片至少一条 <br>
+ * 只读链接会额外设置 query_only 防止误写
+ *
+ * @author hanbings
+ */
+@Data
+@Builder
+public class SQLiteProfile {
+    private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final Set<String> SYNCHRONOUS = Set.of("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final Set<String> TEMP_STORES = Set.of("DEFAULT", "FILE", "MEMORY");
+
+    @Default
+    private String journalMode = "WAL";
+    @Default
+    private String synchronous = "NORMAL";
+    @Default
+    private long mmapSize = 256L * 1024 * 1024;
+    @Default
+    private long cacheSize = -65536;
+    @Default
+    private String tempStore = "MEMORY";
+    @Default
+    private long busyTimeout = 5000;
+    @Default
+    private int readers = Math.min(8, Runtime.getRuntime().availableProcessors());
+    @Default
+    private int shards = 1;
+
+    /**
+     * 从配置文件的 sqlite 节点读取 缺省的项使用默认值
+     *
+     * @param config sqlite 节点 可以为 null
+     * @return 性能配置
+     */
+    public static SQLiteProfile fromConfig(Map<String, Object> config) {
+        SQLiteProfile profile = SQLiteProfile.builder().build();
+        if (config == null) {
+            return profile;
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_JOURNAL_MODE) != null) {
+            profile.setJournalMode(config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_JOURNAL_MODE).toString());
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_SYNCHRONOUS) != null) {
+            profile.setSynchronous(config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_SYNCHRONOUS).toString());
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_MMAP_SIZE) != null) {
+            profile.setMmapSize(Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_MMAP_SIZE).toString()));
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_CACHE_SIZE) != null) {
+            profile.setCacheSize(Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_CACHE_SIZE).toString()));
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_TEMP_STORE) != null) {
+            profile.setTempStore(config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_TEMP_STORE).toString());
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BUSY_TIMEOUT) != null) {
+            profile.setBusyTimeout(Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_BUSY_TIMEOUT).toString()));
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_READERS) != null) {
+            profile.setReaders(Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_READERS).toString()));
+        }
+        if (config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_SHARDS) != null) {
+            profile.setShards(Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_SQLITE_SHARDS).toString()));
+        }
+        return profile;
+    }
+
+    /**
+     * 在链接上执行 PRAGMA 每条新打开的链接都需要执行
+     *
+     * @param connection JDBC 链接
+     */
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // busy_timeout 需要最先设置 切换 journal_mode 时可能需要等待其他链接
+            statement.execute("PRAGMA busy_timeout = " + busyTimeout);
+            statement.execute("PRAGMA journal_mode = " + validate(journalMode, JOURNAL_MODES));
+            statement.execute("PRAGMA synchronous = " + validate(synchronous, SYNCHRONOUS));
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+            statement.execute("PRAGMA cache_size = " + cacheSize);
+            statement.execute("PRAGMA temp_store = " + validate(tempStore, TEMP_STORES));
+        }
+    }
+
+    /**
+     * 应用性能配置并将链接设置为只读
+     *
+     * @param connection JDBC 链接
+     */
+    public void applyReadOnly(Connection connection) throws SQLException {
+        this.apply(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA query_only = 1");
+        }
+    }
+
+    // PRAGMA 无法使用预编译参数 只接受已知的取值
+    private static String validate(String value, Set<String> accepted) {
+        String upper = value.toUpperCase(Locale.ROOT);
+        if (!accepted.contains(upper)) {
+            throw new IllegalArgumentException("unsupported sqlite pragma value: " + value);
+        }
+        return upper;
+    }
+}
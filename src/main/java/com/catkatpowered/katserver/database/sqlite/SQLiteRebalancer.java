@@ -0,0 +1,177 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.database.query.QueryRenderer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sqlite 分片数改变后把表迁移到应在的分片 <br>
+ * 迁移以表为单位 先在目标分片建表和索引 再分批复制全部行 最后删除源分片的表 <br>
+ * 复制使用 INSERT OR REPLACE 迁移中断后重新执行会从头复制中断的表 不会产生重复的行 <br>
+ * 迁移时服务器必须停止 <br>
+ * <br>
+ * 用法: SQLiteRebalancer 链接地址 原分片数 新分片数 <br>
+ * 如 jdbc:sqlite:data/database.db 1 4
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SQLiteRebalancer {
+    // 每个写事务复制的行数
+    private static final int CHUNK = 1000;
+    // 只用于引用表名
+    private static final QueryRenderer renderer = new QueryRenderer("\"");
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length != 3) {
+            System.out.println("usage: SQLiteRebalancer <url> <old shards> <new shards>");
+            return;
+        }
+        String url = args[0];
+        int from = Integer.parseInt(args[1]);
+        int to = Integer.parseInt(args[2]);
+        SQLiteConnector connector = new SQLiteConnector(SQLiteProfile.builder().readers(1).build());
+        List<SQLiteRouter> routers = new ArrayList<>();
+        try {
+            for (int index = 0; index < Math.max(from, to); index++) {
+                routers.add(connector.openRouter(SQLiteShards.url(url, index), null, null, 1,
+                        "kat-sqlite-writer-" + index));
+            }
+            int moved = rebalance(routers, to);
+            log.info("moved {} tables into {} shards.", moved, to);
+            for (int index = to; index < from; index++) {
+                log.info("shard {} is empty now and can be deleted.", SQLiteShards.url(url, index));
+            }
+        } finally {
+            routers.forEach(SQLiteRouter::close);
+        }
+    }
+
+    /**
+     * 把每张表迁移到 shards 个分片时应在的分片
+     *
+     * @param routers 全部已存在的分片 数量可以多于 shards (缩减分片时)
+     * @param shards  新的分片数
+     * @return 迁移的表数
+     */
+    public static int rebalance(List<SQLiteRouter> routers, int shards) throws SQLException {
+        int moved = 0;
+        for (int index = 0; index < routers.size(); index++) {
+            SQLiteRouter source = routers.get(index);
+            for (String table : new ArrayList<>(source.getSchema().getTables())) {
+                int target = SQLiteShards.index(table, shards);
+                if (target == index) {
+                    continue;
+                }
+                long rows = move(source, routers.get(target), table);
+                log.info("moved table {} ({} rows) from shard {} to shard {}.", table, rows, index, target);
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 把一张表从 source 迁移到 target
+     *
+     * @return 复制的行数
+     */
+    public static long move(SQLiteRouter source, SQLiteRouter target, String table) throws SQLException {
+        // 建表语句在前 索引在后
+        List<String> schema = source.read(sqlite -> {
+            List<String> statements = new ArrayList<>();
+            try (PreparedStatement statement = sqlite.getJdbcConnection().prepareStatement(
+                    "SELECT sql FROM sqlite_master WHERE tbl_name = ? AND sql IS NOT NULL "
+                            + "ORDER BY type = 'table' DESC")) {
+                statement.setString(1, table);
+                try (ResultSet set = statement.executeQuery()) {
+                    while (set.next()) {
+                        statements.add(set.getString(1));
+                    }
+                }
+            }
+            return statements;
+        });
+        // 上次迁移中断时目标分片已经有这张表
+        target.write(sqlite -> {
+            if (!target.getSchema().contains(table)) {
+                try (Statement statement = sqlite.getJdbcConnection().createStatement()) {
+                    for (String sql : schema) {
+                        statement.execute(sql);
+                    }
+                }
+                target.getSchema().register(table);
+            }
+            return null;
+        });
+        long rows = source.read(sqlite -> copy(sqlite.getJdbcConnection(), target, table));
+        source.write(sqlite -> {
+            try (Statement statement = sqlite.getJdbcConnection().createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + renderer.quote(table));
+            }
+            sqlite.invalidateStatements(table);
+            return null;
+        });
+        source.getSchema().unregister(table);
+        return rows;
+    }
+
+    // 流式读取源表 每 CHUNK 行在目标分片的写线程上提交一次
+    private static long copy(Connection jdbc, SQLiteRouter target, String table) throws SQLException {
+        long rows = 0;
+        try (Statement statement = jdbc.createStatement();
+             ResultSet set = statement.executeQuery("SELECT * FROM " + renderer.quote(table))) {
+            int columns = set.getMetaData().getColumnCount();
+            String sql = "INSERT OR REPLACE INTO " + renderer.quote(table) + " VALUES ("
+                    + "?, ".repeat(columns - 1) + "?)";
+            List<Object[]> chunk = new ArrayList<>(CHUNK);
+            while (set.next()) {
+                Object[] row = new Object[columns];
+                for (int column = 0; column < columns; column++) {
+                    row[column] = set.getObject(column + 1);
+                }
+                chunk.add(row);
+                if (chunk.size() == CHUNK) {
+                    rows += insert(target, sql, chunk);
+                    chunk.clear();
+                }
+            }
+            rows += insert(target, sql, chunk);
+        }
+        return rows;
+    }
+
+    private static int insert(SQLiteRouter target, String sql, List<Object[]> chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        return target.write(sqlite -> {
+            try (Statement savepoint = sqlite.getJdbcConnection().createStatement();
+                 PreparedStatement statement = sqlite.getJdbcConnection().prepareStatement(sql)) {
+                savepoint.execute("SAVEPOINT kat_rebalance");
+                try {
+                    for (Object[] row : chunk) {
+                        for (int column = 0; column < row.length; column++) {
+                            statement.setObject(column + 1, row[column]);
+                        }
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                } catch (SQLException exception) {
+                    savepoint.execute("ROLLBACK TO kat_rebalance");
+                    savepoint.execute("RELEASE kat_rebalance");
+                    throw exception;
+                }
+                savepoint.execute("RELEASE kat_rebalance");
+            }
+            return chunk.size();
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.pool.DatabaseConnectionPool;
+import lombok.Getter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Sqlite 读写分离链接 <br>
+ * 写操作进入写线程的队列 在唯一的写链接上执行 <br>
+ * 读操作从只读链接池中借出一条链接执行 WAL 模式下多个读者可以与写者并行 <br>
+ * 没有只读链接时 (如内存数据库) 读操作和游标也进入写线程的队列 在写链接上执行 <br>
+ * 同时持有表结构登记 写入前判断表是否存在不需要查询数据库
+ *
+ * @author hanbings
+ */
+public class SQLiteRouter implements DatabaseConnection {
+    private final SQLiteConnection writer;
+    private final SQLiteWriter queue;
+    private final DatabaseConnectionPool<SQLiteConnection> readers;
+    @Getter
+    private final SQLiteSchemaRegistry schema = new SQLiteSchemaRegistry();
+
+    public SQLiteRouter(SQLiteConnection writer, DatabaseConnectionPool<SQLiteConnection> readers)
+            throws SQLException {
+        this(writer, readers, "kat-sqlite-writer");
+    }
+
+    /**
+     * @param name 写线程的名字 分片时每个分片一个写线程
+     */
+    public SQLiteRouter(SQLiteConnection writer, DatabaseConnectionPool<SQLiteConnection> readers, String name)
+            throws SQLException {
+        this.writer = writer;
+        this.readers = readers;
+        // 启动时载入一次全部的表
+        this.schema.load(writer.getJdbcConnection());
+        this.queue = new SQLiteWriter(writer, name);
+    }
+
+    /**
+     * 直接使用 JDBC 链接的调用者拿到的是写链接
+     */
+    @Override
+    public Connection getJdbcConnection() {
+        return writer.getJdbcConnection();
+    }
+
+    // 在写线程上执行
+    public <R> R write(SQLiteTask<R> task) throws SQLException {
+        return queue.execute(task);
+    }
+
+    /**
+     * 登记正在执行的写操作被回滚时的补偿 只能在写操作中调用 见 SQLiteWriter.onRollback
+     */
+    public void onRollback(Runnable action) {
+        queue.onRollback(action);
+    }
+
+    // 借出一条只读链接执行
+    public <R> R read(SQLiteTask<R> task) throws SQLException {
+        if (readers.isEmpty()) {
+            return this.write(task);
+        }
+        SQLiteConnection reader = readers.borrow();
+        try {
+            return task.execute(reader);
+        } finally {
+            readers.giveBack(reader);
+        }
+    }
+
+    /**
+     * 借出一条只读链接 供游标在消费期间独占 必须使用 giveBack 归还 <br>
+     * 没有只读链接时返回 null
+     */
+    public SQLiteConnection borrowReader() {
+        return readers.isEmpty() ? null : readers.borrow();
+    }
+
+    public void giveBack(SQLiteConnection reader) {
+        readers.giveBack(reader);
+    }
+
+    // 只读链接数加上写链接
+    public int getPoolSize() {
+        return readers.size() + 1;
+    }
+
+    public void close() {
+        queue.close();
+        readers.getConnections().forEach(SQLiteConnection::close);
+        writer.close();
+    }
+}
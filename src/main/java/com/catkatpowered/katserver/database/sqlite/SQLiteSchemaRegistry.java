@@ -0,0 +1,55 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sqlite 表结构登记 <br>
+ * 启动时从 sqlite_master 读取一次全部的表 之后由写线程在建表 删表时更新 <br>
+ * 写入时只需要查询内存中的集合 不再查询数据库元数据 <br>
+ * 集合中只保存表名 大小与数据库中实际存在的表数量一致 即使每个消息组一张表也只占用很少的内存
+ *
+ * @author hanbings
+ */
+public class SQLiteSchemaRegistry {
+    private final Set<String> tables = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 从数据库中载入全部的表
+     *
+     * @param connection JDBC 链接
+     */
+    public void load(Connection connection) throws SQLException {
+        tables.clear();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'");
+             ResultSet set = statement.executeQuery()) {
+            while (set.next()) {
+                tables.add(set.getString(1));
+            }
+        }
+    }
+
+    public boolean contains(String table) {
+        return tables.contains(table);
+    }
+
+    // 表创建后登记
+    public void register(String table) {
+        tables.add(table);
+    }
+
+    // 表删除后注销
+    public void unregister(String table) {
+        tables.remove(table);
+    }
+
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables);
+    }
+}
@@ -0,0 +1,95 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分片的 Sqlite 链接 每个分片是一个独立的数据库文件 有自己的写线程和只读链接 <br>
+ * 表按消息组的稳定哈希分到分片上 不同消息组的写入可以在不同的分片上并行 <br>
+ * 按时间分区的表 (消息组@分区名) 和它们的编辑历史 (消息组@分区名@revisions) 按第一个 @ 之前的消息组计算 <br>
+ * 同一个消息组的全部分区和编辑历史在同一个分片上 分区表中消息组里的 @ 已经转义 <br>
+ * 使用一致性哈希 分片数从 K 变为 K + 1 时只有约 1 / (K + 1) 的消息组需要迁移 见 SQLiteRebalancer
+ *
+ * @author hanbings
+ */
+public class SQLiteShards implements DatabaseConnection {
+    // 表名中消息组和分区名 (或内部表的后缀) 之间的分隔符
+    private static final char PARTITION_SEPARATOR = '@';
+
+    @Getter
+    private final List<SQLiteRouter> shards;
+
+    public SQLiteShards(List<SQLiteRouter> shards) {
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * 直接使用 JDBC 链接的调用者拿到的是第一个分片的写链接
+     */
+    @Override
+    public Connection getJdbcConnection() {
+        return shards.get(0).getJdbcConnection();
+    }
+
+    /**
+     * 表所在的分片
+     */
+    public SQLiteRouter route(String table) {
+        return shards.get(index(table, shards.size()));
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    // 每个分片的只读链接和写链接
+    public int getPoolSize() {
+        return shards.stream().mapToInt(SQLiteRouter::getPoolSize).sum();
+    }
+
+    public void close() {
+        shards.forEach(SQLiteRouter::close);
+    }
+
+    /**
+     * 表在 count 个分片时所在的分片 只由表名决定 不随启动和进程变化
+     *
+     * @param table 表名
+     * @param count 分片数
+     */
+    public static int index(String table, int count) {
+        int separator = table.indexOf(PARTITION_SEPARATOR);
+        String group = separator < 0 ? table : table.substring(0, separator);
+        return Hashing.consistentHash(Hashing.murmur3_128().hashString(group, StandardCharsets.UTF_8), count);
+    }
+
+    /**
+     * 第 index 个分片的链接地址 <br>
+     * 第 0 个分片就是配置的数据库文件 开启分片前的数据不需要移动 <br>
+     * 其余分片在文件名的扩展名之前加上编号 如 database.db -> database-1.db <br>
+     * 内存数据库的每条链接本来就是独立的数据库 地址不变
+     *
+     * @param url   配置的链接地址
+     * @param index 分片编号
+     */
+    public static String url(String url, int index) {
+        if (index == 0 || url.contains(":memory:")) {
+            return url;
+        }
+        int query = url.indexOf('?');
+        String path = query < 0 ? url : url.substring(0, query);
+        String parameters = query < 0 ? "" : url.substring(query);
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash || dot <= path.lastIndexOf(':')) {
+            return path + "-" + index + parameters;
+        }
+        return path.substring(0, dot) + "-" + index + path.substring(dot) + parameters;
+    }
+}
@@ -0,0 +1,398 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 一个数据库文件的快照目录 <br>
+ * 全量快照 (编号.full) 就是一个完整的 Sqlite 数据库文件 可以直接打开 <br>
+ * 增量快照 (编号.incr) 按位置记录每一页 与上一个快照中某一页内容相同时只记录那一页的位置 否则记录整页 <br>
+ * VACUUM INTO 每次重建数据库 前面的表变大时后面的页整体后移 但叶子页的内容不变 因此按内容而不是按位置比较 <br>
+ * pages 文件记录最新快照每一页的哈希 生成下一个增量快照时不需要读取上一个快照 <br>
+ * 编号按时间生成 字典序就是先后顺序
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SQLiteSnapshots {
+    public static final String FULL = ".full";
+    public static final String INCREMENTAL = ".incr";
+    private static final String MANIFEST = "pages";
+    private static final int INCREMENTAL_MAGIC = 0x4B415449;
+    private static final int MANIFEST_MAGIC = 0x4B415450;
+    private static final int VERSION = 1;
+    // 增量快照中表示后面跟着整页内容的位置
+    private static final int PAGE_DATA = -1;
+
+    @Getter
+    private final Path directory;
+
+    public SQLiteSnapshots(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 全部快照文件 按编号排序
+     */
+    public List<Path> list() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> isFull(path) || isIncremental(path))
+                    .sorted((first, second) -> id(first).compareTo(id(second)))
+                    .toList();
+        }
+    }
+
+    /**
+     * 把 VACUUM INTO 得到的数据库文件存为快照 之后 copy 会被移动或删除 <br>
+     * 没有可用的上一个快照或距离上一个全量快照已有 fullEvery 个增量快照时存为全量快照
+     *
+     * @param id       快照编号
+     * @param copy     数据库文件
+     * @param progress 写入是否增量 变化的页数和写入的字节数
+     */
+    public void store(String id, Path copy, int fullEvery, SQLiteBackupProgress progress) throws IOException {
+        Files.createDirectories(directory);
+        int pageSize = pageSize(copy);
+        long[] hashes = hashes(copy, pageSize);
+        Manifest manifest = this.manifest();
+        List<Path> snapshots = this.list();
+        int incremental = 0;
+        for (int index = snapshots.size() - 1; index >= 0 && isIncremental(snapshots.get(index)); index--) {
+            incremental++;
+        }
+        boolean full = manifest == null || snapshots.isEmpty() || manifest.pageSize != pageSize
+                || !manifest.id.equals(id(snapshots.get(snapshots.size() - 1))) || incremental >= fullEvery;
+        Path target = directory.resolve(id + (full ? FULL : INCREMENTAL));
+        if (full) {
+            Files.move(copy, target, StandardCopyOption.REPLACE_EXISTING);
+            progress.setChangedPages(hashes.length / 2);
+        } else {
+            Path temporary = directory.resolve(id + INCREMENTAL + ".tmp");
+            progress.setChangedPages(this.writeIncremental(temporary, manifest, copy, pageSize, hashes));
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(copy);
+        }
+        this.writeManifest(new Manifest(id, pageSize, hashes));
+        progress.setIncremental(!full);
+        progress.setPages(hashes.length / 2);
+        progress.setBytesWritten(Files.size(target));
+    }
+
+    /**
+     * 只保留最新的 keep 个全量快照和它们之后的增量快照
+     *
+     * @return 删除的快照数
+     */
+    public int retain(int keep) throws IOException {
+        List<Path> snapshots = this.list();
+        List<Integer> fulls = new ArrayList<>();
+        for (int index = 0; index < snapshots.size(); index++) {
+            if (isFull(snapshots.get(index))) {
+                fulls.add(index);
+            }
+        }
+        if (keep <= 0 || fulls.size() <= keep) {
+            return 0;
+        }
+        int first = fulls.get(fulls.size() - keep);
+        for (int index = 0; index < first; index++) {
+            Files.delete(snapshots.get(index));
+        }
+        return first;
+    }
+
+    /**
+     * 用快照重建数据库文件 服务器必须停止 <br>
+     * 目标文件已存在时改名为 文件名.old 保留 它的 WAL 文件一起改名
+     *
+     * @param id     快照编号 为 null 时使用最新的快照
+     * @param target 数据库文件
+     */
+    public void restore(String id, Path target) throws IOException {
+        List<Path> chain = this.chain(id);
+        Path current = target.resolveSibling(target.getFileName() + ".restore");
+        Path next = target.resolveSibling(target.getFileName() + ".restore-next");
+        Files.copy(chain.get(0), current, StandardCopyOption.REPLACE_EXISTING);
+        try {
+            for (int index = 1; index < chain.size(); index++) {
+                this.applyIncremental(chain.get(index), id(chain.get(index - 1)), current, next);
+                Files.move(next, current, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (Files.exists(target)) {
+                Path old = target.resolveSibling(target.getFileName() + ".old");
+                Files.move(target, old, StandardCopyOption.REPLACE_EXISTING);
+                moveIfExists(sibling(target, "-wal"), sibling(old, "-wal"));
+                Files.deleteIfExists(sibling(old, "-shm"));
+                log.info("moved the current database to {}.", old);
+            }
+            // 旧的 WAL 不属于恢复后的文件 打开时会被错误地重放
+            Files.deleteIfExists(sibling(target, "-wal"));
+            Files.deleteIfExists(sibling(target, "-shm"));
+            Files.move(current, target);
+        } finally {
+            Files.deleteIfExists(current);
+            Files.deleteIfExists(next);
+        }
+        log.info("restored {} from {} snapshots.", target, chain.size());
+    }
+
+    /**
+     * 恢复一个快照需要的文件 从它之前最近的全量快照开始
+     */
+    private List<Path> chain(String id) throws IOException {
+        List<Path> snapshots = this.list();
+        int last = snapshots.size() - 1;
+        if (id != null) {
+            while (last >= 0 && !id(snapshots.get(last)).equals(id)) {
+                last--;
+            }
+        }
+        if (last < 0) {
+            throw new IOException("no snapshot " + (id == null ? "" : id + " ") + "in " + directory);
+        }
+        int first = last;
+        while (first >= 0 && !isFull(snapshots.get(first))) {
+            first--;
+        }
+        if (first < 0) {
+            throw new IOException("no full snapshot before " + id(snapshots.get(last)) + " in " + directory);
+        }
+        return snapshots.subList(first, last + 1);
+    }
+
+    // 返回整页写入的页数
+    private long writeIncremental(Path path, Manifest base, Path copy, int pageSize, long[] hashes)
+            throws IOException {
+        PageIndex index = new PageIndex(base.hashes);
+        long changed = 0;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.READ);
+             BufferedOutputStream file = new BufferedOutputStream(Files.newOutputStream(path))) {
+            DataOutputStream output = new DataOutputStream(new CheckedOutputStream(file, crc));
+            output.writeInt(INCREMENTAL_MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(base.id);
+            output.writeInt(pageSize);
+            output.writeInt(hashes.length / 2);
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            for (int position = 0; position < hashes.length / 2; position++) {
+                int previous = index.find(hashes[position * 2], hashes[position * 2 + 1]);
+                if (previous >= 0) {
+                    output.writeInt(previous);
+                    continue;
+                }
+                read(channel, page, (long) position * pageSize);
+                output.writeInt(PAGE_DATA);
+                output.write(page.array());
+                changed++;
+            }
+            // 校验值不计入自身
+            output.flush();
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+        return changed;
+    }
+
+    // 增量快照只能应用在生成它时的上一个快照上
+    private void applyIncremental(Path incremental, String baseId, Path base, Path target) throws IOException {
+        CRC32 crc = new CRC32();
+        try (BufferedInputStream file = new BufferedInputStream(Files.newInputStream(incremental));
+             FileChannel source = FileChannel.open(base, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataInputStream input = new DataInputStream(new CheckedInputStream(file, crc));
+            if (input.readInt() != INCREMENTAL_MAGIC || input.readInt() != VERSION) {
+                throw new IOException("not a snapshot: " + incremental);
+            }
+            if (!input.readUTF().equals(baseId)) {
+                throw new IOException("snapshot " + incremental + " does not follow " + baseId);
+            }
+            int pageSize = input.readInt();
+            int pages = input.readInt();
+            long basePages = source.size() / pageSize;
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            for (int position = 0; position < pages; position++) {
+                int previous = input.readInt();
+                if (previous == PAGE_DATA) {
+                    input.readFully(page.array());
+                } else if (previous >= 0 && previous < basePages) {
+                    read(source, page, (long) previous * pageSize);
+                } else {
+                    throw new IOException("broken snapshot: " + incremental);
+                }
+                page.clear();
+                while (page.hasRemaining()) {
+                    output.write(page);
+                }
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(file).readLong() != expected) {
+                throw new IOException("snapshot checksum mismatch: " + incremental);
+            }
+        } catch (EOFException exception) {
+            throw new IOException("truncated snapshot: " + incremental);
+        }
+    }
+
+    // 上一个快照每一页的哈希 不存在或损坏时返回 null
+    private Manifest manifest() {
+        Path path = directory.resolve(MANIFEST);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MANIFEST_MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            String id = input.readUTF();
+            int pageSize = input.readInt();
+            long[] hashes = new long[input.readInt() * 2];
+            for (int index = 0; index < hashes.length; index++) {
+                hashes[index] = input.readLong();
+            }
+            return new Manifest(id, pageSize, hashes);
+        } catch (IOException exception) {
+            log.error(String.valueOf(exception));
+            return null;
+        }
+    }
+
+    private void writeManifest(Manifest manifest) throws IOException {
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MANIFEST_MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(manifest.id);
+            output.writeInt(manifest.pageSize);
+            output.writeInt(manifest.hashes.length / 2);
+            for (long hash : manifest.hashes) {
+                output.writeLong(hash);
+            }
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 数据库文件的页大小 记录在文件头第 16 字节 1 表示 65536
+     */
+    static int pageSize(Path database) throws IOException {
+        try (FileChannel channel = FileChannel.open(database, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(2);
+            read(channel, header, 16);
+            int size = header.getShort(0) & 0xFFFF;
+            return size == 1 ? 65536 : size;
+        }
+    }
+
+    // 每一页的 128 位哈希 依次为高 64 位和低 64 位
+    private static long[] hashes(Path database, int pageSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(database, StandardOpenOption.READ)) {
+            int pages = Math.toIntExact(channel.size() / pageSize);
+            long[] hashes = new long[pages * 2];
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            for (int position = 0; position < pages; position++) {
+                read(channel, page, (long) position * pageSize);
+                ByteBuffer hash = ByteBuffer.wrap(Hashing.murmur3_128().hashBytes(page.array()).asBytes());
+                hashes[position * 2] = hash.getLong();
+                hashes[position * 2 + 1] = hash.getLong();
+            }
+            return hashes;
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void moveIfExists(Path source, Path target) throws IOException {
+        if (Files.exists(source)) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    public static String id(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    public static boolean isFull(Path snapshot) {
+        return snapshot.getFileName().toString().endsWith(FULL);
+    }
+
+    public static boolean isIncremental(Path snapshot) {
+        return snapshot.getFileName().toString().endsWith(INCREMENTAL);
+    }
+
+    private record Manifest(String id, int pageSize, long[] hashes) {
+    }
+
+    /**
+     * 按哈希查找上一个快照中的页 开放寻址 每页只占一个 int
+     */
+    private static class PageIndex {
+        private final long[] hashes;
+        private final int[] slots;
+        private final int mask;
+
+        PageIndex(long[] hashes) {
+            this.hashes = hashes;
+            int capacity = Integer.highestOneBit(Math.max(2, hashes.length)) * 2;
+            this.slots = new int[capacity];
+            this.mask = capacity - 1;
+            for (int position = 0; position < hashes.length / 2; position++) {
+                int slot = (int) hashes[position * 2] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                // 0 表示空位 位置加一存放
+                slots[slot] = position + 1;
+            }
+        }
+
+        int find(long high, long low) {
+            int slot = (int) high & mask;
+            while (slots[slot] != 0) {
+                int position = slots[slot] - 1;
+                if (hashes[position * 2] == high && hashes[position * 2 + 1] == low) {
+                    return position;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+    }
+}
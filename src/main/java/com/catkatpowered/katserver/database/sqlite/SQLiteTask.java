@@ -0,0 +1,11 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import java.sql.SQLException;
+
+/**
+ * 在一条 Sqlite 链接上执行的操作 由 SQLiteRouter 决定在写链接还是读链接上执行
+ */
+@FunctionalInterface
+public interface SQLiteTask<R> {
+    R execute(SQLiteConnection connection) throws SQLException;
+}
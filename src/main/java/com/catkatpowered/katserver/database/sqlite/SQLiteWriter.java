@@ -0,0 +1,241 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Sqlite 写线程 <br>
+ * Sqlite 同一时间只允许一个写者 因此全部写操作都进入队列 由唯一的写线程在唯一的写链接上执行 <br>
+ * 写线程每次取出队列中积压的全部操作 (最多 MAX_BATCH 个) 放在同一个事务中提交 <br>
+ * 每个操作使用独立的 SAVEPOINT 一个操作失败只回滚它自己 <br>
+ * 操作可以用 onRollback 登记回滚时的补偿 (如撤销表结构登记) 它自己或整个事务回滚时按登记的逆序执行 <br>
+ * 调用者在事务提交之后才会返回 因此返回后写入一定对读链接可见 <br>
+ * 写操作抛出的 Error 只让这个操作失败 写线程意外退出时队列中的调用者都以失败返回 不会永远等待
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class SQLiteWriter {
+    // 一个事务中最多合并的写操作数
+    private static final int MAX_BATCH = 256;
+
+    private final SQLiteConnection connection;
+    private final BlockingQueue<Request<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    // 正在事务中执行的操作 只在写线程中访问
+    private Request<?> current;
+
+    public SQLiteWriter(SQLiteConnection connection) {
+        this(connection, "kat-sqlite-writer");
+    }
+
+    public SQLiteWriter(SQLiteConnection connection, String name) {
+        this.connection = connection;
+        this.thread = new Thread(this::loop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 提交一个写操作并等待事务提交
+     *
+     * @param task 写操作
+     * @return 写操作的返回值
+     */
+    public <R> R execute(SQLiteTask<R> task) throws SQLException {
+        // 写线程内部发起的写操作 (如建表后写入) 直接执行 避免等待自己
+        if (Thread.currentThread() == thread) {
+            return task.execute(connection);
+        }
+        if (!running) {
+            throw new SQLException("sqlite writer is closed.");
+        }
+        Request<R> request = new Request<>(task);
+        queue.add(request);
+        // 写线程在加入队列的同时退出 它已经清空了队列 不会再执行这个操作
+        if (!running && queue.remove(request)) {
+            throw new SQLException("sqlite writer is closed.");
+        }
+        try {
+            return request.future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for sqlite writer.", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            if (exception.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new SQLException(exception.getCause());
+        }
+    }
+
+    /**
+     * 登记当前写操作被回滚时的补偿 只能在写操作中 (写线程上) 调用 <br>
+     * 写操作不在写线程的事务中时 语句已经自动提交 不会被回滚 补偿不会执行
+     *
+     * @param action 补偿 在写线程上执行
+     */
+    public void onRollback(Runnable action) {
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("onRollback must be called from a sqlite write task.");
+        }
+        if (current != null) {
+            current.rollbacks.add(action);
+        }
+    }
+
+    /**
+     * 停止写线程 队列中剩余的操作会先执行完
+     */
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        List<Request<?>> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    batch.add(running ? queue.take() : queue.remove());
+                } catch (InterruptedException exception) {
+                    continue;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                try {
+                    if (batch.size() == 1) {
+                        batch.get(0).run(connection);
+                    } else {
+                        this.commit(batch);
+                    }
+                } catch (Throwable throwable) {
+                    // 操作以外的错误 (如补偿抛出 Error) 这一批中还没有返回的调用者以失败返回
+                    log.error(String.valueOf(throwable));
+                    batch.forEach(request -> request.future.completeExceptionally(throwable));
+                } finally {
+                    batch.clear();
+                }
+            }
+        } finally {
+            // 正常关闭时队列已经为空 意外退出时不再接受新的操作 剩余的调用者以失败返回
+            running = false;
+            SQLException closed = new SQLException("sqlite writer is closed.");
+            batch.forEach(request -> request.future.completeExceptionally(closed));
+            Request<?> request;
+            while ((request = queue.poll()) != null) {
+                request.future.completeExceptionally(closed);
+            }
+        }
+    }
+
+    /**
+     * 在同一个事务中执行一批写操作 事务提交后再通知调用者
+     */
+    private void commit(List<Request<?>> batch) {
+        try (Statement statement = connection.getJdbcConnection().createStatement()) {
+            statement.execute("BEGIN IMMEDIATE");
+            for (Request<?> request : batch) {
+                statement.execute("SAVEPOINT kat_write");
+                current = request;
+                try {
+                    request.execute(connection);
+                } finally {
+                    current = null;
+                }
+                if (request.failure == null) {
+                    statement.execute("RELEASE kat_write");
+                } else {
+                    statement.execute("ROLLBACK TO kat_write");
+                    statement.execute("RELEASE kat_write");
+                    request.rollback();
+                }
+            }
+            statement.execute("COMMIT");
+        } catch (SQLException exception) {
+            log.error(String.valueOf(exception));
+            try (Statement statement = connection.getJdbcConnection().createStatement()) {
+                statement.execute("ROLLBACK");
+            } catch (SQLException ignored) {
+                // 事务没有开启或已经结束
+            }
+            // 整个事务回滚 后执行的操作先补偿
+            for (int index = batch.size() - 1; index >= 0; index--) {
+                batch.get(index).rollback();
+            }
+            batch.forEach(request -> request.future.completeExceptionally(exception));
+            return;
+        }
+        batch.forEach(Request::complete);
+    }
+
+    /**
+     * 队列中的一个写操作
+     */
+    private static class Request<R> {
+        final SQLiteTask<R> task;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        // 回滚时的补偿 按登记顺序
+        final List<Runnable> rollbacks = new ArrayList<>();
+        R result;
+        Throwable failure;
+
+        Request(SQLiteTask<R> task) {
+            this.task = task;
+        }
+
+        // 执行但不通知调用者
+        void execute(SQLiteConnection connection) {
+            try {
+                result = task.execute(connection);
+            } catch (Throwable throwable) {
+                // 包括 Error 写线程不能因为一个操作退出
+                failure = throwable;
+            }
+        }
+
+        // 单独执行并立即通知调用者
+        void run(SQLiteConnection connection) {
+            this.execute(connection);
+            this.complete();
+        }
+
+        // 按登记的逆序执行补偿 每个补偿只执行一次
+        void rollback() {
+            Collections.reverse(rollbacks);
+            for (Runnable action : rollbacks) {
+                try {
+                    action.run();
+                } catch (RuntimeException exception) {
+                    log.error(String.valueOf(exception));
+                }
+            }
+            rollbacks.clear();
+        }
+
+        void complete() {
+            if (failure == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+}
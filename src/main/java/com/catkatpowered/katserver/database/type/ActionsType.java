@@ -1,5 +1,5 @@
 package com.catkatpowered.katserver.database.type;
 
 public enum ActionsType {
-    CREATE, UPDATE, READ, DELETE
+    CREATE, UPDATE, READ, DELETE, UPSERT, CURSOR, DROP
 }
@@ -0,0 +1,21 @@
+package com.catkatpowered.katserver.database.type;
+
+import lombok.Getter;
+
+public enum ConditionType {
+    EQUAL("="),
+    NOT_EQUAL("<>"),
+    GREATER(">"),
+    GREATER_EQUAL(">="),
+    LESS("<"),
+    LESS_EQUAL("<="),
+    IN("IN"),
+    BETWEEN("BETWEEN");
+
+    @Getter
+    private final String operator;
+
+    ConditionType(String operator) {
+        this.operator = operator;
+    }
+}
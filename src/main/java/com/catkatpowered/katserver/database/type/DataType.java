@@ -8,4 +8,22 @@ public class DataType {
         public static final String TEXT = "TEXT";
         public static final String BLOB = "BLOB";
     }
+
+    public static final class MySQL {
+        public static final String BIGINT = "BIGINT";
+        public static final String DOUBLE = "DOUBLE";
+        public static final String BOOLEAN = "BOOLEAN";
+        // 作为键的字符串 utf8mb4 下 191 个字符不超过旧版本 767 字节的索引长度限制
+        public static final String VARCHAR = "VARCHAR(191)";
+        public static final String LONGTEXT = "LONGTEXT";
+        public static final String LONGBLOB = "LONGBLOB";
+    }
+
+    public static final class PostgreSQL {
+        public static final String BIGINT = "BIGINT";
+        public static final String DOUBLE = "DOUBLE PRECISION";
+        public static final String BOOLEAN = "BOOLEAN";
+        public static final String TEXT = "TEXT";
+        public static final String BYTEA = "BYTEA";
+    }
 }
@@ -2,7 +2,7 @@ package com.catkatpowered.katserver.database.type;
 
 @SuppressWarnings("SpellCheckingInspection")
 public enum DatabaseType {
-    MySQL, SQLite, PostGreSQL, MongoDB;
+    MySQL, SQLite, PostGreSQL, MongoDB, SegmentLog, Memory;
 
     public static DatabaseType lookup(String database) {
         for (DatabaseType type : DatabaseType.values()) {
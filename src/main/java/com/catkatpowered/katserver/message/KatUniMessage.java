@@ -1,12 +1,16 @@
 package com.catkatpowered.katserver.message;
 
 import com.catkatpowered.katserver.common.constants.KatMessageTypeConstants;
+import com.catkatpowered.katserver.database.annotation.SqliteIndex;
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.type.DataType;
 import com.google.gson.annotations.SerializedName;
 import java.util.ArrayList;
 import java.util.Objects;
 import lombok.Builder;
 import lombok.Builder.Default;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * Kat 聚合消息
@@ -16,6 +20,8 @@ import lombok.Data;
  */
 @Data
 @Builder
+@NoArgsConstructor
+@SqliteIndex(name = "message_group_created", columns = {"message_group", "created_at", "message_id"})
 public class KatUniMessage {
 
     /**
@@ -29,6 +35,7 @@ public class KatUniMessage {
      * @see KatUniMessageTypeManager
      */
     @SerializedName("message_type")
+    @SqliteMetadata(name = "message_type", type = DataType.Sqlite.TEXT)
     @Default
     public String messageType = KatMessageTypeConstants.KAT_MESSAGE_TYPE_PLAIN_MESSAGE;
 
@@ -37,6 +44,7 @@ public class KatUniMessage {
      * </p>
      */
     @SerializedName("message_group")
+    @SqliteMetadata(name = "message_group", type = DataType.Sqlite.TEXT)
     public String messageGroup;
 
     /**
@@ -46,12 +54,14 @@ public class KatUniMessage {
      * <b>MessageID</b> 由<em>KatServer</em>提供算法进行分配。暂定为<em>UUID</em></br>
      */
     @SerializedName("message_id")
+    @SqliteMetadata(name = "message_id", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
     public String messageID;
 
     /**
      * <b>MessageContent</b> 是本级消息的内容。<br>
      */
     @SerializedName("message_content")
+    @SqliteMetadata(name = "message_content", type = DataType.Sqlite.TEXT)
     public String messageContent;
 
     /**
@@ -64,6 +74,7 @@ public class KatUniMessage {
      * </ol>
      */
     @SerializedName("message_list")
+    @SqliteMetadata(name = "message_list", codec = KatUniMessageCodec.MessageList.class)
     public ArrayList<KatUniMessage> messageList;
 
     /**
@@ -72,26 +83,41 @@ public class KatUniMessage {
      * <em>KatServer</em>对这部分消息是不敏感的，也就是说并不会对这段内容进行额外的补充
      */
     @SerializedName("extended")
+    @SqliteMetadata(name = "extended", codec = KatUniMessageCodec.Extended.class)
     public ArrayList<String> extended;
 
     /**
      * <b>ResourceHash</b> 是资源文件的哈希值
      */
     @SerializedName("resource_hash")
+    @SqliteMetadata(name = "resource_hash", type = DataType.Sqlite.TEXT)
     public String resourceHash;
 
     /**
      * <b>ResourceName</b> 为资源文件的实际名称
      */
     @SerializedName("resource_name")
+    @SqliteMetadata(name = "resource_name", type = DataType.Sqlite.TEXT)
     public String resourceName;
 
     /**
      * <b>ResourceURL</b> 为资源文件的下载地址
      */
     @SerializedName("resource_url")
+    @SqliteMetadata(name = "resource_url", type = DataType.Sqlite.TEXT)
     public String resourceURL;
 
+    /**
+     * <b>CreatedAt</b> 为消息存入<em>KatServer</em>的时间 单位为毫秒</br>
+     * <p>
+     * 存放消息时如果为空则由<em>KatServer</em>填充 与<b>MessageID</b>一起作为历史消息分页的位置</br>
+     * <p>
+     * 存入后不再被更新 重复投递的消息不会改变它在历史消息中的位置
+     */
+    @SerializedName("created_at")
+    @SqliteMetadata(name = "created_at", type = DataType.Sqlite.INTEGER, isUpdatable = false)
+    public Long createdAt;
+
     public KatUniMessage(
         String messageType,
         String messageGroup,
@@ -102,6 +128,21 @@ public class KatUniMessage {
         String resourceHash,
         String resourceName,
         String resourceURL) {
+        this(messageType, messageGroup, messageID, messageContent, messageList, extended,
+            resourceHash, resourceName, resourceURL, null);
+    }
+
+    public KatUniMessage(
+        String messageType,
+        String messageGroup,
+        String messageID,
+        String messageContent,
+        ArrayList<KatUniMessage> messageList,
+        ArrayList<String> extended,
+        String resourceHash,
+        String resourceName,
+        String resourceURL,
+        Long createdAt) {
         this.messageType = messageType;
         this.messageGroup = messageGroup;
         this.messageID = messageID;
@@ -111,6 +152,22 @@ public class KatUniMessage {
         this.resourceHash = resourceHash;
         this.resourceName = resourceName;
         this.resourceURL = resourceURL;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * 复制本条消息 下一级消息逐层复制 修改原消息的列表不影响复制的消息
+     */
+    public KatUniMessage copy() {
+        ArrayList<KatUniMessage> list = null;
+        if (messageList != null) {
+            list = new ArrayList<>(messageList.size());
+            for (KatUniMessage message : messageList) {
+                list.add(message == null ? null : message.copy());
+            }
+        }
+        return new KatUniMessage(messageType, messageGroup, messageID, messageContent, list,
+            extended == null ? null : new ArrayList<>(extended), resourceHash, resourceName, resourceURL, createdAt);
     }
 
     /**
@@ -143,7 +200,7 @@ public class KatUniMessage {
      * 判断是否为全索引，当<b>KatUniMessage.messageID</b>和<b>KatUniMessage.messageGroup</b>均有值时则为全索引
      */
     public boolean isFullIndex() {
-        return (this.messageGroup == null || this.messageID == null);
+        return this.messageGroup != null && this.messageID != null;
     }
 
     public boolean isDownloadable() {
@@ -0,0 +1,429 @@
+package com.catkatpowered.katserver.message;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KatUniMessage 的二进制编码 用于在 JDBC 数据库中存储嵌套的消息列表 <br>
+ * <br>
+ * 格式 (整数为 varint 有符号整数先 zigzag) <br>
+ * byte 版本 | 字符串表 | 消息数 | 消息... <br>
+ * 字符串表 = 数量 | 字符串... 保存重复出现的消息类型和消息组 消息中只写下标 <br>
+ * 消息 = 字段位图 | 头部 | 正文长度 | 正文 <br>
+ * 头部 = 类型下标 消息组下标 消息 ID 创建时间 另外存放的下一级消息数量 另外存放的下一级消息哈希 <br>
+ * 另外存放的下一级消息只出现在存储的消息树中 见 Reference <br>
+ * 正文 = 内容 资源哈希 资源名称 资源地址 扩展内容 嵌套的消息列表 (同样的消息格式 共用字符串表) <br>
+ * 位图中没有的字段不写入 字符串为 长度 | UTF-8 字节 <br>
+ * <br>
+ * 正文长度在正文之前 只需要头部字段时 (如列出合并转发中的消息) 使用 decodeHeaders 跳过全部正文 <br>
+ * 读取时总是跳到正文末尾 之后的版本可以在正文末尾增加字段 <br>
+ * 版本 2 在头部增加了另外存放的下一级消息 版本 1 的数据仍然可以读取
+ *
+ * @author hanbings
+ */
+public class KatUniMessageCodec {
+    public static final byte VERSION = 2;
+
+    private static final int TYPE = 1;
+    private static final int GROUP = 1 << 1;
+    private static final int ID = 1 << 2;
+    private static final int CREATED_AT = 1 << 3;
+    private static final int CONTENT = 1 << 4;
+    private static final int RESOURCE_HASH = 1 << 5;
+    private static final int RESOURCE_NAME = 1 << 6;
+    private static final int RESOURCE_URL = 1 << 7;
+    private static final int EXTENDED = 1 << 8;
+    private static final int MESSAGE_LIST = 1 << 9;
+    private static final int LIST_REF = 1 << 10;
+    private static final int LIST_HASH = 1 << 11;
+
+    /**
+     * 另外存放的下一级消息 只在存储中使用 不是消息的一部分
+     *
+     * @param count 下一级消息的数量
+     * @param hash  下一级消息的 sha256
+     */
+    public record Reference(int count, String hash) {
+    }
+
+    /**
+     * 编码一组消息
+     */
+    public static byte[] encode(List<KatUniMessage> messages) {
+        return encode(messages, null);
+    }
+
+    /**
+     * 编码一组消息 以及每条消息另外存放的下一级消息
+     *
+     * @param references 与 messages 按下标对应 没有另外存放时为 null 整个列表可以为 null
+     */
+    public static byte[] encode(List<KatUniMessage> messages, List<Reference> references) {
+        Map<String, Integer> table = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        Writer body = new Writer();
+        body.varint(messages.size());
+        for (int index = 0; index < messages.size(); index++) {
+            writeMessage(body, messages.get(index), references == null ? null : references.get(index),
+                table, strings);
+        }
+        Writer writer = new Writer();
+        writer.write(VERSION);
+        writer.varint(strings.size());
+        for (String string : strings) {
+            writer.string(string);
+        }
+        writer.write(body);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 解码全部字段
+     */
+    public static ArrayList<KatUniMessage> decode(byte[] bytes) {
+        return decode(bytes, null);
+    }
+
+    /**
+     * 解码全部字段 以及每条消息另外存放的下一级消息
+     *
+     * @param references 按顺序放入每条消息另外存放的下一级消息 没有时放入 null 为 null 时不读取
+     */
+    public static ArrayList<KatUniMessage> decode(byte[] bytes, List<Reference> references) {
+        Reader reader = new Reader(bytes);
+        String[] table = readTable(reader);
+        return readMessages(reader, table, false, references);
+    }
+
+    /**
+     * 只解码每条消息的类型 消息组 ID 和创建时间 跳过正文
+     */
+    public static ArrayList<KatUniMessage> decodeHeaders(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        String[] table = readTable(reader);
+        return readMessages(reader, table, true, null);
+    }
+
+    private static void writeMessage(Writer writer, KatUniMessage message, Reference reference,
+                                     Map<String, Integer> table, List<String> strings) {
+        int fields = 0;
+        fields |= message.messageType != null ? TYPE : 0;
+        fields |= message.messageGroup != null ? GROUP : 0;
+        fields |= message.messageID != null ? ID : 0;
+        fields |= message.createdAt != null ? CREATED_AT : 0;
+        fields |= message.messageContent != null ? CONTENT : 0;
+        fields |= message.resourceHash != null ? RESOURCE_HASH : 0;
+        fields |= message.resourceName != null ? RESOURCE_NAME : 0;
+        fields |= message.resourceURL != null ? RESOURCE_URL : 0;
+        fields |= message.extended != null ? EXTENDED : 0;
+        fields |= message.messageList != null ? MESSAGE_LIST : 0;
+        fields |= reference != null ? LIST_REF | LIST_HASH : 0;
+        writer.varint(fields);
+        if (message.messageType != null) {
+            writer.varint(intern(message.messageType, table, strings));
+        }
+        if (message.messageGroup != null) {
+            writer.varint(intern(message.messageGroup, table, strings));
+        }
+        if (message.messageID != null) {
+            writer.string(message.messageID);
+        }
+        if (message.createdAt != null) {
+            writer.varlong((message.createdAt << 1) ^ (message.createdAt >> 63));
+        }
+        if (reference != null) {
+            writer.varint(reference.count());
+            writer.string(reference.hash());
+        }
+        Writer body = new Writer();
+        if (message.messageContent != null) {
+            body.string(message.messageContent);
+        }
+        if (message.resourceHash != null) {
+            body.string(message.resourceHash);
+        }
+        if (message.resourceName != null) {
+            body.string(message.resourceName);
+        }
+        if (message.resourceURL != null) {
+            body.string(message.resourceURL);
+        }
+        if (message.extended != null) {
+            writeStrings(body, message.extended);
+        }
+        if (message.messageList != null) {
+            body.varint(message.messageList.size());
+            for (KatUniMessage child : message.messageList) {
+                writeMessage(body, child, null, table, strings);
+            }
+        }
+        writer.varint(body.size());
+        writer.write(body);
+    }
+
+    private static int intern(String string, Map<String, Integer> table, List<String> strings) {
+        return table.computeIfAbsent(string, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+
+    // 字符串列表的元素可以为 null 长度加一写入 0 表示 null
+    private static void writeStrings(Writer writer, List<String> values) {
+        writer.varint(values.size());
+        for (String value : values) {
+            if (value == null) {
+                writer.varint(0);
+                continue;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writer.varint(bytes.length + 1);
+            writer.write(bytes);
+        }
+    }
+
+    private static ArrayList<String> readStrings(Reader reader) {
+        int size = reader.varint();
+        ArrayList<String> values = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            int length = reader.varint();
+            values.add(length == 0 ? null : reader.string(length - 1));
+        }
+        return values;
+    }
+
+    private static void checkVersion(byte version) {
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("unsupported message codec version " + version);
+        }
+    }
+
+    private static String[] readTable(Reader reader) {
+        checkVersion(reader.read());
+        String[] table = new String[reader.varint()];
+        for (int index = 0; index < table.length; index++) {
+            table[index] = reader.string();
+        }
+        return table;
+    }
+
+    private static ArrayList<KatUniMessage> readMessages(Reader reader, String[] table, boolean headers,
+                                                         List<Reference> references) {
+        int size = reader.varint();
+        ArrayList<KatUniMessage> messages = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            messages.add(readMessage(reader, table, headers, references));
+        }
+        return messages;
+    }
+
+    private static KatUniMessage readMessage(Reader reader, String[] table, boolean headers,
+                                             List<Reference> references) {
+        int fields = reader.varint();
+        KatUniMessage message = new KatUniMessage();
+        // 位图中没有类型时为 null 而不是默认值
+        message.messageType = (fields & TYPE) != 0 ? table[reader.varint()] : null;
+        if ((fields & GROUP) != 0) {
+            message.messageGroup = table[reader.varint()];
+        }
+        if ((fields & ID) != 0) {
+            message.messageID = reader.string();
+        }
+        if ((fields & CREATED_AT) != 0) {
+            long value = reader.varlong();
+            message.createdAt = (value >>> 1) ^ -(value & 1);
+        }
+        int count = (fields & LIST_REF) != 0 ? reader.varint() : 0;
+        String hash = (fields & LIST_HASH) != 0 ? reader.string() : null;
+        if (references != null) {
+            references.add(hash == null ? null : new Reference(count, hash));
+        }
+        int length = reader.varint();
+        if (headers) {
+            reader.skip(length);
+            return message;
+        }
+        int end = reader.position() + length;
+        if ((fields & CONTENT) != 0) {
+            message.messageContent = reader.string();
+        }
+        if ((fields & RESOURCE_HASH) != 0) {
+            message.resourceHash = reader.string();
+        }
+        if ((fields & RESOURCE_NAME) != 0) {
+            message.resourceName = reader.string();
+        }
+        if ((fields & RESOURCE_URL) != 0) {
+            message.resourceURL = reader.string();
+        }
+        if ((fields & EXTENDED) != 0) {
+            message.extended = readStrings(reader);
+        }
+        if ((fields & MESSAGE_LIST) != 0) {
+            message.messageList = readMessages(reader, table, false, null);
+        }
+        reader.skip(end - reader.position());
+        return message;
+    }
+
+    /**
+     * KatUniMessage.messageList 列的编解码器
+     */
+    public static class MessageList implements DatabaseCodec<ArrayList<KatUniMessage>> {
+        @Override
+        public byte[] encode(ArrayList<KatUniMessage> value) {
+            return KatUniMessageCodec.encode(value);
+        }
+
+        @Override
+        public ArrayList<KatUniMessage> decode(byte[] bytes) {
+            return KatUniMessageCodec.decode(bytes);
+        }
+    }
+
+    /**
+     * KatUniMessage.extended 列的编解码器 格式为 版本 | 数量 | 字符串...
+     */
+    public static class Extended implements DatabaseCodec<ArrayList<String>> {
+        @Override
+        public byte[] encode(ArrayList<String> value) {
+            Writer writer = new Writer();
+            writer.write(VERSION);
+            writeStrings(writer, value);
+            return writer.toByteArray();
+        }
+
+        @Override
+        public ArrayList<String> decode(byte[] bytes) {
+            Reader reader = new Reader(bytes);
+            checkVersion(reader.read());
+            return readStrings(reader);
+        }
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void write(byte value) {
+            this.ensure(1);
+            buffer[size++] = value;
+        }
+
+        void write(byte[] bytes) {
+            this.ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void write(Writer writer) {
+            this.ensure(writer.size);
+            System.arraycopy(writer.buffer, 0, buffer, size, writer.size);
+            size += writer.size;
+        }
+
+        void varint(int value) {
+            this.varlong(value & 0xFFFFFFFFL);
+        }
+
+        void varlong(long value) {
+            this.ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.varint(bytes.length);
+            this.write(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int position() {
+            return position;
+        }
+
+        byte read() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("truncated message codec data");
+            }
+            return bytes[position++];
+        }
+
+        int varint() {
+            long value = this.varlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("malformed message codec data");
+            }
+            return (int) value;
+        }
+
+        long varlong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte current = this.read();
+                value |= (long) (current & 0x7F) << shift;
+                if (current >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("malformed message codec data");
+        }
+
+        String string() {
+            return this.string(this.varint());
+        }
+
+        String string(int length) {
+            this.check(length);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skip(int length) {
+            this.check(length);
+            position += length;
+        }
+
+        private void check(int length) {
+            if (length < 0) {
+                throw new IllegalArgumentException("malformed message codec data");
+            }
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("truncated message codec data");
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.catkatpowered.katserver.network;
+
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.google.gson.Gson;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HttpCode;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * 以 JSON 返回数据库操作统计 <br>
+ * 带 table 查询参数时只返回这张表的统计 <br>
+ * 统计中包含全部消息组的表名 默认不开放 配置了 token 时请求需要带上 Authorization: Bearer &lt;token&gt;
+ */
+public class DatabaseMetricsHandler implements Handler {
+
+    private final Gson gson = new Gson();
+    // 为空时不检查
+    private final byte[] token;
+
+    public DatabaseMetricsHandler(String token) {
+        this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 从配置文件的 database_metrics 节点读取
+     *
+     * @param config database_metrics 节点 可以为 null
+     * @return 没有开启 http 时为 null
+     */
+    public static DatabaseMetricsHandler fromConfig(Map<String, Object> config) {
+        if (config == null
+            || !Boolean.parseBoolean(String.valueOf(config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS_HTTP)))) {
+            return null;
+        }
+        Object token = config.get(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS_TOKEN);
+        return new DatabaseMetricsHandler(token == null ? null : token.toString());
+    }
+
+    @Override
+    public void handle(@NotNull Context ctx) throws Exception {
+        if (!this.authorized(ctx.header("Authorization"))) {
+            ctx.status(HttpCode.UNAUTHORIZED);
+            return;
+        }
+        String table = ctx.queryParam("table");
+        ctx.contentType("application/json").result(gson.toJson(
+            table == null
+                ? KatServer.KatDatabaseAPI.getMetrics().snapshot()
+                : KatServer.KatDatabaseAPI.getMetrics().snapshot(table)
+        ));
+    }
+
+    private boolean authorized(String header) {
+        if (token == null) {
+            return true;
+        }
+        if (header == null || !header.startsWith("Bearer ")) {
+            return false;
+        }
+        // 比较的时间与相同的前缀长度无关
+        return MessageDigest.isEqual(token, header.substring(7).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,10 +1,14 @@
 package com.catkatpowered.katserver.network;
 
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
 import com.catkatpowered.katserver.config.KatConfig;
 import io.javalin.Javalin;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Map;
+
 public class KatNetwork {
 
     private static final KatNetwork Instance = new KatNetwork();
@@ -13,10 +17,17 @@ public class KatNetwork {
     @Setter
     private static Javalin network;
 
+    @SuppressWarnings("unchecked")
     private KatNetwork() {
         Javalin katserver = Javalin.create();
         // HTTP Handlers
         katserver.get("/", new HTTPHandler());
+        // 数据库统计默认不开放
+        DatabaseMetricsHandler metrics = DatabaseMetricsHandler.fromConfig((Map<String, Object>) KatServer.KatConfigAPI
+            .getConfig(KatConfigNodeConstants.KAT_CONFIG_DATABASE_METRICS));
+        if (metrics != null) {
+            katserver.get("/metrics/database", metrics);
+        }
 
         // WebSocket Handlers
         katserver.ws("/websocket", ws -> {
@@ -0,0 +1,424 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用预设字典压缩<b>KatUniMessage.messageContent</b><br>
+ * 聊天消息很短 单条压缩几乎没有效果 但同一个服务中的消息大量重复相同的词句<br>
+ * 从写入的消息中采样 训练出的字典作为 deflate 的预设字典 短消息也可以引用字典中的内容<br>
+ * <p>
+ * 字典按版本存放在 @dictionaries 表中 压缩后的内容开头为所用字典的版本<br>
+ * 重新训练只产生新的版本 已经压缩的消息仍然用旧版本解压 关闭压缩后已经压缩的消息也可以读取<br>
+ * 字典训练完成前写入的消息不压缩
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class KatContentCompressor {
+
+    public static final String TABLE = KatMessagePartitions.SEPARATOR + "dictionaries";
+    // 默认训练字典所用的采样数
+    public static final int DEFAULT_SAMPLES = 2000;
+    // 默认字典大小 字节
+    public static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+    // 默认不压缩的内容长度 字节
+    public static final int DEFAULT_MIN_LENGTH = 24;
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    // deflate 的窗口大小 更早的字典内容不会被引用
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    // 字典训练完成后 每隔多少条消息采样一条 用于重新训练
+    private static final int SAMPLE_INTERVAL = 16;
+    // 训练时统计的子串长度 和每次选入字典的片段长度 字节
+    private static final int GRAM = 6;
+    private static final int SEGMENT = 48;
+
+    @Getter
+    private final boolean enabled;
+    @Getter
+    private final int samples;
+    @Getter
+    private final int dictionarySize;
+    @Getter
+    private final int minLength;
+    @Getter
+    private final int level;
+
+    // 版本 -> 字典
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    // 压缩新消息所用的字典
+    private volatile KatContentDictionary current;
+    private volatile boolean loaded;
+    private final ArrayDeque<String> sampled = new ArrayDeque<>();
+    private final AtomicLong written = new AtomicLong();
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    public KatContentCompressor(boolean enabled, int samples, int dictionarySize, int minLength, int level) {
+        this.enabled = enabled;
+        this.samples = Math.max(1, samples);
+        this.dictionarySize = Math.max(SEGMENT, Math.min(MAX_DICTIONARY_SIZE, dictionarySize));
+        this.minLength = minLength;
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    /**
+     * 从配置文件的 message_compression 节点读取 缺省的项使用默认值
+     *
+     * @param config message_compression 节点 可以为 null
+     */
+    public static KatContentCompressor fromConfig(Map<String, Object> config) {
+        boolean enabled = false;
+        int samples = DEFAULT_SAMPLES;
+        int dictionarySize = DEFAULT_DICTIONARY_SIZE;
+        int minLength = DEFAULT_MIN_LENGTH;
+        int level = DEFAULT_LEVEL;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_ENABLED) != null) {
+                enabled = Boolean.parseBoolean(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_ENABLED).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_SAMPLES) != null) {
+                samples = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_SAMPLES).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_DICTIONARY_SIZE) != null) {
+                dictionarySize = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_DICTIONARY_SIZE).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_MIN_LENGTH) != null) {
+                minLength = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_MIN_LENGTH).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_LEVEL) != null) {
+                level = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION_LEVEL).toString());
+            }
+        }
+        return new KatContentCompressor(enabled, samples, dictionarySize, minLength, level);
+    }
+
+    /**
+     * 写入数据库前压缩消息内容 直接修改传入的行<br>
+     * 不需要压缩或压缩后没有变小时不修改
+     */
+    public KatMessageRow compress(KatMessageRow message) {
+        if (!enabled || message.messageContent == null) {
+            return message;
+        }
+        this.load();
+        this.sample(message.messageContent);
+        KatContentDictionary dictionary = current;
+        byte[] bytes = message.messageContent.getBytes(StandardCharsets.UTF_8);
+        if (dictionary == null || bytes.length < minLength) {
+            return message;
+        }
+        byte[] compressed = this.deflate(dictionary, bytes);
+        if (compressed.length >= bytes.length) {
+            return message;
+        }
+        message.messageContent = null;
+        message.compressedContent = compressed;
+        return message;
+    }
+
+    /**
+     * 解压从数据库读出的行 直接修改传入的行<br>
+     * 字典的版本不存在或数据损坏时抛出异常 不能当作内容为 null 的消息读出
+     *
+     * @throws IllegalArgumentException 无法解压
+     */
+    public KatMessageRow decompress(KatMessageRow message) {
+        if (message.compressedContent == null) {
+            return message;
+        }
+        try {
+            message.messageContent = this.inflate(message.compressedContent);
+        } catch (IllegalArgumentException | DataFormatException exception) {
+            throw new IllegalArgumentException(
+                "cannot decompress message " + message.messageID + ": " + exception.getMessage(), exception);
+        }
+        message.compressedContent = null;
+        return message;
+    }
+
+    /**
+     * 用最近采样的消息内容训练新版本的字典 之后写入的消息使用新字典
+     *
+     * @return 新的字典 没有采样时返回当前的字典 可能为 null
+     */
+    public synchronized KatContentDictionary train() {
+        this.load();
+        List<String> contents;
+        synchronized (sampled) {
+            contents = new ArrayList<>(sampled);
+        }
+        if (contents.isEmpty()) {
+            return current;
+        }
+        int version = current == null ? 1 : current.version + 1;
+        KatContentDictionary dictionary = new KatContentDictionary(
+            version, train(contents, dictionarySize), System.currentTimeMillis());
+        KatServer.KatDatabaseAPI.getActions().create(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(), TABLE, dictionary);
+        // 只使用数据库中的字典 写入失败时不能使用 否则压缩的消息无法解压
+        // 其他进程同时训练了相同的版本时 这个版本是先写入的字典
+        KatContentDictionary stored = this.read(version);
+        if (stored == null) {
+            log.error("failed to store content dictionary version {}.", version);
+            return current;
+        }
+        dictionaries.put(version, stored.dictionary);
+        current = stored;
+        if (Arrays.equals(stored.dictionary, dictionary.dictionary)) {
+            log.info("trained content dictionary version {} ({} bytes) from {} samples.",
+                version, stored.dictionary.length, contents.size());
+        } else {
+            log.info("content dictionary version {} was trained by another server, using it.", version);
+        }
+        return stored;
+    }
+
+    /**
+     * 从采样训练字典<br>
+     * 统计每个 GRAM 字节的子串出现在多少条采样中 把采样平均分为若干段 每段选出包含最多重复子串的 SEGMENT 字节<br>
+     * 选入的子串不再计分 避免字典中重复相同的内容 得分最高的片段放在字典末尾 距离最近 编码最短
+     *
+     * @param contents 采样的消息内容
+     * @param size     字典的最大长度
+     */
+    public static byte[] train(List<String> contents, int size) {
+        List<byte[]> documents = new ArrayList<>(contents.size());
+        int total = 0;
+        for (String content : contents) {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            documents.add(bytes);
+            total += bytes.length;
+        }
+        byte[] data = new byte[total];
+        int offset = 0;
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] document : documents) {
+            System.arraycopy(document, 0, data, offset, document.length);
+            Set<Long> seen = new HashSet<>();
+            for (int index = 0; index + GRAM <= document.length; index++) {
+                long gram = gram(document, index);
+                if (seen.add(gram)) {
+                    frequencies.merge(gram, 1, Integer::sum);
+                }
+            }
+            offset += document.length;
+        }
+        // 每个位置开始的子串的得分 只出现在一条采样中的子串不计分
+        int[] scores = new int[total];
+        for (int index = 0; index + GRAM <= total; index++) {
+            scores[index] = frequencies.getOrDefault(gram(data, index), 1) - 1;
+        }
+        List<int[]> segments = new ArrayList<>();
+        int epoch = Math.max(SEGMENT, total / Math.max(1, size / SEGMENT));
+        for (int from = 0; from + SEGMENT <= total; from += epoch) {
+            int to = Math.min(total, from + epoch);
+            int best = -1;
+            long bestScore = 0;
+            long score = 0;
+            for (int index = from; index < from + SEGMENT - GRAM + 1; index++) {
+                score += scores[index];
+            }
+            for (int start = from; start + SEGMENT <= to; start++) {
+                if (start > from) {
+                    score += scores[start + SEGMENT - GRAM] - scores[start - 1];
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = start;
+                }
+            }
+            if (best < 0) {
+                continue;
+            }
+            segments.add(new int[]{best, (int) Math.min(Integer.MAX_VALUE, bestScore)});
+            // 选入的子串在之后的段中不再计分
+            for (int index = best; index < best + SEGMENT - GRAM + 1; index++) {
+                long gram = gram(data, index);
+                if (frequencies.containsKey(gram)) {
+                    frequencies.put(gram, 1);
+                }
+            }
+            for (int index = to; index + GRAM <= Math.min(total, to + epoch); index++) {
+                scores[index] = frequencies.getOrDefault(gram(data, index), 1) - 1;
+            }
+        }
+        segments.sort(Comparator.comparingInt(segment -> segment[1]));
+        int count = Math.min(segments.size(), size / SEGMENT);
+        byte[] dictionary = new byte[count * SEGMENT];
+        for (int index = 0; index < count; index++) {
+            int[] segment = segments.get(segments.size() - count + index);
+            System.arraycopy(data, segment[0], dictionary, index * SEGMENT, SEGMENT);
+        }
+        return dictionary;
+    }
+
+    // GRAM 个字节组成的子串
+    private static long gram(byte[] bytes, int offset) {
+        long gram = 0;
+        for (int index = 0; index < GRAM; index++) {
+            gram = (gram << 8) | (bytes[offset + index] & 0xFF);
+        }
+        return gram;
+    }
+
+    // 训练前采样每条消息 训练后每 SAMPLE_INTERVAL 条采样一条
+    private void sample(String content) {
+        if (current != null && written.incrementAndGet() % SAMPLE_INTERVAL != 0) {
+            return;
+        }
+        boolean ready;
+        synchronized (sampled) {
+            sampled.addLast(content);
+            if (sampled.size() > samples) {
+                sampled.removeFirst();
+            }
+            ready = current == null && sampled.size() >= samples;
+        }
+        if (ready) {
+            synchronized (this) {
+                if (current == null) {
+                    this.train();
+                }
+            }
+        }
+    }
+
+    // 版本 | 没有 zlib 头的 deflate 数据
+    private byte[] deflate(KatContentDictionary dictionary, byte[] bytes) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setDictionary(dictionary.dictionary);
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] buffer = new byte[bytes.length + 16];
+        int length = varint(buffer, 0, dictionary.version);
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private String inflate(byte[] bytes) throws DataFormatException {
+        int version = 0;
+        int offset = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (offset >= bytes.length || shift > 28) {
+                throw new IllegalArgumentException("malformed compressed content");
+            }
+            byte current = bytes[offset++];
+            version |= (current & 0x7F) << shift;
+            if (current >= 0) {
+                break;
+            }
+        }
+        byte[] dictionary = this.dictionary(version);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        inflater.setInput(bytes, offset, bytes.length - offset);
+        byte[] buffer = new byte[Math.max(64, bytes.length * 4)];
+        int length = 0;
+        while (!inflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int inflated = inflater.inflate(buffer, length, buffer.length - length);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("truncated compressed content");
+            }
+            length += inflated;
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // 写入 value 的 varint 返回写入后的位置
+    private static int varint(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private byte[] dictionary(int version) {
+        this.load();
+        byte[] dictionary = dictionaries.get(version);
+        if (dictionary == null) {
+            // 其他进程写入的新版本
+            KatContentDictionary stored = this.read(version);
+            if (stored == null) {
+                throw new IllegalArgumentException("unknown content dictionary version " + version);
+            }
+            dictionary = stored.dictionary;
+            dictionaries.put(version, dictionary);
+        }
+        return dictionary;
+    }
+
+    private KatContentDictionary read(int version) {
+        List<KatContentDictionary> rows = KatServer.KatDatabaseAPI.getActions().read(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            TABLE,
+            KatContentDictionary.class,
+            new DatabaseQuery().equal("version", version));
+        return rows == null || rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // 第一次使用时载入全部版本的字典
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (KatServer.KatDatabaseAPI.getActions().tables(
+                KatServer.KatDatabaseAPI.getConnector().getConnection()).contains(TABLE)) {
+                List<KatContentDictionary> rows = KatServer.KatDatabaseAPI.getActions().read(
+                    KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                    TABLE,
+                    KatContentDictionary.class,
+                    new DatabaseQuery());
+                if (rows != null) {
+                    for (KatContentDictionary row : rows) {
+                        dictionaries.put(row.version, row.dictionary);
+                        if (current == null || row.version > current.version) {
+                            current = row;
+                        }
+                    }
+                }
+            }
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.type.DataType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 压缩消息内容所用的一个版本的预设字典 <br>
+ * 与消息存放在同一个数据库中 写入后不再修改 使用过的版本不删除
+ *
+ * @author hanbings
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KatContentDictionary {
+    @SqliteMetadata(name = "version", type = DataType.Sqlite.INTEGER, isPrimaryKey = true)
+    public Integer version;
+
+    @SqliteMetadata(name = "dictionary")
+    public byte[] dictionary;
+
+    @SqliteMetadata(name = "created_at", type = DataType.Sqlite.INTEGER)
+    public Long createdAt;
+}
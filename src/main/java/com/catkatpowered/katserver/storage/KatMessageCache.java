@@ -0,0 +1,198 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.message.KatUniMessage;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 按<b>KatUniMessage.messageGroup</b>和<b>KatUniMessage.messageID</b>缓存消息的读穿透缓存<br>
+ * 同时限制条目数和估算的内存占用 超出时按最近最少使用淘汰<br>
+ * 同一条消息同时未命中时只有一个线程读取数据库 其余线程等待它的结果<br>
+ * 缓存中的消息与调用者共享 不要修改读取到的消息
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class KatMessageCache {
+
+    // 默认最多缓存的消息数
+    public static final long DEFAULT_CAPACITY = 10000;
+    // 默认最多占用的内存 字节
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+    // 每条消息对象本身的估算大小 字节
+    private static final int MESSAGE_OVERHEAD = 96;
+    // 写入计数的分段数
+    private static final int STRIPES = 64;
+
+    @Getter
+    private final long capacity;
+    @Getter
+    private final long maxWeight;
+    // 容量为 0 时不缓存
+    private final LoadingCache<Key, List<KatUniMessage>> cache;
+    // 按键分段的写入计数 Guava 在加载期间无法移除条目 读取期间同一分段发生过写入时读取的结果不保留
+    private final AtomicLongArray writes = new AtomicLongArray(STRIPES);
+
+    /**
+     * @param capacity  最多缓存的消息数 小于等于 0 时不缓存
+     * @param maxWeight 最多占用的内存 字节
+     * @param loader    未命中时按消息组和消息 ID 读取数据库
+     */
+    public KatMessageCache(long capacity, long maxWeight,
+                           @NotNull BiFunction<String, String, List<KatUniMessage>> loader) {
+        this.capacity = capacity;
+        this.maxWeight = maxWeight;
+        if (capacity <= 0 || maxWeight <= 0) {
+            this.cache = null;
+            return;
+        }
+        // Guava 不能同时限制条目数和权重 每条消息至少占用 maxWeight / capacity 的权重 条目数因此不会超过 capacity
+        int floor = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWeight / capacity));
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxWeight)
+            .weigher((Key key, List<KatUniMessage> value) -> Math.max(floor, weigh(value)))
+            .recordStats()
+            .build(new CacheLoader<>() {
+                @Override
+                public List<KatUniMessage> load(@NotNull Key key) {
+                    return loader.apply(key.group(), key.id());
+                }
+            });
+    }
+
+    /**
+     * 从配置文件的 message_cache 节点读取容量 缺省的项使用默认值
+     *
+     * @param config message_cache 节点 可以为 null
+     * @param loader 未命中时读取数据库
+     */
+    public static KatMessageCache fromConfig(Map<String, Object> config,
+                                             BiFunction<String, String, List<KatUniMessage>> loader) {
+        long capacity = DEFAULT_CAPACITY;
+        long maxWeight = DEFAULT_MAX_WEIGHT;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_CACHE_CAPACITY) != null) {
+                capacity = Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_CACHE_CAPACITY).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_CACHE_MAX_WEIGHT) != null) {
+                maxWeight = Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_CACHE_MAX_WEIGHT).toString());
+            }
+        }
+        return new KatMessageCache(capacity, maxWeight, loader);
+    }
+
+    /**
+     * 读取消息 未命中时读取数据库并缓存结果
+     *
+     * @return 读取失败时返回 null 且不缓存
+     */
+    public List<KatUniMessage> get(String group, String id) {
+        if (cache == null) {
+            return null;
+        }
+        Key key = new Key(group, id);
+        int stripe = stripe(key);
+        long version = writes.get(stripe);
+        try {
+            List<KatUniMessage> messages = cache.getUnchecked(key);
+            if (writes.get(stripe) != version) {
+                cache.invalidate(key);
+            }
+            return messages;
+        } catch (InvalidCacheLoadException | UncheckedExecutionException exception) {
+            log.error(String.valueOf(exception));
+            return null;
+        }
+    }
+
+    // 存放新消息后放入缓存
+    public void put(@NotNull KatUniMessage message) {
+        if (cache != null) {
+            Key key = new Key(message.messageGroup, message.messageID);
+            writes.incrementAndGet(stripe(key));
+            cache.put(key, List.of(message));
+        }
+    }
+
+    // 消息被更新或删除后移出缓存
+    public void invalidate(String group, String id) {
+        if (cache != null) {
+            Key key = new Key(group, id);
+            writes.incrementAndGet(stripe(key));
+            cache.invalidate(key);
+        }
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    // 命中率 加载次数和淘汰次数等统计 不缓存时全部为 0
+    public CacheStats getStats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    private static int stripe(Key key) {
+        return Math.floorMod(key.hashCode(), STRIPES);
+    }
+
+    /**
+     * 估算消息占用的内存 字符串按 UTF-16 计算 包括下一级消息
+     */
+    static int weigh(List<KatUniMessage> messages) {
+        long weight = 16;
+        for (KatUniMessage message : messages) {
+            weight += weigh(message);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    static long weigh(KatUniMessage message) {
+        long weight = MESSAGE_OVERHEAD
+            + weigh(message.messageType) + weigh(message.messageGroup) + weigh(message.messageID)
+            + weigh(message.messageContent) + weigh(message.resourceHash) + weigh(message.resourceName)
+            + weigh(message.resourceURL);
+        if (message.extended != null) {
+            for (String extended : message.extended) {
+                weight += weigh(extended);
+            }
+        }
+        if (message.messageList != null) {
+            for (KatUniMessage child : message.messageList) {
+                weight += weigh(child);
+            }
+        }
+        return weight;
+    }
+
+    private static long weigh(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private record Key(String group, String id) {
+    }
+}
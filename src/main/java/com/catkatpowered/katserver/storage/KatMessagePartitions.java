@@ -0,0 +1,292 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按时间分区的消息表<br>
+ * 每个消息组每个周期一张表 表名为 消息组@分区名 如 group@2022-01<br>
+ * 消息组中的 % 和 @ 按 URL 编码转义 表名中第一个 @ 之前为消息组 之后为分区名和内部表的后缀<br>
+ * 消息按<b>KatUniMessage.createdAt</b>写入所在周期的表 读取时从最新的分区开始依次查询<br>
+ * 分区之前的不分区的表 (表名就是消息组) 作为最旧的分区继续读取 但不会被过期删除<br>
+ * 过期的历史消息按分区整张表删除 不逐行删除 不产生碎片 也不会长时间占用写链接<br>
+ * <p>
+ * 分区登记在第一次使用时从数据库的表列表载入 之后随建表和删表更新 读写时不需要列出全部的表<br>
+ * 以 @ 开头的表和编辑历史的表属于存储内部 不作为消息组载入
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class KatMessagePartitions {
+
+    // 消息组和分区名之间的分隔符
+    public static final String SEPARATOR = "@";
+    // 检查过期分区的间隔 毫秒
+    private static final long PURGE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    @Getter
+    private final KatPartitionPeriod period;
+    // 保留的时长 毫秒 小于等于 0 时永久保留
+    @Getter
+    private final long retention;
+    // 消息组 -> 分区名 按时间顺序排列
+    private final Map<String, NavigableSet<String>> groups = new ConcurrentHashMap<>();
+    // 不分区的旧表
+    private final Set<String> legacy = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+    private ScheduledExecutorService scheduler;
+
+    public KatMessagePartitions(KatPartitionPeriod period, long retention) {
+        this.period = period;
+        this.retention = retention;
+    }
+
+    /**
+     * 从配置文件的 message_partition 节点读取 缺省时不分区<br>
+     * 配置不合法时记录错误并且不分区 不删除任何消息 已经分区的消息在修正配置前不可读
+     *
+     * @param config message_partition 节点 可以为 null
+     */
+    public static KatMessagePartitions fromConfig(Map<String, Object> config) {
+        KatPartitionPeriod period = KatPartitionPeriod.NONE;
+        long retention = 0;
+        if (config != null) {
+            try {
+                if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_PARTITION_PERIOD) != null) {
+                    period = KatPartitionPeriod.lookup(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_PARTITION_PERIOD).toString());
+                }
+                if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_PARTITION_RETENTION) != null) {
+                    retention = TimeUnit.DAYS.toMillis(Long.parseLong(
+                        config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_PARTITION_RETENTION).toString()));
+                }
+            } catch (IllegalArgumentException exception) {
+                log.error("invalid message_partition config, message partitioning is disabled: {}",
+                    exception.getMessage());
+                return new KatMessagePartitions(KatPartitionPeriod.NONE, 0);
+            }
+        }
+        return new KatMessagePartitions(period, retention);
+    }
+
+    public boolean isEnabled() {
+        return period != KatPartitionPeriod.NONE;
+    }
+
+    /**
+     * 消息写入的表
+     *
+     * @param group     消息组
+     * @param createdAt 消息的时间 毫秒
+     */
+    public String table(String group, long createdAt) {
+        return isEnabled() ? partition(group, period.suffix(createdAt)) : group;
+    }
+
+    /**
+     * 写入后登记分区 建表由 DatabaseActions 在第一次写入时完成 因此登记在写入之后
+     *
+     * @param group     消息组
+     * @param createdAt 写入的消息的时间 毫秒
+     */
+    public void register(String group, long createdAt) {
+        if (isEnabled()) {
+            this.load();
+            groups.computeIfAbsent(group, key -> new ConcurrentSkipListSet<>()).add(period.suffix(createdAt));
+        }
+    }
+
+    /**
+     * 消息组的全部表 最新的在最前
+     */
+    public List<String> tables(String group) {
+        return this.tables(group, Long.MAX_VALUE);
+    }
+
+    /**
+     * 消息组中可能包含早于 before 的消息的表 最新的在最前
+     *
+     * @param group  消息组
+     * @param before 毫秒时间戳
+     */
+    public List<String> tables(String group, long before) {
+        if (!isEnabled()) {
+            return List.of(group);
+        }
+        this.load();
+        List<String> tables = new ArrayList<>();
+        NavigableSet<String> suffixes = groups.getOrDefault(group, Collections.emptyNavigableSet());
+        for (String suffix : suffixes.descendingSet()) {
+            if (period.start(suffix) < before) {
+                tables.add(partition(group, suffix));
+            }
+        }
+        if (legacy.contains(group)) {
+            tables.add(group);
+        }
+        return tables;
+    }
+
+    /**
+     * 可能包含这条消息的表 即消息时间所在的分区和不分区的旧表
+     *
+     * @param group     消息组
+     * @param createdAt 消息的时间 毫秒 为 null 时返回消息组的全部表
+     */
+    public List<String> locate(String group, Long createdAt) {
+        if (!isEnabled()) {
+            return List.of(group);
+        }
+        if (createdAt == null) {
+            return this.tables(group);
+        }
+        this.load();
+        List<String> tables = new ArrayList<>(2);
+        String suffix = period.suffix(createdAt);
+        if (groups.getOrDefault(group, Collections.emptyNavigableSet()).contains(suffix)) {
+            tables.add(partition(group, suffix));
+        }
+        if (legacy.contains(group)) {
+            tables.add(group);
+        }
+        return tables;
+    }
+
+    /**
+     * 分区表所属的消息组 不是分区表时返回表名本身
+     */
+    public static String group(String table) {
+        int index = table.indexOf(SEPARATOR);
+        return index <= 0 ? table : unescape(table.substring(0, index));
+    }
+
+    /**
+     * 是否为存储内部使用的表 如 @trees 和编辑历史
+     */
+    public static boolean isInternal(String table) {
+        return table.startsWith(SEPARATOR) || table.endsWith(KatMessageRevisions.SUFFIX);
+    }
+
+    // 消息组中的 @ 转义后 表名中的第一个 @ 就是分隔符
+    private static String partition(String group, String suffix) {
+        return escape(group) + SEPARATOR + suffix;
+    }
+
+    private static String escape(String group) {
+        return group.replace("%", "%25").replace(SEPARATOR, "%40");
+    }
+
+    private static String unescape(String group) {
+        return group.replace("%40", SEPARATOR).replace("%25", "%");
+    }
+
+    /**
+     * 删除整个周期都早于保留时长的分区
+     *
+     * @param now      当前时间 毫秒
+     * @param dropping 删除每张表之前收到表名 用于释放表中的消息引用的数据
+     * @return 删除的表
+     */
+    public List<String> purge(long now, Consumer<String> dropping) {
+        if (!isEnabled() || retention <= 0) {
+            return List.of();
+        }
+        this.load();
+        long cutoff = now - retention;
+        List<String> dropped = new ArrayList<>();
+        for (Map.Entry<String, NavigableSet<String>> entry : groups.entrySet()) {
+            for (String suffix : entry.getValue()) {
+                // 分区名按时间排序 遇到没有过期的分区即可停止
+                if (period.end(suffix) > cutoff) {
+                    break;
+                }
+                String table = partition(entry.getKey(), suffix);
+                dropping.accept(table);
+                KatServer.KatDatabaseAPI.getActions().drop(
+                    KatServer.KatDatabaseAPI.getConnector().getConnection(), table);
+                entry.getValue().remove(suffix);
+                dropped.add(table);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            log.info("dropped {} expired message partitions.", dropped.size());
+        }
+        return dropped;
+    }
+
+    /**
+     * 启动后台线程 每小时删除一次过期的分区
+     *
+     * @param dropping 删除每张表之前收到表名
+     * @param listener 每次删除后收到删除的表 用于清理缓存
+     */
+    public synchronized void start(Consumer<String> dropping, Consumer<List<String>> listener) {
+        if (!isEnabled() || retention <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kat-partition-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                List<String> dropped = this.purge(System.currentTimeMillis(), dropping);
+                if (!dropped.isEmpty()) {
+                    listener.accept(dropped);
+                }
+            } catch (RuntimeException exception) {
+                log.error(String.valueOf(exception));
+            }
+        }, 0, PURGE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // 第一次使用时从数据库的表列表载入分区
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            for (String table : KatServer.KatDatabaseAPI.getActions().tables(
+                KatServer.KatDatabaseAPI.getConnector().getConnection())) {
+                if (isInternal(table)) {
+                    continue;
+                }
+                // 不分区的旧表的表名就是消息组 没有转义 可能包含 @
+                int index = table.indexOf(SEPARATOR);
+                String suffix = index <= 0 ? null : table.substring(index + 1);
+                if (suffix != null && period.isValid(suffix)) {
+                    groups.computeIfAbsent(unescape(table.substring(0, index)), key -> new ConcurrentSkipListSet<>())
+                        .add(suffix);
+                } else {
+                    legacy.add(table);
+                }
+            }
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.database.annotation.SqliteIndex;
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.type.DataType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一条消息内容的一个版本 <br>
+ * 存放在消息所在的表名加 @revisions 的表中 版本 0 为第一次编辑前的内容 <br>
+ * 内容为完整的快照 或相对上一个版本的差异 每隔若干个版本存放一次快照
+ *
+ * @author hanbings
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@SqliteIndex(name = "message_revision", columns = {"message_id", "revision"}, isUnique = true)
+public class KatMessageRevision {
+    // 消息 ID 和版本
+    @SqliteMetadata(name = "revision_id", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
+    public String revisionID;
+
+    @SqliteMetadata(name = "message_id", type = DataType.Sqlite.TEXT)
+    public String messageID;
+
+    @SqliteMetadata(name = "revision", type = DataType.Sqlite.INTEGER)
+    public Integer revision;
+
+    // 快照或差异 格式见 KatMessageRevisions
+    @SqliteMetadata(name = "content")
+    public byte[] content;
+
+    // 成为这个版本的时间 毫秒
+    @SqliteMetadata(name = "edited_at", type = DataType.Sqlite.INTEGER)
+    public Long editedAt;
+}
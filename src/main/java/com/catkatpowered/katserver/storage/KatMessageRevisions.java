@@ -0,0 +1,361 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.google.common.util.concurrent.Striped;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 消息内容的编辑历史<br>
+ * 当前的内容仍然只在消息表中 读取最新的消息不经过编辑历史<br>
+ * 第一次编辑时写入编辑前的内容作为版本 0 之后每次编辑写入一个版本<br>
+ * 每个版本只保存相对上一个版本的差异 (相同的开头和结尾的长度 加上中间替换的内容)<br>
+ * 每隔 snapshot_interval 个版本 或差异不比完整内容小时 保存完整的快照 读取任意版本最多读取 snapshot_interval 行<br>
+ * <p>
+ * 版本的格式 <br>
+ * byte 类型 | 快照: UTF-8 内容 | 差异: varint 开头长度 varint 结尾长度 UTF-8 中间内容 <br>
+ * 长度按 UTF-16 字符计 不会拆开代理对 内容为 null 的版本只有类型
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class KatMessageRevisions {
+
+    // 消息所在的表名之后的后缀
+    public static final String SUFFIX = KatMessagePartitions.SEPARATOR + "revisions";
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 8;
+    private static final String MESSAGE_ID = "message_id";
+    private static final String REVISION = "revision";
+    private static final byte SNAPSHOT = 0;
+    private static final byte DELTA = 1;
+    private static final byte NULL = 2;
+
+    @Getter
+    private final boolean enabled;
+    @Getter
+    private final int snapshotInterval;
+    // 同一条消息的编辑依次写入版本
+    private final Striped<Lock> locks = Striped.lock(64);
+    private final Set<String> tables = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    public KatMessageRevisions(boolean enabled, int snapshotInterval) {
+        this.enabled = enabled;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+    /**
+     * 从配置文件的 message_revisions 节点读取 缺省的项使用默认值 缺省时不记录编辑历史
+     *
+     * @param config message_revisions 节点 可以为 null
+     */
+    public static KatMessageRevisions fromConfig(Map<String, Object> config) {
+        boolean enabled = false;
+        int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_REVISIONS_ENABLED) != null) {
+                enabled = Boolean.parseBoolean(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_REVISIONS_ENABLED).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_REVISIONS_SNAPSHOT_INTERVAL) != null) {
+                snapshotInterval = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_REVISIONS_SNAPSHOT_INTERVAL).toString());
+            }
+        }
+        return new KatMessageRevisions(enabled, snapshotInterval);
+    }
+
+    /**
+     * 存放编辑历史的表
+     *
+     * @param table 消息所在的表
+     */
+    public static String table(String table) {
+        return table + SUFFIX;
+    }
+
+    /**
+     * 记录一次编辑 内容没有改变时不记录
+     *
+     * @param table     消息所在的表
+     * @param id        消息 ID
+     * @param createdAt 消息的创建时间 作为版本 0 的时间
+     * @param before    编辑前的内容
+     * @param after     编辑后的内容
+     */
+    public void record(String table, String id, Long createdAt, String before, String after) {
+        if (!enabled || Objects.equals(before, after)) {
+            return;
+        }
+        this.load();
+        Lock lock = locks.get(table + SUFFIX + id);
+        lock.lock();
+        try {
+            KatMessageRevision last = this.last(table, id);
+            long now = System.currentTimeMillis();
+            int revision;
+            if (last == null) {
+                this.write(table, id, 0, encode(null, before), createdAt == null ? now : createdAt);
+                revision = 1;
+            } else {
+                revision = last.revision + 1;
+                // 不经过编辑写入的内容 (如重复投递覆盖) 作为单独的版本 差异总是相对上一个版本
+                String previous;
+                try {
+                    previous = this.read(table, id, last.revision);
+                } catch (IllegalArgumentException exception) {
+                    log.error(String.valueOf(exception));
+                    previous = null;
+                }
+                if (previous == null || !previous.equals(before)) {
+                    this.write(table, id, revision, encode(null, before), now);
+                    revision++;
+                }
+            }
+            this.write(table, id, revision, this.encode(revision, before, after), now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 最新的版本号 与当前的内容相同
+     *
+     * @return 没有编辑过时为 0
+     */
+    public int latest(String table, String id) {
+        this.load();
+        KatMessageRevision last = this.last(table, id);
+        return last == null ? 0 : last.revision;
+    }
+
+    /**
+     * 读取一个版本的内容 从不晚于它的最近的快照开始应用差异
+     *
+     * @param table    消息所在的表
+     * @param id       消息 ID
+     * @param revision 版本号
+     * @return 内容 版本不存在时抛出 IllegalArgumentException
+     */
+    public String read(String table, String id, int revision) {
+        this.load();
+        if (!tables.contains(table(table))) {
+            throw new IllegalArgumentException("message " + id + " has no revision " + revision);
+        }
+        List<KatMessageRevision> rows = this.range(table, id, revision - revision % snapshotInterval, revision);
+        // 快照的间隔被调大过时 范围内可能没有快照 从版本 0 开始读取
+        if (rows != null && !rows.isEmpty() && rows.get(0).content[0] == DELTA) {
+            rows = this.range(table, id, 0, revision);
+        }
+        if (rows == null || rows.isEmpty() || rows.get(rows.size() - 1).revision != revision) {
+            throw new IllegalArgumentException("message " + id + " has no revision " + revision);
+        }
+        return replay(rows);
+    }
+
+    /**
+     * 按版本顺序的一段版本的最后一个版本的内容<br>
+     * 快照的间隔被调小过时 范围内可能有多个快照 从最后一个快照开始应用差异
+     */
+    static String replay(List<KatMessageRevision> rows) {
+        int start = rows.size() - 1;
+        while (start > 0 && rows.get(start).content[0] == DELTA) {
+            start--;
+        }
+        String content = null;
+        for (KatMessageRevision row : rows.subList(start, rows.size())) {
+            content = apply(content, row.content);
+        }
+        return content;
+    }
+
+    /**
+     * 消息是否在这张表中有编辑历史
+     */
+    public boolean contains(String table, String id) {
+        this.load();
+        return tables.contains(table(table)) && this.last(table, id) != null;
+    }
+
+    /**
+     * 删除一条消息的编辑历史
+     */
+    public void delete(String table, String id) {
+        this.load();
+        if (tables.contains(table(table))) {
+            KatServer.KatDatabaseAPI.getActions().delete(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                table(table),
+                new DatabaseQuery().equal(MESSAGE_ID, id));
+        }
+    }
+
+    /**
+     * 消息所在的表被删除后删除整张编辑历史表
+     */
+    public void drop(String table) {
+        this.load();
+        if (tables.remove(table(table))) {
+            KatServer.KatDatabaseAPI.getActions().drop(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(), table(table));
+        }
+    }
+
+    // 版本号是快照间隔的整数倍时保存快照 差异不比快照小时也保存快照
+    private byte[] encode(int revision, String before, String after) {
+        byte[] snapshot = encode(null, after);
+        if (revision % snapshotInterval == 0 || before == null || after == null) {
+            return snapshot;
+        }
+        byte[] delta = encode(before, after);
+        return delta.length < snapshot.length ? delta : snapshot;
+    }
+
+    /**
+     * 编码 after 相对 before 的差异 before 为 null 时编码完整的快照
+     */
+    public static byte[] encode(String before, String after) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if (after == null) {
+            stream.write(NULL);
+            return stream.toByteArray();
+        }
+        if (before == null) {
+            stream.write(SNAPSHOT);
+            stream.writeBytes(after.getBytes(StandardCharsets.UTF_8));
+            return stream.toByteArray();
+        }
+        int limit = Math.min(before.length(), after.length());
+        int prefix = 0;
+        while (prefix < limit && before.charAt(prefix) == after.charAt(prefix)) {
+            prefix++;
+        }
+        // 不拆开代理对
+        if (prefix > 0 && Character.isHighSurrogate(after.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+            && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(after.charAt(after.length() - suffix))) {
+            suffix--;
+        }
+        stream.write(DELTA);
+        varint(stream, prefix);
+        varint(stream, suffix);
+        stream.writeBytes(after.substring(prefix, after.length() - suffix).getBytes(StandardCharsets.UTF_8));
+        return stream.toByteArray();
+    }
+
+    /**
+     * 在 before 上应用快照或差异
+     */
+    public static String apply(String before, byte[] content) {
+        if (content.length == 0) {
+            throw new IllegalArgumentException("empty revision");
+        }
+        switch (content[0]) {
+            case NULL:
+                return null;
+            case SNAPSHOT:
+                return new String(content, 1, content.length - 1, StandardCharsets.UTF_8);
+            case DELTA:
+                if (before == null) {
+                    throw new IllegalArgumentException("delta revision without a base");
+                }
+                int[] position = {1};
+                int prefix = varint(content, position);
+                int suffix = varint(content, position);
+                if (prefix + suffix > before.length()) {
+                    throw new IllegalArgumentException("malformed delta revision");
+                }
+                return before.substring(0, prefix)
+                    + new String(content, position[0], content.length - position[0], StandardCharsets.UTF_8)
+                    + before.substring(before.length() - suffix);
+            default:
+                throw new IllegalArgumentException("unknown revision type " + content[0]);
+        }
+    }
+
+    private static void varint(ByteArrayOutputStream stream, int value) {
+        while ((value & ~0x7F) != 0) {
+            stream.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.write(value);
+    }
+
+    private static int varint(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= bytes.length) {
+                break;
+            }
+            byte current = bytes[position[0]++];
+            value |= (current & 0x7F) << shift;
+            if (current >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed delta revision");
+    }
+
+    private KatMessageRevision last(String table, String id) {
+        if (!tables.contains(table(table))) {
+            return null;
+        }
+        List<KatMessageRevision> rows = KatServer.KatDatabaseAPI.getActions().read(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table(table),
+            KatMessageRevision.class,
+            new DatabaseQuery().equal(MESSAGE_ID, id).orderBy(REVISION, false).limit(1));
+        return rows == null || rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private List<KatMessageRevision> range(String table, String id, int from, int to) {
+        return KatServer.KatDatabaseAPI.getActions().read(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table(table),
+            KatMessageRevision.class,
+            new DatabaseQuery().equal(MESSAGE_ID, id).between(REVISION, from, to).orderBy(REVISION, true));
+    }
+
+    private void write(String table, String id, int revision, byte[] content, long editedAt) {
+        KatServer.KatDatabaseAPI.getActions().create(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table(table),
+            new KatMessageRevision(id + ":" + revision, id, revision, content, editedAt));
+        tables.add(table(table));
+    }
+
+    // 第一次使用时从数据库的表列表载入
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            for (String table : KatServer.KatDatabaseAPI.getActions().tables(
+                KatServer.KatDatabaseAPI.getConnector().getConnection())) {
+                if (table.endsWith(SUFFIX)) {
+                    tables.add(table);
+                }
+            }
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.database.annotation.SqliteIndex;
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.type.DataType;
+import com.catkatpowered.katserver.message.KatUniMessage;
+import com.catkatpowered.katserver.message.KatUniMessageCodec;
+import java.util.ArrayList;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 消息表中的一行 <br>
+ * 除了 KatUniMessage 的全部列 还有只在数据库中出现的 compressed_content (压缩内容)<br>
+ * message_list_ref 和 message_list_hash (另外存放的下一级消息的引用) <br>
+ * 只在存储中使用 写入前由 KatUniMessage 转换 读出后转换回 KatUniMessage 再离开存储 <br>
+ * 之前创建的消息表没有这三列 Sqlite 在启动时由 KatMessageStorage.validateIndexes 增加 已有的行这三列为 null <br>
+ * 其他数据库需要管理员手动增加
+ *
+ * @author hanbings
+ */
+@Data
+@NoArgsConstructor
+@SqliteIndex(name = "message_group_created", columns = {"message_group", "created_at", "message_id"})
+@SqliteIndex(name = "message_list_hash", columns = {"message_list_hash"})
+public class KatMessageRow {
+    @SqliteMetadata(name = "message_type", type = DataType.Sqlite.TEXT)
+    public String messageType;
+
+    @SqliteMetadata(name = "message_group", type = DataType.Sqlite.TEXT)
+    public String messageGroup;
+
+    @SqliteMetadata(name = "message_id", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
+    public String messageID;
+
+    @SqliteMetadata(name = "message_content", type = DataType.Sqlite.TEXT)
+    public String messageContent;
+
+    // 用字典压缩的 messageContent 开头为字典的版本 见 KatContentCompressor
+    @SqliteMetadata(name = "compressed_content")
+    public byte[] compressedContent;
+
+    // 另外存放时为 null 见 KatMessageTrees
+    @SqliteMetadata(name = "message_list", codec = KatUniMessageCodec.MessageList.class)
+    public ArrayList<KatUniMessage> messageList;
+
+    // 另外存放的下一级消息的数量
+    @SqliteMetadata(name = "message_list_ref", type = DataType.Sqlite.INTEGER)
+    public Integer messageListRef;
+
+    // 另外存放的下一级消息的 sha256
+    @SqliteMetadata(name = "message_list_hash", type = DataType.Sqlite.TEXT)
+    public String messageListHash;
+
+    @SqliteMetadata(name = "extended", codec = KatUniMessageCodec.Extended.class)
+    public ArrayList<String> extended;
+
+    @SqliteMetadata(name = "resource_hash", type = DataType.Sqlite.TEXT)
+    public String resourceHash;
+
+    @SqliteMetadata(name = "resource_name", type = DataType.Sqlite.TEXT)
+    public String resourceName;
+
+    @SqliteMetadata(name = "resource_url", type = DataType.Sqlite.TEXT)
+    public String resourceURL;
+
+    @SqliteMetadata(name = "created_at", type = DataType.Sqlite.INTEGER, isUpdatable = false)
+    public Long createdAt;
+
+    /**
+     * 准备写入的行 下一级消息和扩展内容与消息共用
+     */
+    public static KatMessageRow of(KatUniMessage message) {
+        KatMessageRow row = new KatMessageRow();
+        row.messageType = message.messageType;
+        row.messageGroup = message.messageGroup;
+        row.messageID = message.messageID;
+        row.messageContent = message.messageContent;
+        row.messageList = message.messageList;
+        row.extended = message.extended;
+        row.resourceHash = message.resourceHash;
+        row.resourceName = message.resourceName;
+        row.resourceURL = message.resourceURL;
+        row.createdAt = message.createdAt;
+        return row;
+    }
+
+    /**
+     * 转换为消息 不包含压缩内容和另外存放的下一级消息 由存储解压和载入
+     */
+    public KatUniMessage toMessage() {
+        return new KatUniMessage(messageType, messageGroup, messageID, messageContent, messageList, extended,
+            resourceHash, resourceName, resourceURL, createdAt);
+    }
+}
@@ -1,9 +1,21 @@
 package com.catkatpowered.katserver.storage;
 
 import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.database.async.DatabaseExecutor;
+import com.catkatpowered.katserver.database.exception.DataProcessingException;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
 import com.catkatpowered.katserver.message.KatUniMessage;
+import com.google.common.cache.CacheStats;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import jdk.jfr.Experimental;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
@@ -13,38 +25,291 @@ import org.jetbrains.annotations.NotNull;
 @Slf4j
 public class KatMessageStorage {
 
+    // KatUniMessage 中用于查询的列名
+    private static final String MESSAGE_ID = "message_id";
+    private static final String MESSAGE_GROUP = "message_group";
+    private static final String CREATED_AT = "created_at";
+    private static final String MESSAGE_LIST_HASH = "message_list_hash";
+
+    // 按消息组和消息 ID 缓存的消息
+    @SuppressWarnings("unchecked")
+    private static final KatMessageCache cache = KatMessageCache.fromConfig(
+        (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_CACHE),
+        KatMessageStorage::readMessage
+    );
+    // 每个活跃消息组最近的消息
+    @SuppressWarnings("unchecked")
+    private static final KatRecentMessages recent = KatRecentMessages.fromConfig(
+        (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_RECENT_MESSAGES)
+    );
+    // 按时间分区的消息表
+    @SuppressWarnings("unchecked")
+    private static final KatMessagePartitions partitions = KatMessagePartitions.fromConfig(
+        (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_PARTITION)
+    );
+    // 按内容寻址另外存放的下一级消息
+    private static final KatMessageTrees trees = new KatMessageTrees();
+    // 用字典压缩消息内容
+    @SuppressWarnings("unchecked")
+    private static final KatContentCompressor compressor = KatContentCompressor.fromConfig(
+        (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_COMPRESSION)
+    );
+    // 消息内容的编辑历史
+    @SuppressWarnings("unchecked")
+    private static final KatMessageRevisions revisions = KatMessageRevisions.fromConfig(
+        (Map<String, Object>) KatServer.KatConfigAPI.getConfig(KatConfigNodeConstants.KAT_CONFIG_MESSAGE_REVISIONS)
+    );
+
     /**
-     * 用于查询消息记录，索引值为<b>KatUniMessage.messageID</b>
+     * 用于查询消息记录，索引值为<b>KatUniMessage.messageID</b><br>
+     * 优先从缓存读取 返回的消息与缓存共享 不要修改
      *
-     * @param indexMsg 对应数据库当中的索引
+     * @param indexMsg 必须包含<b>KatUniMessage.messageGroup</b>和<b>KatUniMessage.messageID</b>
      * @return 返回被<b>Optional</b>包装的<b>List</b>类型
      * @see Optional
      */
 
     public static Optional<List<KatUniMessage>> getMessage(@NotNull KatUniMessage indexMsg) {
-        return Optional.ofNullable(
-            KatServer.KatDatabaseAPI
+        if (!indexMsg.isFullIndex()) {
+            return Optional.empty();
+        }
+        if (cache.isEnabled()) {
+            return Optional.ofNullable(cache.get(indexMsg.messageGroup, indexMsg.messageID));
+        }
+        return Optional.ofNullable(readMessage(indexMsg.messageGroup, indexMsg.messageID));
+    }
+
+    /**
+     * 缓存的命中率 加载次数和淘汰次数
+     */
+    public static CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    // 缓存未命中时读取数据库 分区时从最新的分区开始查找
+    private static List<KatUniMessage> readMessage(String group, String id) {
+        for (String table : partitions.tables(group)) {
+            List<KatMessageRow> rows = KatServer.KatDatabaseAPI
                 .getActions()
                 .read(
                     KatServer.KatDatabaseAPI.getConnector().getConnection(),
-                    indexMsg.messageGroup,
-                    indexMsg)
-        );
+                    table,
+                    KatMessageRow.class,
+                    new DatabaseQuery().equal(MESSAGE_ID, id));
+            if (rows == null || !rows.isEmpty()) {
+                return load(rows);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * 读取消息的下一级消息列表<br>
+     * 从存储读出的消息已经载入了下一级消息 只有索引的消息读出存放的消息 不修改传入的消息
+     *
+     * @param message 从存储读出的消息 或包含<b>KatUniMessage.messageGroup</b>和<b>KatUniMessage.messageID</b>的消息
+     * @return 下一级消息 没有时为 null
+     */
+    public static List<KatUniMessage> getMessageList(@NotNull KatUniMessage message) {
+        if (message.messageList != null || !message.isFullIndex()) {
+            return message.messageList;
+        }
+        return getMessage(message)
+            .filter(messages -> !messages.isEmpty())
+            .map(messages -> (List<KatUniMessage>) messages.get(0).messageList)
+            .orElse(null);
+    }
+
+    // 表中满足条件的消息引用的下一级消息和引用数 只读取 message_list_hash 索引中有哈希的行
+    private static Map<String, Integer> listHashes(String table, DatabaseQuery query) {
+        try (DatabaseCursor<KatMessageRow> cursor = KatServer.KatDatabaseAPI.getActions().cursor(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table,
+            KatMessageRow.class,
+            query.greater(MESSAGE_LIST_HASH, ""),
+            DatabaseActions.DEFAULT_FETCH_SIZE
+        )) {
+            return KatMessageTrees.count(cursor);
+        }
+    }
+
+    /**
+     * 消息内容的版本数 版本 0 为第一次编辑前的内容 最后一个版本为当前的内容
+     *
+     * @param indexMsg 必须包含<b>KatUniMessage.messageGroup</b>和<b>KatUniMessage.messageID</b>
+     * @return 没有编辑过的消息为 1 消息不存在时为 0
+     */
+    public static int getRevisionCount(@NotNull KatUniMessage indexMsg) {
+        if (!indexMsg.isFullIndex()) {
+            return 0;
+        }
+        for (String table : partitions.locate(indexMsg.messageGroup, indexMsg.createdAt)) {
+            if (revisions.contains(table, indexMsg.messageID)) {
+                return revisions.latest(table, indexMsg.messageID) + 1;
+            }
+        }
+        return getMessage(indexMsg).map(List::isEmpty).orElse(true) ? 0 : 1;
+    }
+
+    /**
+     * 读取消息内容的一个版本<br>
+     * 读取当前的内容使用 getMessage 不需要经过编辑历史
+     *
+     * @param indexMsg 必须包含<b>KatUniMessage.messageGroup</b>和<b>KatUniMessage.messageID</b>
+     * @param revision 版本号 从 0 开始
+     * @return 版本不存在或内容为 null 时为空
+     */
+    public static Optional<String> getRevision(@NotNull KatUniMessage indexMsg, int revision) {
+        if (!indexMsg.isFullIndex() || revision < 0) {
+            return Optional.empty();
+        }
+        for (String table : partitions.locate(indexMsg.messageGroup, indexMsg.createdAt)) {
+            if (revisions.contains(table, indexMsg.messageID)) {
+                try {
+                    return Optional.ofNullable(revisions.read(table, indexMsg.messageID, revision));
+                } catch (IllegalArgumentException exception) {
+                    return Optional.empty();
+                }
+            }
+        }
+        // 没有编辑过的消息只有当前的版本
+        if (revision != 0) {
+            return Optional.empty();
+        }
+        return getMessage(indexMsg)
+            .filter(messages -> !messages.isEmpty())
+            .map(messages -> messages.get(0).messageContent);
+    }
+
+    /**
+     * 按时间倒序分页读取消息组的历史消息<br>
+     * 使用键集分页 从上一页的最后一条消息继续 不论翻到第几页都只读取一页的行<br>
+     * 第一页与 getRecentMessages 相同
+     *
+     * @param group  消息组
+     * @param before 上一页的最后一条消息 为 null 时从最新的消息开始
+     * @param limit  每页的消息数
+     * @return 按<b>KatUniMessage.createdAt</b>和<b>KatUniMessage.messageID</b>倒序排列的消息
+     */
+    public static List<KatUniMessage> getHistory(@NotNull String group, KatUniMessage before, int limit) {
+        if (before == null) {
+            return getRecentMessages(group, limit);
+        }
+        return readHistory(group, before, limit);
+    }
+
+    /**
+     * 读取消息组最近的消息 最新的在最前<br>
+     * 消息组载入后从内存读取 不查询数据库 不论历史消息有多少<br>
+     * limit 超过每个消息组保留的消息数时查询数据库
+     *
+     * @param group 消息组
+     * @param limit 最多读取的消息数
+     */
+    public static List<KatUniMessage> getRecentMessages(@NotNull String group, int limit) {
+        if (!recent.isEnabled() || limit > recent.getSize()) {
+            return readHistory(group, null, limit);
+        }
+        List<KatUniMessage> tail = recent.tail(group, limit);
+        if (tail != null) {
+            return tail;
+        }
+        // 第一次打开的消息组 读取 size 条消息载入缓冲区
+        long version = recent.version(group);
+        List<KatUniMessage> messages = readHistory(group, null, recent.getSize());
+        if (messages == null) {
+            return null;
+        }
+        recent.load(group, messages, version);
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    // 分区时从 before 所在的分区开始 向更旧的分区读取直到读满一页
+    private static List<KatUniMessage> readHistory(String group, KatUniMessage before, int limit) {
+        long from = before == null || before.createdAt == null ? Long.MAX_VALUE : before.createdAt + 1;
+        List<KatUniMessage> messages = new ArrayList<>();
+        for (String table : partitions.tables(group, from)) {
+            DatabaseQuery query = new DatabaseQuery().equal(MESSAGE_GROUP, group);
+            if (before != null) {
+                query.less(List.of(CREATED_AT, MESSAGE_ID), List.of(before.createdAt, before.messageID));
+            }
+            query.orderBy(CREATED_AT, false).orderBy(MESSAGE_ID, false).limit(limit - messages.size());
+            List<KatMessageRow> page = KatServer.KatDatabaseAPI.getActions().read(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                table,
+                KatMessageRow.class,
+                query
+            );
+            if (page == null) {
+                return null;
+            }
+            messages.addAll(load(page));
+            if (messages.size() >= limit) {
+                break;
+            }
+        }
+        return messages;
     }
 
     /**
      * 更新数据库当中的消息记录<br>
+     * 内容改变时记录编辑历史 消息 ID 改变时视为替换 删除旧消息的编辑历史<br>
+     * 编辑历史只在更新成功后修改 更新失败时消息和编辑历史都保持不变
      *
      * @param oldContent 旧消息记录
      * @param newContent 新消息记录
+     * @return 是否更新成功 消息不存在时为 false
      */
-    public static void updateMessage(@NotNull KatUniMessage oldContent, KatUniMessage newContent) {
-        KatServer.KatDatabaseAPI.getActions().update(
-            KatServer.KatDatabaseAPI.getConnector().getConnection(),
-            oldContent.messageGroup,
-            newContent
-        );
-
+    public static boolean updateMessage(@NotNull KatUniMessage oldContent, KatUniMessage newContent) {
+        boolean found = false;
+        boolean succeeded = true;
+        for (String table : partitions.locate(oldContent.messageGroup, oldContent.createdAt)) {
+            List<KatMessageRow> old = KatServer.KatDatabaseAPI.getActions().read(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                table,
+                KatMessageRow.class,
+                new DatabaseQuery().equal(MESSAGE_ID, oldContent.messageID)
+            );
+            // 只在消息所在的表中存放新的下一级消息 其他表不增加引用
+            if (old == null || old.isEmpty()) {
+                continue;
+            }
+            found = true;
+            // 先增加新的引用再释放旧的 内容没有改变时不会被删除
+            KatMessageRow stored = compressor.compress(trees.separate(newContent));
+            boolean updated = KatServer.KatDatabaseAPI.getActions().update(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                table,
+                stored,
+                new DatabaseQuery().equal(MESSAGE_ID, oldContent.messageID)
+            );
+            // 写入失败时释放新的引用 旧的消息仍然引用原来的下一级消息
+            if (!updated) {
+                trees.release(stored.messageListHash);
+                succeeded = false;
+                continue;
+            }
+            trees.release(KatMessageTrees.count(old.iterator()));
+            if (!Objects.equals(oldContent.messageID, newContent.messageID)) {
+                revisions.delete(table, oldContent.messageID);
+                continue;
+            }
+            try {
+                KatMessageRow previous = compressor.decompress(old.get(0));
+                revisions.record(table, oldContent.messageID, previous.createdAt,
+                    previous.messageContent, newContent.messageContent);
+            } catch (IllegalArgumentException exception) {
+                // 无法读出旧的内容 不记录这次编辑
+                log.error(String.valueOf(exception));
+            }
+        }
+        cache.invalidate(oldContent.messageGroup, oldContent.messageID);
+        cache.invalidate(oldContent.messageGroup, newContent.messageID);
+        if (!found || !succeeded) {
+            return false;
+        }
+        recent.replace(oldContent.messageGroup, oldContent.messageID, newContent.copy());
+        return true;
     }
 
     /**
@@ -54,26 +319,269 @@ public class KatMessageStorage {
      */
     public static void deleteMessage(@NotNull KatUniMessage indexMsg) {
         if (indexMsg.isFullIndex()) {
-            KatServer.KatDatabaseAPI.getActions().delete(
-                KatServer.KatDatabaseAPI.getConnector().getConnection(),
-                indexMsg.messageGroup,
-                indexMsg
-            );
+            for (String table : partitions.locate(indexMsg.messageGroup, indexMsg.createdAt)) {
+                Map<String, Integer> hashes = listHashes(table,
+                    new DatabaseQuery().equal(MESSAGE_ID, indexMsg.messageID));
+                if (KatServer.KatDatabaseAPI.getActions().delete(
+                    KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                    table,
+                    new DatabaseQuery().equal(MESSAGE_ID, indexMsg.messageID)
+                )) {
+                    trees.release(hashes);
+                }
+                revisions.delete(table, indexMsg.messageID);
+            }
+            cache.invalidate(indexMsg.messageGroup, indexMsg.messageID);
+            recent.remove(indexMsg.messageGroup, indexMsg.messageID);
+        }
+    }
+
+    /**
+     * 删除超过保留时长的消息分区 并清理这些消息组在内存中的消息<br>
+     * 未启用分区或永久保留时不做任何事
+     *
+     * @return 删除的表
+     */
+    public static List<String> purgeExpiredPartitions() {
+        List<String> dropped = partitions.purge(System.currentTimeMillis(), KatMessageStorage::releasePartition);
+        evictPartitions(dropped);
+        return dropped;
+    }
+
+    /**
+     * 启动定时删除过期分区的后台线程
+     */
+    public static void startPartitionPurge() {
+        partitions.start(KatMessageStorage::releasePartition, KatMessageStorage::evictPartitions);
+    }
+
+    // 分区删除前释放其中的消息引用的下一级消息 相同的哈希合并后批量释放
+    private static void releasePartition(String table) {
+        trees.release(listHashes(table, new DatabaseQuery()));
+    }
+
+    // 被删除的分区中的消息不再可读 缓存不能按消息组移出 因此整个清空
+    private static void evictPartitions(List<String> dropped) {
+        if (dropped.isEmpty()) {
+            return;
+        }
+        for (String table : dropped) {
+            recent.invalidate(KatMessagePartitions.group(table));
+            revisions.drop(table);
         }
+        cache.invalidateAll();
     }
 
     /**
-     * 存放新的消息
+     * 用最近写入的消息内容训练新版本的压缩字典 之后写入的消息使用新字典<br>
+     * 已经压缩的消息仍然使用原来的字典读取
+     *
+     * @return 新字典的版本 没有可用的采样时为当前的版本 没有字典时为 null
+     */
+    public static Integer trainContentDictionary() {
+        KatContentDictionary dictionary = compressor.train();
+        return dictionary == null ? null : dictionary.version;
+    }
+
+    /**
+     * 检查已存在的消息表是否缺少 <b>KatMessageRow</b> 声明的索引<br>
+     * 旧版本创建的表不会自动补齐索引 缺少的索引只会被报告 由管理员择机执行<br>
+     * Sqlite 的旧消息表缺少的列在检查时直接增加 见 <b>KatMessageRow</b>
+     */
+    public static void validateIndexes() {
+        List<String> missing = KatServer.KatDatabaseAPI.getActions().validateIndexes(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            KatMessageRow.class
+        );
+        for (String sql : missing) {
+            log.warn("missing index, run this statement to create it: {}", sql);
+        }
+    }
+
+    /**
+     * 存放新的消息<br>
+     * 写入失败时 (例如消息已存在) 缓存中的这条消息被移出 最近消息不变
      *
      * @param indexMsg 准备存放的信息
+     * @return 是否写入成功 不包含<b>KatUniMessage.messageGroup</b>或<b>KatUniMessage.messageID</b>时为 false
      */
-    public static void createMessage(@NotNull KatUniMessage indexMsg) {
-        if (indexMsg.isFullIndex()) {
-            KatServer.KatDatabaseAPI.getActions().create(
+    public static boolean createMessage(@NotNull KatUniMessage indexMsg) {
+        if (!indexMsg.isFullIndex()) {
+            return false;
+        }
+        if (indexMsg.createdAt == null) {
+            indexMsg.createdAt = System.currentTimeMillis();
+        }
+        String table = partitions.table(indexMsg.messageGroup, indexMsg.createdAt);
+        KatMessageRow stored = compressor.compress(trees.separate(indexMsg));
+        if (!KatServer.KatDatabaseAPI.getActions().create(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table,
+            stored
+        )) {
+            // 没有写入的消息不持有引用 缓存中可能是失败前读到的旧内容
+            trees.release(stored.messageListHash);
+            cache.invalidate(indexMsg.messageGroup, indexMsg.messageID);
+            return false;
+        }
+        partitions.register(indexMsg.messageGroup, indexMsg.createdAt);
+        KatUniMessage cached = indexMsg.copy();
+        cache.put(cached);
+        recent.append(cached);
+        return true;
+    }
+
+    /**
+     * 存放消息 消息已存在时覆盖已存在的消息<br>
+     * 插入和覆盖在同一条语句中完成 重复投递的消息不需要先查询<br>
+     * <b>KatUniMessage.createdAt</b>只在第一次存放时写入 因此缓存中的消息只移出而不替换<br>
+     * 分区时按<b>KatUniMessage.createdAt</b>选择分区 重复投递的消息需要带上第一次的时间
+     *
+     * @param indexMsg 必须包含<b>KatUniMessage.messageGroup</b>和<b>KatUniMessage.messageID</b>
+     * @return 是否写入成功
+     */
+    public static boolean upsertMessage(@NotNull KatUniMessage indexMsg) {
+        return upsertMessages(List.of(indexMsg));
+    }
+
+    /**
+     * 批量存放消息 消息已存在时覆盖已存在的消息<br>
+     * 按<b>KatUniMessage.messageGroup</b>和分区分组 每组使用一次批量 upsert<br>
+     * 一组写入失败时这组的消息都没有写入 缓存中的这些消息被移出 最近消息不变 其他组不受影响
+     *
+     * @param messages 不包含<b>KatUniMessage.messageGroup</b>或<b>KatUniMessage.messageID</b>的消息会被忽略
+     * @return 是否全部写入成功
+     */
+    public static boolean upsertMessages(@NotNull List<KatUniMessage> messages) {
+        long now = System.currentTimeMillis();
+        Map<String, List<KatUniMessage>> groups = new LinkedHashMap<>();
+        for (KatUniMessage message : messages) {
+            if (!message.isFullIndex()) {
+                continue;
+            }
+            if (message.createdAt == null) {
+                message.createdAt = now;
+            }
+            groups.computeIfAbsent(partitions.table(message.messageGroup, message.createdAt),
+                table -> new ArrayList<>()).add(message);
+        }
+        boolean succeeded = true;
+        for (Map.Entry<String, List<KatUniMessage>> entry : groups.entrySet()) {
+            String table = entry.getKey();
+            List<KatUniMessage> messageBatch = entry.getValue();
+            // 被覆盖的消息引用的下一级消息 在写入新的引用之后释放 新的表中没有被覆盖的消息
+            String group = messageBatch.get(0).messageGroup;
+            Map<String, Integer> replaced = partitions.tables(group).contains(table)
+                ? listHashes(table, new DatabaseQuery().in(MESSAGE_ID,
+                messageBatch.stream().map(message -> message.messageID).toList()))
+                : Map.of();
+            List<KatMessageRow> compressed = new ArrayList<>(messageBatch.size());
+            for (KatUniMessage message : messageBatch) {
+                compressed.add(compressor.compress(trees.separate(message)));
+            }
+            boolean upserted = KatServer.KatDatabaseAPI.getActions().upsert(
                 KatServer.KatDatabaseAPI.getConnector().getConnection(),
-                indexMsg.messageGroup,
-                indexMsg
+                table,
+                compressed
             );
+            for (KatUniMessage message : messageBatch) {
+                cache.invalidate(group, message.messageID);
+            }
+            // 没有写入的消息不持有引用 也不出现在分区和最近消息中
+            if (!upserted) {
+                trees.release(KatMessageTrees.count(compressed.iterator()));
+                succeeded = false;
+                continue;
+            }
+            trees.release(replaced);
+            partitions.register(group, messageBatch.get(0).createdAt);
+            for (KatUniMessage message : messageBatch) {
+                // 不在缓冲区中的消息无法判断是新消息还是更旧的消息 消息组重新载入
+                if (!recent.replace(group, message.messageID, message.copy())) {
+                    recent.invalidate(group);
+                }
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * 以下为异步版本 在数据库执行器上执行对应的同步方法 不阻塞调用者的线程<br>
+     * 数据库饱和时以<b>RejectedExecutionException</b>失败 超时时以<b>TimeoutException</b>失败
+     */
+    public static CompletableFuture<Optional<List<KatUniMessage>>> getMessageAsync(@NotNull KatUniMessage indexMsg) {
+        return executor().submit(() -> getMessage(indexMsg));
+    }
+
+    public static CompletableFuture<List<KatUniMessage>> getHistoryAsync(@NotNull String group, KatUniMessage before,
+                                                                         int limit) {
+        return executor().submit(() -> getHistory(group, before, limit));
+    }
+
+    public static CompletableFuture<Optional<String>> getRevisionAsync(@NotNull KatUniMessage indexMsg,
+                                                                       int revision) {
+        return executor().submit(() -> getRevision(indexMsg, revision));
+    }
+
+    public static CompletableFuture<List<KatUniMessage>> getMessageListAsync(@NotNull KatUniMessage message) {
+        return executor().submit(() -> getMessageList(message));
+    }
+
+    // 以下写入失败时以 DataProcessingException 失败
+    public static CompletableFuture<Void> createMessageAsync(@NotNull KatUniMessage indexMsg) {
+        return executor().submit(() -> {
+            if (!createMessage(indexMsg)) {
+                throw new DataProcessingException("create message " + indexMsg.messageID + " failed.");
+            }
+            return null;
+        });
+    }
+
+    public static CompletableFuture<Void> upsertMessagesAsync(@NotNull List<KatUniMessage> messages) {
+        return executor().submit(() -> {
+            if (!upsertMessages(messages)) {
+                throw new DataProcessingException("upsert " + messages.size() + " messages failed.");
+            }
+            return null;
+        });
+    }
+
+    public static CompletableFuture<Void> updateMessageAsync(@NotNull KatUniMessage oldContent,
+                                                             KatUniMessage newContent) {
+        return executor().submit(() -> {
+            if (!updateMessage(oldContent, newContent)) {
+                throw new DataProcessingException("update message " + oldContent.messageID + " failed.");
+            }
+            return null;
+        });
+    }
+
+    public static CompletableFuture<Void> deleteMessageAsync(@NotNull KatUniMessage indexMsg) {
+        return executor().submit(() -> {
+            deleteMessage(indexMsg);
+            return null;
+        });
+    }
+
+    // 从数据库读出的行转换为消息 解压内容并载入另外存放的下一级消息
+    // 任一行无法解压时与读取失败相同 返回 null 不会被缓存
+    private static List<KatUniMessage> load(List<KatMessageRow> rows) {
+        if (rows == null) {
+            return null;
+        }
+        List<KatUniMessage> messages = new ArrayList<>(rows.size());
+        for (KatMessageRow row : rows) {
+            try {
+                messages.add(trees.load(compressor.decompress(row)));
+            } catch (IllegalArgumentException exception) {
+                log.error(String.valueOf(exception));
+                return null;
+            }
         }
+        return messages;
+    }
+
+    private static DatabaseExecutor executor() {
+        return KatServer.KatDatabaseAPI.getAsyncActions().getExecutor();
     }
 }
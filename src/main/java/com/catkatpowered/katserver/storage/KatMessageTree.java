@@ -0,0 +1,77 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCodec;
+import com.catkatpowered.katserver.database.type.DataType;
+import com.catkatpowered.katserver.message.KatUniMessage;
+import com.catkatpowered.katserver.message.KatUniMessageCodec;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 另外存放的一组下一级消息 <br>
+ * 按编码后内容的 sha256 存放 内容相同的下一级消息只有一行 <br>
+ * 其中另外存放的更下一级消息同样只保存哈希 不同的转发可以共用同一段子对话 <br>
+ * 写入后不再修改 引用数在 KatMessageTreeRefs 中
+ *
+ * @author hanbings
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KatMessageTree {
+    @SqliteMetadata(name = "hash", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
+    public String hash;
+
+    @SqliteMetadata(name = "messages", codec = Rows.class)
+    public ArrayList<KatMessageRow> messages;
+
+    /**
+     * 编码一组下一级消息 另外存放的更下一级消息以引用写入 格式见 KatUniMessageCodec
+     */
+    public static byte[] encode(List<KatMessageRow> rows) {
+        List<KatUniMessage> messages = new ArrayList<>(rows.size());
+        List<KatUniMessageCodec.Reference> references = new ArrayList<>(rows.size());
+        for (KatMessageRow row : rows) {
+            messages.add(row.toMessage());
+            references.add(row.messageListHash == null
+                ? null
+                : new KatUniMessageCodec.Reference(row.messageListRef, row.messageListHash));
+        }
+        return KatUniMessageCodec.encode(messages, references);
+    }
+
+    public static ArrayList<KatMessageRow> decode(byte[] bytes) {
+        List<KatUniMessageCodec.Reference> references = new ArrayList<>();
+        List<KatUniMessage> messages = KatUniMessageCodec.decode(bytes, references);
+        ArrayList<KatMessageRow> rows = new ArrayList<>(messages.size());
+        for (int index = 0; index < messages.size(); index++) {
+            KatMessageRow row = KatMessageRow.of(messages.get(index));
+            KatUniMessageCodec.Reference reference = references.get(index);
+            if (reference != null) {
+                row.messageListRef = reference.count();
+                row.messageListHash = reference.hash();
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * messages 列的编解码器
+     */
+    public static class Rows implements DatabaseCodec<ArrayList<KatMessageRow>> {
+        @Override
+        public byte[] encode(ArrayList<KatMessageRow> value) {
+            return KatMessageTree.encode(value);
+        }
+
+        @Override
+        public ArrayList<KatMessageRow> decode(byte[] bytes) {
+            return KatMessageTree.decode(bytes);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.type.DataType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一组另外存放的下一级消息的引用数 <br>
+ * 与消息内容分表存放 修改引用数时不重写整行的消息内容
+ *
+ * @author hanbings
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KatMessageTreeRefs {
+    @SqliteMetadata(name = "hash", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
+    public String hash;
+
+    // 引用这组消息的消息数 包括上一级的消息组
+    @SqliteMetadata(name = "refs", type = DataType.Sqlite.INTEGER)
+    public Integer refs;
+}
@@ -0,0 +1,275 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.KatServer;
+import com.catkatpowered.katserver.common.constants.KatMessageTypeConstants;
+import com.catkatpowered.katserver.common.utils.KatShaUtils;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.message.KatUniMessage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按内容寻址存放的下一级消息<br>
+ * 合并转发和混合消息的<b>KatUniMessage.messageList</b>编码后按 sha256 存入 @trees 表 上一级消息只保存哈希和数量<br>
+ * 同一段对话被转发到多个消息组 或被再次嵌套转发时 只存放一份 写入时只增加引用数<br>
+ * 读出时整棵树一并载入 离开存储的消息不包含哈希<br>
+ * 列表中另外存放的更下一级消息先单独存放 再以哈希写入列表 因此每一层的子对话都可以共用<br>
+ * <p>
+ * 每组消息在 @tree_refs 表中记录引用它的消息数 引用数减到 0 时删除 并释放它引用的更下一级消息<br>
+ * 引用数的读取和修改在同一把锁中进行 表不分区 不随消息分区删除<br>
+ * 引用数先于消息写入 消息写入失败时由调用者释放 批量释放时每批只用一次读取和一次写入
+ *
+ * @author hanbings
+ */
+public class KatMessageTrees {
+
+    // @ 之前为空 不会与消息组的表重名
+    public static final String TABLE = KatMessagePartitions.SEPARATOR + "trees";
+    public static final String REFS = KatMessagePartitions.SEPARATOR + "tree_refs";
+    private static final String HASH = "hash";
+    // 批量释放时每条语句包含的哈希数 不超过 Sqlite 的参数个数限制
+    private static final int BATCH = 500;
+
+    private final KatShaUtils sha = new KatShaUtils();
+    // 表是否已经存在 不存在时不查询
+    private volatile Boolean exists;
+
+    /**
+     * 下一级消息是否另外存放
+     */
+    public static boolean isSeparate(KatUniMessage message) {
+        return message.messageList != null && !message.messageList.isEmpty()
+            && (KatMessageTypeConstants.KAT_MESSAGE_TYPE_COLLECTION_MESSAGE.equals(message.messageType)
+            || KatMessageTypeConstants.KAT_MESSAGE_TYPE_MIXED_MESSAGE.equals(message.messageType));
+    }
+
+    /**
+     * 转换为写入数据库的行 需要另外存放时存放下一级消息 并为这一行增加一个引用<br>
+     * 这一行没有写入时需要调用 release 释放这个引用<br>
+     * 存放失败时下一级消息仍然写在这一行中 不修改传入的消息
+     */
+    public KatMessageRow separate(KatUniMessage message) {
+        KatMessageRow row = KatMessageRow.of(message);
+        if (!isSeparate(message)) {
+            return row;
+        }
+        Tree tree = this.prepare(message.messageList);
+        if (!this.store(tree)) {
+            return row;
+        }
+        row.messageList = null;
+        row.messageListRef = message.messageList.size();
+        row.messageListHash = tree.hash;
+        return row;
+    }
+
+    /**
+     * 读取一组下一级消息 其中另外存放的更下一级消息一并载入
+     *
+     * @return 不存在时为空列表
+     */
+    public ArrayList<KatUniMessage> get(String hash) {
+        KatMessageTree tree = this.read(TABLE, KatMessageTree.class, hash);
+        if (tree == null || tree.messages == null) {
+            return new ArrayList<>();
+        }
+        ArrayList<KatUniMessage> messages = new ArrayList<>(tree.messages.size());
+        for (KatMessageRow row : tree.messages) {
+            messages.add(this.load(row));
+        }
+        return messages;
+    }
+
+    /**
+     * 把从数据库读出的行转换为消息 另外存放的下一级消息一并载入
+     */
+    public KatUniMessage load(KatMessageRow row) {
+        KatUniMessage message = row.toMessage();
+        if (row.messageListHash != null) {
+            message.messageList = this.get(row.messageListHash);
+        }
+        return message;
+    }
+
+    /**
+     * 减少一个引用 减到 0 时删除 并释放其中另外存放的更下一级消息
+     */
+    public void release(String hash) {
+        if (hash != null) {
+            this.release(Map.of(hash, 1));
+        }
+    }
+
+    /**
+     * 批量减少引用 用于一次删除多条消息
+     *
+     * @param hashes 哈希和要减少的引用数
+     */
+    public synchronized void release(Map<String, Integer> hashes) {
+        List<String> keys = new ArrayList<>(hashes.keySet());
+        for (int from = 0; from < keys.size(); from += BATCH) {
+            this.releaseBatch(keys.subList(from, Math.min(from + BATCH, keys.size())), hashes);
+        }
+    }
+
+    /**
+     * 统计一组消息引用的下一级消息 作为 release 的参数
+     */
+    public static Map<String, Integer> count(Iterator<KatMessageRow> rows) {
+        Map<String, Integer> hashes = new HashMap<>();
+        rows.forEachRemaining(row -> {
+            if (row.messageListHash != null) {
+                hashes.merge(row.messageListHash, 1, Integer::sum);
+            }
+        });
+        return hashes;
+    }
+
+    // 读取一次引用数 减到 0 的一次删除 其余的一次写回
+    private void releaseBatch(List<String> keys, Map<String, Integer> hashes) {
+        if (!this.exists()) {
+            return;
+        }
+        List<KatMessageTreeRefs> rows = this.read(REFS, KatMessageTreeRefs.class, keys);
+        if (rows == null) {
+            return;
+        }
+        List<KatMessageTreeRefs> updated = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (KatMessageTreeRefs refs : rows) {
+            refs.refs -= hashes.get(refs.hash);
+            if (refs.refs > 0) {
+                updated.add(refs);
+            } else {
+                deleted.add(refs.hash);
+            }
+        }
+        if (!updated.isEmpty()) {
+            KatServer.KatDatabaseAPI.getActions().upsert(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                REFS,
+                updated);
+        }
+        if (deleted.isEmpty()) {
+            return;
+        }
+        List<KatMessageTree> trees = this.read(TABLE, KatMessageTree.class, deleted);
+        for (String table : List.of(REFS, TABLE)) {
+            KatServer.KatDatabaseAPI.getActions().delete(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                table,
+                new DatabaseQuery().in(HASH, deleted));
+        }
+        if (trees != null) {
+            this.release(count(trees.stream()
+                .filter(tree -> tree.messages != null)
+                .flatMap(tree -> tree.messages.stream())
+                .iterator()));
+        }
+    }
+
+    // 第一次使用时从数据库的表列表判断 第一次写入后不再判断
+    private boolean exists() {
+        if (exists == null) {
+            exists = KatServer.KatDatabaseAPI.getActions().tables(
+                KatServer.KatDatabaseAPI.getConnector().getConnection()).contains(REFS);
+        }
+        return exists;
+    }
+
+    // 自下而上计算每一层的哈希 不访问数据库
+    private Tree prepare(List<KatUniMessage> messages) {
+        Tree tree = new Tree();
+        tree.messages = new ArrayList<>(messages.size());
+        for (KatUniMessage message : messages) {
+            KatMessageRow row = KatMessageRow.of(message);
+            if (isSeparate(message)) {
+                Tree child = this.prepare(message.messageList);
+                row.messageList = null;
+                row.messageListRef = message.messageList.size();
+                row.messageListHash = child.hash;
+                tree.children.add(child);
+            }
+            tree.messages.add(row);
+        }
+        tree.hash = sha.sha256(KatMessageTree.encode(tree.messages));
+        return tree;
+    }
+
+    // 已存在时只增加引用 不存在时先存放更下一级消息 失败时撤销已经增加的引用
+    private synchronized boolean store(Tree tree) {
+        KatMessageTreeRefs refs = this.read(REFS, KatMessageTreeRefs.class, tree.hash);
+        if (refs != null) {
+            refs.refs++;
+            return this.update(refs);
+        }
+        List<String> stored = new ArrayList<>();
+        boolean success = true;
+        for (Tree child : tree.children) {
+            if (!this.store(child)) {
+                success = false;
+                break;
+            }
+            stored.add(child.hash);
+        }
+        success = success && KatServer.KatDatabaseAPI.getActions().create(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            TABLE,
+            new KatMessageTree(tree.hash, tree.messages));
+        // 引用数最后写入 中途失败时不会留下指向不存在内容的引用
+        if (success && !KatServer.KatDatabaseAPI.getActions().create(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            REFS,
+            new KatMessageTreeRefs(tree.hash, 1))) {
+            KatServer.KatDatabaseAPI.getActions().delete(
+                KatServer.KatDatabaseAPI.getConnector().getConnection(),
+                TABLE,
+                new DatabaseQuery().equal(HASH, tree.hash));
+            success = false;
+        }
+        if (!success) {
+            stored.forEach(this::release);
+            return false;
+        }
+        exists = true;
+        return true;
+    }
+
+    private <T> T read(String table, Class<T> type, String hash) {
+        if (!this.exists()) {
+            return null;
+        }
+        List<T> rows = KatServer.KatDatabaseAPI.getActions().read(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table,
+            type,
+            new DatabaseQuery().equal(HASH, hash));
+        return rows == null || rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private <T> List<T> read(String table, Class<T> type, List<String> hashes) {
+        return KatServer.KatDatabaseAPI.getActions().read(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            table,
+            type,
+            new DatabaseQuery().in(HASH, hashes));
+    }
+
+    private boolean update(KatMessageTreeRefs refs) {
+        return KatServer.KatDatabaseAPI.getActions().update(
+            KatServer.KatDatabaseAPI.getConnector().getConnection(),
+            REFS,
+            refs,
+            new DatabaseQuery().equal(HASH, refs.hash));
+    }
+
+    // 计算好哈希 还没有存放的一组消息
+    private static class Tree {
+        String hash;
+        ArrayList<KatMessageRow> messages;
+        final List<Tree> children = new ArrayList<>();
+    }
+}
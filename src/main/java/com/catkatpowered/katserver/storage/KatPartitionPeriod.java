@@ -0,0 +1,103 @@
+package com.catkatpowered.katserver.storage;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 消息表的分区周期 分区名按 UTC 时间计算<br>
+ * 分区名的字典序与时间顺序相同
+ *
+ * @author hanbings
+ */
+public enum KatPartitionPeriod {
+    // 不分区 每个消息组一张表
+    NONE,
+    // 每天一张表 如 2022-01-31
+    DAY,
+    // 每月一张表 如 2022-01
+    MONTH,
+    // 每年一张表 如 2022
+    YEAR;
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM");
+
+    /**
+     * 按名字获取分区周期 不区分大小写 空的名字为不分区
+     *
+     * @throws IllegalArgumentException 名字不是 none day month 或 year
+     */
+    public static KatPartitionPeriod lookup(String name) {
+        if (name == null || name.isEmpty()) {
+            return NONE;
+        }
+        for (KatPartitionPeriod period : values()) {
+            if (period.name().equalsIgnoreCase(name)) {
+                return period;
+            }
+        }
+        throw new IllegalArgumentException("unknown message partition period " + name
+            + ", expected none, day, month or year.");
+    }
+
+    /**
+     * 时间所在分区的名字
+     *
+     * @param millis 毫秒时间戳
+     */
+    public String suffix(long millis) {
+        LocalDate date = Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate();
+        return switch (this) {
+            case NONE -> "";
+            case DAY -> date.toString();
+            case MONTH -> YearMonth.from(date).format(MONTH_FORMAT);
+            case YEAR -> String.valueOf(date.getYear());
+        };
+    }
+
+    /**
+     * 分区开始的时间 毫秒 分区名不合法时返回 -1
+     */
+    public long start(String suffix) {
+        LocalDate date = parse(suffix);
+        return date == null ? -1 : date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 下一个分区开始的时间 毫秒 分区中全部消息都早于这个时间 分区名不合法时返回 -1
+     */
+    public long end(String suffix) {
+        LocalDate date = parse(suffix);
+        if (date == null) {
+            return -1;
+        }
+        LocalDate next = switch (this) {
+            case NONE -> date;
+            case DAY -> date.plusDays(1);
+            case MONTH -> date.plusMonths(1);
+            case YEAR -> date.plusYears(1);
+        };
+        return next.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    public boolean isValid(String suffix) {
+        return parse(suffix) != null;
+    }
+
+    private LocalDate parse(String suffix) {
+        try {
+            return switch (this) {
+                case NONE -> null;
+                case DAY -> suffix.length() == 10 ? LocalDate.parse(suffix) : null;
+                case MONTH -> suffix.length() == 7 ? YearMonth.parse(suffix, MONTH_FORMAT).atDay(1) : null;
+                case YEAR -> suffix.length() == 4 ? Year.parse(suffix).atDay(1) : null;
+            };
+        } catch (DateTimeParseException exception) {
+            return null;
+        }
+    }
+}
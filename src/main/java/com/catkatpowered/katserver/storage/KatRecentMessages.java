@@ -0,0 +1,266 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.common.constants.KatConfigNodeConstants;
+import com.catkatpowered.katserver.message.KatUniMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 每个活跃消息组最近消息的环形缓冲区<br>
+ * 打开消息组时读取最近的消息不需要查询数据库 不论历史消息有多少<br>
+ * 消息组第一次被读取时从数据库载入 之后随消息的存放 更新和删除同步<br>
+ * 全部缓冲区共享一个内存预算 超出时淘汰最久没有被访问的消息组<br>
+ * 缓冲区中的消息按<b>KatUniMessage.createdAt</b>和<b>KatUniMessage.messageID</b>排序 最新的在最后
+ *
+ * @author hanbings
+ */
+public class KatRecentMessages {
+
+    // 默认每个消息组保留的消息数
+    public static final int DEFAULT_SIZE = 50;
+    // 默认全部消息组最多占用的内存 字节
+    public static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+    // 写入计数的分段数
+    private static final int STRIPES = 64;
+
+    private static final Comparator<KatUniMessage> ORDER = Comparator
+        .comparing((KatUniMessage message) -> message.createdAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(message -> message.messageID, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    @Getter
+    private final int size;
+    @Getter
+    private final long maxWeight;
+    // 按访问顺序排列 最久没有被访问的在最前
+    private final Map<String, Ring> groups = new LinkedHashMap<>(16, 0.75f, true);
+    // 按消息组分段的写入计数 载入期间同一分段发生过写入时载入的结果不保留
+    private final long[] writes = new long[STRIPES];
+    @Getter
+    private volatile long weight;
+    @Getter
+    private volatile long evictions;
+
+    /**
+     * @param size      每个消息组保留的消息数 小于等于 0 时不缓存
+     * @param maxWeight 全部消息组最多占用的内存 字节
+     */
+    public KatRecentMessages(int size, long maxWeight) {
+        this.size = size;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * 从配置文件的 recent_messages 节点读取 缺省的项使用默认值
+     *
+     * @param config recent_messages 节点 可以为 null
+     */
+    public static KatRecentMessages fromConfig(Map<String, Object> config) {
+        int size = DEFAULT_SIZE;
+        long maxWeight = DEFAULT_MAX_WEIGHT;
+        if (config != null) {
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_RECENT_MESSAGES_SIZE) != null) {
+                size = Integer.parseInt(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_RECENT_MESSAGES_SIZE).toString());
+            }
+            if (config.get(KatConfigNodeConstants.KAT_CONFIG_RECENT_MESSAGES_MAX_WEIGHT) != null) {
+                maxWeight = Long.parseLong(
+                    config.get(KatConfigNodeConstants.KAT_CONFIG_RECENT_MESSAGES_MAX_WEIGHT).toString());
+            }
+        }
+        return new KatRecentMessages(size, maxWeight);
+    }
+
+    public boolean isEnabled() {
+        return size > 0 && maxWeight > 0;
+    }
+
+    /**
+     * 读取消息组最近的消息 最新的在最前
+     *
+     * @param group 消息组
+     * @param limit 最多读取的消息数
+     * @return 消息组没有载入或缓冲区中的消息不足 limit 条时返回 null 需要查询数据库
+     */
+    public synchronized List<KatUniMessage> tail(String group, int limit) {
+        Ring ring = groups.get(group);
+        if (ring == null || (limit > ring.messages.size() && !ring.whole)) {
+            return null;
+        }
+        List<KatUniMessage> tail = new ArrayList<>(Math.min(limit, ring.messages.size()));
+        Iterator<KatUniMessage> iterator = ring.messages.descendingIterator();
+        while (iterator.hasNext() && tail.size() < limit) {
+            tail.add(iterator.next());
+        }
+        return tail;
+    }
+
+    /**
+     * 载入前取得消息组的写入计数 载入后交给 load
+     */
+    public synchronized long version(String group) {
+        return writes[stripe(group)];
+    }
+
+    /**
+     * 用数据库中最近的消息载入消息组
+     *
+     * @param group    消息组
+     * @param messages 最近的 size 条消息 顺序不限
+     * @param version  查询数据库之前取得的写入计数 期间发生过写入时不载入
+     */
+    public synchronized void load(String group, List<KatUniMessage> messages, long version) {
+        if (!isEnabled() || writes[stripe(group)] != version || groups.containsKey(group)) {
+            return;
+        }
+        Ring ring = new Ring();
+        // 读到的消息少于 size 条时缓冲区就是全部历史消息
+        ring.whole = messages.size() < size;
+        List<KatUniMessage> sorted = new ArrayList<>(messages);
+        sorted.sort(ORDER);
+        for (KatUniMessage message : sorted.subList(Math.max(0, sorted.size() - size), sorted.size())) {
+            ring.messages.addLast(message);
+            ring.weight += KatMessageCache.weigh(message);
+        }
+        groups.put(group, ring);
+        weight += ring.weight;
+        this.evict();
+    }
+
+    /**
+     * 存放新消息后追加到消息组 消息组没有载入时忽略
+     */
+    public synchronized void append(@NotNull KatUniMessage message) {
+        writes[stripe(message.messageGroup)]++;
+        Ring ring = groups.get(message.messageGroup);
+        if (ring == null) {
+            return;
+        }
+        // 比缓冲区中最旧的消息还旧 并且缓冲区之外还有更旧的消息时 它不属于最近的消息
+        if (!ring.messages.isEmpty() && !ring.whole && ring.messages.size() >= size
+            && ORDER.compare(message, ring.messages.peekFirst()) < 0) {
+            return;
+        }
+        this.insert(ring, message);
+        this.evict();
+    }
+
+    /**
+     * 更新消息后替换缓冲区中的消息 <b>KatUniMessage.createdAt</b>保持原来的值
+     *
+     * @return 缓冲区中存在这条消息时返回 true
+     */
+    public synchronized boolean replace(String group, String id, @NotNull KatUniMessage message) {
+        writes[stripe(group)]++;
+        Ring ring = groups.get(group);
+        if (ring == null) {
+            return false;
+        }
+        KatUniMessage old = this.remove(ring, id);
+        if (old == null) {
+            return false;
+        }
+        message.createdAt = old.createdAt;
+        this.insert(ring, message);
+        this.evict();
+        return true;
+    }
+
+    /**
+     * 删除消息后从缓冲区中移除<br>
+     * 缓冲区之外还有更旧的消息时 移除后缓冲区无法补齐 整个消息组在下次读取时重新载入
+     */
+    public synchronized void remove(String group, String id) {
+        writes[stripe(group)]++;
+        Ring ring = groups.get(group);
+        if (ring != null && this.remove(ring, id) != null && !ring.whole) {
+            groups.remove(group);
+            weight -= ring.weight;
+        }
+    }
+
+    /**
+     * 移除整个消息组 下次读取时重新从数据库载入
+     */
+    public synchronized void invalidate(String group) {
+        writes[stripe(group)]++;
+        Ring ring = groups.remove(group);
+        if (ring != null) {
+            weight -= ring.weight;
+        }
+    }
+
+    // 已载入的消息组数
+    public synchronized int groups() {
+        return groups.size();
+    }
+
+    private void insert(Ring ring, KatUniMessage message) {
+        if (ring.messages.isEmpty() || ORDER.compare(message, ring.messages.peekLast()) >= 0) {
+            // 绝大多数消息按时间顺序到达 直接追加在最后
+            ring.messages.addLast(message);
+        } else {
+            List<KatUniMessage> sorted = new ArrayList<>(ring.messages);
+            sorted.add(message);
+            sorted.sort(ORDER);
+            ring.messages.clear();
+            ring.messages.addAll(sorted);
+        }
+        long added = KatMessageCache.weigh(message);
+        ring.weight += added;
+        weight += added;
+        // 缓冲区已满时丢弃最旧的消息
+        while (ring.messages.size() > size) {
+            long removed = KatMessageCache.weigh(ring.messages.pollFirst());
+            ring.weight -= removed;
+            weight -= removed;
+            ring.whole = false;
+        }
+    }
+
+    private KatUniMessage remove(Ring ring, String id) {
+        Iterator<KatUniMessage> iterator = ring.messages.iterator();
+        while (iterator.hasNext()) {
+            KatUniMessage message = iterator.next();
+            if (Objects.equals(message.messageID, id)) {
+                iterator.remove();
+                long removed = KatMessageCache.weigh(message);
+                ring.weight -= removed;
+                weight -= removed;
+                return message;
+            }
+        }
+        return null;
+    }
+
+    // 超出内存预算时淘汰最久没有被访问的消息组
+    private void evict() {
+        Iterator<Ring> iterator = groups.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static int stripe(String group) {
+        return Math.floorMod(Objects.hashCode(group), STRIPES);
+    }
+
+    /**
+     * 一个消息组的环形缓冲区
+     */
+    private static class Ring {
+        final ArrayDeque<KatUniMessage> messages = new ArrayDeque<>();
+        // 缓冲区中包含消息组全部的历史消息
+        boolean whole;
+        long weight;
+    }
+}
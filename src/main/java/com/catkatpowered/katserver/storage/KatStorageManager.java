@@ -3,5 +3,9 @@ package com.catkatpowered.katserver.storage;
 public class KatStorageManager {
 
     public static void init() {
+        // 报告消息表缺少的索引
+        KatMessageStorage.validateIndexes();
+        // 定时删除过期的消息分区
+        KatMessageStorage.startPartitionPurge();
     }
 }
@@ -0,0 +1,86 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.database.KatDatabase;
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.migration.DatabaseMigrator;
+import com.catkatpowered.katserver.database.migration.MigrationResult;
+import com.catkatpowered.katserver.database.type.DatabaseType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 把消息存储的全部表从一种数据库迁移到另一种 见 DatabaseMigrator <br>
+ * 迁移时服务器必须停止 中断后使用同一个检查点文件重新运行会从中断处继续 <br>
+ * 链接地址中需要带上用户名和密码 其余的链接配置从配置文件读取 <br>
+ * <br>
+ * 用法: KatStorageMigration 源数据库类型 源链接地址 目标数据库类型 目标链接地址 [检查点文件] [并行数] [每批行数] <br>
+ * 如 sqlite jdbc:sqlite:data/database.db postgresql jdbc:postgresql://localhost/kat?user=kat&amp;password=kat
+ *
+ * @author hanbings
+ */
+@Slf4j
+public class KatStorageMigration {
+    private static final String DEFAULT_CHECKPOINT = "migration.json";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("usage: KatStorageMigration <source type> <source url> <target type> <target url> "
+                    + "[checkpoint] [threads] [batch size]");
+            return;
+        }
+        DatabaseType sourceType = DatabaseType.lookup(args[0]);
+        DatabaseType targetType = DatabaseType.lookup(args[2]);
+        DatabaseConnector source = KatDatabase.pickConnector(sourceType);
+        DatabaseConnector target = KatDatabase.pickConnector(targetType);
+        source.loadDatabase(args[1], null, null);
+        target.loadDatabase(args[3], null, null);
+        try {
+            Path checkpoint = Path.of(args.length > 4 ? args[4] : DEFAULT_CHECKPOINT);
+            int threads = args.length > 5 ? Integer.parseInt(args[5]) : target.getPoolSize();
+            int batchSize = args.length > 6 ? Integer.parseInt(args[6]) : DatabaseMigrator.DEFAULT_BATCH_SIZE;
+            DatabaseActions sourceActions = KatDatabase.pickActions(sourceType);
+            DatabaseActions targetActions = KatDatabase.pickActions(targetType);
+            List<MigrationResult> results = new DatabaseMigrator(sourceActions, source.getConnection(),
+                    targetActions, target.getConnection(), KatStorageMigration::type, threads, batchSize, checkpoint)
+                    .migrate();
+            for (MigrationResult result : results) {
+                if (!result.isMatched()) {
+                    log.warn("{}: {} rows in source, {} rows in target, checksum {}.", result.getTable(),
+                            result.getRows(), result.getTargetRows(),
+                            result.getChecksum() == result.getTargetChecksum() ? "matches" : "differs");
+                }
+            }
+        } finally {
+            source.exit();
+            target.exit();
+        }
+    }
+
+    /**
+     * 消息存储中一张表的数据实体 <br>
+     * 消息组的表和它们的分区存放消息 以 @ 开头的表和编辑历史的表存放各自的数据
+     */
+    public static Class<?> type(String table) {
+        if (table.equals(KatMessageTrees.TABLE)) {
+            return KatMessageTree.class;
+        }
+        if (table.equals(KatMessageTrees.REFS)) {
+            return KatMessageTreeRefs.class;
+        }
+        if (table.equals(KatContentCompressor.TABLE)) {
+            return KatContentDictionary.class;
+        }
+        if (table.endsWith(KatMessageRevisions.SUFFIX)) {
+            return KatMessageRevision.class;
+        }
+        // 其他以 @ 开头的表不属于消息存储
+        if (table.startsWith(KatMessagePartitions.SEPARATOR)) {
+            return null;
+        }
+        return KatMessageRow.class;
+    }
+}
@@ -0,0 +1,139 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.storage.KatContentCompressor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 比较消息内容有无预置字典时逐条 deflate 的基准测试 <br>
+ * 用前 DEFAULT_SAMPLES 条消息训练字典 (与服务器首次训练相同) 在其余的消息上比较压缩后的大小和压缩 解压的速度 <br>
+ * 没有给出文件时使用生成的中英文混合聊天消息 给出文件时每行是一条消息 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=ContentDictionaryBenchmark -Pargs="[消息文件] [字典大小]"
+ */
+public class ContentDictionaryBenchmark {
+    private static final int GENERATED = 20000;
+    private static final String[] WORDS = {
+            "hello", "thanks", "anyone", "server", "update", "tonight", "meeting", "please", "check", "the",
+            "link", "image", "build", "release", "error", "works", "for", "me", "again", "tomorrow",
+            "你好", "谢谢", "今天", "晚上", "服务器", "更新", "有人", "在吗", "可以", "看看", "这个", "问题", "已经", "好了"
+    };
+    private static final String[] TEMPLATES = {
+            "%s %s, did the %s finish? @%s",
+            "今天的%s%s了吗 %s",
+            "[reply:%s] %s %s %s",
+            "https://example.com/files/%s/%s.png %s %s",
+            "%s %s %s %s 🙂"
+    };
+
+    public static void main(String[] args) throws IOException, DataFormatException {
+        List<String> contents = args.length > 0 ? Files.readAllLines(Path.of(args[0])) : generate();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : KatContentCompressor.DEFAULT_DICTIONARY_SIZE;
+        int samples = Math.min(KatContentCompressor.DEFAULT_SAMPLES, contents.size() / 2);
+        List<String> training = contents.subList(0, samples);
+        List<byte[]> messages = new ArrayList<>();
+        long raw = 0;
+        for (String content : contents.subList(samples, contents.size())) {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            messages.add(bytes);
+            raw += bytes.length;
+        }
+        long started = System.nanoTime();
+        byte[] dictionary = KatContentCompressor.train(training, size);
+        System.out.printf("trained %d B dictionary on %d messages in %.1f ms, measuring %d messages (%d B)%n",
+                dictionary.length, samples, (System.nanoTime() - started) / 1e6, messages.size(), raw);
+        // 运行两次 第二次的结果不受 JIT 预热影响
+        for (int round = 0; round < 2; round++) {
+            run("no dictionary", null, messages, raw);
+            run("dictionary", dictionary, messages, raw);
+        }
+    }
+
+    private static void run(String name, byte[] dictionary, List<byte[]> messages, long raw)
+            throws DataFormatException {
+        Deflater deflater = new Deflater(KatContentCompressor.DEFAULT_LEVEL, true);
+        Inflater inflater = new Inflater(true);
+        List<byte[]> compressed = new ArrayList<>(messages.size());
+        long stored = 0;
+        long started = System.nanoTime();
+        for (byte[] message : messages) {
+            byte[] bytes = deflate(deflater, dictionary, message);
+            compressed.add(bytes);
+            stored += bytes.length;
+        }
+        double compress = raw / 1e6 / seconds(started);
+        started = System.nanoTime();
+        for (int index = 0; index < messages.size(); index++) {
+            byte[] bytes = inflate(inflater, dictionary, compressed.get(index), messages.get(index).length);
+            if (!Arrays.equals(bytes, messages.get(index))) {
+                throw new IllegalStateException("round trip changed message " + index);
+            }
+        }
+        double decompress = raw / 1e6 / seconds(started);
+        deflater.end();
+        inflater.end();
+        System.out.printf("%-14s stored %5.1f%% of raw  compress %7.1f MB/s  decompress %7.1f MB/s%n",
+                name, stored * 100.0 / raw, compress, decompress);
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] dictionary, byte[] bytes) {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] buffer = new byte[bytes.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] dictionary, byte[] bytes, int length)
+            throws DataFormatException {
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(bytes);
+        byte[] buffer = new byte[length];
+        int offset = 0;
+        while (!inflater.finished() && offset < length) {
+            offset += inflater.inflate(buffer, offset, length - offset);
+        }
+        return buffer;
+    }
+
+    private static List<String> generate() {
+        Random random = new Random(1);
+        List<String> contents = new ArrayList<>(GENERATED);
+        for (int index = 0; index < GENERATED; index++) {
+            String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+            Object[] words = new Object[4];
+            for (int word = 0; word < words.length; word++) {
+                words[word] = WORDS[random.nextInt(WORDS.length)];
+            }
+            contents.add(String.format(template, words) + " #" + random.nextInt(1000));
+        }
+        return contents;
+    }
+
+    private static double seconds(long started) {
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
@@ -0,0 +1,114 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.message.KatUniMessage;
+import com.catkatpowered.katserver.message.KatUniMessageCodec;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 比较 KatUniMessageCodec 与 Gson JSON 存放消息列表的基准测试 <br>
+ * 对每种列表长度比较编码后的大小 编码 解码和只解码头部的耗时 <br>
+ * 列表中的消息带有资源 扩展字段 每第五条消息带有一层下一级消息 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=KatUniMessageCodecBenchmark -Pargs="[列表长度 ...]"
+ */
+public class KatUniMessageCodecBenchmark {
+    private static final int[] DEFAULT_SIZES = {3, 10, 50};
+    private static final int MESSAGES = 200000;
+    private static final Gson gson = new Gson();
+    private static final Type LIST = new TypeToken<ArrayList<KatUniMessage>>() {
+    }.getType();
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int index = 0; index < args.length; index++) {
+                sizes[index] = Integer.parseInt(args[index]);
+            }
+        }
+        System.out.printf("%-9s %-9s %-16s %-12s %-12s %-12s %-12s %s%n", "messages", "json", "binary",
+                "encode json", "binary", "decode json", "binary", "headers only");
+        // 运行两次 第二次的结果不受 JIT 预热影响
+        for (int round = 0; round < 2; round++) {
+            for (int size : sizes) {
+                run(size);
+            }
+        }
+    }
+
+    private static void run(int size) {
+        ArrayList<KatUniMessage> messages = messages(size);
+        byte[] json = gson.toJson(messages).getBytes(StandardCharsets.UTF_8);
+        byte[] binary = KatUniMessageCodec.encode(messages);
+        if (!messages.equals(KatUniMessageCodec.decode(binary))) {
+            throw new IllegalStateException("codec round trip changed the messages");
+        }
+        // 每种列表长度共处理相同数量的消息
+        int loops = Math.max(1, MESSAGES / size);
+        long started = System.nanoTime();
+        for (int index = 0; index < loops; index++) {
+            gson.toJson(messages).getBytes(StandardCharsets.UTF_8);
+        }
+        double encodeJson = micros(started, loops);
+        started = System.nanoTime();
+        for (int index = 0; index < loops; index++) {
+            KatUniMessageCodec.encode(messages);
+        }
+        double encodeBinary = micros(started, loops);
+        started = System.nanoTime();
+        for (int index = 0; index < loops; index++) {
+            gson.fromJson(new String(json, StandardCharsets.UTF_8), LIST);
+        }
+        double decodeJson = micros(started, loops);
+        started = System.nanoTime();
+        for (int index = 0; index < loops; index++) {
+            KatUniMessageCodec.decode(binary);
+        }
+        double decodeBinary = micros(started, loops);
+        started = System.nanoTime();
+        for (int index = 0; index < loops; index++) {
+            KatUniMessageCodec.decodeHeaders(binary);
+        }
+        double headers = micros(started, loops);
+        System.out.printf("%-9d %-9s %-16s %-12s %-12s %-12s %-12s %s%n", size, json.length + " B",
+                String.format("%d B (%d%%)", binary.length, binary.length * 100 / json.length),
+                us(encodeJson), us(encodeBinary), us(decodeJson), us(decodeBinary), us(headers));
+    }
+
+    private static ArrayList<KatUniMessage> messages(int size) {
+        ArrayList<KatUniMessage> messages = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            KatUniMessage.KatUniMessageBuilder builder = KatUniMessage.builder().messageGroup("group " + index % 2)
+                    .messageID(UUID.nameUUIDFromBytes(("m" + index).getBytes(StandardCharsets.UTF_8)).toString())
+                    .messageContent("hello world message number " + index)
+                    .createdAt(1700000000000L + index * 1000L)
+                    .extended(new ArrayList<>(List.of("reply", "m" + (index - 1))));
+            if (index % 3 == 0) {
+                builder.resourceHash("e3b0c44298fc1c149afbf4c8996fb924" + index).resourceName("image" + index + ".png")
+                        .resourceURL("https://example.com/resources/image" + index + ".png");
+            }
+            if (index % 5 == 0) {
+                builder.messageList(new ArrayList<>(List.of(KatUniMessage.builder().messageGroup("group 0")
+                        .messageID("child" + index).messageContent("quoted message " + index)
+                        .createdAt(1600000000000L + index).build())));
+            }
+            messages.add(builder.build());
+        }
+        return messages;
+    }
+
+    private static double micros(long started, int loops) {
+        return (System.nanoTime() - started) / 1e3 / loops;
+    }
+
+    private static String us(double micros) {
+        return String.format("%.2f us", micros);
+    }
+}
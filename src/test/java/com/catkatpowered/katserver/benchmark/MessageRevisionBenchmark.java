@@ -0,0 +1,177 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.sqlite.SQLiteActions;
+import com.catkatpowered.katserver.database.sqlite.SQLiteConnector;
+import com.catkatpowered.katserver.database.sqlite.SQLiteProfile;
+import com.catkatpowered.katserver.storage.KatMessageRevision;
+import com.catkatpowered.katserver.storage.KatMessageRevisions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 比较编辑历史按差异存放与每个版本存放完整内容的基准测试 <br>
+ * 每条消息经过多次小的编辑 差异按 KatMessageRevisions 的规则编码 (每 snapshot_interval 个版本一个快照) <br>
+ * 两种方式写入同一个 Sqlite 数据库的两张表 比较内容的字节数 写入和随机读取一个版本的耗时 并检查全部版本都能还原 <br>
+ * 数据库文件放在指定的目录 应当与服务器的数据目录在同一块磁盘上 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=MessageRevisionBenchmark -Pargs="目录 [消息数] [编辑次数] [快照间隔]"
+ */
+public class MessageRevisionBenchmark {
+    private static final int DEFAULT_MESSAGES = 200;
+    private static final int DEFAULT_EDITS = 30;
+    private static final int RANDOM_READS = 20000;
+    private static final String TEXT = "今天晚上八点开会 meeting at 8pm tonight 🐱 please bring the release notes "
+            + "和上周的问题列表 also check the build 🚀 before we start, 谢谢大家 see you there!";
+    private static final String INSERTS = "abcdefg 你好谢谢 🙂🎉";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: MessageRevisionBenchmark <directory> [messages] [edits] [snapshot interval]");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MESSAGES;
+        int edits = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_EDITS;
+        int interval = args.length > 3 ? Integer.parseInt(args[3]) : KatMessageRevisions.DEFAULT_SNAPSHOT_INTERVAL;
+        Files.createDirectories(directory);
+        Path file = directory.resolve("benchmark.db");
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Path.of(file + suffix));
+        }
+        List<List<String>> versions = versions(messages, edits);
+        SQLiteConnector connector = new SQLiteConnector(SQLiteProfile.builder().build());
+        connector.loadDatabase("jdbc:sqlite:" + file, null, null);
+        SQLiteActions actions = new SQLiteActions();
+        try {
+            long deltaBytes = 0;
+            long copyBytes = 0;
+            long started = System.nanoTime();
+            for (int message = 0; message < messages; message++) {
+                List<KatMessageRevision> rows = deltas("m" + message, versions.get(message), interval);
+                deltaBytes += rows.stream().mapToLong(row -> row.content.length).sum();
+                actions.create(connector.getConnection(), "revisions", rows);
+            }
+            double deltaWrite = seconds(started);
+            started = System.nanoTime();
+            for (int message = 0; message < messages; message++) {
+                List<KatMessageRevision> rows = copies("m" + message, versions.get(message));
+                copyBytes += rows.stream().mapToLong(row -> row.content.length).sum();
+                actions.create(connector.getConnection(), "copies", rows);
+            }
+            double copyWrite = seconds(started);
+            System.out.printf("%d messages x %d edits, snapshot every %d revisions%n", messages, edits, interval);
+            System.out.printf("delta  %8d B (%.1f%% of full copies)  write %6.1f ms%n",
+                    deltaBytes, deltaBytes * 100.0 / copyBytes, deltaWrite * 1000);
+            System.out.printf("copies %8d B                          write %6.1f ms%n", copyBytes, copyWrite * 1000);
+
+            for (int message = 0; message < messages; message++) {
+                for (int revision = 0; revision <= edits; revision++) {
+                    String content = readDelta(connector, actions, "m" + message, revision, interval);
+                    if (!versions.get(message).get(revision).equals(content)) {
+                        throw new IllegalStateException("m" + message + " revision " + revision + " differs");
+                    }
+                }
+            }
+            // 运行两次 第二次的结果不受 JIT 预热影响
+            for (int round = 0; round < 2; round++) {
+                Random random = new Random(1);
+                started = System.nanoTime();
+                for (int index = 0; index < RANDOM_READS; index++) {
+                    readDelta(connector, actions, "m" + random.nextInt(messages), random.nextInt(edits + 1), interval);
+                }
+                double delta = seconds(started) * 1e6 / RANDOM_READS;
+                random = new Random(1);
+                started = System.nanoTime();
+                for (int index = 0; index < RANDOM_READS; index++) {
+                    readCopy(connector, actions, "m" + random.nextInt(messages), random.nextInt(edits + 1));
+                }
+                double copy = seconds(started) * 1e6 / RANDOM_READS;
+                System.out.printf("random revision read  delta %6.1f us  full copy %6.1f us%n", delta, copy);
+            }
+        } finally {
+            connector.exit();
+        }
+    }
+
+    // 与 KatMessageRevisions 写入的规则相同 版本号是间隔的整数倍或差异不比快照小时存放快照
+    private static List<KatMessageRevision> deltas(String id, List<String> versions, int interval) {
+        List<KatMessageRevision> rows = new ArrayList<>();
+        for (int revision = 0; revision < versions.size(); revision++) {
+            byte[] content = KatMessageRevisions.encode(null, versions.get(revision));
+            if (revision % interval != 0) {
+                byte[] delta = KatMessageRevisions.encode(versions.get(revision - 1), versions.get(revision));
+                content = delta.length < content.length ? delta : content;
+            }
+            rows.add(new KatMessageRevision(id + ":" + revision, id, revision, content, 0L));
+        }
+        return rows;
+    }
+
+    private static List<KatMessageRevision> copies(String id, List<String> versions) {
+        List<KatMessageRevision> rows = new ArrayList<>();
+        for (int revision = 0; revision < versions.size(); revision++) {
+            rows.add(new KatMessageRevision(id + ":" + revision, id, revision,
+                    versions.get(revision).getBytes(StandardCharsets.UTF_8), 0L));
+        }
+        return rows;
+    }
+
+    // 从不晚于 revision 的快照开始依次应用差异 快照不依赖之前的内容
+    private static String readDelta(SQLiteConnector connector, SQLiteActions actions, String id, int revision,
+                                    int interval) {
+        List<KatMessageRevision> rows = actions.read(connector.getConnection(), "revisions",
+                KatMessageRevision.class, new DatabaseQuery().equal("message_id", id)
+                        .between("revision", revision - revision % interval, revision).orderBy("revision", true));
+        String content = null;
+        for (KatMessageRevision row : rows) {
+            content = KatMessageRevisions.apply(content, row.content);
+        }
+        return content;
+    }
+
+    private static String readCopy(SQLiteConnector connector, SQLiteActions actions, String id, int revision) {
+        List<KatMessageRevision> rows = actions.read(connector.getConnection(), "copies",
+                KatMessageRevision.class, new DatabaseQuery().equal("revision_id", id + ":" + revision));
+        return new String(rows.get(0).content, StandardCharsets.UTF_8);
+    }
+
+    // 每次编辑在随机的位置删除或插入几个字符 按码位编辑 不拆开代理对
+    private static List<List<String>> versions(int messages, int edits) {
+        Random random = new Random(1);
+        int[] inserts = INSERTS.codePoints().toArray();
+        List<List<String>> versions = new ArrayList<>();
+        for (int message = 0; message < messages; message++) {
+            List<String> chain = new ArrayList<>();
+            List<Integer> content = new ArrayList<>(TEXT.codePoints().boxed().toList());
+            chain.add(string(content));
+            for (int edit = 0; edit < edits; edit++) {
+                int position = random.nextInt(content.size());
+                int removed = Math.min(random.nextInt(4), content.size() - position);
+                content.subList(position, position + removed).clear();
+                for (int index = random.nextInt(6); index > 0; index--) {
+                    content.add(position, inserts[random.nextInt(inserts.length)]);
+                }
+                chain.add(string(content));
+            }
+            versions.add(chain);
+        }
+        return versions;
+    }
+
+    private static String string(List<Integer> codePoints) {
+        StringBuilder builder = new StringBuilder();
+        codePoints.forEach(builder::appendCodePoint);
+        return builder.toString();
+    }
+
+    private static double seconds(long started) {
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
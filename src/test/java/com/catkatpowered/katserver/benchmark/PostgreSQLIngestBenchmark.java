@@ -0,0 +1,135 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.postgresql.PostGreSQLActions;
+import com.catkatpowered.katserver.database.postgresql.PostGreSQLConnector;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.message.KatUniMessage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PostgreSQL 写入和历史消息分页的基准测试 需要一个可以建表的 PostgreSQL 数据库 <br>
+ * 1. 每轮分别用 COPY (批量 create) 批量 upsert (与批量 INSERT 同一条路径 只多 ON CONFLICT) 和逐行 create 写入消息 <br>
+ * 2. 在一个消息组中写入消息 在指定深度比较 OFFSET 分页和按 (created_at, message_id) 的键集分页 <br>
+ * 使用 benchmark_ 开头的表 开始时删除 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=PostgreSQLIngestBenchmark -Pargs="jdbc:postgresql://host/db 用户 密码 [行数] [历史行数]"
+ */
+public class PostgreSQLIngestBenchmark {
+    private static final int DEFAULT_ROWS = 100000;
+    private static final int DEFAULT_HISTORY = 300000;
+    private static final int ROUNDS = 3;
+    private static final int BATCH_SIZE = 5000;
+    private static final int SINGLE_ROWS = 5000;
+    private static final int PAGE = 50;
+    private static final int PAGE_READS = 50;
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 3) {
+            System.out.println("usage: PostgreSQLIngestBenchmark <url> <username> <password> [rows] [history rows]");
+            return;
+        }
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ROWS;
+        int history = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_HISTORY;
+        PostGreSQLConnector connector = new PostGreSQLConnector(2);
+        connector.loadDatabase(args[0], args[1], args[2]);
+        PostGreSQLActions actions = new PostGreSQLActions();
+        DatabaseConnection connection = connector.getConnection();
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                actions.drop(connection, "benchmark_copy");
+                actions.drop(connection, "benchmark_batch");
+                long started = System.nanoTime();
+                for (int from = 0; from < rows; from += BATCH_SIZE) {
+                    actions.create(connection, "benchmark_copy", messages("g", from, rows));
+                }
+                double copy = rows / seconds(started);
+                started = System.nanoTime();
+                for (int from = 0; from < rows; from += BATCH_SIZE) {
+                    actions.upsert(connection, "benchmark_batch", messages("g", from, rows));
+                }
+                double batch = rows / seconds(started);
+                System.out.printf("round %d  COPY %8.0f rows/s  batched %8.0f rows/s%n", round + 1, copy, batch);
+            }
+            actions.drop(connection, "benchmark_single");
+            long started = System.nanoTime();
+            for (int index = 0; index < SINGLE_ROWS; index++) {
+                actions.create(connection, "benchmark_single", message("g", index));
+            }
+            System.out.printf("single INSERT %8.0f rows/s%n", SINGLE_ROWS / seconds(started));
+
+            actions.drop(connection, "benchmark_history");
+            for (int from = 0; from < history; from += BATCH_SIZE) {
+                actions.create(connection, "benchmark_history", messages("h", from, history));
+            }
+            pages(args, actions, connection, history);
+        } finally {
+            for (String table : new String[]{"benchmark_copy", "benchmark_batch", "benchmark_single",
+                    "benchmark_history"}) {
+                actions.drop(connection, table);
+            }
+            connector.exit();
+        }
+    }
+
+    // 在 history * 5 / 6 的深度读取一页 OFFSET 只能直接执行 SQL
+    private static void pages(String[] args, PostGreSQLActions actions, DatabaseConnection connection, int history)
+            throws SQLException {
+        int depth = history * 5 / 6;
+        KatUniMessage before = message("h", history - depth);
+        String offset = "SELECT * FROM benchmark_history WHERE message_group = ? "
+                + "ORDER BY created_at DESC, message_id DESC LIMIT " + PAGE + " OFFSET ?";
+        try (Connection jdbc = DriverManager.getConnection(args[0], args[1], args[2]);
+             PreparedStatement statement = jdbc.prepareStatement(offset)) {
+            statement.setString(1, "h");
+            statement.setInt(2, depth);
+            for (int round = 0; round < 2; round++) {
+                long started = System.nanoTime();
+                for (int index = 0; index < PAGE_READS; index++) {
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) {
+                            result.getString("message_id");
+                        }
+                    }
+                }
+                double offsetPage = seconds(started) * 1000 / PAGE_READS;
+                started = System.nanoTime();
+                for (int index = 0; index < PAGE_READS; index++) {
+                    actions.read(connection, "benchmark_history", KatUniMessage.class, new DatabaseQuery()
+                            .equal("message_group", "h")
+                            .less(List.of("created_at", "message_id"), List.of(before.createdAt, before.messageID))
+                            .orderBy("created_at", false).orderBy("message_id", false).limit(PAGE));
+                }
+                double keysetPage = seconds(started) * 1000 / PAGE_READS;
+                System.out.printf("depth %d of %d  OFFSET page %7.2f ms  keyset page %7.2f ms%n",
+                        depth, history, offsetPage, keysetPage);
+            }
+        }
+    }
+
+    // 从 from 开始的一批消息 最多 BATCH_SIZE 条 不超过 end
+    private static List<KatUniMessage> messages(String group, int from, int end) {
+        int to = Math.min(end, from + BATCH_SIZE);
+        List<KatUniMessage> messages = new ArrayList<>(to - from);
+        for (int index = from; index < to; index++) {
+            messages.add(message(group, index));
+        }
+        return messages;
+    }
+
+    private static KatUniMessage message(String group, int index) {
+        return KatUniMessage.builder().messageGroup(group).messageID(String.format("m%07d", index))
+                .messageContent("hello world message number " + index).createdAt((long) index).build();
+    }
+
+    private static double seconds(long started) {
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
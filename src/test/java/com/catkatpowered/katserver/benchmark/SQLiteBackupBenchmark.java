@@ -0,0 +1,198 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.metrics.DatabaseMetrics;
+import com.catkatpowered.katserver.database.metrics.InstrumentedDatabaseActions;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.sqlite.SQLiteActions;
+import com.catkatpowered.katserver.database.sqlite.SQLiteBackup;
+import com.catkatpowered.katserver.database.sqlite.SQLiteBackupProgress;
+import com.catkatpowered.katserver.database.sqlite.SQLiteConnector;
+import com.catkatpowered.katserver.database.sqlite.SQLiteProfile;
+import com.catkatpowered.katserver.database.sqlite.SQLiteSnapshots;
+import com.catkatpowered.katserver.message.KatUniMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Sqlite 快照和恢复的基准测试 <br>
+ * 1. 写入若干张表后 在约 1 kHz 的逐行写入旁边分别以不限速 按写入延迟限速 和预算为 0 三种方式生成全量快照
+ * 比较复制耗时和写入的 p99 <br>
+ * 2. 插入 1000 行 更新和删除最近的各 40 行后生成增量快照 比较写入的页数和字节数 <br>
+ * 3. 从全量和增量快照恢复 比较每张表的行数 <br>
+ * 数据放在指定的目录 应当与服务器的数据目录在同一块磁盘上 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=SQLiteBackupBenchmark -Pargs="目录 [表数] [每张表的行数]"
+ */
+public class SQLiteBackupBenchmark {
+    private static final int DEFAULT_TABLES = 40;
+    private static final int DEFAULT_ROWS = 5000;
+    private static final int BATCH_SIZE = 5000;
+    // 限速时的写入延迟预算 毫秒
+    private static final long LATENCY_BUDGET = 5;
+    private static final long WRITE_INTERVAL = 1_000_000;
+    private static final String PADDING = "x".repeat(200);
+    // 每次复制时的写入接着上一次的编号 不与已有的行冲突
+    private static final AtomicInteger written = new AtomicInteger();
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage: SQLiteBackupBenchmark <directory> [tables] [rows per table]");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        int tables = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TABLES;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROWS;
+        clean(directory);
+        String url = "jdbc:sqlite:" + directory.resolve("benchmark.db");
+        SQLiteProfile profile = SQLiteProfile.builder().build();
+        SQLiteConnector connector = new SQLiteConnector(profile);
+        connector.loadDatabase(url, null, null);
+        DatabaseMetrics metrics = new DatabaseMetrics(DatabaseMetrics.DEFAULT_MAX_TABLES, 0);
+        DatabaseActions actions = new InstrumentedDatabaseActions(new SQLiteActions(), metrics);
+        try {
+            for (int table = 0; table < tables; table++) {
+                for (int from = 0; from < rows; from += BATCH_SIZE) {
+                    List<KatUniMessage> batch = new ArrayList<>(BATCH_SIZE);
+                    for (int index = from; index < Math.min(rows, from + BATCH_SIZE); index++) {
+                        batch.add(message("t" + table, index));
+                    }
+                    actions.create(connector.getConnection(), "t" + table, batch);
+                }
+            }
+            System.out.printf("%d tables x %d rows, %d MB%n", tables, rows,
+                    Files.size(directory.resolve("benchmark.db")) / (1024 * 1024));
+
+            SQLiteBackup unthrottled = new SQLiteBackup(true, directory.resolve("unthrottled"), 0, 24, 2,
+                    LATENCY_BUDGET, 1);
+            full("unthrottled", unthrottled, url, profile, null, connector, actions);
+            unthrottled.close();
+            SQLiteBackup throttled = new SQLiteBackup(true, directory.resolve("throttled"), 0, 24, 2,
+                    LATENCY_BUDGET, SQLiteBackup.DEFAULT_MAX_BUSY);
+            full("throttled", throttled, url, profile, metrics, connector, actions);
+            throttled.close();
+            SQLiteBackup backup = new SQLiteBackup(true, directory.resolve("budget-0"), 0, 24, 2, 0,
+                    SQLiteBackup.DEFAULT_MAX_BUSY);
+            SQLiteBackupProgress full = full("budget 0", backup, url, profile, metrics, connector, actions);
+
+            for (int index = 0; index < 1000; index++) {
+                actions.create(connector.getConnection(), "t" + index % tables, message("t" + index % tables,
+                        rows + index));
+            }
+            // 更新和删除最近的消息 VACUUM 重新排列被删除的行之后的整张表 删除早期的行时几乎全部的页都会改变
+            for (int index = 0; index < 40; index++) {
+                String table = "t" + index % tables;
+                KatUniMessage changed = message(table, rows - 2 - index * 7);
+                changed.messageContent = "changed " + index;
+                actions.update(connector.getConnection(), table, changed,
+                        new DatabaseQuery().equal("message_id", changed.messageID));
+                actions.delete(connector.getConnection(), table,
+                        new DatabaseQuery().equal("message_id", message(table, rows - 1 - index * 7).messageID));
+            }
+            Thread.sleep(2);
+            long started = System.nanoTime();
+            SQLiteBackupProgress incremental = backup.snapshot(url);
+            System.out.printf("incremental  %7.0f ms  %d of %d pages, %.1f MB (full snapshot %.1f MB)%n",
+                    millis(started), incremental.getChangedPages(), incremental.getPages(),
+                    incremental.getBytesWritten() / 1e6, full.getBytesWritten() / 1e6);
+            backup.close();
+
+            Path restored = directory.resolve("restored.db");
+            started = System.nanoTime();
+            new SQLiteSnapshots(backup.getDirectory().resolve(SQLiteBackup.name(url))).restore(null, restored);
+            double restore = millis(started);
+            SQLiteConnector target = new SQLiteConnector(profile);
+            target.loadDatabase("jdbc:sqlite:" + restored, null, null);
+            try {
+                int mismatched = 0;
+                for (int table = 0; table < tables; table++) {
+                    if (count(actions, connector, "t" + table) != count(actions, target, "t" + table)) {
+                        mismatched++;
+                    }
+                }
+                System.out.printf("restore full + incremental %7.0f ms, row counts differ in %d of %d tables%n",
+                        restore, mismatched, tables);
+            } finally {
+                target.exit();
+            }
+        } finally {
+            connector.exit();
+        }
+        clean(directory);
+    }
+
+    // 逐行写入的线程运行期间生成一次全量快照 只统计复制期间的写入
+    private static SQLiteBackupProgress full(String name, SQLiteBackup backup, String url, SQLiteProfile profile,
+                                             DatabaseMetrics metrics, SQLiteConnector connector,
+                                             DatabaseActions actions)
+            throws IOException, SQLException, InterruptedException {
+        backup.start(List.of(url), profile, metrics);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean copying = new AtomicBoolean();
+        List<Long> latencies = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                long started = System.nanoTime();
+                actions.create(connector.getConnection(), "writes", message("writes", written.getAndIncrement()));
+                long latency = System.nanoTime() - started;
+                if (copying.get()) {
+                    latencies.add(latency);
+                }
+                LockSupport.parkNanos(WRITE_INTERVAL - Math.min(WRITE_INTERVAL, latency));
+            }
+        }, "benchmark-writer");
+        writer.start();
+        // 写入稳定后再开始复制
+        Thread.sleep(500);
+        copying.set(true);
+        long started = System.nanoTime();
+        SQLiteBackupProgress progress;
+        try {
+            progress = backup.snapshot(url);
+        } finally {
+            copying.set(false);
+            running.set(false);
+            writer.join();
+        }
+        double copied = millis(started);
+        long[] during = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%-12s %7.0f ms  throttled %6d ms  %6d writes  writer p99 %7.0f us%n", name, copied,
+                progress.getThrottledMillis(), during.length,
+                during.length == 0 ? 0 : during[(int) (during.length * 0.99)] / 1e3);
+        return progress;
+    }
+
+    private static int count(DatabaseActions actions, SQLiteConnector connector, String table) {
+        return actions.read(connector.getConnection(), table, KatUniMessage.class, new DatabaseQuery()).size();
+    }
+
+    private static KatUniMessage message(String group, int index) {
+        return KatUniMessage.builder().messageGroup(group).messageID(String.format("m%08d", index))
+                .messageContent("hello world message number " + index + " " + PADDING).createdAt((long) index)
+                .build();
+    }
+
+    private static void clean(Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        Files.createDirectories(directory);
+    }
+
+    private static double millis(long started) {
+        return (System.nanoTime() - started) / 1e6;
+    }
+}
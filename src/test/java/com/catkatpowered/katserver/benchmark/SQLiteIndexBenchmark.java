@@ -0,0 +1,161 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.database.annotation.SqliteMetadata;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.sqlite.SQLiteActions;
+import com.catkatpowered.katserver.database.sqlite.SQLiteConnector;
+import com.catkatpowered.katserver.database.sqlite.SQLiteProfile;
+import com.catkatpowered.katserver.database.type.DataType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * 比较 Sqlite 有无二级索引时按消息组查询的基准测试 <br>
+ * 两张表的列相同 一张为 message_group 声明索引 写入相同的行后按消息组和按主键随机读取 并打印查询计划 <br>
+ * 数据库文件放在指定的目录 应当与服务器的数据目录在同一块磁盘上 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=SQLiteIndexBenchmark -Pargs="目录 [行数] [消息组数]"
+ */
+public class SQLiteIndexBenchmark {
+    private static final int DEFAULT_ROWS = 1000000;
+    private static final int DEFAULT_GROUPS = 1000;
+    private static final int BATCH_SIZE = 10000;
+    private static final int GROUP_READS = 200;
+    private static final int POINT_READS = 20000;
+
+    static class PlainRow {
+        @SqliteMetadata(name = "message_id", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
+        String messageID;
+        @SqliteMetadata(name = "message_group", type = DataType.Sqlite.TEXT)
+        String messageGroup;
+        @SqliteMetadata(name = "message_content", type = DataType.Sqlite.TEXT)
+        String messageContent;
+
+        PlainRow() {
+        }
+
+        PlainRow(int index, int groups) {
+            this.messageID = id(index);
+            this.messageGroup = "g" + index % groups;
+            this.messageContent = "hello world message number " + index;
+        }
+    }
+
+    static class IndexedRow {
+        @SqliteMetadata(name = "message_id", type = DataType.Sqlite.TEXT, isPrimaryKey = true)
+        String messageID;
+        @SqliteMetadata(name = "message_group", type = DataType.Sqlite.TEXT, isIndexed = true)
+        String messageGroup;
+        @SqliteMetadata(name = "message_content", type = DataType.Sqlite.TEXT)
+        String messageContent;
+
+        IndexedRow() {
+        }
+
+        IndexedRow(int index, int groups) {
+            this.messageID = id(index);
+            this.messageGroup = "g" + index % groups;
+            this.messageContent = "hello world message number " + index;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 1) {
+            System.out.println("usage: SQLiteIndexBenchmark <directory> [rows] [groups]");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROWS;
+        int groups = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GROUPS;
+        Files.createDirectories(directory);
+        Path file = directory.resolve("benchmark.db");
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Path.of(file + suffix));
+        }
+        String url = "jdbc:sqlite:" + file;
+        SQLiteConnector connector = new SQLiteConnector(SQLiteProfile.builder().build());
+        connector.loadDatabase(url, null, null);
+        SQLiteActions actions = new SQLiteActions();
+        try {
+            long started = System.nanoTime();
+            fill(connector, actions, "plain", index -> new PlainRow(index, groups), rows);
+            System.out.printf("insert without index %8.0f rows/s%n", rows / seconds(started));
+            started = System.nanoTime();
+            fill(connector, actions, "indexed", index -> new IndexedRow(index, groups), rows);
+            System.out.printf("insert with index    %8.0f rows/s%n", rows / seconds(started));
+            // 每张表运行两次 第二次的结果不受 JIT 预热和页缓存影响
+            for (int round = 0; round < 2; round++) {
+                run(connector, actions, "plain", PlainRow.class, rows, groups);
+                run(connector, actions, "indexed", IndexedRow.class, rows, groups);
+            }
+        } finally {
+            connector.exit();
+        }
+        try (Connection connection = DriverManager.getConnection(url)) {
+            plan(connection, "SELECT * FROM plain WHERE message_group = 'g0'");
+            plan(connection, "SELECT * FROM indexed WHERE message_group = 'g0'");
+            plan(connection, "SELECT * FROM indexed WHERE message_group = 'g0' AND message_id = 'm0000000'");
+        }
+    }
+
+    private static <T> void fill(SQLiteConnector connector, SQLiteActions actions, String table,
+                                 IntFunction<T> row, int rows) {
+        for (int from = 0; from < rows; from += BATCH_SIZE) {
+            List<T> batch = new ArrayList<>(BATCH_SIZE);
+            for (int index = from; index < Math.min(rows, from + BATCH_SIZE); index++) {
+                batch.add(row.apply(index));
+            }
+            actions.create(connector.getConnection(), table, batch);
+        }
+    }
+
+    private static <T> void run(SQLiteConnector connector, SQLiteActions actions, String table, Class<T> type,
+                                int rows, int groups) {
+        Random random = new Random(1);
+        long started = System.nanoTime();
+        int found = 0;
+        for (int index = 0; index < GROUP_READS; index++) {
+            found += actions.read(connector.getConnection(), table, type,
+                    new DatabaseQuery().equal("message_group", "g" + random.nextInt(groups))).size();
+        }
+        double group = seconds(started) * 1000 / GROUP_READS;
+        started = System.nanoTime();
+        for (int index = 0; index < POINT_READS; index++) {
+            actions.read(connector.getConnection(), table, type, new DatabaseQuery()
+                    .equal("message_group", "g" + index % groups).equal("message_id", id(random.nextInt(rows))));
+        }
+        double point = seconds(started) * 1000 / POINT_READS;
+        System.out.printf("%-8s group read %8.3f ms (%d rows/read)  group + id read %6.3f ms%n",
+                table, group, found / GROUP_READS, point);
+    }
+
+    private static void plan(Connection connection, String sql) throws SQLException {
+        StringBuilder details = new StringBuilder();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            while (result.next()) {
+                details.append(details.length() > 0 ? "; " : "").append(result.getString("detail"));
+            }
+        }
+        System.out.printf("%s%n    -> %s%n", sql, details);
+    }
+
+    private static String id(int index) {
+        return String.format("m%07d", index);
+    }
+
+    private static double seconds(long started) {
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
@@ -0,0 +1,84 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.sqlite.SQLiteActions;
+import com.catkatpowered.katserver.database.sqlite.SQLiteConnector;
+import com.catkatpowered.katserver.database.sqlite.SQLiteProfile;
+import com.catkatpowered.katserver.message.KatUniMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 比较 Sqlite 性能配置的基准测试 <br>
+ * 每种配置在新的数据库文件上逐行写入消息 再按主键随机读取 最后按消息组倒序读取最近 50 条 <br>
+ * 数据库文件放在指定的目录 应当与服务器的数据目录在同一块磁盘上 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=SQLiteProfileBenchmark -Pargs="目录 [行数]"
+ */
+public class SQLiteProfileBenchmark {
+    private static final int DEFAULT_ROWS = 5000;
+    private static final int POINT_READS = 50000;
+    private static final int TAIL_READS = 200;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: SQLiteProfileBenchmark <directory> [rows]");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROWS;
+        Files.createDirectories(directory);
+        run(directory, rows, "DELETE/FULL (driver)", SQLiteProfile.builder().journalMode("DELETE")
+                .synchronous("FULL").mmapSize(0).cacheSize(-2000).tempStore("DEFAULT").build());
+        run(directory, rows, "WAL/FULL", SQLiteProfile.builder().synchronous("FULL").build());
+        run(directory, rows, "WAL/NORMAL (default)", SQLiteProfile.builder().build());
+        run(directory, rows, "WAL/OFF", SQLiteProfile.builder().synchronous("OFF").build());
+    }
+
+    private static void run(Path directory, int rows, String name, SQLiteProfile profile) throws IOException {
+        Path file = directory.resolve("benchmark.db");
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Path.of(file + suffix));
+        }
+        SQLiteConnector connector = new SQLiteConnector(profile);
+        connector.loadDatabase("jdbc:sqlite:" + file, null, null);
+        SQLiteActions actions = new SQLiteActions();
+        try {
+            long started = System.nanoTime();
+            for (int index = 0; index < rows; index++) {
+                actions.create(connector.getConnection(), "g", KatUniMessage.builder().messageGroup("g")
+                        .messageID("id" + index).messageContent("hello world message number " + index).build());
+            }
+            double inserts = rows / seconds(started);
+            Random random = new Random(1);
+            // 预热
+            for (int index = 0; index < POINT_READS / 2; index++) {
+                actions.read(connector.getConnection(), "g", KatUniMessage.class,
+                        new DatabaseQuery().equal("message_id", "id" + random.nextInt(rows)));
+            }
+            started = System.nanoTime();
+            for (int index = 0; index < POINT_READS; index++) {
+                actions.read(connector.getConnection(), "g", KatUniMessage.class,
+                        new DatabaseQuery().equal("message_id", "id" + random.nextInt(rows)));
+            }
+            double reads = POINT_READS / seconds(started);
+            started = System.nanoTime();
+            for (int index = 0; index < TAIL_READS; index++) {
+                actions.read(connector.getConnection(), "g", KatUniMessage.class, new DatabaseQuery()
+                        .equal("message_group", "g").orderBy("message_id", false).limit(50));
+            }
+            double tails = TAIL_READS / seconds(started);
+            System.out.printf("%-22s insert %8.0f rows/s  point read %8.0f q/s  tail-50 %6.0f q/s%n",
+                    name, inserts, reads, tails);
+        } finally {
+            connector.exit();
+        }
+    }
+
+    private static double seconds(long started) {
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
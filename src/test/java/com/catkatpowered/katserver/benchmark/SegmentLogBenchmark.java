@@ -0,0 +1,140 @@
+package com.catkatpowered.katserver.benchmark;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseActions;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnector;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.database.segmentlog.SegmentLogActions;
+import com.catkatpowered.katserver.database.segmentlog.SegmentLogConnector;
+import com.catkatpowered.katserver.database.segmentlog.SegmentLogProfile;
+import com.catkatpowered.katserver.database.sqlite.SQLiteActions;
+import com.catkatpowered.katserver.database.sqlite.SQLiteConnector;
+import com.catkatpowered.katserver.database.sqlite.SQLiteProfile;
+import com.catkatpowered.katserver.message.KatUniMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 比较 SegmentLog 与 Sqlite (默认配置) 的基准测试 <br>
+ * 逐行写入消息 再按每批 500 行批量写入 之后读取最近 50 条 向前翻 20 页 并按主键随机读取 <br>
+ * 数据放在指定的目录 应当与服务器的数据目录在同一块磁盘上 <br>
+ * <br>
+ * 用法: gradle benchmark -Pbenchmark=SegmentLogBenchmark -Pargs="目录 [批数]"
+ */
+public class SegmentLogBenchmark {
+    private static final int DEFAULT_BATCHES = 200;
+    private static final int BATCH_SIZE = 500;
+    private static final int SINGLE_ROWS = 20000;
+    private static final int TAIL_READS = 2000;
+    private static final int PAGE_WALKS = 100;
+    private static final int PAGES = 20;
+    private static final int POINT_READS = 2000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: SegmentLogBenchmark <directory> [batches]");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCHES;
+        // 每种存储运行两次 第二次的结果不受 JIT 预热影响
+        for (int round = 0; round < 2; round++) {
+            clean(directory);
+            SQLiteConnector sqlite = new SQLiteConnector(SQLiteProfile.builder().build());
+            sqlite.loadDatabase("jdbc:sqlite:" + directory.resolve("benchmark.db"), null, null);
+            run("sqlite", sqlite, new SQLiteActions(), batches);
+            clean(directory);
+            SegmentLogConnector segmentLog = new SegmentLogConnector(SegmentLogProfile.builder().build());
+            segmentLog.loadDatabase(directory.resolve("segments").toString(), null, null);
+            run("segment log", segmentLog, new SegmentLogActions(), batches);
+        }
+        clean(directory);
+    }
+
+    private static void run(String name, DatabaseConnector connector, DatabaseActions actions, int batches) {
+        DatabaseConnection connection = connector.getConnection();
+        try {
+            long started = System.nanoTime();
+            for (int index = 0; index < SINGLE_ROWS; index++) {
+                actions.create(connection, "single", message("single", index));
+            }
+            double singles = SINGLE_ROWS / seconds(started);
+            int rows = batches * BATCH_SIZE;
+            started = System.nanoTime();
+            for (int batch = 0; batch < batches; batch++) {
+                List<KatUniMessage> messages = new ArrayList<>(BATCH_SIZE);
+                for (int index = 0; index < BATCH_SIZE; index++) {
+                    messages.add(message("g", batch * BATCH_SIZE + index));
+                }
+                actions.create(connection, "g", messages);
+            }
+            double batched = rows / seconds(started);
+            // 预热
+            for (int index = 0; index < TAIL_READS; index++) {
+                actions.read(connection, "g", KatUniMessage.class, tail());
+            }
+            started = System.nanoTime();
+            for (int index = 0; index < TAIL_READS; index++) {
+                actions.read(connection, "g", KatUniMessage.class, tail());
+            }
+            double tails = seconds(started) * 1000 / TAIL_READS;
+            started = System.nanoTime();
+            for (int walk = 0; walk < PAGE_WALKS; walk++) {
+                KatUniMessage last = null;
+                for (int page = 0; page < PAGES; page++) {
+                    DatabaseQuery query = tail();
+                    if (last != null) {
+                        query.less(List.of("created_at", "message_id"), List.of(last.createdAt, last.messageID));
+                    }
+                    List<KatUniMessage> messages = actions.read(connection, "g", KatUniMessage.class, query);
+                    last = messages.get(messages.size() - 1);
+                }
+            }
+            double pages = seconds(started) * 1000 / (PAGE_WALKS * PAGES);
+            started = System.nanoTime();
+            for (int index = 0; index < POINT_READS; index++) {
+                actions.read(connection, "g", KatUniMessage.class,
+                        new DatabaseQuery().equal("message_id", id((index * 37) % rows)));
+            }
+            double points = seconds(started) * 1000 / POINT_READS;
+            System.out.printf("%-12s insert %8.0f rows/s  batch %8.0f rows/s  tail-50 %6.3f ms  page %6.3f ms"
+                    + "  point read %6.3f ms%n", name, singles, batched, tails, pages, points);
+        } finally {
+            connector.exit();
+        }
+    }
+
+    private static KatUniMessage message(String group, int index) {
+        return KatUniMessage.builder().messageGroup(group).messageID(id(index))
+                .messageContent("hello world message number " + index).createdAt((long) index).build();
+    }
+
+    private static String id(int index) {
+        return String.format("m%07d", index);
+    }
+
+    private static DatabaseQuery tail() {
+        return new DatabaseQuery().equal("message_group", "g")
+                .orderBy("created_at", false).orderBy("message_id", false).limit(50);
+    }
+
+    private static void clean(Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        Files.createDirectories(directory);
+    }
+
+    private static double seconds(long started) {
+        return (System.nanoTime() - started) / 1e9;
+    }
+}
@@ -0,0 +1,68 @@
+package com.catkatpowered.katserver.database.async;
+
+import com.catkatpowered.katserver.database.exception.DataProcessingException;
+import com.catkatpowered.katserver.database.memory.MemoryActions;
+import com.catkatpowered.katserver.database.memory.MemoryConnector;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncDatabaseActionsTest {
+    MemoryConnector connector = new MemoryConnector();
+    DatabaseExecutor executor = new DatabaseExecutor(2, 16, 0);
+    AsyncDatabaseActions actions = new AsyncDatabaseActions(new MemoryActions(), executor);
+
+    static class Row {
+        String id;
+        String value;
+
+        Row() {
+        }
+
+        Row(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    @BeforeEach
+    void open() {
+        connector.loadDatabase(null, null, null);
+    }
+
+    @AfterEach
+    void close() {
+        executor.close(1000);
+        connector.exit();
+    }
+
+    @Test
+    void successfulWriteCompletes() throws Exception {
+        actions.create(connector.getConnection(), "rows", new Row("a", "1")).get();
+        actions.update(connector.getConnection(), "rows", new Row("a", "2"), new DatabaseQuery().equal("id", "a"))
+                .get();
+
+        List<Row> rows = actions.read(connector.getConnection(), "rows", Row.class, new DatabaseQuery()).get();
+        assertEquals("2", rows.get(0).value);
+    }
+
+    /**
+     * 执行器记录并吞掉了异常 失败仍然要传递到 CompletableFuture
+     */
+    @Test
+    void failedWriteCompletesExceptionally() throws Exception {
+        actions.create(connector.getConnection(), "rows", new Row("a", "1")).get();
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> actions.create(connector.getConnection(), "rows", List.of(new Row("a", "2"))).get());
+        assertInstanceOf(DataProcessingException.class, exception.getCause());
+    }
+}
@@ -0,0 +1,109 @@
+package com.catkatpowered.katserver.database.memory;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseConnection;
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryActionsTest {
+    MemoryActions actions = new MemoryActions();
+    MemoryConnector connector;
+    DatabaseConnection connection;
+
+    static class Row {
+        String id;
+        String value;
+        byte[] content;
+
+        Row() {
+        }
+
+        Row(String id, String value) {
+            this.id = id;
+            this.value = value;
+            this.content = value.getBytes();
+        }
+    }
+
+    @BeforeEach
+    void open() {
+        connector = new MemoryConnector();
+        connector.loadDatabase(null, null, null);
+        connection = connector.getConnection();
+        List<Row> rows = new ArrayList<>();
+        for (int index = 0; index < 10; index++) {
+            rows.add(new Row("r" + index, "v" + index));
+        }
+        assertTrue(actions.create(connection, "rows", rows));
+    }
+
+    @AfterEach
+    void close() {
+        connector.exit();
+    }
+
+    /**
+     * 游标看到的是打开时的快照 遍历期间的增加 更新和删除都不出现在结果中
+     */
+    @Test
+    void cursorReadsSnapshot() {
+        List<String> values = new ArrayList<>();
+        try (DatabaseCursor<Row> cursor = actions.cursor(connection, "rows", Row.class, new DatabaseQuery(), 1)) {
+            values.add(cursor.next().value);
+            assertTrue(actions.update(connection, "rows", new Row("r5", "changed"),
+                    new DatabaseQuery().equal("id", "r5")));
+            assertTrue(actions.delete(connection, "rows", new DatabaseQuery().equal("id", "r9")));
+            assertTrue(actions.create(connection, "rows", new Row("r10", "added")));
+            cursor.forEachRemaining(row -> values.add(row.value));
+        }
+
+        assertEquals(List.of("v0", "v1", "v2", "v3", "v4", "v5", "v6", "v7", "v8", "v9"), values);
+        assertEquals("changed", this.read("r5").value);
+        assertEquals(10, actions.read(connection, "rows", Row.class, new DatabaseQuery()).size());
+    }
+
+    /**
+     * 写入和读取的数据实体都是复制的 调用者修改它们 (包括字节数组) 不改变表中的行
+     */
+    @Test
+    void rowsAreCopied() {
+        Row written = new Row("r10", "v10");
+        assertTrue(actions.create(connection, "rows", written));
+        written.value = "changed";
+        written.content[0] = 'x';
+
+        Row read = this.read("r10");
+        assertEquals("v10", read.value);
+        assertArrayEquals("v10".getBytes(), read.content);
+
+        read.value = "changed";
+        read.content[0] = 'x';
+        assertEquals("v10", this.read("r10").value);
+        assertArrayEquals("v10".getBytes(), this.read("r10").content);
+    }
+
+    /**
+     * 主键冲突时整组不写入
+     */
+    @Test
+    void duplicateBatchIsNotWritten() {
+        assertFalse(actions.create(connection, "rows", List.of(new Row("r20", "v20"), new Row("r0", "again"))));
+
+        assertEquals(10, actions.read(connection, "rows", Row.class, new DatabaseQuery()).size());
+        assertEquals("v0", this.read("r0").value);
+    }
+
+    private Row read(String id) {
+        return actions.read(connection, "rows", Row.class, new DatabaseQuery().equal("id", id)).get(0);
+    }
+}
@@ -0,0 +1,105 @@
+package com.catkatpowered.katserver.database.migration;
+
+import com.catkatpowered.katserver.database.entity.DatabaseEntity;
+import com.catkatpowered.katserver.database.memory.MemoryActions;
+import com.catkatpowered.katserver.database.memory.MemoryConnector;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseMigratorTest {
+    private static final String TABLE = "rows";
+
+    @TempDir
+    Path directory;
+
+    MemoryActions actions = new MemoryActions();
+    MemoryConnector source = new MemoryConnector();
+    MemoryConnector target = new MemoryConnector();
+    List<Row> rows = new ArrayList<>();
+
+    static class Row {
+        String id;
+        String value;
+
+        Row() {
+        }
+
+        Row(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    @BeforeEach
+    void open() {
+        source.loadDatabase(null, null, null);
+        target.loadDatabase(null, null, null);
+        for (int index = 0; index < 10; index++) {
+            rows.add(new Row(String.format("%02d", index), "v" + index));
+        }
+        actions.create(source.getConnection(), TABLE, rows);
+    }
+
+    @AfterEach
+    void close() {
+        source.exit();
+        target.exit();
+    }
+
+    /**
+     * 中断的迁移已经写入前 5 行并记录了检查点 重新运行只复制之后的行
+     */
+    @Test
+    void resumesFromCheckpoint() throws Exception {
+        Path path = directory.resolve("checkpoint.json");
+        DatabaseEntity<Row> entity = DatabaseEntity.of(Row.class);
+        long checksum = 0;
+        for (Row row : rows.subList(0, 5)) {
+            checksum += DatabaseMigrator.checksum(entity, row);
+        }
+        actions.create(target.getConnection(), TABLE, rows.subList(0, 5));
+        MigrationCheckpoint checkpoint = MigrationCheckpoint.load(path);
+        checkpoint.advance(TABLE, "04", 5, checksum);
+        checkpoint.save(path);
+
+        MigrationResult result = this.migrator(path, 3).migrate().get(0);
+
+        assertEquals(5, result.getCopiedRows());
+        assertEquals(10, result.getRows());
+        assertTrue(result.isMatched());
+        assertEquals(10, actions.read(target.getConnection(), TABLE, Row.class, new DatabaseQuery()).size());
+    }
+
+    /**
+     * 只存在于目标表中的行使校验不一致 目标表被清空 重新运行后一致
+     */
+    @Test
+    void mismatchClearsTargetTable() throws Exception {
+        Path path = directory.resolve("checkpoint.json");
+        actions.create(target.getConnection(), TABLE, new Row("zz", "stale"));
+
+        assertFalse(this.migrator(path, 4).migrate().get(0).isMatched());
+        MigrationResult result = this.migrator(path, 4).migrate().get(0);
+
+        assertTrue(result.isMatched());
+        assertEquals(10, result.getCopiedRows());
+        assertTrue(actions.read(target.getConnection(), TABLE, Row.class,
+                new DatabaseQuery().equal("id", "zz")).isEmpty());
+    }
+
+    private DatabaseMigrator migrator(Path path, int batchSize) {
+        return new DatabaseMigrator(actions, source.getConnection(), actions, target.getConnection(),
+                table -> Row.class, 1, batchSize, path);
+    }
+}
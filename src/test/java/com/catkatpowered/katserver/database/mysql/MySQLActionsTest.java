@@ -0,0 +1,168 @@
+package com.catkatpowered.katserver.database.mysql;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.jdbc.JdbcPooledConnection;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MySQL 执行器的测试 <br>
+ * 设置了环境变量 KAT_TEST_MYSQL_URL (以及 KAT_TEST_MYSQL_USERNAME / KAT_TEST_MYSQL_PASSWORD) 时
+ * 通过 MySQLConnector 连接真实的 MySQL 服务 测试结束后删除测试用的表 <br>
+ * 否则使用 MySQL 兼容模式的内存 H2 数据库 只能验证渲染出的 sql 和执行器的行为
+ * 驱动的批量改写和服务端预编译语句不会被覆盖
+ */
+class MySQLActionsTest {
+    private static final String URL = System.getenv("KAT_TEST_MYSQL_URL");
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    MySQLActions actions = new MySQLActions();
+    List<MySQLConnector> connectors = new ArrayList<>();
+    JdbcPooledConnection connection;
+    String h2;
+    String table;
+
+    static class Row {
+        String id;
+        String value;
+        long number;
+
+        Row() {
+        }
+
+        Row(String id, String value, long number) {
+            this.id = id;
+            this.value = value;
+            this.number = number;
+        }
+    }
+
+    @BeforeEach
+    void open() throws SQLException {
+        h2 = "jdbc:h2:mem:kat" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        // 真实的 MySQL 上每次测试使用不同的表 互不影响
+        table = "kat_test_" + System.nanoTime();
+        connection = this.connect();
+    }
+
+    @AfterEach
+    void close() {
+        actions.drop(connection, table);
+        connection.close();
+        connectors.forEach(MySQLConnector::exit);
+    }
+
+    @Test
+    void createAndRead() {
+        actions.create(connection, table, new Row("a", "1", 1));
+        actions.create(connection, table, List.of(new Row("b", "2", 2), new Row("c", "3", 3)));
+
+        List<Row> rows = actions.read(connection, table, Row.class, new DatabaseQuery().orderBy("id", true));
+        assertEquals(List.of("a", "b", "c"), rows.stream().map(row -> row.id).toList());
+        assertEquals(3, rows.get(2).number);
+        assertTrue(actions.tables(connection).contains(table));
+    }
+
+    /**
+     * 批量插入在一个事务中执行 其中一行失败时整批都不写入
+     */
+    @Test
+    void failedBatchWritesNothing() {
+        actions.create(connection, table, new Row("a", "1", 1));
+        actions.create(connection, table, List.of(new Row("b", "2", 2), new Row("a", "3", 3)));
+
+        List<Row> rows = actions.read(connection, table, Row.class, new DatabaseQuery());
+        assertEquals(1, rows.size());
+        assertEquals("1", rows.get(0).value);
+    }
+
+    @Test
+    void upsertOverwritesExistingRows() {
+        actions.create(connection, table, new Row("a", "1", 1));
+        actions.upsert(connection, table, List.of(new Row("a", "2", 2), new Row("b", "3", 3)));
+
+        List<Row> rows = actions.read(connection, table, Row.class, new DatabaseQuery().orderBy("id", true));
+        assertEquals(2, rows.size());
+        assertEquals("2", rows.get(0).value);
+        assertEquals(2, rows.get(0).number);
+    }
+
+    @Test
+    void updateAndDelete() {
+        actions.create(connection, table, List.of(new Row("a", "1", 1), new Row("b", "2", 2)));
+        actions.update(connection, table, new Row("a", "changed", 10), new DatabaseQuery().equal("id", "a"));
+        actions.delete(connection, table, new DatabaseQuery().equal("id", "b"));
+
+        List<Row> rows = actions.read(connection, table, Row.class, new DatabaseQuery());
+        assertEquals(1, rows.size());
+        assertEquals("changed", rows.get(0).value);
+        assertEquals(10, rows.get(0).number);
+    }
+
+    @Test
+    void cursorReadsEveryRow() {
+        List<Row> data = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            data.add(new Row(String.format("%03d", index), "v" + index, index));
+        }
+        actions.create(connection, table, data);
+
+        List<String> ids = new ArrayList<>();
+        try (DatabaseCursor<Row> cursor = actions.cursor(connection, table, Row.class,
+                new DatabaseQuery().greater("number", 49).orderBy("id", true), 16)) {
+            while (cursor.hasNext()) {
+                ids.add(cursor.next().id);
+            }
+        }
+        assertEquals(50, ids.size());
+        assertEquals("050", ids.get(0));
+        // 游标关闭后链接归还到链接池
+        assertEquals(1, actions.read(connection, table, Row.class, new DatabaseQuery().equal("id", "000")).size());
+    }
+
+    /**
+     * 重新连接时从数据库加载已有的表 不会再次建表
+     */
+    @Test
+    void reconnectLoadsExistingTables() throws SQLException {
+        actions.create(connection, table, new Row("a", "1", 1));
+
+        JdbcPooledConnection reopened = this.connect();
+        try {
+            assertTrue(reopened.containsTable(table));
+            actions.create(reopened, table, new Row("b", "2", 2));
+            assertEquals(2, actions.read(reopened, table, Row.class, new DatabaseQuery()).size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private JdbcPooledConnection connect() throws SQLException {
+        if (URL != null) {
+            MySQLConnector connector = new MySQLConnector(2);
+            connector.loadDatabase(URL, System.getenv("KAT_TEST_MYSQL_USERNAME"),
+                    System.getenv("KAT_TEST_MYSQL_PASSWORD"));
+            connectors.add(connector);
+            return (JdbcPooledConnection) connector.getConnection();
+        }
+        List<Connection> connections = new ArrayList<>();
+        for (int count = 0; count < 2; count++) {
+            connections.add(DriverManager.getConnection(h2));
+        }
+        JdbcPooledConnection pooled = new JdbcPooledConnection(connections, () -> DriverManager.getConnection(h2));
+        pooled.loadTables("SHOW TABLES");
+        return pooled;
+    }
+}
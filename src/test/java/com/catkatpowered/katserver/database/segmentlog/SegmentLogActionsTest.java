@@ -0,0 +1,163 @@
+package com.catkatpowered.katserver.database.segmentlog;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import com.catkatpowered.katserver.message.KatUniMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentLogActionsTest {
+    @TempDir
+    Path directory;
+
+    SegmentLogActions actions = new SegmentLogActions();
+    SegmentLogConnector connector;
+    SegmentLogConnection connection;
+
+    @AfterEach
+    void close() {
+        if (connector != null) {
+            connector.exit();
+        }
+    }
+
+    /**
+     * 写到一半的最后一条记录 (crc 不符) 在重新打开时被丢弃 之后的写入不受影响
+     */
+    @Test
+    void tornTailIsDropped() throws IOException {
+        this.open();
+        actions.create(connection, "g", messages(0, 10, "hello"));
+        this.reopen();
+        corruptLastRecord(directory.resolve("g"));
+
+        this.reopen();
+        assertEquals(9, this.count());
+        assertTrue(this.read("m0000009").isEmpty());
+
+        actions.create(connection, "g", messages(9, 10, "again"));
+        this.reopen();
+        assertEquals(10, this.count());
+        assertEquals("again 9", this.read("m0000009").get(0).messageContent);
+    }
+
+    /**
+     * 压缩后的段在重新打开时重放 只保留每个主键最新的记录
+     */
+    @Test
+    void reopensAfterCompaction() throws IOException {
+        this.open();
+        actions.create(connection, "g", messages(0, 1000, "v0"));
+        for (int version = 1; version <= 3; version++) {
+            actions.upsert(connection, "g", messages(0, 1000, "v" + version));
+        }
+        long before = files(directory.resolve("g"));
+        connection.compact();
+        assertTrue(files(directory.resolve("g")) < before);
+
+        this.reopen();
+        assertEquals(1000, this.count());
+        assertEquals("v3 500", this.read("m0000500").get(0).messageContent);
+        List<KatUniMessage> tail = actions.read(connection, "g", KatUniMessage.class, new DatabaseQuery()
+                .equal("message_group", "g").orderBy("created_at", false).orderBy("message_id", false).limit(5));
+        assertEquals("m0000999", tail.get(0).messageID);
+        assertEquals("m0000995", tail.get(4).messageID);
+
+        actions.create(connection, "g", messages(1000, 1001, "new"));
+        this.reopen();
+        assertEquals(1001, this.count());
+    }
+
+    /**
+     * 游标按主键分批解码 遍历期间删除的行不再返回 更新的行返回新的内容
+     */
+    @Test
+    void cursorReadsInBatches() {
+        this.open();
+        actions.create(connection, "g", messages(0, 100, "v0"));
+        List<String> ids = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        try (DatabaseCursor<KatUniMessage> cursor = actions.cursor(connection, "g", KatUniMessage.class,
+                new DatabaseQuery().greater("message_id", "m0000009").orderBy("message_id", true), 7)) {
+            ids.add(cursor.next().messageID);
+            actions.delete(connection, "g", new DatabaseQuery().equal("message_id", "m0000050"));
+            actions.upsert(connection, "g", messages(60, 61, "v1"));
+            cursor.forEachRemaining(message -> {
+                ids.add(message.messageID);
+                contents.add(message.messageContent);
+            });
+        }
+
+        assertEquals(89, ids.size());
+        assertEquals("m0000010", ids.get(0));
+        assertEquals("m0000099", ids.get(88));
+        assertFalse(ids.contains("m0000050"));
+        assertTrue(contents.contains("v1 60"));
+        for (int index = 1; index < ids.size(); index++) {
+            assertTrue(ids.get(index - 1).compareTo(ids.get(index)) < 0);
+        }
+    }
+
+    private void open() {
+        connector = new SegmentLogConnector(SegmentLogProfile.builder().segmentSize(64 * 1024).flushInterval(0)
+                .build());
+        connector.loadDatabase(directory.toString(), null, null);
+        connection = (SegmentLogConnection) connector.getConnection();
+    }
+
+    private void reopen() {
+        connector.exit();
+        this.open();
+    }
+
+    private int count() {
+        return actions.read(connection, "g", KatUniMessage.class, new DatabaseQuery()).size();
+    }
+
+    private List<KatUniMessage> read(String id) {
+        return actions.read(connection, "g", KatUniMessage.class, new DatabaseQuery().equal("message_id", id));
+    }
+
+    private static List<KatUniMessage> messages(int from, int to, String content) {
+        List<KatUniMessage> messages = new ArrayList<>();
+        for (int index = from; index < to; index++) {
+            messages.add(KatUniMessage.builder().messageGroup("g").messageID(String.format("m%07d", index))
+                    .messageContent(content + " " + index).createdAt((long) index).build());
+        }
+        return messages;
+    }
+
+    private static long files(Path table) throws IOException {
+        try (Stream<Path> files = Files.list(table)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+    // 段文件预先分配 末尾为 0 修改最后一条记录的内容 使它的 crc 不符
+    private static void corruptLastRecord(Path table) throws IOException {
+        Path last;
+        try (Stream<Path> files = Files.list(table)) {
+            last = files.filter(file -> file.toString().endsWith(".log")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(last);
+        int end = bytes.length - 1;
+        while (bytes[end] == 0) {
+            end--;
+        }
+        // 跳过末尾重复的记录长度 落在内容中
+        bytes[end - 10] ^= 0x55;
+        Files.write(last, bytes);
+    }
+}
@@ -0,0 +1,119 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLiteBackupTest {
+    @TempDir
+    Path directory;
+
+    SQLiteProfile profile = SQLiteProfile.builder().build();
+    SQLiteActions actions = new SQLiteActions();
+    SQLiteConnector connector;
+    SQLiteBackup backup;
+    String url;
+
+    static class Row {
+        String id;
+        String value;
+
+        Row() {
+        }
+
+        Row(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    @BeforeEach
+    void open() {
+        url = "jdbc:sqlite:" + directory.resolve("database.db");
+        connector = new SQLiteConnector(profile);
+        connector.loadDatabase(url, null, null);
+        backup = new SQLiteBackup(true, directory.resolve("backups"), 0, 24, 2, 50, 1);
+        backup.start(List.of(url), profile, null);
+    }
+
+    @AfterEach
+    void close() {
+        backup.close();
+        connector.exit();
+    }
+
+    /**
+     * 全量快照之后的快照只保存变化的页 从快照链恢复出每个快照时刻的内容
+     */
+    @Test
+    void restoresIncrementalSnapshots() throws Exception {
+        List<Row> rows = new ArrayList<>();
+        for (int index = 0; index < 2000; index++) {
+            rows.add(new Row(String.format("%05d", index), "value " + index));
+        }
+        actions.create(connector.getConnection(), "rows", rows);
+        SQLiteBackupProgress full = this.snapshot();
+
+        actions.update(connector.getConnection(), "rows", new Row("00010", "changed"),
+                new DatabaseQuery().equal("id", "00010"));
+        actions.create(connector.getConnection(), "rows", new Row("99999", "added"));
+        Map<String, String> second = this.contents(connector);
+        SQLiteBackupProgress incremental = this.snapshot();
+
+        actions.delete(connector.getConnection(), "rows", new DatabaseQuery().less("id", "01000"));
+        Map<String, String> third = this.contents(connector);
+        this.snapshot();
+
+        assertFalse(full.isIncremental());
+        assertTrue(incremental.isIncremental());
+        assertTrue(incremental.getChangedPages() < incremental.getPages());
+        assertTrue(incremental.getBytesWritten() < full.getBytesWritten());
+        SQLiteSnapshots snapshots = new SQLiteSnapshots(backup.getDirectory().resolve(SQLiteBackup.name(url)));
+        assertEquals(List.of(true, false, false), snapshots.list().stream().map(SQLiteSnapshots::isFull).toList());
+
+        assertEquals(second, this.restore(snapshots, incremental.getSnapshot()));
+        assertEquals(third, this.restore(snapshots, null));
+    }
+
+    private SQLiteBackupProgress snapshot() throws Exception {
+        // 快照编号精确到毫秒
+        Thread.sleep(2);
+        SQLiteBackupProgress progress = backup.snapshot(url);
+        assertEquals(SQLiteBackupProgress.DONE, progress.getState());
+        return progress;
+    }
+
+    private Map<String, String> restore(SQLiteSnapshots snapshots, String id) throws Exception {
+        Path target = directory.resolve("restored.db");
+        snapshots.restore(id, target);
+        assertTrue(Files.exists(target));
+        SQLiteConnector restored = new SQLiteConnector(profile);
+        restored.loadDatabase("jdbc:sqlite:" + target, null, null);
+        try {
+            return this.contents(restored);
+        } finally {
+            restored.exit();
+        }
+    }
+
+    private Map<String, String> contents(SQLiteConnector source) {
+        Map<String, String> contents = new TreeMap<>();
+        for (Row row : actions.read(source.getConnection(), "rows", Row.class, new DatabaseQuery())) {
+            contents.put(row.id, row.value);
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,136 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.database.interfaces.DatabaseCursor;
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLiteConnectorTest {
+    @TempDir
+    Path directory;
+
+    static class Row {
+        String id;
+
+        Row() {
+        }
+
+        Row(String id) {
+            this.id = id;
+        }
+    }
+
+    // 之后增加了一列的 Row
+    static class WiderRow {
+        String id;
+        String value;
+
+        WiderRow() {
+        }
+
+        WiderRow(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 没有只读链接时游标也要等待写线程 不能在调用者的线程上使用写链接
+     */
+    @Test
+    void cursorWithoutReadersRunsOnWriter() throws Exception {
+        SQLiteConnector connector = new SQLiteConnector(SQLiteProfile.builder().readers(0).build());
+        connector.loadDatabase("jdbc:sqlite:" + directory.resolve("test.db"), null, null);
+        SQLiteRouter router = (SQLiteRouter) connector.getConnection();
+        SQLiteActions actions = new SQLiteActions();
+        try {
+            actions.create(router, "t", List.of(new Row("a"), new Row("b")));
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread blocker = new Thread(() -> {
+                try {
+                    router.write(sqlite -> {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    });
+                } catch (SQLException exception) {
+                    throw new IllegalStateException(exception);
+                }
+            });
+            blocker.start();
+            started.await();
+            List<String> ids = new ArrayList<>();
+            Thread reader = new Thread(() -> {
+                try (DatabaseCursor<Row> cursor = actions.cursor(router, "t", Row.class,
+                        new DatabaseQuery().orderBy("id", true), 16)) {
+                    cursor.forEachRemaining(row -> ids.add(row.id));
+                }
+            });
+            reader.start();
+            // 写线程被占住时游标在队列中等待
+            while (reader.getState() != Thread.State.WAITING && reader.getState() != Thread.State.TERMINATED) {
+                Thread.sleep(1);
+            }
+            Thread.State state = reader.getState();
+            release.countDown();
+            blocker.join();
+            reader.join();
+            assertEquals(Thread.State.WAITING, state);
+            assertEquals(List.of("a", "b"), ids);
+        } finally {
+            connector.exit();
+        }
+    }
+
+    /**
+     * 旧的数据实体创建的表在检查索引时补齐新增的列 已有的行新增的列为 null
+     */
+    @Test
+    void validateIndexesAddsNewColumns() {
+        SQLiteConnector connector = new SQLiteConnector(SQLiteProfile.builder().build());
+        connector.loadDatabase("jdbc:sqlite:" + directory.resolve("test.db"), null, null);
+        SQLiteActions actions = new SQLiteActions();
+        try {
+            actions.create(connector.getConnection(), "t", new Row("a"));
+            actions.create(connector.getConnection(), "other", new WiderRow("a", "kept"));
+
+            assertEquals(List.of(), actions.validateIndexes(connector.getConnection(), WiderRow.class));
+            assertTrue(actions.create(connector.getConnection(), "t", new WiderRow("b", "value")));
+
+            List<WiderRow> rows = actions.read(connector.getConnection(), "t", WiderRow.class,
+                    new DatabaseQuery().orderBy("id", true));
+            assertEquals(2, rows.size());
+            assertNull(rows.get(0).value);
+            assertEquals("value", rows.get(1).value);
+        } finally {
+            connector.exit();
+        }
+    }
+
+    /**
+     * 加载失败后退出不抛出异常
+     */
+    @Test
+    void exitAfterFailedLoad() {
+        SQLiteConnector connector = new SQLiteConnector(SQLiteProfile.builder().build());
+        connector.loadDatabase("jdbc:sqlite:" + directory.resolve("missing/dir/test.db"), null, null);
+        assertNull(connector.getConnection());
+        assertDoesNotThrow(connector::exit);
+    }
+}
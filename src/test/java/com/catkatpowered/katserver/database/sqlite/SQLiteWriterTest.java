@@ -0,0 +1,158 @@
+package com.catkatpowered.katserver.database.sqlite;
+
+import com.catkatpowered.katserver.database.query.DatabaseQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLiteWriterTest {
+    @TempDir
+    Path directory;
+
+    SQLiteConnector connector;
+    SQLiteRouter router;
+    SQLiteActions actions = new SQLiteActions();
+
+    static class Row {
+        String id;
+        String value;
+
+        Row() {
+        }
+
+        Row(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    @BeforeEach
+    void open() {
+        connector = new SQLiteConnector(SQLiteProfile.builder().readers(1).build());
+        connector.loadDatabase("jdbc:sqlite:" + directory.resolve("test.db"), null, null);
+        router = (SQLiteRouter) connector.getConnection();
+    }
+
+    @AfterEach
+    void close() {
+        connector.exit();
+    }
+
+    /**
+     * 同一个事务中建表后写入失败 建表被回滚 表结构登记也要撤销 之后的写入重新建表
+     */
+    @Test
+    void rolledBackCreateTableIsUnregistered() throws Exception {
+        // 批量写入中有重复的主键 建表之后失败
+        this.inOneTransaction(
+                () -> actions.create(router, "broken", List.of(new Row("a", "1"), new Row("a", "2"))),
+                () -> actions.create(router, "fine", List.of(new Row("b", "1"))));
+
+        assertFalse(router.getSchema().contains("broken"));
+        assertTrue(router.getSchema().contains("fine"));
+        actions.create(router, "broken", new Row("a", "3"));
+        List<Row> rows = actions.read(router, "broken", Row.class, new DatabaseQuery());
+        assertEquals(1, rows.size());
+        assertEquals("3", rows.get(0).value);
+    }
+
+    /**
+     * 同一个事务中删表后失败 删表被回滚 表仍然登记
+     */
+    @Test
+    void rolledBackDropTableIsRegisteredAgain() throws Exception {
+        actions.create(router, "kept", new Row("a", "1"));
+        this.inOneTransaction(() -> {
+            try {
+                router.write(sqlite -> {
+                    actions.drop(router, "kept");
+                    throw new SQLException("fail after drop");
+                });
+            } catch (SQLException ignored) {
+                // 预期的失败
+            }
+        }, () -> actions.create(router, "other", new Row("b", "1")));
+
+        assertTrue(router.getSchema().contains("kept"));
+        assertEquals(1, actions.read(router, "kept", Row.class, new DatabaseQuery()).size());
+    }
+
+    /**
+     * 写操作抛出 Error 时只有这个操作失败 写线程继续执行之后的写入 单独执行和在事务中执行都一样
+     */
+    @Test
+    void errorFailsOnlyItsWrite() throws Exception {
+        assertThrows(SQLException.class, () -> router.write(sqlite -> {
+            throw new StackOverflowError();
+        }));
+        List<Throwable> failures = new ArrayList<>();
+        this.inOneTransaction(() -> {
+            try {
+                router.write(sqlite -> {
+                    throw new OutOfMemoryError();
+                });
+            } catch (SQLException exception) {
+                failures.add(exception.getCause());
+            }
+        }, () -> actions.create(router, "after", new Row("a", "1")));
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof OutOfMemoryError);
+        assertTrue(actions.create(router, "after", new Row("b", "2")));
+        assertEquals(2, actions.read(router, "after", Row.class, new DatabaseQuery()).size());
+    }
+
+    // 写线程被占住时依次提交写操作 它们在同一个事务中执行
+    private void inOneTransaction(Runnable... writes) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread blocker = new Thread(() -> {
+            try {
+                router.write(sqlite -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                });
+            } catch (SQLException exception) {
+                throw new IllegalStateException(exception);
+            }
+        });
+        blocker.start();
+        started.await();
+        List<Thread> threads = new ArrayList<>();
+        for (Runnable write : writes) {
+            Thread thread = new Thread(write);
+            thread.start();
+            awaitQueued(thread);
+            threads.add(thread);
+        }
+        release.countDown();
+        blocker.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    // 等待线程进入写线程的队列
+    private static void awaitQueued(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.catkatpowered.katserver.message;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KatUniMessageCodecTest {
+
+    @Test
+    void roundTripsNestedMessages() {
+        ArrayList<KatUniMessage> messages = messages();
+
+        byte[] bytes = KatUniMessageCodec.encode(messages);
+
+        assertEquals(KatUniMessageCodec.VERSION, bytes[0]);
+        assertEquals(messages, KatUniMessageCodec.decode(bytes));
+    }
+
+    /**
+     * 另外存放的下一级消息只写在头部 不是消息的一部分
+     */
+    @Test
+    void roundTripsReferences() {
+        ArrayList<KatUniMessage> messages = messages();
+        List<KatUniMessageCodec.Reference> references = Arrays.asList(
+                null, new KatUniMessageCodec.Reference(3, "e3b0c442"), null);
+
+        List<KatUniMessageCodec.Reference> decoded = new ArrayList<>();
+        ArrayList<KatUniMessage> back = KatUniMessageCodec.decode(
+                KatUniMessageCodec.encode(messages, references), decoded);
+
+        assertEquals(messages, back);
+        assertEquals(references, decoded);
+    }
+
+    /**
+     * 版本 1 的数据头部没有另外存放的下一级消息 仍然可以读取
+     */
+    @Test
+    void decodesVersion1() {
+        byte[] bytes = concat(
+                new byte[]{1, 2}, string("PlainMessage"), string("g"),
+                // 一条消息 位图为 类型 消息组 ID 内容
+                new byte[]{1, 1 | 1 << 1 | 1 << 2 | 1 << 4, 0, 1}, string("a"),
+                // 正文长度 正文
+                new byte[]{3}, string("hi"));
+
+        List<KatUniMessageCodec.Reference> references = new ArrayList<>();
+        ArrayList<KatUniMessage> messages = KatUniMessageCodec.decode(bytes, references);
+
+        assertEquals(1, messages.size());
+        KatUniMessage message = messages.get(0);
+        assertEquals("PlainMessage", message.messageType);
+        assertEquals("g", message.messageGroup);
+        assertEquals("a", message.messageID);
+        assertEquals("hi", message.messageContent);
+        assertNull(message.createdAt);
+        assertEquals(Arrays.asList((KatUniMessageCodec.Reference) null), references);
+    }
+
+    @Test
+    void decodeHeadersSkipsBodies() {
+        ArrayList<KatUniMessage> messages = messages();
+
+        ArrayList<KatUniMessage> headers = KatUniMessageCodec.decodeHeaders(KatUniMessageCodec.encode(messages));
+
+        assertEquals(messages.size(), headers.size());
+        assertEquals(messages.get(2).messageID, headers.get(2).messageID);
+        assertEquals(messages.get(2).createdAt, headers.get(2).createdAt);
+        assertNull(headers.get(2).messageContent);
+        assertNull(headers.get(2).messageList);
+    }
+
+    @Test
+    void rejectsNewerVersions() {
+        byte[] bytes = KatUniMessageCodec.encode(messages());
+        bytes[0] = KatUniMessageCodec.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> KatUniMessageCodec.decode(bytes));
+    }
+
+    @Test
+    void roundTripsExtendedWithNulls() {
+        KatUniMessageCodec.Extended codec = new KatUniMessageCodec.Extended();
+        ArrayList<String> extended = new ArrayList<>(Arrays.asList("a", null, ""));
+
+        byte[] bytes = codec.encode(extended);
+
+        assertEquals(extended, codec.decode(bytes));
+        assertArrayEquals(bytes, codec.encode(codec.decode(bytes)));
+    }
+
+    private static ArrayList<KatUniMessage> messages() {
+        ArrayList<KatUniMessage> messages = new ArrayList<>();
+        messages.add(KatUniMessage.builder().messageGroup("g").messageID("a").messageContent("hello")
+                .createdAt(1700000000000L).build());
+        messages.add(KatUniMessage.builder().messageType("ImageMessage").messageGroup("g").messageID("b")
+                .resourceHash("e3b0c442").resourceName("cat.png").resourceURL("https://example.com/cat.png")
+                .createdAt(-1L).build());
+        ArrayList<KatUniMessage> children = new ArrayList<>(List.of(
+                KatUniMessage.builder().messageGroup("h").messageID("c").messageContent("内容").build(),
+                KatUniMessage.builder().messageGroup("h").messageID("d").messageContent("").build()));
+        messages.add(KatUniMessage.builder().messageType("CollectionMessage").messageGroup("g").messageID("e")
+                .messageList(children).extended(new ArrayList<>(Arrays.asList("x", null)))
+                .createdAt(1700000000001L).build());
+        return messages;
+    }
+
+    private static byte[] string(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return concat(new byte[]{(byte) bytes.length}, bytes);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] bytes = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, bytes, position, part.length);
+            position += part.length;
+        }
+        return bytes;
+    }
+}
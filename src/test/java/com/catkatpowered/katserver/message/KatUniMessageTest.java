@@ -0,0 +1,32 @@
+package com.catkatpowered.katserver.message;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class KatUniMessageTest {
+
+    /**
+     * 复制的消息放入缓存 调用者之后修改原消息的列表不能改变缓存中的消息
+     */
+    @Test
+    void copyIsDeep() {
+        KatUniMessage child = KatUniMessage.builder().messageGroup("h").messageID("b").messageContent("child").build();
+        KatUniMessage message = KatUniMessage.builder().messageGroup("g").messageID("a")
+            .messageList(new ArrayList<>(List.of(child))).extended(new ArrayList<>(List.of("x"))).build();
+
+        KatUniMessage copy = message.copy();
+        message.messageList.add(KatUniMessage.builder().messageID("c").build());
+        message.messageList.get(0).messageContent = "changed";
+        message.extended.add("y");
+
+        assertEquals(1, copy.messageList.size());
+        assertEquals("child", copy.messageList.get(0).messageContent);
+        assertEquals(List.of("x"), copy.extended);
+        assertNotSame(message.messageList.get(0), copy.messageList.get(0));
+    }
+}
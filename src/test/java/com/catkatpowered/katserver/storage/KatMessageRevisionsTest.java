@@ -0,0 +1,94 @@
+package com.catkatpowered.katserver.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KatMessageRevisionsTest {
+    private static final int INTERVAL = 4;
+
+    /**
+     * 每个版本都可以从不晚于它的快照开始 依次应用差异还原
+     */
+    @Test
+    void replaysDeltaChain() {
+        List<String> versions = versions();
+        List<KatMessageRevision> rows = chain(versions, INTERVAL);
+
+        for (int revision = 0; revision < versions.size(); revision++) {
+            int from = revision - revision % INTERVAL;
+            assertEquals(versions.get(revision), KatMessageRevisions.replay(rows.subList(from, revision + 1)),
+                    "revision " + revision);
+        }
+    }
+
+    /**
+     * 快照的间隔被调小后 范围内有多个快照 从最后一个快照开始
+     */
+    @Test
+    void replayStartsFromLastSnapshot() {
+        List<String> versions = versions();
+        List<KatMessageRevision> rows = chain(versions, 2);
+        // 最后一个快照之前的版本不会被读取
+        rows.get(1).content = new byte[]{9};
+
+        assertEquals(versions.get(7), KatMessageRevisions.replay(rows.subList(0, 8)));
+    }
+
+    @Test
+    void deltaIsSmallerThanSnapshot() {
+        String before = "the quick brown fox jumps over the lazy dog";
+        String after = "the quick brown cat jumps over the lazy dog";
+
+        byte[] delta = KatMessageRevisions.encode(before, after);
+
+        assertTrue(delta.length < KatMessageRevisions.encode(null, after).length);
+        assertEquals(after, KatMessageRevisions.apply(before, delta));
+    }
+
+    /**
+     * 差异不拆开代理对 内容为 null 的版本也可以还原
+     */
+    @Test
+    void keepsSurrogatePairsAndNulls() {
+        String before = "cat 🐱 here";
+        String after = "cat 🐶 here";
+
+        assertEquals(after, KatMessageRevisions.apply(before, KatMessageRevisions.encode(before, after)));
+        assertNull(KatMessageRevisions.apply(before, KatMessageRevisions.encode(before, null)));
+    }
+
+    @Test
+    void deltaWithoutBaseFails() {
+        byte[] delta = KatMessageRevisions.encode("a", "ab");
+
+        assertThrows(IllegalArgumentException.class, () -> KatMessageRevisions.apply(null, delta));
+    }
+
+    private static List<String> versions() {
+        List<String> versions = new ArrayList<>();
+        StringBuilder content = new StringBuilder("hello world");
+        for (int revision = 0; revision < 11; revision++) {
+            versions.add(content.toString());
+            content.insert(revision % content.length(), "edit " + revision + " ");
+        }
+        return versions;
+    }
+
+    // 与 KatMessageRevisions 写入的格式相同 版本号是间隔的整数倍时为快照 其余为相对上一个版本的差异
+    private static List<KatMessageRevision> chain(List<String> versions, int interval) {
+        List<KatMessageRevision> rows = new ArrayList<>();
+        for (int revision = 0; revision < versions.size(); revision++) {
+            String before = revision % interval == 0 ? null : versions.get(revision - 1);
+            rows.add(new KatMessageRevision("m:" + revision, "m", revision,
+                    KatMessageRevisions.encode(before, versions.get(revision)), 0L));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,65 @@
+package com.catkatpowered.katserver.storage;
+
+import com.catkatpowered.katserver.message.KatUniMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 经过 KatServer 的全局配置 使用 src/test/resources/config.yml 中的内存数据库 <br>
+ * 全部测试共用同一个数据库 每个测试使用不同的消息组
+ */
+class KatMessageStorageTest {
+
+    @Test
+    void updateRecordsRevision() {
+        KatUniMessage original = message("update", "a", "first");
+        assertTrue(KatMessageStorage.createMessage(original));
+
+        assertTrue(KatMessageStorage.updateMessage(original, message("update", "a", "second")));
+
+        assertEquals(2, KatMessageStorage.getRevisionCount(original));
+        assertEquals("first", KatMessageStorage.getRevision(original, 0).orElseThrow());
+        assertEquals("second", KatMessageStorage.getRevision(original, 1).orElseThrow());
+    }
+
+    /**
+     * 更新失败时 (新的 ID 已被使用) 消息和编辑历史都不改变
+     */
+    @Test
+    void failedUpdateKeepsHistory() {
+        KatUniMessage original = message("failed", "a", "first");
+        assertTrue(KatMessageStorage.createMessage(original));
+        assertTrue(KatMessageStorage.createMessage(message("failed", "b", "other")));
+        assertTrue(KatMessageStorage.updateMessage(original, message("failed", "a", "second")));
+
+        assertFalse(KatMessageStorage.updateMessage(original, message("failed", "b", "third")));
+
+        assertEquals(2, KatMessageStorage.getRevisionCount(original));
+        assertEquals("first", KatMessageStorage.getRevision(original, 0).orElseThrow());
+        assertEquals("second", content(original));
+        assertEquals("other", content(message("failed", "b", null)));
+    }
+
+    @Test
+    void updateOfMissingMessageFails() {
+        assertFalse(KatMessageStorage.updateMessage(message("missing", "a", "first"),
+            message("missing", "a", "second")));
+        assertEquals(0, KatMessageStorage.getRevisionCount(message("missing", "a", null)));
+    }
+
+    private static KatUniMessage message(String group, String id, String content) {
+        return KatUniMessage.builder().messageGroup(group).messageID(id).messageContent(content)
+            .createdAt(1700000000000L).build();
+    }
+
+    private static String content(KatUniMessage index) {
+        List<KatUniMessage> messages = KatMessageStorage.getMessage(index).orElseThrow();
+        assertEquals(1, messages.size());
+        return messages.get(0).messageContent;
+    }
+}